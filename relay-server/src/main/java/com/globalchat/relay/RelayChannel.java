@@ -0,0 +1,35 @@
+package com.globalchat.relay;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// A channel's subscribers and its publish rate limit. Only touched from the server's selector thread.
+final class RelayChannel {
+
+	final String name;
+	final Set<RelaySession> subscribers = new LinkedHashSet<>();
+
+	// Token bucket: refills at messagesPerSecond, holds at most burst
+	private final double messagesPerSecond;
+	private final double burst;
+	private double available;
+	private long refilledAtNanos;
+
+	RelayChannel(String name, double messagesPerSecond, int burst, long nowNanos) {
+		this.name = name;
+		this.messagesPerSecond = messagesPerSecond;
+		this.burst = burst;
+		this.available = burst;
+		this.refilledAtNanos = nowNanos;
+	}
+
+	boolean tryPublish(long nowNanos) {
+		available = Math.min(burst, available + (nowNanos - refilledAtNanos) * messagesPerSecond / 1_000_000_000d);
+		refilledAtNanos = nowNanos;
+		if (available < 1) {
+			return false;
+		}
+		available--;
+		return true;
+	}
+}
@@ -0,0 +1,520 @@
+package com.globalchat.relay;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+// Self-hostable stand-in for Ably: a WebSocket relay that fans messages out to everyone attached
+// to a channel. One selector thread owns every socket and channel, so nothing here is locked.
+//
+// HTTP, on one port:
+//   GET /token (header clientId)       -> the token to connect with, 503 + Retry-After at capacity
+//   GET /?token=... (WebSocket upgrade) -> the relay connection
+// WebSocket, one JSON object per text frame:
+//   -> {"op":"attach"|"detach","id":1,"channel":"w:301"}
+//   -> {"op":"publish","id":2,"channel":"w:301","data":"..."}
+//   <- {"op":"ack","id":1} or {"op":"error","id":2,"statusCode":429,"code":42910,"message":"..."}
+//   <- {"op":"message","channel":"w:301","clientId":"Zezima","data":"..."}
+// data is opaque to the relay, clients encrypt it with the channel key. Publishers don't get
+// their own messages back, like the plugin's Ably setup (echoMessages off).
+@Slf4j
+public class RelayServer implements Closeable {
+
+	// Same codes as Ably, so AblyManager's error handling applies unchanged
+	static final int BAD_REQUEST_ERROR_CODE = 40000;
+	static final int RATE_LIMITED_ERROR_CODE = 42910;
+
+	private static final int MAX_REQUEST_BYTES = 8 * 1024;
+	private static final int MAX_FRAME_BYTES = 16 * 1024;
+	private static final int MAX_NAME_LENGTH = 64;
+	// A subscriber this far behind is disconnected rather than buffered without bound
+	private static final long MAX_QUEUED_BYTES = 1024 * 1024;
+	private static final int RETRY_AFTER_SECONDS = 30;
+
+	private final RelayTokens tokens;
+	private final int maxConnections;
+	private final double channelMessagesPerSecond;
+	private final int channelBurst;
+
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final Thread loop;
+	private final Gson gson = new Gson();
+	private volatile boolean running = true;
+
+	// Selector thread only
+	private final Map<String, RelayChannel> channels = new HashMap<>();
+
+	private volatile int connectionCount;
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong rateLimited = new AtomicLong();
+
+	public RelayServer(InetSocketAddress address, RelayTokens tokens, int maxConnections,
+		double channelMessagesPerSecond, int channelBurst) throws IOException {
+		this.tokens = tokens;
+		this.maxConnections = maxConnections;
+		this.channelMessagesPerSecond = channelMessagesPerSecond;
+		this.channelBurst = channelBurst;
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		server.configureBlocking(false);
+		server.bind(address, 1024);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		this.loop = new Thread(this::run, "RelayServer");
+	}
+
+	public void start() {
+		loop.start();
+	}
+
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	public int getConnectionCount() {
+		return connectionCount;
+	}
+
+	public long getPublished() {
+		return published.get();
+	}
+
+	public long getDelivered() {
+		return delivered.get();
+	}
+
+	public long getRateLimited() {
+		return rateLimited.get();
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		selector.wakeup();
+		try {
+			loop.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		log.info("Relay listening on port {}", getPort());
+		while (running) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				log.warn("Selector failed", e);
+				break;
+			}
+			Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+			while (selected.hasNext()) {
+				SelectionKey key = selected.next();
+				selected.remove();
+				RelaySession session = (RelaySession) key.attachment();
+				try {
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					if (key.isWritable() && session.flush() && session.closeAfterFlush) {
+						close(session);
+						continue;
+					}
+					if (key.isValid() && key.isReadable()) {
+						onReadable(session);
+					}
+				} catch (IOException e) {
+					log.debug("Socket error: {}", e.getMessage());
+					if (session != null) {
+						close(session);
+					}
+				}
+			}
+		}
+		for (SelectionKey key : selector.keys()) {
+			try {
+				key.channel().close();
+			} catch (IOException e) {
+				log.debug("Error closing socket", e);
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			log.debug("Error closing selector", e);
+		}
+		log.info("Relay stopped");
+	}
+
+	private void accept() throws IOException {
+		SocketChannel socket;
+		while ((socket = server.accept()) != null) {
+			socket.configureBlocking(false);
+			socket.socket().setTcpNoDelay(true);
+			SelectionKey key = socket.register(selector, SelectionKey.OP_READ);
+			key.attach(new RelaySession(socket, key, 1024));
+		}
+	}
+
+	private void onReadable(RelaySession session) throws IOException {
+		if (session.socket.read(session.in) < 0) {
+			close(session);
+			return;
+		}
+		session.in.flip();
+		if (!session.upgraded) {
+			readRequest(session);
+		}
+		if (session.upgraded && !session.closed) {
+			readFrames(session);
+		}
+		if (session.closed) {
+			return;
+		}
+		session.in.compact();
+		if (!session.in.hasRemaining()) {
+			// A frame header plus the largest frame we accept always fits
+			int limit = session.upgraded ? MAX_FRAME_BYTES + 14 : MAX_REQUEST_BYTES;
+			if (session.in.capacity() >= limit) {
+				close(session);
+				return;
+			}
+			ByteBuffer bigger = ByteBuffer.allocate(Math.min(limit, session.in.capacity() * 2));
+			session.in.flip();
+			bigger.put(session.in);
+			session.in = bigger;
+		}
+	}
+
+	private void readRequest(RelaySession session) throws IOException {
+		ByteBuffer in = session.in;
+		int end = -1;
+		for (int i = in.position(); i + 3 < in.limit(); i++) {
+			if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0) {
+			return; // Headers not complete yet
+		}
+		byte[] head = new byte[end - in.position()];
+		in.get(head);
+		in.position(end + 4);
+
+		String[] lines = new String(head, StandardCharsets.ISO_8859_1).split("\r\n");
+		String[] requestLine = lines[0].split(" ");
+		if (requestLine.length < 3 || !"GET".equals(requestLine[0])) {
+			respond(session, "405 Method Not Allowed", "", "");
+			return;
+		}
+		Map<String, String> headers = new HashMap<>();
+		for (int i = 1; i < lines.length; i++) {
+			int colon = lines[i].indexOf(':');
+			if (colon > 0) {
+				headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+			}
+		}
+		String target = requestLine[1];
+		int query = target.indexOf('?');
+		String path = query < 0 ? target : target.substring(0, query);
+		Map<String, String> params = query < 0 ? new HashMap<>() : parseQuery(target.substring(query + 1));
+
+		if ("websocket".equalsIgnoreCase(headers.get("upgrade"))) {
+			upgrade(session, params.get("token"), headers.get("sec-websocket-key"));
+		} else if ("/token".equals(path)) {
+			issueToken(session, headers.containsKey("clientid") ? headers.get("clientid") : params.get("clientId"));
+		} else {
+			respond(session, "404 Not Found", "", "");
+		}
+	}
+
+	private void issueToken(RelaySession session, String clientId) throws IOException {
+		if (clientId == null || clientId.trim().isEmpty() || clientId.length() > MAX_NAME_LENGTH) {
+			respond(session, "400 Bad Request", "", "Missing clientId");
+			return;
+		}
+		if (connectionCount >= maxConnections) {
+			respondAtCapacity(session);
+			return;
+		}
+		respond(session, "200 OK", "Content-Type: text/plain\r\n", tokens.issue(clientId.trim(), System.currentTimeMillis()));
+	}
+
+	private void upgrade(RelaySession session, String token, String secWebSocketKey) throws IOException {
+		String clientId = tokens.verify(token, System.currentTimeMillis());
+		if (clientId == null) {
+			respond(session, "401 Unauthorized", "", "Invalid or expired token");
+			return;
+		}
+		if (secWebSocketKey == null) {
+			respond(session, "400 Bad Request", "", "Missing Sec-WebSocket-Key");
+			return;
+		}
+		if (connectionCount >= maxConnections) {
+			respondAtCapacity(session);
+			return;
+		}
+		String response = "HTTP/1.1 101 Switching Protocols\r\n"
+			+ "Upgrade: websocket\r\n"
+			+ "Connection: Upgrade\r\n"
+			+ "Sec-WebSocket-Accept: " + WebSocketFrames.acceptKey(secWebSocketKey) + "\r\n\r\n";
+		session.upgraded = true;
+		session.clientId = clientId;
+		connectionCount++;
+		send(session, ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+	}
+
+	private void respondAtCapacity(RelaySession session) throws IOException {
+		respond(session, "503 Service Unavailable", "Retry-After: " + RETRY_AFTER_SECONDS + "\r\nContent-Type: application/json\r\n",
+			"{\"retryAfter\":" + RETRY_AFTER_SECONDS + "}");
+	}
+
+	// Plain HTTP answer, the socket is closed once it has been written
+	private void respond(RelaySession session, String status, String headers, String body) throws IOException {
+		byte[] content = body.getBytes(StandardCharsets.UTF_8);
+		String head = "HTTP/1.1 " + status + "\r\n" + headers
+			+ "Content-Length: " + content.length + "\r\n"
+			+ "Connection: close\r\n\r\n";
+		ByteBuffer response = ByteBuffer.allocate(head.length() + content.length);
+		response.put(head.getBytes(StandardCharsets.ISO_8859_1)).put(content).flip();
+		closeAfter(session, response);
+	}
+
+	private void readFrames(RelaySession session) throws IOException {
+		while (!session.closed && !session.closeAfterFlush) {
+			WebSocketFrames.Frame frame;
+			try {
+				frame = WebSocketFrames.read(session.in, MAX_FRAME_BYTES);
+			} catch (WebSocketFrames.ProtocolException e) {
+				closeAfter(session, WebSocketFrames.close(e.closeCode, e.getMessage()));
+				return;
+			}
+			if (frame == null) {
+				return;
+			}
+			if (!frame.fin || frame.opcode == 0) {
+				closeAfter(session, WebSocketFrames.close(WebSocketFrames.CLOSE_UNSUPPORTED, "Fragmented messages are not supported"));
+				return;
+			}
+			switch (frame.opcode) {
+				case WebSocketFrames.OP_TEXT:
+					onRequest(session, new String(frame.payload, StandardCharsets.UTF_8));
+					break;
+				case WebSocketFrames.OP_PING:
+					send(session, WebSocketFrames.encode(WebSocketFrames.OP_PONG, frame.payload));
+					break;
+				case WebSocketFrames.OP_PONG:
+					break;
+				case WebSocketFrames.OP_CLOSE:
+					// Echo the close back, then hang up
+					closeAfter(session, WebSocketFrames.encode(WebSocketFrames.OP_CLOSE, frame.payload));
+					return;
+				default:
+					closeAfter(session, WebSocketFrames.close(WebSocketFrames.CLOSE_UNSUPPORTED, "Only text frames are supported"));
+					return;
+			}
+		}
+	}
+
+	private void onRequest(RelaySession session, String text) throws IOException {
+		JsonObject request;
+		long id;
+		String op;
+		String channelName;
+		try {
+			request = gson.fromJson(text, JsonObject.class);
+			id = request.has("id") ? request.get("id").getAsLong() : 0;
+			op = string(request, "op");
+			channelName = string(request, "channel");
+		} catch (JsonParseException | IllegalStateException | UnsupportedOperationException | NumberFormatException
+			| NullPointerException e) {
+			closeAfter(session, WebSocketFrames.close(WebSocketFrames.CLOSE_PROTOCOL_ERROR, "Malformed request"));
+			return;
+		}
+		if (channelName == null || channelName.isEmpty() || channelName.length() > MAX_NAME_LENGTH) {
+			sendError(session, id, 400, BAD_REQUEST_ERROR_CODE, "Invalid channel");
+			return;
+		}
+		if ("attach".equals(op)) {
+			RelayChannel channel = channels.computeIfAbsent(channelName,
+				name -> new RelayChannel(name, channelMessagesPerSecond, channelBurst, System.nanoTime()));
+			channel.subscribers.add(session);
+			session.channels.add(channel);
+			sendAck(session, id);
+		} else if ("detach".equals(op)) {
+			RelayChannel channel = channels.get(channelName);
+			if (channel != null) {
+				leave(session, channel);
+				session.channels.remove(channel);
+			}
+			sendAck(session, id);
+		} else if ("publish".equals(op)) {
+			String data = string(request, "data");
+			if (data == null) {
+				sendError(session, id, 400, BAD_REQUEST_ERROR_CODE, "Missing data");
+				return;
+			}
+			publish(session, id, channelName, data);
+		} else {
+			sendError(session, id, 400, BAD_REQUEST_ERROR_CODE, "Unknown op " + op);
+		}
+	}
+
+	private void publish(RelaySession session, long id, String channelName, String data) throws IOException {
+		RelayChannel channel = channels.get(channelName);
+		if (channel != null && !channel.tryPublish(System.nanoTime())) {
+			rateLimited.incrementAndGet();
+			sendError(session, id, 429, RATE_LIMITED_ERROR_CODE, "Rate limit exceeded for " + channelName);
+			return;
+		}
+		published.incrementAndGet();
+		if (channel != null) {
+			JsonObject message = new JsonObject();
+			message.addProperty("op", "message");
+			message.addProperty("channel", channelName);
+			message.addProperty("clientId", session.clientId);
+			message.addProperty("data", data);
+			// Encoded once, every subscriber gets a view of the same bytes
+			ByteBuffer frame = WebSocketFrames.encode(WebSocketFrames.OP_TEXT, gson.toJson(message).getBytes(StandardCharsets.UTF_8));
+
+			List<RelaySession> lagging = null;
+			int fannedOut = 0;
+			for (RelaySession subscriber : channel.subscribers) {
+				if (subscriber == session) {
+					continue;
+				}
+				boolean keptUp;
+				try {
+					keptUp = subscriber.send(frame.duplicate(), MAX_QUEUED_BYTES);
+				} catch (IOException e) {
+					keptUp = false;
+				}
+				if (!keptUp) {
+					if (lagging == null) {
+						lagging = new ArrayList<>();
+					}
+					lagging.add(subscriber);
+				}
+				fannedOut++;
+			}
+			delivered.addAndGet(fannedOut);
+			// Closed after the loop, closing removes them from the subscriber set
+			if (lagging != null) {
+				for (RelaySession subscriber : lagging) {
+					log.debug("Dropping {}, too far behind", subscriber.clientId);
+					close(subscriber);
+				}
+			}
+		}
+		sendAck(session, id);
+	}
+
+	private void sendAck(RelaySession session, long id) throws IOException {
+		JsonObject ack = new JsonObject();
+		ack.addProperty("op", "ack");
+		ack.addProperty("id", id);
+		sendJson(session, ack);
+	}
+
+	private void sendError(RelaySession session, long id, int statusCode, int code, String message) throws IOException {
+		JsonObject error = new JsonObject();
+		error.addProperty("op", "error");
+		error.addProperty("id", id);
+		error.addProperty("statusCode", statusCode);
+		error.addProperty("code", code);
+		error.addProperty("message", message);
+		sendJson(session, error);
+	}
+
+	private void sendJson(RelaySession session, JsonObject json) throws IOException {
+		send(session, WebSocketFrames.encode(WebSocketFrames.OP_TEXT, gson.toJson(json).getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private void send(RelaySession session, ByteBuffer frame) throws IOException {
+		if (!session.send(frame, MAX_QUEUED_BYTES)) {
+			close(session);
+		}
+	}
+
+	private void closeAfter(RelaySession session, ByteBuffer last) throws IOException {
+		session.closeAfterFlush = true;
+		session.send(last, Long.MAX_VALUE);
+		if (!session.hasQueued()) {
+			close(session);
+		}
+	}
+
+	private void leave(RelaySession session, RelayChannel channel) {
+		channel.subscribers.remove(session);
+		if (channel.subscribers.isEmpty()) {
+			channels.remove(channel.name);
+		}
+	}
+
+	private void close(RelaySession session) {
+		if (session.closed) {
+			return;
+		}
+		session.closed = true;
+		for (RelayChannel channel : session.channels) {
+			leave(session, channel);
+		}
+		session.channels.clear();
+		if (session.upgraded) {
+			connectionCount--;
+		}
+		session.key.cancel();
+		try {
+			session.socket.close();
+		} catch (IOException e) {
+			log.debug("Error closing socket", e);
+		}
+	}
+
+	private static String string(JsonObject json, String member) {
+		JsonElement value = json.get(member);
+		return value == null || value.isJsonNull() ? null : value.getAsString();
+	}
+
+	private static Map<String, String> parseQuery(String query) {
+		Map<String, String> params = new HashMap<>();
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals <= 0) {
+				continue;
+			}
+			try {
+				params.put(pair.substring(0, equals), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+			} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+				log.debug("Ignoring bad query parameter {}", pair);
+			}
+		}
+		return params;
+	}
+}
@@ -0,0 +1,49 @@
+package com.globalchat.relay;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+// Runs the relay, configured from the environment:
+//   RELAY_PORT               port to listen on (8787)
+//   RELAY_SECRET             token signing secret, at least 16 characters (random, tokens die with the process)
+//   RELAY_MAX_CONNECTIONS    connections before new clients get 503 + Retry-After (20000)
+//   RELAY_CHANNEL_RATE       messages per second per channel (20)
+//   RELAY_CHANNEL_BURST      messages a channel may burst above its rate (40)
+//   RELAY_TOKEN_TTL_MINUTES  how long a token may be used to connect (60)
+@Slf4j
+public class RelayServerMain {
+
+	public static void main(String[] args) throws Exception {
+		String secret = System.getenv("RELAY_SECRET");
+		byte[] secretBytes;
+		if (secret == null || secret.isEmpty()) {
+			log.warn("RELAY_SECRET not set, using a random secret");
+			secretBytes = new byte[32];
+			new SecureRandom().nextBytes(secretBytes);
+		} else {
+			secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+		}
+
+		RelayTokens tokens = new RelayTokens(secretBytes, TimeUnit.MINUTES.toMillis(env("RELAY_TOKEN_TTL_MINUTES", 60)));
+		RelayServer server = new RelayServer(new InetSocketAddress(env("RELAY_PORT", 8787)), tokens,
+			env("RELAY_MAX_CONNECTIONS", 20000), env("RELAY_CHANNEL_RATE", 20), env("RELAY_CHANNEL_BURST", 40));
+		Runtime.getRuntime().addShutdownHook(new Thread(server::close, "RelayShutdown"));
+		server.start();
+	}
+
+	private static int env(String name, int fallback) {
+		String value = System.getenv(name);
+		if (value == null || value.isEmpty()) {
+			return fallback;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			log.warn("Ignoring {}={}, not a number", name, value);
+			return fallback;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.globalchat.relay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+// One client socket: an HTTP request until it upgrades, WebSocket frames after.
+// Only touched from the server's selector thread.
+final class RelaySession {
+
+	final SocketChannel socket;
+	final SelectionKey key;
+	ByteBuffer in;
+
+	boolean upgraded;
+	String clientId;
+	// Close once everything queued has been written, e.g. after an HTTP response
+	boolean closeAfterFlush;
+	boolean closed;
+
+	final Set<RelayChannel> channels = new HashSet<>();
+
+	// Frames the socket wasn't ready for yet. Fan-out buffers are shared views, never copies.
+	private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+	private long queuedBytes;
+
+	RelaySession(SocketChannel socket, SelectionKey key, int initialBufferSize) {
+		this.socket = socket;
+		this.key = key;
+		this.in = ByteBuffer.allocate(initialBufferSize);
+	}
+
+	// Writes as much as the socket takes right away and queues the rest.
+	// Returns false if the client has fallen more than maxQueuedBytes behind.
+	boolean send(ByteBuffer frame, long maxQueuedBytes) throws IOException {
+		if (closed) {
+			return true;
+		}
+		if (out.isEmpty()) {
+			socket.write(frame);
+			if (!frame.hasRemaining()) {
+				return true;
+			}
+			key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+		}
+		out.add(frame);
+		queuedBytes += frame.remaining();
+		return queuedBytes <= maxQueuedBytes;
+	}
+
+	// Returns true once the queue is drained
+	boolean flush() throws IOException {
+		ByteBuffer frame;
+		while ((frame = out.peek()) != null) {
+			int before = frame.remaining();
+			socket.write(frame);
+			queuedBytes -= before - frame.remaining();
+			if (frame.hasRemaining()) {
+				return false;
+			}
+			out.poll();
+		}
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+		return true;
+	}
+
+	boolean hasQueued() {
+		return !out.isEmpty();
+	}
+}
@@ -0,0 +1,69 @@
+package com.globalchat.relay;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Signed, expiring tokens that bind a connection to the clientId (the sanitized player name)
+// it asked for, the same scheme the plugin's Ably token endpoint uses:
+// base64url(clientId).expiresAtMillis.base64url(hmacSha256(secret, first two parts))
+public final class RelayTokens {
+
+	private static final String ALGORITHM = "HmacSHA256";
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	private final SecretKeySpec secret;
+	private final long ttlMillis;
+
+	public RelayTokens(byte[] secret, long ttlMillis) {
+		if (secret.length < 16) {
+			throw new IllegalArgumentException("Relay secret must be at least 16 bytes");
+		}
+		this.secret = new SecretKeySpec(secret, ALGORITHM);
+		this.ttlMillis = ttlMillis;
+	}
+
+	public String issue(String clientId, long now) {
+		String payload = ENCODER.encodeToString(clientId.getBytes(StandardCharsets.UTF_8)) + "." + (now + ttlMillis);
+		return payload + "." + ENCODER.encodeToString(sign(payload));
+	}
+
+	// The clientId the token was issued to, or null if it is malformed, forged or expired
+	public String verify(String token, long now) {
+		if (token == null) {
+			return null;
+		}
+		int firstDot = token.indexOf('.');
+		int lastDot = token.lastIndexOf('.');
+		if (firstDot <= 0 || lastDot <= firstDot) {
+			return null;
+		}
+		String payload = token.substring(0, lastDot);
+		try {
+			byte[] signature = DECODER.decode(token.substring(lastDot + 1));
+			if (!MessageDigest.isEqual(signature, sign(payload))) {
+				return null;
+			}
+			if (Long.parseLong(token.substring(firstDot + 1, lastDot)) < now) {
+				return null;
+			}
+			return new String(DECODER.decode(token.substring(0, firstDot)), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			return null; // Bad base64 or expiry, NumberFormatException included
+		}
+	}
+
+	private byte[] sign(String payload) {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(secret);
+			return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("HmacSHA256 unavailable", e);
+		}
+	}
+}
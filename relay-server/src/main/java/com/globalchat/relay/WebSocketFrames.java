@@ -0,0 +1,131 @@
+package com.globalchat.relay;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+// The parts of RFC 6455 the relay needs: the handshake accept key, unfragmented frames from
+// clients (always masked) and frames to clients (never masked, so one encoding serves everyone)
+final class WebSocketFrames {
+
+	static final int OP_TEXT = 0x1;
+	static final int OP_CLOSE = 0x8;
+	static final int OP_PING = 0x9;
+	static final int OP_PONG = 0xA;
+
+	static final int CLOSE_PROTOCOL_ERROR = 1002;
+	static final int CLOSE_UNSUPPORTED = 1003;
+	static final int CLOSE_TOO_BIG = 1009;
+
+	private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+	private WebSocketFrames() {
+	}
+
+	static String acceptKey(String secWebSocketKey) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1")
+				.digest((secWebSocketKey.trim() + GUID).getBytes(StandardCharsets.US_ASCII));
+			return Base64.getEncoder().encodeToString(digest);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 unavailable", e);
+		}
+	}
+
+	// Encoded into a direct buffer, so fanning the same frame out to thousands of sockets
+	// never copies it: each subscriber writes from its own duplicate() of this buffer.
+	static ByteBuffer encode(int opcode, byte[] payload) {
+		int length = payload.length;
+		int header = length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+		ByteBuffer frame = ByteBuffer.allocateDirect(header + length);
+		frame.put((byte) (0x80 | opcode));
+		if (length < 126) {
+			frame.put((byte) length);
+		} else if (length <= 0xFFFF) {
+			frame.put((byte) 126);
+			frame.putShort((short) length);
+		} else {
+			frame.put((byte) 127);
+			frame.putLong(length);
+		}
+		frame.put(payload);
+		frame.flip();
+		return frame.asReadOnlyBuffer();
+	}
+
+	static ByteBuffer close(int code, String reason) {
+		byte[] text = reason.getBytes(StandardCharsets.UTF_8);
+		byte[] payload = new byte[2 + text.length];
+		payload[0] = (byte) (code >> 8);
+		payload[1] = (byte) code;
+		System.arraycopy(text, 0, payload, 2, text.length);
+		return encode(OP_CLOSE, payload);
+	}
+
+	// A complete client frame
+	static final class Frame {
+		final int opcode;
+		final boolean fin;
+		final byte[] payload;
+
+		Frame(int opcode, boolean fin, byte[] payload) {
+			this.opcode = opcode;
+			this.fin = fin;
+			this.payload = payload;
+		}
+	}
+
+	static final class ProtocolException extends Exception {
+		final int closeCode;
+
+		ProtocolException(int closeCode, String message) {
+			super(message);
+			this.closeCode = closeCode;
+		}
+	}
+
+	// Reads one frame from in (flipped for reading). Returns null and leaves in untouched
+	// if the frame isn't complete yet.
+	static Frame read(ByteBuffer in, int maxPayload) throws ProtocolException {
+		int start = in.position();
+		if (in.remaining() < 2) {
+			return null;
+		}
+		int b0 = in.get(start) & 0xFF;
+		int b1 = in.get(start + 1) & 0xFF;
+		if ((b1 & 0x80) == 0) {
+			throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Client frames must be masked");
+		}
+		int headerLength = 2;
+		long length = b1 & 0x7F;
+		if (length == 126) {
+			if (in.remaining() < 4) {
+				return null;
+			}
+			length = in.getShort(start + 2) & 0xFFFF;
+			headerLength = 4;
+		} else if (length == 127) {
+			if (in.remaining() < 10) {
+				return null;
+			}
+			length = in.getLong(start + 2);
+			headerLength = 10;
+		}
+		if (length < 0 || length > maxPayload) {
+			throw new ProtocolException(CLOSE_TOO_BIG, "Frame too large");
+		}
+		if (in.remaining() < headerLength + 4 + length) {
+			return null;
+		}
+
+		int maskAt = start + headerLength;
+		byte[] payload = new byte[(int) length];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) (in.get(maskAt + 4 + i) ^ in.get(maskAt + (i & 3)));
+		}
+		in.position(maskAt + 4 + payload.length);
+		return new Frame(b0 & 0x0F, (b0 & 0x80) != 0, payload);
+	}
+}
@@ -0,0 +1,197 @@
+package com.globalchat.relay;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Fan-out load on one relay node over loopback: N subscribers on one channel, one publisher.
+// Every message is timed from publish until the last subscriber has read it.
+//   ./gradlew :relay-server:loadBenchmark [-Psubscribers=10000]
+// Subscribers are raw NIO sockets driven by a single selector, so the client side stays cheap
+// enough to share the box with the relay. Each subscriber costs two file descriptors here.
+public class RelayLoadBenchmark {
+
+	private static final String CHANNEL = "w:301";
+	private static final int WARMUP_MESSAGES = 20;
+	private static final int MESSAGES = 100;
+	// About the size of an encrypted chat message
+	private static final int DATA_LENGTH = 320;
+
+	public static void main(String[] args) throws Exception {
+		int subscribers = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+		byte[] secret = "relay-load-benchmark-secret".getBytes(StandardCharsets.UTF_8);
+		RelayTokens tokens = new RelayTokens(secret, 600_000);
+		RelayServer server = new RelayServer(new InetSocketAddress("127.0.0.1", 0), tokens, subscribers + 1,
+			1_000_000, 1_000_000);
+		server.start();
+		InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getPort());
+
+		try (Selector selector = Selector.open()) {
+			long connectStarted = System.nanoTime();
+			for (int i = 0; i < subscribers; i++) {
+				SocketChannel socket = connect(address, tokens.issue("Subscriber " + i, System.currentTimeMillis()));
+				socket.write(frame("{\"op\":\"attach\",\"id\":1,\"channel\":\"" + CHANNEL + "\"}"));
+				readFrame(socket); // ack
+				socket.configureBlocking(false);
+				socket.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(4096));
+			}
+			System.out.printf("%d subscribers attached in %d ms, relay holds %d connections%n", subscribers,
+				(System.nanoTime() - connectStarted) / 1_000_000, server.getConnectionCount());
+
+			SocketChannel publisher = connect(address, tokens.issue("Publisher", System.currentTimeMillis()));
+			char[] data = new char[DATA_LENGTH];
+			Arrays.fill(data, 'x');
+			String publish = "{\"op\":\"publish\",\"id\":2,\"channel\":\"" + CHANNEL + "\",\"data\":\"" + new String(data) + "\"}";
+
+			long[] fanOutNanos = new long[MESSAGES];
+			long received = 0;
+			long started = 0;
+			for (int i = 0; i < WARMUP_MESSAGES + MESSAGES; i++) {
+				if (i == WARMUP_MESSAGES) {
+					started = System.nanoTime();
+				}
+				long published = System.nanoTime();
+				publisher.write(frame(publish));
+				received += awaitDeliveries(selector, subscribers);
+				if (i >= WARMUP_MESSAGES) {
+					fanOutNanos[i - WARMUP_MESSAGES] = System.nanoTime() - published;
+				}
+				readFrame(publisher); // ack
+			}
+			double seconds = (System.nanoTime() - started) / 1e9;
+
+			Arrays.sort(fanOutNanos);
+			System.out.printf("%d messages to %d subscribers: %d deliveries, %.0f deliveries/s%n", MESSAGES, subscribers,
+				(long) MESSAGES * subscribers, MESSAGES * (double) subscribers / seconds);
+			System.out.printf("fan-out to all subscribers: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+				fanOutNanos[MESSAGES / 2] / 1e6, fanOutNanos[MESSAGES * 99 / 100] / 1e6, fanOutNanos[MESSAGES - 1] / 1e6);
+			System.out.printf("relay counted %d deliveries, clients read %d%n", server.getDelivered(), received);
+
+			for (SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			publisher.close();
+		} finally {
+			server.close();
+		}
+	}
+
+	private static SocketChannel connect(InetSocketAddress address, String token) throws IOException {
+		SocketChannel socket = SocketChannel.open(address);
+		socket.socket().setTcpNoDelay(true);
+		String key = Base64.getEncoder().encodeToString(Long.toString(ThreadLocalRandom.current().nextLong()).getBytes());
+		String upgrade = "GET /?token=" + token + " HTTP/1.1\r\n"
+			+ "Host: " + address.getHostString() + "\r\n"
+			+ "Upgrade: websocket\r\n"
+			+ "Connection: Upgrade\r\n"
+			+ "Sec-WebSocket-Key: " + key + "\r\n"
+			+ "Sec-WebSocket-Version: 13\r\n\r\n";
+		socket.write(ByteBuffer.wrap(upgrade.getBytes(StandardCharsets.ISO_8859_1)));
+
+		// Read the 101 byte by byte so no frame bytes after it are consumed
+		ByteBuffer one = ByteBuffer.allocate(1);
+		StringBuilder response = new StringBuilder();
+		while (response.length() < 4 || !response.substring(response.length() - 4).equals("\r\n\r\n")) {
+			one.clear();
+			if (socket.read(one) < 0) {
+				throw new IOException("Relay closed the connection during the handshake");
+			}
+			response.append((char) one.get(0));
+		}
+		if (!response.toString().startsWith("HTTP/1.1 101")) {
+			throw new IOException("Upgrade refused: " + response.toString().split("\r\n")[0]);
+		}
+		return socket;
+	}
+
+	// Client frames are masked, the mask doesn't matter for a benchmark
+	private static ByteBuffer frame(String text) {
+		byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer frame = ByteBuffer.allocate(payload.length + 8);
+		frame.put((byte) 0x81);
+		if (payload.length < 126) {
+			frame.put((byte) (0x80 | payload.length));
+		} else {
+			frame.put((byte) (0x80 | 126));
+			frame.putShort((short) payload.length);
+		}
+		frame.putInt(0);
+		frame.put(payload);
+		frame.flip();
+		return frame;
+	}
+
+	// Blocking read of one server frame
+	private static void readFrame(SocketChannel socket) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(4);
+		readFully(socket, header, 2);
+		int length = header.get(1) & 0x7F;
+		if (length == 126) {
+			readFully(socket, header, 4);
+			length = header.getShort(2) & 0xFFFF;
+		}
+		readFully(socket, ByteBuffer.allocate(length), length);
+	}
+
+	private static void readFully(SocketChannel socket, ByteBuffer buffer, int upTo) throws IOException {
+		buffer.limit(upTo);
+		while (buffer.hasRemaining()) {
+			if (socket.read(buffer) < 0) {
+				throw new IOException("Relay closed the connection");
+			}
+		}
+	}
+
+	// Reads subscriber sockets until expected complete frames have arrived
+	private static long awaitDeliveries(Selector selector, long expected) throws IOException {
+		long frames = 0;
+		while (frames < expected) {
+			if (selector.select(10_000) == 0) {
+				throw new IOException("Stalled after " + frames + " of " + expected + " deliveries");
+			}
+			Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+			while (selected.hasNext()) {
+				SelectionKey key = selected.next();
+				selected.remove();
+				ByteBuffer in = (ByteBuffer) key.attachment();
+				if (((SocketChannel) key.channel()).read(in) < 0) {
+					throw new IOException("Relay dropped a subscriber");
+				}
+				in.flip();
+				frames += completeFrames(in);
+				in.compact();
+			}
+		}
+		return frames;
+	}
+
+	private static int completeFrames(ByteBuffer in) {
+		int frames = 0;
+		while (in.remaining() >= 2) {
+			int start = in.position();
+			int length = in.get(start + 1) & 0x7F;
+			int header = 2;
+			if (length == 126) {
+				if (in.remaining() < 4) {
+					break;
+				}
+				length = in.getShort(start + 2) & 0xFFFF;
+				header = 4;
+			}
+			if (in.remaining() < header + length) {
+				break;
+			}
+			in.position(start + header + length);
+			frames++;
+		}
+		return frames;
+	}
+}
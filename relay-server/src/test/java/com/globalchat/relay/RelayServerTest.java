@@ -0,0 +1,162 @@
+package com.globalchat.relay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import org.junit.After;
+import org.junit.Test;
+
+public class RelayServerTest {
+
+	private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+	private final Gson gson = new Gson();
+	private final OkHttpClient http = new OkHttpClient();
+	private final RelayTokens tokens = new RelayTokens(SECRET, 60_000);
+	private RelayServer server;
+
+	@After
+	public void stop() {
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	private void start(int maxConnections, double messagesPerSecond, int burst) throws Exception {
+		server = new RelayServer(new InetSocketAddress("127.0.0.1", 0), tokens, maxConnections, messagesPerSecond, burst);
+		server.start();
+	}
+
+	private String url(String path) {
+		return "http://127.0.0.1:" + server.getPort() + path;
+	}
+
+	// A client that queues everything the relay sends it
+	private final class TestClient extends WebSocketListener {
+		final BlockingQueue<JsonObject> received = new LinkedBlockingQueue<>();
+		final WebSocket socket;
+
+		TestClient(String clientId) {
+			socket = http.newWebSocket(new Request.Builder()
+				.url(url("/?token=" + tokens.issue(clientId, System.currentTimeMillis()))).build(), this);
+		}
+
+		@Override
+		public void onMessage(WebSocket webSocket, String text) {
+			received.add(gson.fromJson(text, JsonObject.class));
+		}
+
+		void send(String op, long id, String channel, String data) {
+			JsonObject request = new JsonObject();
+			request.addProperty("op", op);
+			request.addProperty("id", id);
+			request.addProperty("channel", channel);
+			if (data != null) {
+				request.addProperty("data", data);
+			}
+			socket.send(gson.toJson(request));
+		}
+
+		JsonObject next() throws InterruptedException {
+			JsonObject message = received.poll(5, TimeUnit.SECONDS);
+			assertNotNull("Nothing received", message);
+			return message;
+		}
+	}
+
+	@Test
+	public void tokensAreBoundToTheirClientId() {
+		long now = System.currentTimeMillis();
+		String token = tokens.issue("Zezima", now);
+		assertEquals("Zezima", tokens.verify(token, now));
+		// Expired
+		assertNull(tokens.verify(token, now + 60_001));
+		// Signed by someone else
+		RelayTokens other = new RelayTokens("fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.UTF_8), 60_000);
+		assertNull(tokens.verify(other.issue("Zezima", now), now));
+		// Another clientId with the original signature
+		String forged = tokens.issue("Lynx Titan", now).split("\\.")[0] + token.substring(token.indexOf('.'));
+		assertNull(tokens.verify(forged, now));
+		assertNull(tokens.verify("garbage", now));
+	}
+
+	@Test
+	public void tokenEndpointIssuesTokensForTheClientId() throws Exception {
+		start(10, 10, 10);
+		try (Response response = http.newCall(new Request.Builder().url(url("/token")).header("clientId", "Zezima").build()).execute()) {
+			assertEquals(200, response.code());
+			assertEquals("Zezima", tokens.verify(response.body().string(), System.currentTimeMillis()));
+		}
+		try (Response response = http.newCall(new Request.Builder().url(url("/token")).build()).execute()) {
+			assertEquals(400, response.code());
+		}
+	}
+
+	@Test
+	public void fansOutToEveryoneButThePublisher() throws Exception {
+		start(10, 10, 10);
+		TestClient zezima = new TestClient("Zezima");
+		TestClient lynx = new TestClient("Lynx Titan");
+		TestClient b0aty = new TestClient("B0aty");
+		for (TestClient client : new TestClient[]{zezima, lynx, b0aty}) {
+			client.send("attach", 1, "w:301", null);
+			assertEquals("ack", client.next().get("op").getAsString());
+		}
+
+		zezima.send("publish", 2, "w:301", "hello");
+		assertEquals(2, zezima.next().get("id").getAsLong());
+		for (TestClient client : new TestClient[]{lynx, b0aty}) {
+			JsonObject message = client.next();
+			assertEquals("message", message.get("op").getAsString());
+			assertEquals("Zezima", message.get("clientId").getAsString());
+			assertEquals("hello", message.get("data").getAsString());
+		}
+		assertNull(zezima.received.poll(100, TimeUnit.MILLISECONDS));
+		assertEquals(2, server.getDelivered());
+	}
+
+	@Test
+	public void rateLimitsEachChannel() throws Exception {
+		start(10, 0.001, 2);
+		TestClient zezima = new TestClient("Zezima");
+		zezima.send("attach", 1, "w:301", null);
+		zezima.next();
+		for (int id = 2; id <= 4; id++) {
+			zezima.send("publish", id, "w:301", "spam");
+		}
+		assertEquals("ack", zezima.next().get("op").getAsString());
+		assertEquals("ack", zezima.next().get("op").getAsString());
+		JsonObject error = zezima.next();
+		assertEquals("error", error.get("op").getAsString());
+		assertEquals(RelayServer.RATE_LIMITED_ERROR_CODE, error.get("code").getAsInt());
+		assertEquals(1, server.getRateLimited());
+	}
+
+	@Test
+	public void turnsClientsAwayAtCapacity() throws Exception {
+		start(1, 10, 10);
+		TestClient zezima = new TestClient("Zezima");
+		zezima.send("attach", 1, "w:301", null);
+		zezima.next();
+		assertEquals(1, server.getConnectionCount());
+
+		try (Response response = http.newCall(new Request.Builder().url(url("/token")).header("clientId", "Lynx Titan").build()).execute()) {
+			assertEquals(503, response.code());
+			assertTrue(response.header("Retry-After") != null);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.globalchat;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The per-chat-line checks in AblyManager and the receive path up to the client thread hop.
+// Inputs rotate through a mix of senders and lines, like a busy world.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AblyManagerBenchmark {
+
+	// Power of two so the rotation is a mask
+	private static final int SENDERS = 1024;
+	private static final String[] LINES = {
+		"anyone selling a dragon pickaxe?",
+		"I'm planking!",
+		"gz on 99 fishing",
+		"Smashing!",
+		"selling lobbies 150ea",
+		"w330 dusk fresh instance",
+		"?",
+		"lf1m for tob, must have 90+ range",
+	};
+
+	private final Gson gson = new Gson();
+	private AblyManager ablyManager;
+	private SupporterManager supporterManager;
+	private BenchmarkFixtures.CountingClientThread clientThread;
+
+	private final String[] senders = new String[SENDERS];
+	private final JsonElement[] received = new JsonElement[SENDERS];
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		supporterManager = BenchmarkFixtures.supporterManager(gson, 200);
+		ablyManager = new AblyManager(BenchmarkFixtures.client(), BenchmarkFixtures.config(), false, supporterManager,
+			new LoopbackChatTransport(), new ChatMetrics());
+		ablyManager.gson = gson;
+		ablyManager.playerStatusLookup = new PlayerStatusLookup(new GlobalChatApiClient(new OkHttpClient(), gson));
+		ablyManager.sceneStatusTracker = new SceneStatusTracker(ablyManager.playerStatusLookup);
+		clientThread = new BenchmarkFixtures.CountingClientThread();
+		ablyManager.clientThread = clientThread;
+
+		for (int i = 0; i < SENDERS; i++) {
+			senders[i] = BenchmarkFixtures.name(i);
+			// Every other sender is in the scene with a known combat level, half of those below the filter
+			if (i % 2 == 0) {
+				ablyManager.cacheCombatLevel(senders[i], i % 4 == 0 ? 3 : 90);
+			}
+			String type = i % 8 == 0 ? "p" : "w";
+			received[i] = gson.toJsonTree(AblyManager.buildMessage(i % 3 == 0 ? "<img=2>" : "", senders[i],
+				LINES[i % LINES.length], type, type.equals("p") ? "Zezima" : ""));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		ablyManager.shutdown();
+		supporterManager.shutdown();
+	}
+
+	private int next() {
+		next = (next + 1) & (SENDERS - 1);
+		return next;
+	}
+
+	@Benchmark
+	public boolean isSpam() {
+		return ablyManager.isSpam(LINES[next() % LINES.length]);
+	}
+
+	@Benchmark
+	public boolean shouldShowMessge() {
+		int i = next();
+		return ablyManager.shouldShowMessge(senders[i], LINES[i % LINES.length], true);
+	}
+
+	@Benchmark
+	public boolean shouldPublishMessage() {
+		int i = next();
+		return ablyManager.shouldPublishMessage(LINES[i % LINES.length], senders[i]);
+	}
+
+	@Benchmark
+	public boolean isUnderCbLevel() {
+		return ablyManager.isUnderCbLevel(senders[next()]);
+	}
+
+	// Decode, dedupe, filter and decorate a received message. The client thread is stubbed,
+	// so this stops where the message would be handed to it.
+	@Benchmark
+	public long handleAblyMessage() {
+		ablyManager.handleMessage("w:301", received[next()]);
+		return clientThread.queued;
+	}
+
+	// Building a message to publish and serializing it the way it goes on the wire
+	@Benchmark
+	public String publishMessageJson() {
+		int i = next();
+		return gson.toJson(AblyManager.buildMessage("<img=2>", senders[i], LINES[i % LINES.length], "w", ""));
+	}
+}
@@ -0,0 +1,99 @@
+package com.globalchat;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.BooleanSupplier;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.client.callback.ClientThread;
+import okhttp3.OkHttpClient;
+
+// Stand-ins for the RuneLite pieces the hot paths touch, shared by the benchmarks
+final class BenchmarkFixtures {
+
+	private BenchmarkFixtures() {
+	}
+
+	static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+	}
+
+	// Logged in, everything else unset
+	static Client client() {
+		return proxy(Client.class, (proxy, method, args) ->
+			method.getName().equals("getGameState") ? GameState.LOGGED_IN : null);
+	}
+
+	// Every setting at its default. RuneLite hands out configs as proxies too.
+	static GlobalChatConfig config() {
+		return proxy(GlobalChatConfig.class, (proxy, method, args) -> {
+			if (method.isDefault()) {
+				return defaultValue(method.getName());
+			}
+			return null;
+		});
+	}
+
+	private static Object defaultValue(String setting) {
+		switch (setting) {
+			case "filterOutFromBelowCblvl":
+				return 4;
+			case "showPlayerLookup":
+				return true;
+			case "chatBackend":
+				return ChatBackend.ABLY;
+			case "relayUrl":
+			case "updateNotificationShown":
+				return "";
+			default:
+				return false;
+		}
+	}
+
+	static String name(int i) {
+		return "Player " + i;
+	}
+
+	// Loaded the way the plugin loads its cached list, names are Player 0..count-1
+	static SupporterManager supporterManager(Gson gson, int count) throws IOException {
+		File cacheDir = Files.createTempDirectory("globalchat-jmh").toFile();
+		cacheDir.deleteOnExit();
+		StringBuilder supporters = new StringBuilder();
+		String[] tiers = {"Bronze", "Silver", "Gold"};
+		for (int i = 0; i < count; i++) {
+			supporters.append(i == 0 ? "" : ",")
+				.append("{\"name\":\"").append(name(i)).append("\",\"tier\":\"").append(tiers[i % tiers.length])
+				.append("\",\"amount\":5,\"isPublic\":true}");
+		}
+		String cache = "{\"data\":{\"supporters\":[" + supporters + "],\"totalSupport\":" + count * 5
+			+ ",\"lastUpdated\":\"jmh\"},\"fetchedAt\":" + System.currentTimeMillis() + "}";
+		File file = new File(cacheDir, "supporters.json");
+		Files.write(file.toPath(), cache.getBytes(StandardCharsets.UTF_8));
+		file.deleteOnExit();
+
+		SupporterManager supporterManager = new SupporterManager(gson,
+			new GlobalChatApiClient(new OkHttpClient(), gson, "http://127.0.0.1:1"), new ChatMetrics(), cacheDir);
+		supporterManager.loadFromDisk();
+		return supporterManager;
+	}
+
+	// Counts what would have run on the client thread instead of running it
+	static final class CountingClientThread extends ClientThread {
+		long queued;
+
+		@Override
+		public void invokeLater(BooleanSupplier task) {
+			queued++;
+		}
+
+		@Override
+		public void invokeLater(Runnable task) {
+			queued++;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.globalchat;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// What recording a metric costs on the chat paths, should be a few ns and 0 bytes/op.
+// Also run from several threads, the transport and client threads record at the same time.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatMetricsBenchmark {
+
+	private static final String[] CHANNELS = {"w:301", "p:Zezima", "f:Some fc", "c:Some clan"};
+
+	private ChatMetrics.Counter counter;
+	private ChatMetrics.CounterFamily family;
+	private ChatMetrics.Histogram histogram;
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Setup
+	public void setUp() {
+		ChatMetrics metrics = new ChatMetrics();
+		counter = metrics.counter("publish.acks");
+		family = metrics.family("inbound");
+		histogram = metrics.histogram("publish.ackMillis", 10, 25, 50, 100, 250, 500, 1000, 2500, 5000);
+	}
+
+	@Benchmark
+	public void counter() {
+		counter.increment();
+	}
+
+	@Benchmark
+	public void inboundByChannel(Cursor cursor) {
+		cursor.next = (cursor.next + 1) & (CHANNELS.length - 1);
+		family.increment(CHANNELS[cursor.next]);
+	}
+
+	@Benchmark
+	public void histogram(Cursor cursor) {
+		cursor.next = (cursor.next + 37) & 1023;
+		histogram.record(cursor.next);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void counterContended() {
+		counter.increment();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void histogramContended(Cursor cursor) {
+		cursor.next = (cursor.next + 37) & 1023;
+		histogram.record(cursor.next);
+	}
+}
@@ -0,0 +1,94 @@
+package com.globalchat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// isConnected() from several threads while channel subscribes keep changing the health, as on login
+// or a world hop. Readers of the snapshot should cost the same as with no writer at all, the
+// locked group is the monitor plus stream the snapshot replaced, for comparison.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class ConnectionHealthBenchmark {
+
+	private static final String[] CHANNELS = {"w:301", "p:Zezima", "f:Some fc", "c:Some clan"};
+
+	private AblyManager ablyManager;
+	private final Map<String, Boolean> channelSubscriptionStatus = new HashMap<>();
+	private boolean lockedConnected;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		ablyManager = new AblyManager(BenchmarkFixtures.client(), BenchmarkFixtures.config(), false, null,
+			new LoopbackChatTransport(), new ChatMetrics());
+		ablyManager.updateHealth(h -> h.withConnected(true));
+		lockedConnected = true;
+		for (String channel : CHANNELS) {
+			ablyManager.updateHealth(h -> h.withChannel(channel, true));
+			channelSubscriptionStatus.put(channel, true);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		ablyManager.shutdown();
+	}
+
+	@Benchmark
+	@Group("snapshot")
+	@GroupThreads(3)
+	public boolean snapshotRead() {
+		return ablyManager.isConnected();
+	}
+
+	// A channel goes back to attaching and attaches again
+	@Benchmark
+	@Group("snapshot")
+	@GroupThreads(1)
+	public void snapshotWrite() {
+		String channel = CHANNELS[next = (next + 1) & (CHANNELS.length - 1)];
+		ablyManager.updateHealth(h -> h.withChannel(channel, false));
+		ablyManager.updateHealth(h -> h.withChannel(channel, true));
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(3)
+	public boolean lockedRead() {
+		synchronized (channelSubscriptionStatus) {
+			return lockedConnected && !channelSubscriptionStatus.isEmpty()
+				&& channelSubscriptionStatus.values().stream().allMatch(Boolean::booleanValue);
+		}
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(1)
+	public void lockedWrite() {
+		String channel = CHANNELS[next = (next + 1) & (CHANNELS.length - 1)];
+		synchronized (channelSubscriptionStatus) {
+			channelSubscriptionStatus.put(channel, false);
+		}
+		synchronized (channelSubscriptionStatus) {
+			channelSubscriptionStatus.put(channel, true);
+		}
+	}
+}
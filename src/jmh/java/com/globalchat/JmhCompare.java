@@ -0,0 +1,93 @@
+package com.globalchat;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Compares two JMH JSON result files (jmh-results/<version>.json) and fails on regressions:
+// a slower score beyond both runs' error margins plus the threshold, or more bytes allocated per op.
+//   ./gradlew jmhCompare -Pbaseline=2.4.0
+public class JmhCompare {
+
+	private static final double DEFAULT_THRESHOLD = 0.10;
+	// gc.alloc.rate.norm jitters by a few bytes between runs
+	private static final double ALLOCATION_SLACK_BYTES = 8;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: JmhCompare <baseline.json> <current.json> [threshold, default 0.10]");
+			System.exit(2);
+		}
+		double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+		Map<String, JsonObject> baseline = load(args[0]);
+		Map<String, JsonObject> current = load(args[1]);
+
+		int regressions = 0;
+		System.out.printf("%-60s %14s %14s %8s %12s %12s%n", "benchmark", "baseline", "current", "change", "B/op before", "B/op now");
+		for (Map.Entry<String, JsonObject> entry : current.entrySet()) {
+			JsonObject before = baseline.get(entry.getKey());
+			JsonObject now = entry.getValue();
+			if (before == null) {
+				System.out.printf("%-60s %14s %14.2f%n", entry.getKey(), "new", score(now));
+				continue;
+			}
+			double change = (score(now) - score(before)) / score(before);
+			boolean slower = score(now) - score(before) > Math.max(score(before) * threshold, error(before) + error(now));
+			boolean allocates = allocated(now) > allocated(before) * (1 + threshold) + ALLOCATION_SLACK_BYTES;
+			System.out.printf("%-60s %14.2f %14.2f %+7.1f%% %12.1f %12.1f%s%n", entry.getKey(), score(before), score(now),
+				change * 100, allocated(before), allocated(now),
+				slower || allocates ? "  REGRESSION" + (slower ? " time" : "") + (allocates ? " alloc" : "") : "");
+			if (slower || allocates) {
+				regressions++;
+			}
+		}
+		if (regressions > 0) {
+			System.out.println(regressions + " regression(s)");
+			System.exit(1);
+		}
+	}
+
+	// Benchmark name plus params -> result
+	private static Map<String, JsonObject> load(String file) throws IOException {
+		Map<String, JsonObject> results = new LinkedHashMap<>();
+		try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+			JsonArray runs = new JsonParser().parse(reader).getAsJsonArray();
+			for (JsonElement run : runs) {
+				JsonObject result = run.getAsJsonObject();
+				String name = result.get("benchmark").getAsString();
+				if (result.has("params")) {
+					name += " " + result.get("params");
+				}
+				results.put(name, result);
+			}
+		}
+		return results;
+	}
+
+	private static double score(JsonObject result) {
+		return result.getAsJsonObject("primaryMetric").get("score").getAsDouble();
+	}
+
+	private static double error(JsonObject result) {
+		JsonElement error = result.getAsJsonObject("primaryMetric").get("scoreError");
+		// NaN with too few iterations to tell
+		return error.isJsonPrimitive() && error.getAsJsonPrimitive().isNumber() ? error.getAsDouble() : 0;
+	}
+
+	// Bytes per op from -prof gc, 0 when it wasn't run with the profiler
+	private static double allocated(JsonObject result) {
+		JsonObject secondary = result.getAsJsonObject("secondaryMetrics");
+		if (secondary == null || !secondary.has("gc.alloc.rate.norm")) {
+			return 0;
+		}
+		return secondary.getAsJsonObject("gc.alloc.rate.norm").get("score").getAsDouble();
+	}
+}
@@ -0,0 +1,52 @@
+package com.globalchat;
+
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// One game tick with 2000 players around us, each sending two messages: the enqueues from the
+// chat events plus the tick pass that shows them. Has to stay well inside a 16ms frame.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OverheadTextSchedulerBenchmark {
+
+	private static final int PLAYERS = 2000;
+
+	private OverheadTextScheduler scheduler;
+	private final String[] names = new String[PLAYERS];
+	private final Player[] crowd = new Player[PLAYERS];
+
+	@Setup
+	public void setUp() {
+		scheduler = new OverheadTextScheduler();
+		// Showing the text is the client's work, not ours
+		Player player = BenchmarkFixtures.proxy(Player.class, (proxy, method, args) -> null);
+		for (int i = 0; i < PLAYERS; i++) {
+			names[i] = BenchmarkFixtures.name(i);
+			crowd[i] = player;
+		}
+	}
+
+	@Benchmark
+	public int floodedTick() {
+		for (int i = 0; i < PLAYERS; i++) {
+			scheduler.enqueue(names[i], crowd[i], "selling lobbies");
+			scheduler.enqueue(names[i], crowd[i], "buying gf");
+		}
+		scheduler.onGameTick();
+		return scheduler.getSpeakerCount();
+	}
+}
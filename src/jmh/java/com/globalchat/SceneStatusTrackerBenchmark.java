@@ -0,0 +1,57 @@
+package com.globalchat;
+
+import com.google.gson.Gson;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// One frame of a 2000 player scene: every player's menu entry decorated, as onClientTick does.
+// A quarter of them are on Global Chat. Has to stay well inside the 16ms frame budget.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SceneStatusTrackerBenchmark {
+
+	private static final int PLAYERS = 2000;
+
+	private SceneStatusTracker tracker;
+	private final String[] names = new String[PLAYERS];
+	private final String[] targets = new String[PLAYERS];
+
+	@Setup
+	public void setUp() {
+		// Decorating only reads what is known, the service is never asked
+		tracker = new SceneStatusTracker(new PlayerStatusLookup(
+			new GlobalChatApiClient(new OkHttpClient(), new Gson(), "http://127.0.0.1:1")));
+		for (int i = 0; i < PLAYERS; i++) {
+			names[i] = BenchmarkFixtures.name(i);
+			targets[i] = "<col=ffffff>" + names[i] + "<col=ff00>  (level-" + (3 + i % 124) + ")";
+			if (i % 4 == 0) {
+				tracker.markConnected(names[i]);
+			}
+		}
+	}
+
+	@Benchmark
+	public int decorateFrame() {
+		int decorated = 0;
+		for (int i = 0; i < PLAYERS; i++) {
+			if (tracker.decorate(targets[i], names[i]) != targets[i]) {
+				decorated++;
+			}
+		}
+		return decorated;
+	}
+}
@@ -0,0 +1,54 @@
+package com.globalchat;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Supporter icon lookup, done for every chat line shown. Most senders aren't supporters.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SupporterManagerBenchmark {
+
+	private static final int SUPPORTERS = 500;
+	private static final int SENDERS = 4096;
+
+	private SupporterManager supporterManager;
+	private final String[] senders = new String[SENDERS];
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		supporterManager = BenchmarkFixtures.supporterManager(new Gson(), SUPPORTERS);
+		for (int i = 0; i < SENDERS; i++) {
+			// Chat names arrive with the odd case and nbsp differences the index has to see through
+			String name = BenchmarkFixtures.name(i);
+			senders[i] = i % 3 == 0 ? name.toLowerCase().replace(' ', '\u00A0') : name;
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		supporterManager.shutdown();
+	}
+
+	@Benchmark
+	public String getSupporterIcon() {
+		next = (next + 1) & (SENDERS - 1);
+		return supporterManager.getSupporterIcon(senders[next]);
+	}
+}
@@ -0,0 +1,240 @@
+package com.globalchat;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import io.ably.lib.realtime.AblyRealtime;
+import io.ably.lib.realtime.Channel;
+import io.ably.lib.realtime.CompletionListener;
+import io.ably.lib.realtime.ConnectionState;
+import io.ably.lib.rest.Auth;
+import io.ably.lib.types.AblyException;
+import io.ably.lib.types.ChannelOptions;
+import io.ably.lib.types.ClientOptions;
+import io.ably.lib.types.ErrorInfo;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+// ChatTransport on top of Ably realtime
+@Slf4j
+@Singleton
+public class AblyChatTransport implements ChatTransport {
+
+	// Channels attached with the occupancy param get these alongside their messages
+	private static final String OCCUPANCY_EVENT = "[meta]occupancy";
+	private static final Map<String, String> OCCUPANCY_PARAMS = Collections.singletonMap("occupancy", "metrics");
+
+	private final Gson gson;
+
+	@Inject
+	public AblyChatTransport(Gson gson) {
+		this.gson = gson;
+	}
+
+	@Override
+	public Connection open(String clientId, TokenSource tokens, ConnectionListener listener) throws ChatTransportException {
+		ClientOptions clientOptions = new ClientOptions();
+		clientOptions.authCallback = tokenParams -> {
+			try {
+				return parseToken(tokens.requestToken(clientId));
+			} catch (ChatTransportException e) {
+				throw toAblyException(e);
+			}
+		};
+		// Critical: Disable echo messages to reduce message count by 50%
+		clientOptions.echoMessages = false;
+		// Connected below, once our listener is registered and can't miss a state change
+		clientOptions.autoConnect = false;
+
+		try {
+			AblyConnection connection = new AblyConnection(new AblyRealtime(clientOptions), gson);
+			connection.realtime.connection.on(change -> listener.onStateChange(connection,
+				toState(change.current), change.reason != null ? toTransportException(change.reason) : null));
+			connection.realtime.connect();
+			return connection;
+		} catch (AblyException e) {
+			throw toTransportException(e);
+		}
+	}
+
+	// The token endpoint answers with a plain token, a token request or token details
+	private Object parseToken(String body) {
+		String trimmed = body.trim();
+		if (!trimmed.startsWith("{")) {
+			return trimmed;
+		}
+		JsonObject json = gson.fromJson(trimmed, JsonObject.class);
+		if (json.has("mac")) {
+			return Auth.TokenRequest.fromJson(trimmed);
+		}
+		return Auth.TokenDetails.fromJson(trimmed);
+	}
+
+	private static final class AblyConnection implements Connection {
+		private final AblyRealtime realtime;
+		private final Gson gson;
+		// One Ably listener per channel, so re-attaching a channel never registers a duplicate handler
+		private final Map<String, Channel.MessageListener> ablyListeners = new HashMap<>();
+		// Channels attached with occupancy, their publishes must pass the same options or Ably re-attaches
+		private final Map<String, OccupancyListener> occupancyListeners = new ConcurrentHashMap<>();
+
+		AblyConnection(AblyRealtime realtime, Gson gson) {
+			this.realtime = realtime;
+			this.gson = gson;
+		}
+
+		@Override
+		public State getState() {
+			return toState(realtime.connection.state);
+		}
+
+		@Override
+		public CompletableFuture<Void> attach(String channelName, String cipherKey, MessageListener listener) {
+			occupancyListeners.remove(channelName);
+			return attachChannel(channelName, cipherKey, listener);
+		}
+
+		@Override
+		public CompletableFuture<Void> attach(String channelName, String cipherKey, MessageListener listener,
+			OccupancyListener occupancyListener) {
+			occupancyListeners.put(channelName, occupancyListener);
+			return attachChannel(channelName, cipherKey, listener);
+		}
+
+		private CompletableFuture<Void> attachChannel(String channelName, String cipherKey, MessageListener listener) {
+			CompletableFuture<Void> attached = new CompletableFuture<>();
+			try {
+				Channel channel = realtime.channels.get(channelName, channelOptions(channelName, cipherKey));
+				channel.subscribe(ablyListener(channelName, listener));
+				channel.attach(completion(attached));
+			} catch (AblyException e) {
+				attached.completeExceptionally(toTransportException(e));
+			}
+			return attached;
+		}
+
+		private synchronized Channel.MessageListener ablyListener(String channelName, MessageListener listener) {
+			return ablyListeners.computeIfAbsent(channelName, c -> message -> {
+				if (OCCUPANCY_EVENT.equals(message.name)) {
+					onOccupancy(c, message.data);
+					return;
+				}
+				listener.onMessage(c, (JsonElement) message.data);
+			});
+		}
+
+		// {"metrics": {"connections": 3, "subscribers": 3, ...}}, decoded already or still a string
+		private void onOccupancy(String channelName, Object data) {
+			OccupancyListener listener = occupancyListeners.get(channelName);
+			if (listener == null) {
+				return;
+			}
+			try {
+				JsonElement occupancy = data instanceof String
+					? gson.fromJson((String) data, JsonElement.class) : (JsonElement) data;
+				JsonObject metrics = occupancy.getAsJsonObject().getAsJsonObject("metrics");
+				listener.onOccupancy(channelName, metrics.get("subscribers").getAsInt());
+			} catch (JsonParseException | ClassCastException | IllegalStateException | NullPointerException e) {
+				log.debug("Ignoring malformed occupancy on {}", channelName);
+			}
+		}
+
+		@Override
+		public CompletableFuture<Void> detach(String channelName) {
+			CompletableFuture<Void> detached = new CompletableFuture<>();
+			occupancyListeners.remove(channelName);
+			try {
+				realtime.channels.get(channelName).detach(completion(detached));
+			} catch (AblyException e) {
+				detached.completeExceptionally(toTransportException(e));
+			}
+			return detached;
+		}
+
+		@Override
+		public CompletableFuture<Void> publish(String channelName, String cipherKey, JsonObject message) {
+			CompletableFuture<Void> acked = new CompletableFuture<>();
+			try {
+				realtime.channels.get(channelName, channelOptions(channelName, cipherKey))
+					.publish("event", message, completion(acked));
+			} catch (AblyException e) {
+				acked.completeExceptionally(toTransportException(e));
+			}
+			return acked;
+		}
+
+		private ChannelOptions channelOptions(String channelName, String cipherKey) throws AblyException {
+			String base64EncodedKey = Base64.getEncoder().encodeToString(ChannelKeys.keyBytes(cipherKey));
+			ChannelOptions options = ChannelOptions.withCipherKey(base64EncodedKey);
+			if (occupancyListeners.containsKey(channelName)) {
+				options.params = OCCUPANCY_PARAMS;
+			}
+			return options;
+		}
+
+		@Override
+		public void close() {
+			realtime.close();
+		}
+	}
+
+	private static CompletionListener completion(CompletableFuture<Void> future) {
+		return new CompletionListener() {
+			@Override
+			public void onSuccess() {
+				future.complete(null);
+			}
+
+			@Override
+			public void onError(ErrorInfo reason) {
+				future.completeExceptionally(toTransportException(reason));
+			}
+		};
+	}
+
+	private static State toState(ConnectionState state) {
+		if (state == null) {
+			return State.CONNECTING;
+		}
+		switch (state) {
+			case connected:
+				return State.CONNECTED;
+			case disconnected:
+				return State.DISCONNECTED;
+			case suspended:
+				return State.SUSPENDED;
+			case failed:
+				return State.FAILED;
+			case closing:
+			case closed:
+				return State.CLOSED;
+			default:
+				return State.CONNECTING;
+		}
+	}
+
+	private static ChatTransportException toTransportException(ErrorInfo reason) {
+		return new ChatTransportException(reason.message, reason.statusCode, reason.code);
+	}
+
+	private static ChatTransportException toTransportException(AblyException e) {
+		if (e.errorInfo != null) {
+			ChatTransportException converted = toTransportException(e.errorInfo);
+			converted.initCause(e);
+			return converted;
+		}
+		return new ChatTransportException(e.getMessage(), e);
+	}
+
+	private static AblyException toAblyException(ChatTransportException e) {
+		return AblyException.fromErrorInfo(new ErrorInfo(e.getMessage(), e.getStatusCode(), e.getCode()));
+	}
+}
@@ -26,9 +26,20 @@ package com.globalchat;
 
 import java.util.HashSet;
 import java.util.Arrays;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
@@ -36,19 +47,15 @@ import com.google.gson.JsonObject;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import javax.inject.Named;
-import io.ably.lib.realtime.AblyRealtime;
-import io.ably.lib.realtime.Channel;
-import io.ably.lib.realtime.ChannelState;
-import io.ably.lib.realtime.CompletionListener;
-import io.ably.lib.types.AblyException;
-import io.ably.lib.types.ChannelOptions;
-import io.ably.lib.types.ClientOptions;
-import io.ably.lib.types.Message;
-import io.ably.lib.types.Param;
-import java.util.Base64;
+import java.io.File;
+import java.io.IOException;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 
 import java.util.Set;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import lombok.Getter;
@@ -64,6 +71,7 @@ import net.runelite.client.util.Text;
 import net.runelite.api.Player;
 import net.runelite.api.Constants;
 import net.runelite.api.Friend;
+import net.runelite.client.RuneLite;
 import net.runelite.client.callback.ClientThread;
 import lombok.extern.slf4j.Slf4j;
 
@@ -73,8 +81,13 @@ public class AblyManager {
 
 	public static final int CYCLES_PER_GAME_TICK = Constants.GAME_TICK_LENGTH / Constants.CLIENT_TICK_LENGTH;
 
-	private static final int OVERHEAD_TEXT_TICK_TIMEOUT = 5;
-	private static final int CYCLES_FOR_OVERHEAD_TEXT = OVERHEAD_TEXT_TICK_TIMEOUT * CYCLES_PER_GAME_TICK;
+	private static final String TOKEN_URL = "https://global-chat-frontend.vercel.app/api/token";
+	private static final int CONNECTION_LIMIT_ERROR_CODE = 40005;
+
+	// Upper bounds for the async operations, callers get a TimeoutException past these
+	private static final long CONNECT_TIMEOUT_MS = 15000;
+	private static final long CHANNEL_TIMEOUT_MS = 10000;
+	private static final long PUBLISH_TIMEOUT_MS = 10000;
 	
 	// Initialize spam messages once as a static final set
 	private static final Set<String> SPAM_MESSAGES = new HashSet<>(Arrays.asList(
@@ -160,10 +173,26 @@ public class AblyManager {
 	@Inject
 	Gson gson;
 
+	@Inject
+	OkHttpClient httpClient;
 
-	private final Map<String, String> previousMessages = new HashMap<>();
+	@Inject
+	PlayerStatusLookup playerStatusLookup;
 
-	private final HashMap<String, Integer> playerCombats = new HashMap<>();
+	@Inject
+	SceneStatusTracker sceneStatusTracker;
+
+	@Inject
+	OverheadTextScheduler overheadTextScheduler;
+
+
+	// Per-sender state is capped, a long session on busy worlds sees far more names than this
+	static final int MAX_TRACKED_PLAYERS = 5000;
+	static final int MAX_TRACKED_WORLDS = 64;
+
+	private final BoundedCache<String, String> previousMessages = new BoundedCache<>(MAX_TRACKED_PLAYERS);
+
+	private final BoundedCache<String, Integer> playerCombats = new BoundedCache<>(MAX_TRACKED_PLAYERS);
 
 	@Inject
 	ChatMessageManager chatMessageManager;
@@ -174,30 +203,134 @@ public class AblyManager {
 	private final GlobalChatConfig config;
 	private final boolean developerMode;
 
-	private AblyRealtime ablyRealtime;
+	private final ChatTransport transport;
+	// The current connection, replaced for every new one. Events from older connections are ignored.
+	private volatile ChatTransport.Connection connection;
 	private volatile boolean isConnecting = false;
-	private ExecutorService publishExecutor;
+	// Two lanes so slow connection work never sits in front of a chat line:
+	// control = connect/attach/detach/close (closing blocks), data = publishes
+	private volatile ThreadPoolExecutor controlExecutor;
+	private volatile ThreadPoolExecutor publishExecutor;
+	private static final int CONTROL_QUEUE_CAPACITY = 64;
+	private static final int PUBLISH_QUEUE_CAPACITY = 256;
+	// Only fires timeouts, never runs transport work. Daemon thread that lives as long as this singleton.
+	private final ScheduledThreadPoolExecutor timeoutScheduler;
+	// Completes once the current connection reaches connected, replaced for every new connection
+	private volatile CompletableFuture<Void> connectionReady = failedFuture("Not connected");
+	// Publishes waiting for their channel to finish attaching, in send order
+	private final Map<String, Deque<Runnable>> publishesAwaitingAttach = new HashMap<>();
 	private volatile boolean shuttingDown = false;
-	private final Map<String, Boolean> channelSubscriptionStatus = new HashMap<>();
-	private final Map<String, Long> lastMessageTime = new HashMap<>();
-	private final Map<Integer, Long> lastErrorMessageTimePerWorld = new HashMap<>();
+	// Replaced wholesale by the connection listener, read lock-free on every chat line
+	private final AtomicReference<ConnectionHealth> health = new AtomicReference<>(ConnectionHealth.DISCONNECTED);
+	private final BoundedCache<String, Long> lastMessageTime = new BoundedCache<>(MAX_TRACKED_PLAYERS);
+	private final BoundedCache<Integer, Long> lastErrorMessageTimePerWorld = new BoundedCache<>(MAX_TRACKED_WORLDS);
 	private static final long ERROR_MESSAGE_COOLDOWN = 1800000; // 30 minutes
+	private static final File RECORDINGS_DIR = new File(RuneLite.RUNELITE_DIR, "globalchat-recordings");
+
+	@Getter
+	private final ConnectionAdmission connectionAdmission = new ConnectionAdmission();
+	// Time for the admission queue, replaced in tests to step through backoffs
+	LongSupplier clock = System::currentTimeMillis;
+
+	@Getter
+	private final ChannelRegistry channelRegistry = new ChannelRegistry();
+
+	// Time from the login-time attach request until every channel was attached, -1 until measured
+	@Getter
+	private volatile long lastLoginToReadyMillis = -1;
+
+	// One listener instance so re-subscribing a channel never registers a duplicate handler
+	private final ChatTransport.MessageListener messageListener = this::handleMessage;
+
+	// Developer mode recording of the inbound stream, see MessageLog
+	@Getter
+	private final MessageRecorder messageRecorder = new MessageRecorder();
+
+	// Our share of the monthly message quota, the plugin saves it and applies the budget
+	@Getter
+	private final QuotaTracker quotaTracker = new QuotaTracker();
+
+	// Who else is on our world channels, world chat isn't published to a world that is just us
+	@Getter
+	private final ChannelOccupancy channelOccupancy = new ChannelOccupancy();
+	private final ChatTransport.OccupancyListener occupancyListener =
+		(channel, subscribers) -> channelOccupancy.update(channel, subscribers, System.currentTimeMillis());
+
+	@Getter
+	private final ChatMetrics metrics;
+	private final ChatMetrics.Counter publishAttempts;
+	private final ChatMetrics.Counter publishAcks;
+	private final ChatMetrics.Counter publishFailures;
+	private final ChatMetrics.Counter publishRejected;
+	private final ChatMetrics.Counter publishSuppressedEmpty;
+	private final ChatMetrics.Histogram publishAckMillis;
+	private final ChatMetrics.CounterFamily inbound;
+	private final ChatMetrics.Counter filteredLoggedOut;
+	private final ChatMetrics.Counter filteredRepeat;
+	private final ChatMetrics.Counter filteredInvalidName;
+	private final ChatMetrics.Counter filteredCombatLevel;
+	private final ChatMetrics.Counter filteredNameTooLong;
 
 	@Inject
-	public AblyManager(Client client, GlobalChatConfig config, @Named("developerMode") boolean developerMode, SupporterManager supporterManager) {
+	public AblyManager(Client client, GlobalChatConfig config, @Named("developerMode") boolean developerMode,
+			SupporterManager supporterManager, ChatTransport transport, ChatMetrics metrics) {
 		this.client = client;
+		this.transport = transport;
 		this.config = config;
 		this.developerMode = developerMode;
 		this.supporterManager = supporterManager;
-		this.publishExecutor = createPublishExecutor();
-	}
-	
-	private ExecutorService createPublishExecutor() {
-		return Executors.newSingleThreadExecutor(r -> {
-			Thread t = new Thread(r, "AblyPublisher");
+		this.controlExecutor = createLane("AblyControl", CONTROL_QUEUE_CAPACITY);
+		this.publishExecutor = createLane("AblyPublisher", PUBLISH_QUEUE_CAPACITY);
+		this.timeoutScheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "AblyTimeouts");
 			t.setDaemon(true);
 			return t;
 		});
+		this.timeoutScheduler.setRemoveOnCancelPolicy(true);
+
+		this.metrics = metrics;
+		publishAttempts = metrics.counter("publish.attempts");
+		publishAcks = metrics.counter("publish.acks");
+		publishFailures = metrics.counter("publish.failures");
+		publishRejected = metrics.counter("publish.rejected");
+		publishSuppressedEmpty = metrics.counter("publish.suppressedEmpty");
+		publishAckMillis = metrics.histogram("publish.ackMillis", 10, 25, 50, 100, 250, 500, 1000, 2500, 5000);
+		inbound = metrics.family("inbound");
+		filteredLoggedOut = metrics.counter("filtered.loggedOut");
+		filteredRepeat = metrics.counter("filtered.repeat");
+		filteredInvalidName = metrics.counter("filtered.invalidName");
+		filteredCombatLevel = metrics.counter("filtered.combatLevel");
+		filteredNameTooLong = metrics.counter("filtered.nameTooLong");
+		metrics.gauge("publish.queueDepth", () -> queueDepth(publishExecutor) + awaitingAttach());
+		metrics.gauge("control.queueDepth", () -> queueDepth(controlExecutor));
+		metrics.gauge("connected", () -> isConnected() ? 1 : 0);
+		metrics.gauge("quota.used", quotaTracker::getUsed);
+		metrics.gauge("quota.projected", () -> quotaTracker.getProjectedUsage(System.currentTimeMillis()));
+		metrics.gauge("quota.level", () -> quotaTracker.getLevel().ordinal());
+	}
+
+	private static long queueDepth(ThreadPoolExecutor lane) {
+		return lane != null ? lane.getQueue().size() : 0;
+	}
+
+	private long awaitingAttach() {
+		synchronized (publishesAwaitingAttach) {
+			long waiting = 0;
+			for (Deque<Runnable> publishes : publishesAwaitingAttach.values()) {
+				waiting += publishes.size();
+			}
+			return waiting;
+		}
+	}
+	
+	// Single thread with a bounded queue, submissions beyond capacity are rejected
+	private static ThreadPoolExecutor createLane(String name, int capacity) {
+		return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<>(capacity), r -> {
+				Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			});
 	}
 	
 	private synchronized void ensureExecutorAvailable() {
@@ -205,13 +338,114 @@ public class AblyManager {
 			log.debug("Shutting down, not creating new executor");
 			return;
 		}
+		if (controlExecutor == null || controlExecutor.isShutdown() || controlExecutor.isTerminated()) {
+			controlExecutor = createLane("AblyControl", CONTROL_QUEUE_CAPACITY);
+			log.debug("Recreated control executor");
+		}
 		if (publishExecutor == null || publishExecutor.isShutdown() || publishExecutor.isTerminated()) {
-			publishExecutor = createPublishExecutor();
+			publishExecutor = createLane("AblyPublisher", PUBLISH_QUEUE_CAPACITY);
 			log.debug("Recreated publish executor");
 		}
 	}
 
-	public void startConnection(String playerName) {
+	private boolean submitControl(Runnable task) {
+		ensureExecutorAvailable();
+		try {
+			controlExecutor.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			log.debug("Control queue full or shut down, dropping task");
+			return false;
+		}
+	}
+
+	// Queue a publish on the data lane. If the channel is still attaching the publish is held
+	// back and released in order once the attach completes, so we never publish ahead of it.
+	private void submitPublish(String channelName, Runnable publish) {
+		ensureExecutorAvailable();
+		CompletableFuture<Void> attached = channelRegistry.isRequested(channelName)
+				? channelRegistry.getAttachFuture(channelName) : null;
+		synchronized (publishesAwaitingAttach) {
+			Deque<Runnable> waiting = publishesAwaitingAttach.get(channelName);
+			if (waiting == null) {
+				if (attached == null || attached.isDone()) {
+					publishExecutor.execute(publish);
+					return;
+				}
+				waiting = new ArrayDeque<>();
+				publishesAwaitingAttach.put(channelName, waiting);
+				waiting.add(publish);
+				// Registered after queueing in case the attach completes right now
+				attached.whenComplete((ignored, error) -> releasePublishes(channelName));
+				return;
+			}
+			waiting.add(publish);
+		}
+	}
+
+	private void releasePublishes(String channelName) {
+		synchronized (publishesAwaitingAttach) {
+			Deque<Runnable> waiting = publishesAwaitingAttach.remove(channelName);
+			if (waiting == null) {
+				return;
+			}
+			ensureExecutorAvailable();
+			for (Runnable publish : waiting) {
+				try {
+					publishExecutor.execute(publish);
+				} catch (RejectedExecutionException e) {
+					publishRejected.increment();
+					log.debug("Publish queue full, dropping message for channel: {}", channelName);
+				}
+			}
+		}
+	}
+
+	// Completes once connected. Joins an attempt already in progress, and fails straight away
+	// while the admission queue says to wait. Timing out does not abort the underlying attempt.
+	public CompletableFuture<Void> connect(String playerName) {
+		if (startConnection(playerName)) {
+			// Only an attempt the admission let through backs off, and only once
+			CompletableFuture<Void> attempt = withTimeout(connectionReady, CONNECT_TIMEOUT_MS, "Connect");
+			attempt.whenComplete((ignored, error) -> {
+				if (error != null && !isCapacityRejection(error) && !connectionAdmission.isWaiting()) {
+					log.debug("Connection attempt failed: {}", error.getMessage());
+					connectionAdmission.onFailed(clock.getAsLong());
+				}
+			});
+			return attempt;
+		}
+		if (!isConnecting && !isConnectedOrConnecting()) {
+			// Not the failed future of an earlier attempt, that one was already counted
+			long waitMillis = Math.max(0, connectionAdmission.getNextAttemptAt() - clock.getAsLong());
+			return failedFuture("Waiting for admission, next attempt in " + waitMillis + "ms");
+		}
+		return withTimeout(connectionReady, CONNECT_TIMEOUT_MS, "Connect");
+	}
+
+	// Whether the plugin's reconnect loop may call connect now
+	public boolean canAttemptConnection() {
+		return connectionAdmission.canAttempt(clock.getAsLong());
+	}
+
+	private boolean isConnectedOrConnecting() {
+		final ChatTransport.Connection current = connection;
+		if (current == null) {
+			return false;
+		}
+		ChatTransport.State state = current.getState();
+		return state == ChatTransport.State.CONNECTED || state == ChatTransport.State.CONNECTING;
+	}
+
+	private static boolean isCapacityRejection(Throwable error) {
+		Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+		return cause instanceof ChatTransportException
+				&& ((ChatTransportException) cause).getCode() == CONNECTION_LIMIT_ERROR_CODE;
+	}
+
+	// Returns true if a connection attempt was started, false if we were already
+	// connected/connecting or the admission queue told us to wait
+	private boolean startConnection(String playerName) {
 		// Reset shutdown flag when starting a new connection
 		shuttingDown = false;
 		
@@ -219,139 +453,147 @@ public class AblyManager {
 		synchronized (this) {
 			if (isConnecting) {
 				log.debug("Connection already in progress, skipping");
-				return;
+				return false;
 			}
 			
 			// Check if already connected
-			if (ablyRealtime != null) {
+			final ChatTransport.Connection current = connection;
+			if (current != null) {
 				try {
-					io.ably.lib.realtime.ConnectionState state = ablyRealtime.connection.state;
-					if (state == io.ably.lib.realtime.ConnectionState.connected) {
+					ChatTransport.State state = current.getState();
+					if (state == ChatTransport.State.CONNECTED) {
 						log.debug("Already connected, skipping");
-						return;
+						return false;
 					}
-					if (state == io.ably.lib.realtime.ConnectionState.connecting) {
+					if (state == ChatTransport.State.CONNECTING) {
 						log.debug("Connection already in progress, skipping");
-						return;
+						return false;
 					}
 				} catch (Exception e) {
 					log.debug("Error checking connection state", e);
 				}
 			}
+
+			// Don't stampede the service while it is at capacity
+			long now = clock.getAsLong();
+			if (!connectionAdmission.tryAcquire(now)) {
+				log.debug("Waiting for admission, next attempt in {}ms", connectionAdmission.getNextAttemptAt() - now);
+				return false;
+			}
 			
 			isConnecting = true;
+			connectionReady = new CompletableFuture<>();
 		}
 		
 		try {
-			setupAblyInstances(playerName);
+			openConnection(playerName);
 		} catch (Exception e) {
+			connectionReady.completeExceptionally(e);
 			handleAblyError(e);
 		} finally {
 			isConnecting = false;
 		}
+		return true;
 	}
 
-	public void closeSpecificChannel(String channelName) {
-		if (ablyRealtime == null) {
-			log.debug("AblyRealtime is null, cannot close channel: {}", channelName);
-			return;
+	// Completes once the service confirms the detach. Nothing to do (and completes immediately) when not connected.
+	public CompletableFuture<Void> detach(String channelName) {
+		if (connection == null) {
+			log.debug("Not connected, cannot close channel: {}", channelName);
+			return CompletableFuture.completedFuture(null);
 		}
 		
-		if (publishExecutor == null) {
-			log.debug("PublishExecutor is null, cannot close channel: {}", channelName);
-			return;
-		}
-		
-		// Move channel detachment to background executor
-		ensureExecutorAvailable();
-		publishExecutor.submit(() -> {
-			try {
-				ablyRealtime.channels.get(channelName).detach();
-				log.debug("Closed channel: {}", channelName);
-			} catch (AblyException err) {
-				log.debug("Error detaching from channel: {}", channelName, err);
+		channelRegistry.markDetaching(channelName);
+		updateHealth(h -> h.withoutChannel(channelName));
+		channelOccupancy.forget(channelName);
+
+		CompletableFuture<Void> detached = new CompletableFuture<>();
+		final long started = System.nanoTime();
+		// Detach on the control lane so it never delays chat publishing
+		boolean queued = submitControl(() -> {
+			final ChatTransport.Connection current = connection;
+			if (current == null) {
+				detached.complete(null); // Connection closed, which detaches everything
+				return;
 			}
+			current.detach(channelName).whenComplete((ignored, error) -> {
+				ChatEvents.channelDetached(channelName, started, error);
+				if (error != null) {
+					log.debug("Error detaching from channel: {} ({})", channelName, error.getMessage());
+					detached.completeExceptionally(error);
+					return;
+				}
+				channelRegistry.markDetached(channelName);
+				log.debug("Closed channel: {}", channelName);
+				detached.complete(null);
+			});
 		});
-		
-		// Thread-safe update of local state
-		synchronized (channelSubscriptionStatus) {
-			channelSubscriptionStatus.remove(channelName);
+		if (!queued) {
+			detached.completeExceptionally(new RejectedExecutionException("Control queue full"));
 		}
+		return withTimeout(detached, CHANNEL_TIMEOUT_MS, "Detach " + channelName);
 	}
 	
+	// Hot path: called several times per chat line, so this is a single volatile read
 	public boolean isConnected() {
-		if (ablyRealtime == null) return false;
-		
-		try {
-			// Check basic connection state
-			if (ablyRealtime.connection.state != io.ably.lib.realtime.ConnectionState.connected) {
-				return false;
-			}
-			
-			// Thread-safe check of channel subscriptions
-			synchronized (channelSubscriptionStatus) {
-				// Check that we have channels subscribed
-				if (channelSubscriptionStatus.isEmpty()) {
-					return false; // No channels subscribed means not connected
-				}
-				
-				// Verify ALL channel subscriptions succeeded
-				boolean allChannelsSuccessful = channelSubscriptionStatus.values().stream()
-					.allMatch(status -> status);
-				
-				return allChannelsSuccessful;
-			}
-		} catch (Exception e) {
-			log.debug("Error checking connection state", e);
-			return false;
-		}
+		return health.get().isHealthy();
+	}
+
+	public ConnectionHealth getConnectionHealth() {
+		return health.get();
 	}
 	
 	public Map<String, Boolean> getChannelSubscriptionStatus() {
-		synchronized (channelSubscriptionStatus) {
-			return new HashMap<>(channelSubscriptionStatus);
-		}
+		return health.get().getChannels();
+	}
+
+	ConnectionHealth updateHealth(UnaryOperator<ConnectionHealth> update) {
+		return health.updateAndGet(update);
 	}
 
 
-	public void closeConnection() {
+	// Completes once the old connection has been closed, so a new one can be started after it
+	public CompletableFuture<Void> closeConnection() {
 		// Capture reference to avoid race conditions
-		final AblyRealtime connectionToClose = ablyRealtime;
+		final ChatTransport.Connection connectionToClose = connection;
 		
 		// Immediately null out the reference to prevent new operations
-		ablyRealtime = null;
+		connection = null;
 		
 		// Clear channel subscription status since we're disconnecting
-		synchronized (channelSubscriptionStatus) {
-			channelSubscriptionStatus.clear();
+		health.set(ConnectionHealth.DISCONNECTED);
+		channelRegistry.clear();
+		channelOccupancy.clear();
+		// Anyone still waiting for this connection gets an error, later callers too
+		synchronized (this) {
+			connectionReady.completeExceptionally(new IllegalStateException("Connection closed"));
+			connectionReady = failedFuture("Connection closed");
 		}
 		
-		if (connectionToClose != null) {
-			// Check if we're already shutting down to avoid submitting new tasks
-			if (publishExecutor != null && !publishExecutor.isShutdown()) {
-				ensureExecutorAvailable();
-				publishExecutor.submit(() -> {
-					try {
-						log.debug("Closing Ably connection in background");
-						connectionToClose.close();
-						log.debug("Connection properly closed");
-					} catch (Exception e) {
-						log.debug("Error closing connection", e);
-					}
-				});
-			} else {
-				// If executor is shutting down, close synchronously
-				try {
-					log.debug("Closing Ably connection synchronously during shutdown");
-					connectionToClose.close();
-				} catch (Exception e) {
-					log.debug("Error closing connection during shutdown", e);
-				}
+		if (connectionToClose == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		CompletableFuture<Void> closed = new CompletableFuture<>();
+		Runnable close = () -> {
+			try {
+				log.debug("Closing connection");
+				connectionToClose.close();
+				log.debug("Connection properly closed");
+			} catch (Exception e) {
+				log.debug("Error closing connection", e);
 			}
+			closed.complete(null);
+		};
+		// Check if we're already shutting down to avoid submitting new tasks,
+		// if so (or the lane is full) close synchronously
+		if (controlExecutor == null || controlExecutor.isShutdown() || !submitControl(close)) {
+			close.run();
 		}
 		
 		// Note: Don't shutdown executor here since we just submitted a task to it
 		// The executor will be shut down when the plugin stops
+		return closed;
 	}
 	
 	public void shutdown() {
@@ -362,7 +604,10 @@ public class AblyManager {
 		// First close any active connection
 		closeConnection();
 		
-		// Then shutdown the executor - just shutdown without blocking
+		// Then shutdown the executors - just shutdown without blocking
+		if (controlExecutor != null && !controlExecutor.isShutdown()) {
+			controlExecutor.shutdown();
+		}
 		if (publishExecutor != null && !publishExecutor.isShutdown()) {
 			publishExecutor.shutdown();
 		}
@@ -380,169 +625,157 @@ public class AblyManager {
 		return false; // If no cached level, assume not under cb level
 	}
 
+	void cacheCombatLevel(String sanitizedName, int combatLevel) {
+		playerCombats.put(sanitizedName, combatLevel);
+	}
+
+	// Entries held by each per-player cache, against their bounds in the soak test
+	Map<String, Integer> getCacheSizes() {
+		Map<String, Integer> sizes = new LinkedHashMap<>();
+		sizes.put("previousMessages", previousMessages.size());
+		sizes.put("playerCombats", playerCombats.size());
+		sizes.put("lastMessageTime", lastMessageTime.size());
+		sizes.put("lastErrorMessageTimePerWorld", lastErrorMessageTimePerWorld.size());
+		return sizes;
+	}
+
 	public boolean isSpam(String message) {
 		// Simply check against the pre-initialized static set
 		return SPAM_MESSAGES.contains(message);
 	}
 
-	public boolean publishMessage(String t, String message, String channel, String to) {
+	// Completes when the service acknowledges the message. Cancelling (or timing out) before the
+	// message reaches the front of the data lane means it is never sent.
+	public CompletableFuture<Void> publish(String t, String message, String channel, String to) {
 		// Build message on client thread (need client data)
 		try {
 			// Validate inputs
 			if (message == null || message.trim().isEmpty()) {
 				log.debug("Attempted to publish null or empty message");
-				return false;
+				return failedFuture("Empty message");
 			}
 			if (client.getLocalPlayer() == null) {
-				return false;
+				return failedFuture("Not logged in");
 			}
 			if (config.readOnlyMode()) {
-				return false;
+				return failedFuture("Read-only mode");
 			}
-			if (ablyRealtime == null || !isConnected()) {
+			// Only this channel matters: another channel still attaching (isConnected() is false until
+			// every one has) must not hold up chat on the ones that are ready
+			if (connection == null || !health.get().isConnected()) {
 				log.debug("Not connected, cannot publish message");
-				return false;
+				return failedFuture("Not connected");
+			}
+			if (!canPublishTo(channel)) {
+				log.debug("Channel {} is {}, cannot publish message", channel, channelRegistry.getState(channel));
+				return failedFuture("Not attached to " + channel);
+			}
+			// Nobody else is on this world: the message would be billed and reach no one.
+			// Completes normally, as far as the player is concerned it was sent.
+			if (t.equals("w") && channelOccupancy.isEmpty(channel, System.currentTimeMillis())) {
+				publishSuppressedEmpty.increment();
+				log.debug("No one else on {}, not publishing", channel);
+				return CompletableFuture.completedFuture(null);
 			}
 
 			// Gather all client data needed for the message
 			String username = Text.removeTags(client.getLocalPlayer().getName());
 			String symbol = getAccountIcon();
 			
-			// Determine channel options based on message type
-			ChannelOptions options;
+			// Private messages are encrypted with the recipient's world, everything else with "pub"
+			final String cipherKey;
 			if (t.equals("p")) {
 				Friend friend = client.getFriendContainer().findByName(to);
 				if (friend == null) {
-					return false;
+					return failedFuture("Not a friend: " + to);
 				}
-				String key = String.valueOf(friend.getWorld());
-				String paddedKeyString = padKey(key, 16);
-				String base64EncodedKey = Base64.getEncoder().encodeToString(paddedKeyString.getBytes());
-				options = ChannelOptions.withCipherKey(base64EncodedKey);
+				cipherKey = String.valueOf(friend.getWorld());
 			} else {
-				String paddedKeyString = padKey("pub", 16);
-				String base64EncodedKey = Base64.getEncoder().encodeToString(paddedKeyString.getBytes());
-				options = ChannelOptions.withCipherKey(base64EncodedKey);
+				cipherKey = "pub";
 			}
 
-			// Build the message JSON
-			JsonObject msg = io.ably.lib.util.JsonUtils.object()
-					.add("symbol", symbol)
-					.add("username", username)
-					.add("message", message)
-					.add("type", t)
-					.add("to", to)
-					.toJson();
+			JsonObject msg = buildMessage(symbol, username, message, t, to);
+			publishAttempts.increment();
 
-			// Push actual publishing to executor to avoid blocking client thread
-			ensureExecutorAvailable();
-			publishExecutor.submit(() -> {
-				try {
-					if (ablyRealtime == null) {
-						log.debug("AblyRealtime is null, cannot publish message");
-						return;
-					}
-					
-					Channel currentChannel = ablyRealtime.channels.get(channel, options);
-					currentChannel.publish("event", msg);
-					log.debug("Published message to channel: {}", channel);
-				} catch (AblyException err) {
-					log.debug("Ably publish error", err);
-					handleAblyError(err);
-				}
-			});
-			
-			return true;
-		} catch (Exception err) {
-			log.debug("Error preparing message for publish", err);
-			return false;
-		}
-	}
-
-	public void publishMessageAsync(String t, String message, String channel, String to, java.util.function.Consumer<Boolean> callback) {
-		// Build message on client thread (need client data)
-		try {
-			// Validate inputs
-			if (message == null || message.trim().isEmpty()) {
-				log.debug("Attempted to publish null or empty message");
-				if (callback != null) callback.accept(false);
-				return;
-			}
-			if (client.getLocalPlayer() == null) {
-				if (callback != null) callback.accept(false);
-				return;
-			}
-			if (config.readOnlyMode()) {
-				if (callback != null) callback.accept(false);
-				return;
-			}
-			if (ablyRealtime == null || !isConnected()) {
-				log.debug("Not connected, cannot publish message");
-				if (callback != null) callback.accept(false);
-				return;
-			}
+			CompletableFuture<Void> acked = new CompletableFuture<>();
+			CompletableFuture<Void> result = withTimeout(acked, PUBLISH_TIMEOUT_MS, "Publish to " + channel);
+			final long queued = System.nanoTime();
+			// Before the lane can pick it up, so queued always precedes published in a recording
+			ChatEvents.publishQueued(channel, t);
 
-			// Gather all client data needed for the message
-			String username = Text.removeTags(client.getLocalPlayer().getName());
-			String symbol = getAccountIcon();
-			
-			// Determine channel options based on message type
-			ChannelOptions options;
-			if (t.equals("p")) {
-				Friend friend = client.getFriendContainer().findByName(to);
-				if (friend == null) {
-					if (callback != null) callback.accept(false);
+			// Push actual publishing to the data lane to avoid blocking client thread
+			submitPublish(channel, () -> {
+				if (result.isDone()) {
+					return; // Cancelled or timed out while queued
+				}
+				final ChatTransport.Connection current = connection;
+				if (current == null) {
+					log.debug("Connection closed, cannot publish message");
+					acked.completeExceptionally(new IllegalStateException("Connection closed"));
 					return;
 				}
-				String key = String.valueOf(friend.getWorld());
-				String paddedKeyString = padKey(key, 16);
-				String base64EncodedKey = Base64.getEncoder().encodeToString(paddedKeyString.getBytes());
-				options = ChannelOptions.withCipherKey(base64EncodedKey);
-			} else {
-				String paddedKeyString = padKey("pub", 16);
-				String base64EncodedKey = Base64.getEncoder().encodeToString(paddedKeyString.getBytes());
-				options = ChannelOptions.withCipherKey(base64EncodedKey);
-			}
-
-			// Build the message JSON
-			JsonObject msg = io.ably.lib.util.JsonUtils.object()
-					.add("symbol", symbol)
-					.add("username", username)
-					.add("message", message)
-					.add("type", t)
-					.add("to", to)
-					.toJson();
-
-			// Push actual publishing to executor to avoid blocking client thread
-			ensureExecutorAvailable();
-			publishExecutor.submit(() -> {
-				try {
-					if (ablyRealtime == null) {
-						log.debug("AblyRealtime is null, cannot publish message");
-						if (callback != null) callback.accept(false);
+				final long sent = System.nanoTime();
+				ChatEvents.published(channel, queued);
+				current.publish(channel, cipherKey, msg).whenComplete((ignored, error) -> {
+					ChatEvents.publishAcked(channel, sent, error);
+					if (error == null) {
+						publishAcks.increment();
+						quotaTracker.recordPublished(channel, System.currentTimeMillis());
+						publishAckMillis.record((System.nanoTime() - sent) / 1_000_000);
+						log.debug("Published message to channel: {}", channel);
+						acked.complete(null);
 						return;
 					}
-					
-					Channel currentChannel = ablyRealtime.channels.get(channel, options);
-					currentChannel.publish("event", msg);
-					log.debug("Published message to channel: {}", channel);
-					if (callback != null) callback.accept(true);
-				} catch (AblyException err) {
-					log.debug("Ably publish error", err);
-					handleAblyError(err);
-					if (callback != null) callback.accept(false);
-				}
+					publishFailures.increment();
+					log.debug("Publish error on channel: {} ({})", channel, error.getMessage());
+					acked.completeExceptionally(error);
+					handleAblyError(error instanceof Exception ? (Exception) error : new Exception(error));
+				});
 			});
 			
+			return result;
+		} catch (RejectedExecutionException err) {
+			publishRejected.increment();
+			log.debug("Publish queue full, dropping message for channel: {}", channel);
+			return failedFuture("Publish queue full");
 		} catch (Exception err) {
 			log.debug("Error preparing message for publish", err);
-			if (callback != null) callback.accept(false);
+			CompletableFuture<Void> failed = new CompletableFuture<>();
+			failed.completeExceptionally(err);
+			return failed;
 		}
 	}
 
-	public void handleMessage(Message message) {
+	// Attached channels publish straight away, attaching ones hold the publish back until attached
+	// (see submitPublish) and ones we never attach, like another player's p: channel, need no attach
+	private boolean canPublishTo(String channel) {
+		ChannelRegistry.State state = channelRegistry.getState(channel);
+		return state != ChannelRegistry.State.FAILED && state != ChannelRegistry.State.DETACHING
+				&& state != ChannelRegistry.State.DETACHED;
+	}
+
+	// The wire format every transport publishes, see GlobalChatMessage for the receiving side
+	static JsonObject buildMessage(String symbol, String username, String message, String type, String to) {
+		JsonObject msg = new JsonObject();
+		msg.addProperty("symbol", symbol);
+		msg.addProperty("username", username);
+		msg.addProperty("message", message);
+		msg.addProperty("type", type);
+		msg.addProperty("to", to);
+		return msg;
+	}
+
+	public void handleMessage(String channel, JsonElement data) {
+		messageRecorder.record(channel, data);
+		inbound.increment(channel);
+		long now = System.currentTimeMillis();
+		quotaTracker.recordDelivered(channel, now);
+		channelOccupancy.messageReceived(channel, now);
+		ChatEvents.messageReceived(channel);
 		if (client.getGameState() == GameState.LOGGED_IN) {
-			handleAblyMessage(message);
+			handleAblyMessage(channel, data);
+		} else {
+			filtered(channel, filteredLoggedOut, "loggedOut");
 		}
 	}
 
@@ -564,16 +797,33 @@ public class AblyManager {
 		return "";
 	}
 
-	private void handleAblyMessage(Message message) {
+	private void filtered(String channel, ChatMetrics.Counter counter, String reason) {
+		counter.increment();
+		ChatEvents.messageFiltered(channel, reason);
+	}
+
+	private void handleAblyMessage(String channel, JsonElement data) {
 		// Parse message data on background thread (safe - just parsing JSON)
-		GlobalChatMessage msg = gson.fromJson((JsonElement) message.data, GlobalChatMessage.class);
+		final long received = System.nanoTime();
+		GlobalChatMessage msg = gson.fromJson(data, GlobalChatMessage.class);
 		String username = Text.removeTags(msg.username);
 		String receivedMsg = Text.removeTags(msg.message); // Clean message for display
+		ChatEvents.messageDecoded(channel, msg.type, received);
+
+		// Any message proves the sender is connected, even one we end up filtering
+		playerStatusLookup.recordSeen(username);
+		sceneStatusTracker.markConnected(username);
 		
 		if (!shouldShowMessge(username, receivedMsg, false)) {
+			filtered(channel, filteredRepeat, "repeat");
 			return;
 		}
 		if (!shouldShowCurrentMessage(receivedMsg, username)) {
+			if (isInvalidUsername(username)) {
+				filtered(channel, filteredInvalidName, "invalidName");
+			} else {
+				filtered(channel, filteredCombatLevel, "combatLevel");
+			}
 			return;
 		}
 
@@ -594,6 +844,7 @@ public class AblyManager {
 		}
 
 		if (username.length() > 12) {
+			filtered(channel, filteredNameTooLong, "nameTooLong");
 			return;
 		}
 
@@ -614,14 +865,14 @@ public class AblyManager {
 					&& !Text.sanitize(username).equals(Text.sanitize(localPlayerName))
 					&& Text.sanitize(msg.to).equals(Text.sanitize(localPlayerName))) {
 
-				chatMessageManager.queue(QueuedMessage.builder()
+				render(channel, received, QueuedMessage.builder()
 						.type(ChatMessageType.PRIVATECHAT)
 						.name(symbol + username)
 						.runeLiteFormattedMessage(chatMessageBuilder.build())
 						.build());
 			} else if (msg.type.equals("w")) {
 
-				chatMessageManager.queue(QueuedMessage.builder()
+				render(channel, received, QueuedMessage.builder()
 						.type(ChatMessageType.PUBLICCHAT)
 						.name(symbol + username)
 						.runeLiteFormattedMessage(chatMessageBuilder.build())
@@ -635,10 +886,10 @@ public class AblyManager {
 						
 						if (usernameSanitized.equals(playerNameSanitized)) {
 							// Cache the combat level for future use
-							playerCombats.put(playerNameSanitized, player.getCombatLevel());
+							cacheCombatLevel(playerNameSanitized, player.getCombatLevel());
 							
-							player.setOverheadText(receivedMsg);
-							player.setOverheadCycle(CYCLES_FOR_OVERHEAD_TEXT);
+							// Shown when its turn comes, see OverheadTextScheduler
+							overheadTextScheduler.enqueue(playerNameSanitized, player, receivedMsg);
 							break;
 						}
 					}
@@ -647,7 +898,7 @@ public class AblyManager {
 			} else if (msg.type.equals("f") && localPlayerName != null
 					&& !Text.sanitize(username).equals(Text.sanitize(localPlayerName))) {
 
-				chatMessageManager.queue(QueuedMessage.builder()
+				render(channel, received, QueuedMessage.builder()
 						.type(ChatMessageType.FRIENDSCHAT)
 						.name(symbol + username).sender(msg.to)
 						.runeLiteFormattedMessage(chatMessageBuilder.build())
@@ -655,7 +906,7 @@ public class AblyManager {
 			} else if (msg.type.equals("c") && localPlayerName != null
 					&& !Text.sanitize(username).equals(Text.sanitize(localPlayerName))) {
 
-				chatMessageManager.queue(QueuedMessage.builder()
+				render(channel, received, QueuedMessage.builder()
 						.type(ChatMessageType.CLAN_CHAT)
 						.name(symbol + username).sender(msg.to)
 						.runeLiteFormattedMessage(chatMessageBuilder.build())
@@ -666,6 +917,17 @@ public class AblyManager {
 		});
 	}
 
+	// Every received chat line ends up here, the replay harness overrides it to count them
+	void queueChatMessage(QueuedMessage message) {
+		chatMessageManager.queue(message);
+	}
+
+	// Client thread
+	private void render(String channel, long received, QueuedMessage message) {
+		queueChatMessage(message);
+		ChatEvents.messageRendered(channel, message.getType().name(), received);
+	}
+
 	// Checks for bits someone could insert in to be icons
 	// Important in case it's a JMod icon or something
 	private boolean isInvalidUsername(String username) {
@@ -731,133 +993,259 @@ public class AblyManager {
 		return true;
 	}
 
-	private void setupAblyInstances(String playerName) {
+	private void openConnection(String playerName) {
+		final CompletableFuture<Void> ready = connectionReady;
 		try {
-			ClientOptions clientOptions = new ClientOptions();
-			String name = Text.sanitize(playerName);
-			Param[] params = new Param[] {
-					new Param("clientId", name),
-			};
-			clientOptions.authHeaders = params;
-			clientOptions.authUrl = "https://global-chat-frontend.vercel.app/api/token";
-			
-			// Critical: Disable echo messages to reduce message count by 50%
-			clientOptions.echoMessages = false;
-			
-			// Connection timeouts not available in this Ably version
-			// Will rely on default timeout behavior
-			
-			ablyRealtime = new AblyRealtime(clientOptions);
-			
-			// Add connection state monitoring
-			ablyRealtime.connection.on(io.ably.lib.realtime.ConnectionEvent.disconnected, state -> {
-				log.debug("Connection disconnected: " + state.reason);
-				// Thread-safe clear of channel subscription status since we're disconnected
-				synchronized (channelSubscriptionStatus) {
-					channelSubscriptionStatus.clear();
-				}
-			});
-			
-			ablyRealtime.connection.on(io.ably.lib.realtime.ConnectionEvent.failed, state -> {
-				log.debug("Connection failed: " + state.reason);
-				// Thread-safe clear of channel subscription status on failure
-				synchronized (channelSubscriptionStatus) {
-					channelSubscriptionStatus.clear();
-				}
-			});
-			
-			ablyRealtime.connection.on(io.ably.lib.realtime.ConnectionEvent.connected, state -> {
+			// Tokens come through requestToken rather than an auth URL so capacity hints
+			// (Retry-After / queue position) from the token endpoint reach the admission queue
+			final ChatTransport.Connection opened = transport.open(Text.sanitize(playerName), this::requestToken,
+					(source, state, reason) -> onConnectionStateChange(source, ready, state, reason));
+			connection = opened;
+
+			// In case the state changed before we stored the connection. The state is read inside the
+			// update, a value read before it could overwrite a newer one the listener just stored.
+			ConnectionHealth updated = updateHealth(
+					h -> h.withConnected(opened.getState() == ChatTransport.State.CONNECTED));
+			if (updated.isConnected()) {
+				ready.complete(null);
+			}
+		} catch (ChatTransportException e) {
+			log.debug("Failed to open connection", e);
+			ready.completeExceptionally(e);
+			handleAblyError(e);
+		}
+	}
+
+	// Keeps the health snapshot in step with every connection state change. Events from
+	// a connection we've already replaced or closed only settle that attempt's future.
+	private void onConnectionStateChange(ChatTransport.Connection source, CompletableFuture<Void> ready,
+			ChatTransport.State state, ChatTransportException reason) {
+		boolean current = connection == source;
+		if (current) {
+			updateHealth(h -> h.withConnected(state == ChatTransport.State.CONNECTED));
+		}
+		switch (state) {
+			case CONNECTED:
 				log.debug("Connection established successfully");
-			});
-			
-			// Handle connection state changes that indicate we need to resubscribe
-			ablyRealtime.connection.on(io.ably.lib.realtime.ConnectionEvent.connecting, state -> {
+				connectionAdmission.onAdmitted();
+				// Connected before openConnection stored it: openConnection completes ready once the
+				// health says connected too, so nobody publishes into a "Not connected" in between
+				if (current) {
+					ready.complete(null);
+				}
+				break;
+			case CONNECTING:
 				log.debug("Connection is reconnecting...");
-			});
-			
-			ablyRealtime.connection.on(io.ably.lib.realtime.ConnectionEvent.suspended, state -> {
-				log.debug("Connection suspended: " + state.reason);
-			});
-			
-		} catch (AblyException e) {
-			log.debug("Failed to setup Ably connection", e);
-			handleAblyError(e);
+				break;
+			case SUSPENDED:
+				log.debug("Connection suspended: {}", reason != null ? reason.getMessage() : null);
+				break;
+			case DISCONNECTED:
+			case FAILED:
+				log.debug("Connection {}: {}", state, reason != null ? reason.getMessage() : null);
+				if (state == ChatTransport.State.FAILED) {
+					ready.completeExceptionally(reason != null ? reason
+							: new ChatTransportException("Connection failed", 0, 0));
+				}
+				// Clear channel subscription status since we're disconnected. A stale connection
+				// going away must not close the current one or push back its admission.
+				if (current) {
+					updateHealth(ConnectionHealth::withoutChannels);
+					channelRegistry.clear();
+					onConnectionRejected(reason);
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	// Called from the transport's auth thread, blocking here is expected
+	private String requestToken(String clientId) throws ChatTransportException {
+		Request request = new Request.Builder()
+				.url(TOKEN_URL)
+				.header("clientId", clientId)
+				.get()
+				.build();
+
+		try (Response response = httpClient.newCall(request).execute()) {
+			String body = response.body() != null ? response.body().string() : "";
+
+			if (response.code() == 429 || response.code() == 503) {
+				long retryAfterMs = parseRetryAfterMillis(response.header("Retry-After"), body);
+				int queuePosition = parseQueuePosition(body);
+				connectionAdmission.onRejected(clock.getAsLong(), retryAfterMs, queuePosition);
+				throw new ChatTransportException("Global Chat is at capacity", response.code(),
+						CONNECTION_LIMIT_ERROR_CODE);
+			}
+			if (!response.isSuccessful()) {
+				throw new ChatTransportException("Token request failed: HTTP " + response.code(),
+						response.code(), 40170);
+			}
+			return body;
+		} catch (IOException e) {
+			// Backed off once the attempt fails, see connect
+			throw new ChatTransportException("Token request failed: " + e.getMessage(), e);
 		}
 	}
 
+	private long parseRetryAfterMillis(String header, String body) {
+		if (header != null) {
+			try {
+				return Long.parseLong(header.trim()) * 1000;
+			} catch (NumberFormatException e) {
+				log.debug("Ignoring non-numeric Retry-After: {}", header);
+			}
+		}
+		JsonObject json = parseJsonObject(body);
+		if (json != null && json.has("retryAfter")) {
+			return json.get("retryAfter").getAsLong() * 1000;
+		}
+		return -1;
+	}
+
+	private int parseQueuePosition(String body) {
+		JsonObject json = parseJsonObject(body);
+		if (json != null && json.has("queuePosition")) {
+			return json.get("queuePosition").getAsInt();
+		}
+		return -1;
+	}
 
-	private static String padKey(String key, int length) {
-		if (key.length() >= length) {
-			return key.substring(0, length);
+	private JsonObject parseJsonObject(String body) {
+		if (body == null || !body.trim().startsWith("{")) {
+			return null;
 		}
-		StringBuilder keyBuilder = new StringBuilder(key);
-		while (keyBuilder.length() < length) {
-			keyBuilder.append("0"); // Pad the key with zeros
+		try {
+			return gson.fromJson(body, JsonObject.class);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private void onConnectionRejected(ChatTransportException reason) {
+		boolean atCapacity = reason != null && reason.getCode() == CONNECTION_LIMIT_ERROR_CODE;
+		if (atCapacity && !connectionAdmission.isWaiting()) {
+			// Rejected by the service itself rather than the token endpoint, no hints available
+			connectionAdmission.onRejected(clock.getAsLong(), -1, -1);
+		}
+		if (connectionAdmission.isWaiting()) {
+			// Stop the transport's own retry timer, the plugin reconnects once the admission queue allows it
+			closeConnection();
 		}
-		return keyBuilder.toString();
 	}
 
-	public void subscribeToCorrectChannel(String channelName, String key) {
+	// Completes once the channel is attached, so several of these can be awaited together.
+	// Asking for a channel that is already attaching joins that attach.
+	public CompletableFuture<Void> attach(String channelName, String key) {
+		return withTimeout(subscribeToCorrectChannel(channelName, key), CHANNEL_TIMEOUT_MS, "Attach " + channelName);
+	}
+
+	// Subscribes and attaches asynchronously, the future is shared by everyone waiting on the channel
+	private CompletableFuture<Void> subscribeToCorrectChannel(String channelName, String key) {
 		// Validate inputs
 		if (channelName == null || channelName.trim().isEmpty()) {
 			log.debug("Invalid channel name provided for subscription");
-			return;
+			return failedFuture("Invalid channel name");
 		}
 		if (key == null) {
 			log.debug("Invalid key provided for channel: {}", channelName);
-			return;
+			return failedFuture("Invalid key for channel " + channelName);
 		}
 		
-		if (ablyRealtime == null) {
-			log.debug("AblyRealtime is null, cannot subscribe to channel: {}", channelName);
-			return;
+		if (connection == null) {
+			log.debug("Not connected, cannot subscribe to channel: {}", channelName);
+			return failedFuture("Not connected, cannot subscribe to " + channelName);
 		}
 
-		// Prevent duplicate subscriptions - check if already subscribed
-		synchronized (channelSubscriptionStatus) {
-			Boolean currentStatus = channelSubscriptionStatus.get(channelName);
-			if (currentStatus != null && currentStatus) {
-				log.debug("Already subscribed to channel: {}, skipping", channelName);
+		// Prevent duplicate subscriptions - pending, attaching and attached channels are left alone
+		if (!channelRegistry.markPending(channelName)) {
+			log.debug("Already subscribed to channel: {}, skipping", channelName);
+			return channelRegistry.getAttachFuture(channelName);
+		}
+		updateHealth(h -> h.withChannel(channelName, false));
+		CompletableFuture<Void> attached = channelRegistry.getAttachFuture(channelName);
+
+		// Issue the subscription from the control lane. Attach completes via callback,
+		// so the lane never waits on it and all requested channels attach in parallel.
+		boolean queued = submitControl(() -> {
+			final ChatTransport.Connection current = connection;
+			if (current == null) {
+				channelRegistry.markFailed(channelName, new IllegalStateException("Connection closed"));
 				return;
 			}
-			// Mark as pending subscription to prevent race conditions
-			channelSubscriptionStatus.put(channelName, false);
-		}
-
-		// Prepare channel options on calling thread (fast)
-		try {
-			String paddedKeyString = padKey(key, 16);
-			String base64EncodedKey = Base64.getEncoder().encodeToString(paddedKeyString.getBytes());
-			ChannelOptions options = ChannelOptions.withCipherKey(base64EncodedKey);
-			
-			// Move actual subscription to background executor
-			ensureExecutorAvailable();
-			publishExecutor.submit(() -> {
-				try {
-					Channel currentChannel = ablyRealtime.channels.get(channelName, options);
-					currentChannel.subscribe(this::handleMessage);
-					
-					// Mark channel as successfully subscribed (thread-safe update)
-					synchronized (channelSubscriptionStatus) {
-						channelSubscriptionStatus.put(channelName, true);
-					}
-					
+			channelRegistry.markAttaching(channelName);
+			final long started = System.nanoTime();
+			// Only world chat is ever suppressed, so only world channels need their occupancy.
+			// Unknown again until the transport reports it for this attach.
+			channelOccupancy.forget(channelName);
+			CompletableFuture<Void> attach = channelName.startsWith("w:")
+				? current.attach(channelName, key, messageListener, occupancyListener)
+				: current.attach(channelName, key, messageListener);
+			attach.whenComplete((ignored, error) -> {
+				ChatEvents.channelAttached(channelName, started, error);
+				if (error == null) {
+					// Mark channel as successfully subscribed before waiters on the attach are released
+					updateHealth(h -> h.withChannel(channelName, true));
+					channelRegistry.markAttached(channelName);
 					log.debug("Successfully subscribed to channel: {}", channelName);
-				} catch (AblyException err) {
-					log.debug("Ably subscribe error for channel: {}", channelName, err);
-					// Mark channel subscription as failed
-					synchronized (channelSubscriptionStatus) {
-						channelSubscriptionStatus.put(channelName, false);
-					}
-					handleAblyError(err);
+					return;
 				}
+				log.debug("Attach error for channel: {} ({})", channelName, error.getMessage());
+				channelRegistry.markFailed(channelName, error);
+				updateHealth(h -> h.withChannel(channelName, false));
+				handleAblyError(error instanceof Exception ? (Exception) error : new Exception(error));
 			});
-		} catch (AblyException err) {
-			log.debug("Error preparing channel options for: {}", channelName, err);
-			synchronized (channelSubscriptionStatus) {
-				channelSubscriptionStatus.put(channelName, false);
+		});
+		if (!queued) {
+			channelRegistry.markFailed(channelName, new RejectedExecutionException("Control queue full"));
+		}
+		return attached;
+	}
+
+	// Attach every login-time channel at once. The returned future completes when all of them
+	// are attached, i.e. the player is fully ready; the elapsed time is kept as a metric.
+	public CompletableFuture<Void> attachOnLogin(Map<String, String> channelKeys) {
+		final long started = System.nanoTime();
+		CompletableFuture<?>[] attaches = new CompletableFuture<?>[channelKeys.size()];
+		int i = 0;
+		for (Map.Entry<String, String> channel : channelKeys.entrySet()) {
+			attaches[i++] = attach(channel.getKey(), channel.getValue());
+		}
+		return CompletableFuture.allOf(attaches).whenComplete((ignored, error) -> {
+			if (error == null) {
+				lastLoginToReadyMillis = (System.nanoTime() - started) / 1_000_000;
+				log.debug("Ready on {} channels after {}ms", channelKeys.size(), lastLoginToReadyMillis);
+			} else {
+				log.debug("Not all login channels attached: {}", error.getMessage());
+			}
+		});
+	}
+
+	// A per-caller view of an operation that fails with a TimeoutException after timeoutMs.
+	// Timing out or cancelling the view leaves the shared operation alone.
+	private <T> CompletableFuture<T> withTimeout(CompletableFuture<T> operation, long timeoutMs, String description) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		operation.whenComplete((value, error) -> {
+			if (error != null) {
+				result.completeExceptionally(error);
+			} else {
+				result.complete(value);
 			}
+		});
+		if (!result.isDone()) {
+			ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> result.completeExceptionally(
+					new TimeoutException(description + " timed out after " + timeoutMs + "ms")),
+					timeoutMs, TimeUnit.MILLISECONDS);
+			result.whenComplete((value, error) -> timeout.cancel(false));
 		}
+		return result;
+	}
+
+	private static CompletableFuture<Void> failedFuture(String reason) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		future.completeExceptionally(new IllegalStateException(reason));
+		return future;
 	}
 
 	private String getAccountIcon() {
@@ -909,6 +1297,19 @@ public class AblyManager {
 		}
 	}
 	
+	public File startRecording() throws IOException {
+		if (!developerMode) {
+			return null;
+		}
+		File file = new File(RECORDINGS_DIR, "inbound-" + System.currentTimeMillis() + ".gcml");
+		messageRecorder.start(file);
+		return file;
+	}
+
+	public File stopRecording() {
+		return messageRecorder.stop();
+	}
+
 	private void handleAblyError(Exception e) {
 		String errorMessage = e.getMessage();
 		if (errorMessage == null) {
@@ -921,10 +1322,10 @@ public class AblyManager {
 			errorMessage.contains("exceeded") ||
 			errorMessage.contains("capacity") ||
 			errorMessage.contains("rate") ||
-			e instanceof AblyException && ((AblyException) e).errorInfo != null && 
-			(((AblyException) e).errorInfo.code == 40005 || // Connection limit
-			 ((AblyException) e).errorInfo.code == 40006 || // Message limit
-			 ((AblyException) e).errorInfo.code == 40007)) { // Channel limit
+			e instanceof ChatTransportException &&
+			(((ChatTransportException) e).getCode() == 40005 || // Connection limit
+			 ((ChatTransportException) e).getCode() == 40006 || // Message limit
+			 ((ChatTransportException) e).getCode() == 40007)) { // Channel limit
 			
 			// Show in-game chat message with rate limiting
 			showInGameErrorMessage(
@@ -0,0 +1,43 @@
+package com.globalchat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Per-player (or per-world) state that would otherwise grow with every name we ever see.
+// Forgets the least recently used entry once full. Synchronized, since these are written
+// on the client thread and read on transport threads.
+final class BoundedCache<K, V> {
+
+	private final int maxEntries;
+	private final LinkedHashMap<K, V> entries;
+
+	BoundedCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > BoundedCache.this.maxEntries;
+			}
+		};
+	}
+
+	synchronized V get(K key) {
+		return entries.get(key);
+	}
+
+	synchronized void put(K key, V value) {
+		entries.put(key, value);
+	}
+
+	synchronized void clear() {
+		entries.clear();
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	int getMaxEntries() {
+		return maxEntries;
+	}
+}
@@ -0,0 +1,26 @@
+package com.globalchat;
+
+// Channel encryption keys. A channel's raw key ("pub", a world number) is padded with
+// zeros to 16 bytes and used as an AES-128 key, so every transport reads the same channels.
+final class ChannelKeys {
+
+	static final int KEY_LENGTH = 16;
+
+	private ChannelKeys() {
+	}
+
+	static byte[] keyBytes(String cipherKey) {
+		return padKey(cipherKey, KEY_LENGTH).getBytes();
+	}
+
+	private static String padKey(String key, int length) {
+		if (key.length() >= length) {
+			return key.substring(0, length);
+		}
+		StringBuilder keyBuilder = new StringBuilder(key);
+		while (keyBuilder.length() < length) {
+			keyBuilder.append("0"); // Pad the key with zeros
+		}
+		return keyBuilder.toString();
+	}
+}
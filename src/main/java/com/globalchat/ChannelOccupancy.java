@@ -0,0 +1,68 @@
+package com.globalchat;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// How many Global Chat users are subscribed to the channels whose occupancy the transport reports,
+// ourselves included. Most worlds have nobody else on them most of the time, and a world message
+// nobody receives is still billed, so world chat isn't published to a channel that is just us.
+// Occupancy updates lag behind and someone can join mid-conversation, so a channel only counts as
+// empty once nobody else was seen on it for EMPTY_AFTER_MILLIS: not in the occupancy, and not
+// sending a message. Channels the transport says nothing about are never empty.
+public class ChannelOccupancy {
+
+	static final long EMPTY_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	public static final int UNKNOWN = -1;
+
+	private static final class Entry {
+		volatile int subscribers = UNKNOWN;
+		// When someone other than us was last on the channel, or when we started watching it
+		volatile long othersSeenAt;
+
+		Entry(long now) {
+			othersSeenAt = now;
+		}
+	}
+
+	private final Map<String, Entry> channels = new ConcurrentHashMap<>();
+
+	// Transport threads, for every occupancy update
+	void update(String channel, int subscribers, long now) {
+		Entry entry = channels.computeIfAbsent(channel, c -> new Entry(now));
+		entry.subscribers = subscribers;
+		if (subscribers > 1) {
+			entry.othersSeenAt = now;
+		}
+	}
+
+	// Transport threads, a message from someone else on a watched channel beats any occupancy update
+	void messageReceived(String channel, long now) {
+		Entry entry = channels.get(channel);
+		if (entry != null) {
+			entry.othersSeenAt = now;
+		}
+	}
+
+	// Once detached the transport stops reporting, an old count must not keep suppressing
+	void forget(String channel) {
+		channels.remove(channel);
+	}
+
+	void clear() {
+		channels.clear();
+	}
+
+	// Including us, UNKNOWN until the transport reported it
+	public int getSubscribers(String channel) {
+		Entry entry = channels.get(channel);
+		return entry != null ? entry.subscribers : UNKNOWN;
+	}
+
+	// Whether a message published now would reach nobody
+	public boolean isEmpty(String channel, long now) {
+		Entry entry = channels.get(channel);
+		return entry != null && entry.subscribers != UNKNOWN && entry.subscribers <= 1
+			&& now - entry.othersSeenAt >= EMPTY_AFTER_MILLIS;
+	}
+}
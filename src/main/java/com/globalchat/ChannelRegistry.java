@@ -0,0 +1,150 @@
+package com.globalchat;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Tracks every channel we've asked for and where it is in its attach/detach lifecycle,
+// along with how long each attach took.
+public class ChannelRegistry {
+
+	public enum State {
+		PENDING, // Queued, attach not yet issued
+		ATTACHING,
+		ATTACHED,
+		FAILED,
+		DETACHING,
+		DETACHED
+	}
+
+	public static final class ChannelEntry {
+		private final String name;
+		private final State state;
+		private final long attachStartedNanos;
+		private final long attachMillis;
+
+		private ChannelEntry(String name, State state, long attachStartedNanos, long attachMillis) {
+			this.name = name;
+			this.state = state;
+			this.attachStartedNanos = attachStartedNanos;
+			this.attachMillis = attachMillis;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public State getState() {
+			return state;
+		}
+
+		// Time from attach request to attached, -1 until the channel has attached
+		public long getAttachMillis() {
+			return attachMillis;
+		}
+
+		private ChannelEntry withState(State newState) {
+			return new ChannelEntry(name, newState, attachStartedNanos, attachMillis);
+		}
+	}
+
+	private final Map<String, ChannelEntry> entries = new ConcurrentHashMap<>();
+	private final Map<String, CompletableFuture<Void>> attachFutures = new ConcurrentHashMap<>();
+
+	// Returns true if the caller should issue the attach, false if the channel is
+	// already pending, attaching or attached
+	public boolean markPending(String channelName) {
+		boolean[] started = {false};
+		entries.compute(channelName, (name, entry) -> {
+			if (entry != null && isActive(entry.state)) {
+				return entry;
+			}
+			started[0] = true;
+			attachFutures.put(name, new CompletableFuture<>());
+			return new ChannelEntry(name, State.PENDING, System.nanoTime(), -1);
+		});
+		return started[0];
+	}
+
+	public void markAttaching(String channelName) {
+		entries.computeIfPresent(channelName, (name, entry) -> entry.withState(State.ATTACHING));
+	}
+
+	public void markAttached(String channelName) {
+		ChannelEntry updated = entries.computeIfPresent(channelName, (name, entry) -> new ChannelEntry(name,
+				State.ATTACHED, entry.attachStartedNanos, (System.nanoTime() - entry.attachStartedNanos) / 1_000_000));
+		if (updated != null) {
+			CompletableFuture<Void> future = attachFutures.get(channelName);
+			if (future != null) {
+				future.complete(null);
+			}
+		}
+	}
+
+	public void markFailed(String channelName, Throwable cause) {
+		entries.computeIfPresent(channelName, (name, entry) -> entry.withState(State.FAILED));
+		CompletableFuture<Void> future = attachFutures.get(channelName);
+		if (future != null) {
+			future.completeExceptionally(cause);
+		}
+	}
+
+	public void markDetaching(String channelName) {
+		entries.computeIfPresent(channelName, (name, entry) -> entry.withState(State.DETACHING));
+		failPending(channelName, "Channel detached before attach completed");
+	}
+
+	public void markDetached(String channelName) {
+		entries.computeIfPresent(channelName, (name, entry) -> entry.withState(State.DETACHED));
+	}
+
+	public boolean isRequested(String channelName) {
+		return attachFutures.containsKey(channelName);
+	}
+
+	public State getState(String channelName) {
+		ChannelEntry entry = entries.get(channelName);
+		return entry != null ? entry.state : null;
+	}
+
+	// Completes when the channel attaches, or immediately with an error if it was never requested
+	public CompletableFuture<Void> getAttachFuture(String channelName) {
+		CompletableFuture<Void> future = attachFutures.get(channelName);
+		if (future == null) {
+			CompletableFuture<Void> failed = new CompletableFuture<>();
+			failed.completeExceptionally(new IllegalStateException("Channel not requested: " + channelName));
+			return failed;
+		}
+		return future;
+	}
+
+	public Map<String, ChannelEntry> snapshot() {
+		return Collections.unmodifiableMap(new HashMap<>(entries));
+	}
+
+	// Forget everything, e.g. when the connection drops. Anyone waiting on an attach is failed.
+	// Each channel goes in one step under the same lock markPending takes, so a concurrent
+	// attach either is cleared with its future or keeps both.
+	public void clear() {
+		for (String channelName : entries.keySet()) {
+			entries.computeIfPresent(channelName, (name, entry) -> {
+				failPending(name, "Connection closed");
+				attachFutures.remove(name);
+				return null;
+			});
+		}
+	}
+
+	private void failPending(String channelName, String reason) {
+		CompletableFuture<Void> future = attachFutures.get(channelName);
+		if (future != null && !future.isDone()) {
+			future.completeExceptionally(new IllegalStateException(reason + ": " + channelName));
+		}
+	}
+
+	private static boolean isActive(State state) {
+		return state == State.PENDING || state == State.ATTACHING || state == State.ATTACHED;
+	}
+}
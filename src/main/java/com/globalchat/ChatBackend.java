@@ -0,0 +1,18 @@
+package com.globalchat;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public enum ChatBackend {
+	ABLY("Ably"),
+	RELAY("Self-hosted relay");
+
+	private final String name;
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,81 @@
+package com.globalchat;
+
+import lombok.Getter;
+import net.runelite.api.ChatMessageType;
+import net.runelite.api.MessageNode;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.client.util.Text;
+
+// Everything the plugin wants to know about a ChatMessage, worked out once per event
+@Getter
+final class ChatEvent {
+
+	enum Channel {
+		PUBLIC,
+		PRIVATE,
+		FRIENDS,
+		CLAN,
+		CLAN_GUEST,
+		OTHER
+	}
+
+	private final Channel channel;
+	private final ChatMessageType type;
+	private final MessageNode messageNode;
+	// Sanitized sender name
+	private final String sender;
+	// Message with tags removed
+	private final String text;
+	private final boolean local;
+	// "!" followed by a letter, e.g. "!kc zulrah"
+	private final boolean command;
+
+	private ChatEvent(Channel channel, ChatMessageType type, MessageNode messageNode, String sender, String text,
+		boolean local, boolean command) {
+		this.channel = channel;
+		this.type = type;
+		this.messageNode = messageNode;
+		this.sender = sender;
+		this.text = text;
+		this.local = local;
+		this.command = command;
+	}
+
+	// localPlayerName is the sanitized name of the logged in player, null if unknown
+	static ChatEvent classify(ChatMessage event, String localPlayerName) {
+		String text = Text.removeTags(event.getMessage());
+		String sender = Text.sanitize(event.getName());
+		boolean local = localPlayerName != null && localPlayerName.equals(sender);
+		return new ChatEvent(channelOf(event.getType()), event.getType(), event.getMessageNode(), sender, text,
+			local, isCommand(text));
+	}
+
+	static Channel channelOf(ChatMessageType type) {
+		if (type == null) {
+			return Channel.OTHER;
+		}
+		switch (type) {
+			case PUBLICCHAT:
+				return Channel.PUBLIC;
+			case PRIVATECHAT:
+				return Channel.PRIVATE;
+			case FRIENDSCHAT:
+				return Channel.FRIENDS;
+			case CLAN_CHAT:
+				return Channel.CLAN;
+			case CLAN_GUEST_CHAT:
+				return Channel.CLAN_GUEST;
+			default:
+				return Channel.OTHER;
+		}
+	}
+
+	// Same as matching "^![a-zA-Z]+.*", without a regex
+	static boolean isCommand(String text) {
+		if (text.length() < 2 || text.charAt(0) != '!') {
+			return false;
+		}
+		char c = text.charAt(1);
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+}
@@ -0,0 +1,323 @@
+package com.globalchat;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Java Flight Recorder events for the chat pipeline, so a production recording shows what the
+// plugin was doing next to GC pauses and client thread stalls. Every emitter checks its event type
+// is enabled before allocating the event, with no recording running that is a flag check and
+// nothing is allocated; shouldCommit then applies the recording's threshold. Spans that cross
+// threads (queued -> published, received -> rendered) are carried as a start nanoTime and recorded
+// as a timespan field, the events themselves are instant.
+// No names or message text go into the events, recordings get shared.
+final class ChatEvents {
+
+	// Runtimes without jdk.jfr never load the event classes below
+	static final boolean AVAILABLE = isAvailable();
+
+	private ChatEvents() {
+	}
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, ChatEvents.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	// Looked up once, and only once AVAILABLE was checked
+	private static final class Types {
+		static final EventType PUBLISH_QUEUED = EventType.getEventType(PublishQueued.class);
+		static final EventType PUBLISHED = EventType.getEventType(Published.class);
+		static final EventType PUBLISH_ACKED = EventType.getEventType(PublishAcked.class);
+		static final EventType MESSAGE_RECEIVED = EventType.getEventType(MessageReceived.class);
+		static final EventType MESSAGE_DECODED = EventType.getEventType(MessageDecoded.class);
+		static final EventType MESSAGE_FILTERED = EventType.getEventType(MessageFiltered.class);
+		static final EventType MESSAGE_RENDERED = EventType.getEventType(MessageRendered.class);
+		static final EventType CHANNEL_ATTACH = EventType.getEventType(ChannelAttach.class);
+		static final EventType CHANNEL_DETACH = EventType.getEventType(ChannelDetach.class);
+		static final EventType RECONNECT_ATTEMPT = EventType.getEventType(ReconnectAttempt.class);
+	}
+
+	private static String errorOf(Throwable error) {
+		return error != null ? error.getClass().getSimpleName() + ": " + error.getMessage() : null;
+	}
+
+	static void publishQueued(String channel, String type) {
+		if (!AVAILABLE || !Types.PUBLISH_QUEUED.isEnabled()) {
+			return;
+		}
+		PublishQueued event = new PublishQueued();
+		if (event.shouldCommit()) {
+			event.channel = channel;
+			event.type = type;
+			event.commit();
+		}
+	}
+
+	static void published(String channel, long queuedNanos) {
+		if (!AVAILABLE || !Types.PUBLISHED.isEnabled()) {
+			return;
+		}
+		Published event = new Published();
+		if (event.shouldCommit()) {
+			event.channel = channel;
+			event.queueTime = System.nanoTime() - queuedNanos;
+			event.commit();
+		}
+	}
+
+	static void publishAcked(String channel, long sentNanos, Throwable error) {
+		if (!AVAILABLE || !Types.PUBLISH_ACKED.isEnabled()) {
+			return;
+		}
+		PublishAcked event = new PublishAcked();
+		if (event.shouldCommit()) {
+			event.channel = channel;
+			event.ackTime = System.nanoTime() - sentNanos;
+			event.acked = error == null;
+			event.error = errorOf(error);
+			event.commit();
+		}
+	}
+
+	static void messageReceived(String channel) {
+		if (!AVAILABLE || !Types.MESSAGE_RECEIVED.isEnabled()) {
+			return;
+		}
+		MessageReceived event = new MessageReceived();
+		if (event.shouldCommit()) {
+			event.channel = channel;
+			event.commit();
+		}
+	}
+
+	static void messageDecoded(String channel, String type, long startedNanos) {
+		if (!AVAILABLE || !Types.MESSAGE_DECODED.isEnabled()) {
+			return;
+		}
+		MessageDecoded event = new MessageDecoded();
+		if (event.shouldCommit()) {
+			event.channel = channel;
+			event.type = type;
+			event.decodeTime = System.nanoTime() - startedNanos;
+			event.commit();
+		}
+	}
+
+	static void messageFiltered(String channel, String reason) {
+		if (!AVAILABLE || !Types.MESSAGE_FILTERED.isEnabled()) {
+			return;
+		}
+		MessageFiltered event = new MessageFiltered();
+		if (event.shouldCommit()) {
+			event.channel = channel;
+			event.reason = reason;
+			event.commit();
+		}
+	}
+
+	static void messageRendered(String channel, String chatType, long receivedNanos) {
+		if (!AVAILABLE || !Types.MESSAGE_RENDERED.isEnabled()) {
+			return;
+		}
+		MessageRendered event = new MessageRendered();
+		if (event.shouldCommit()) {
+			event.channel = channel;
+			event.chatType = chatType;
+			event.sinceReceived = System.nanoTime() - receivedNanos;
+			event.commit();
+		}
+	}
+
+	static void channelAttached(String channel, long startedNanos, Throwable error) {
+		if (!AVAILABLE || !Types.CHANNEL_ATTACH.isEnabled()) {
+			return;
+		}
+		ChannelAttach event = new ChannelAttach();
+		if (event.shouldCommit()) {
+			event.channel = channel;
+			event.attachTime = System.nanoTime() - startedNanos;
+			event.attached = error == null;
+			event.error = errorOf(error);
+			event.commit();
+		}
+	}
+
+	static void channelDetached(String channel, long startedNanos, Throwable error) {
+		if (!AVAILABLE || !Types.CHANNEL_DETACH.isEnabled()) {
+			return;
+		}
+		ChannelDetach event = new ChannelDetach();
+		if (event.shouldCommit()) {
+			event.channel = channel;
+			event.detachTime = System.nanoTime() - startedNanos;
+			event.detached = error == null;
+			event.error = errorOf(error);
+			event.commit();
+		}
+	}
+
+	static void reconnectAttempt(int attempt, long startedNanos, Throwable error) {
+		if (!AVAILABLE || !Types.RECONNECT_ATTEMPT.isEnabled()) {
+			return;
+		}
+		ReconnectAttempt event = new ReconnectAttempt();
+		if (event.shouldCommit()) {
+			event.attempt = attempt;
+			event.attemptTime = System.nanoTime() - startedNanos;
+			event.connected = error == null;
+			event.error = errorOf(error);
+			event.commit();
+		}
+	}
+
+	@Name("com.globalchat.PublishQueued")
+	@Label("Publish Queued")
+	@Description("A chat line was queued on the data lane")
+	@Category({"Global Chat", "Publish"})
+	@StackTrace(false)
+	static final class PublishQueued extends Event {
+		@Label("Channel")
+		String channel;
+		@Label("Message Type")
+		String type;
+	}
+
+	@Name("com.globalchat.Published")
+	@Label("Published")
+	@Description("A queued chat line was handed to the transport")
+	@Category({"Global Chat", "Publish"})
+	@StackTrace(false)
+	static final class Published extends Event {
+		@Label("Channel")
+		String channel;
+		@Label("Queue Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long queueTime;
+	}
+
+	@Name("com.globalchat.PublishAcked")
+	@Label("Publish Acked")
+	@Description("The service acknowledged or rejected a published chat line")
+	@Category({"Global Chat", "Publish"})
+	@StackTrace(false)
+	static final class PublishAcked extends Event {
+		@Label("Channel")
+		String channel;
+		@Label("Ack Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long ackTime;
+		@Label("Acked")
+		boolean acked;
+		@Label("Error")
+		String error;
+	}
+
+	@Name("com.globalchat.MessageReceived")
+	@Label("Message Received")
+	@Category({"Global Chat", "Receive"})
+	@StackTrace(false)
+	static final class MessageReceived extends Event {
+		@Label("Channel")
+		String channel;
+	}
+
+	@Name("com.globalchat.MessageDecoded")
+	@Label("Message Decoded")
+	@Category({"Global Chat", "Receive"})
+	@StackTrace(false)
+	static final class MessageDecoded extends Event {
+		@Label("Channel")
+		String channel;
+		@Label("Message Type")
+		String type;
+		@Label("Decode Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long decodeTime;
+	}
+
+	@Name("com.globalchat.MessageFiltered")
+	@Label("Message Filtered")
+	@Description("A received message was not shown")
+	@Category({"Global Chat", "Receive"})
+	@StackTrace(false)
+	static final class MessageFiltered extends Event {
+		@Label("Channel")
+		String channel;
+		@Label("Reason")
+		String reason;
+	}
+
+	@Name("com.globalchat.MessageRendered")
+	@Label("Message Rendered")
+	@Description("A received message was queued to the chat box on the client thread")
+	@Category({"Global Chat", "Receive"})
+	@StackTrace(false)
+	static final class MessageRendered extends Event {
+		@Label("Channel")
+		String channel;
+		@Label("Chat Type")
+		String chatType;
+		@Label("Since Received")
+		@Timespan(Timespan.NANOSECONDS)
+		long sinceReceived;
+	}
+
+	@Name("com.globalchat.ChannelAttach")
+	@Label("Channel Attach")
+	@Category({"Global Chat", "Connection"})
+	@StackTrace(false)
+	static final class ChannelAttach extends Event {
+		@Label("Channel")
+		String channel;
+		@Label("Attach Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long attachTime;
+		@Label("Attached")
+		boolean attached;
+		@Label("Error")
+		String error;
+	}
+
+	@Name("com.globalchat.ChannelDetach")
+	@Label("Channel Detach")
+	@Category({"Global Chat", "Connection"})
+	@StackTrace(false)
+	static final class ChannelDetach extends Event {
+		@Label("Channel")
+		String channel;
+		@Label("Detach Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long detachTime;
+		@Label("Detached")
+		boolean detached;
+		@Label("Error")
+		String error;
+	}
+
+	@Name("com.globalchat.ReconnectAttempt")
+	@Label("Reconnect Attempt")
+	@Description("An automatic reconnect and re-attach of the login channels")
+	@Category({"Global Chat", "Connection"})
+	@StackTrace(false)
+	static final class ReconnectAttempt extends Event {
+		@Label("Attempt")
+		int attempt;
+		@Label("Attempt Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long attemptTime;
+		@Label("Connected")
+		boolean connected;
+		@Label("Error")
+		String error;
+	}
+}
@@ -0,0 +1,288 @@
+package com.globalchat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.inject.Singleton;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.extern.slf4j.Slf4j;
+
+// Counters, gauges and histograms for the plugin, by name. Look a metric up once and keep it:
+// recording is then a LongAdder or atomic increment, no locks and no allocation. Everything
+// is read through snapshot(), which backs the JMX bean, the CSV dump and the debug panel.
+@Slf4j
+@Singleton
+public class ChatMetrics {
+
+	static final String OBJECT_NAME = "com.globalchat:type=ChatMetrics";
+
+	public static final class Counter {
+		private final LongAdder value = new LongAdder();
+
+		public void increment() {
+			value.increment();
+		}
+
+		public void add(long amount) {
+			value.add(amount);
+		}
+
+		public long get() {
+			return value.sum();
+		}
+	}
+
+	// Counters keyed by something only known while running, e.g. the channel a message came in on.
+	// Keys past the cap are counted together under "other" so a flood of new keys can't grow it forever.
+	public static final class CounterFamily {
+		static final int MAX_KEYS = 256;
+		static final String OTHER = "other";
+
+		private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+		public void increment(String key) {
+			Counter counter = counters.get(key);
+			if (counter == null) {
+				counter = counters.size() < MAX_KEYS ? counters.computeIfAbsent(key, k -> new Counter())
+					: counters.computeIfAbsent(OTHER, k -> new Counter());
+			}
+			counter.increment();
+		}
+
+		public long get(String key) {
+			Counter counter = counters.get(key);
+			return counter != null ? counter.get() : 0;
+		}
+	}
+
+	// Fixed buckets, each bound is the inclusive upper edge of its bucket plus one more for anything larger
+	public static final class Histogram {
+		private final long[] bounds;
+		private final AtomicLongArray buckets;
+		private final LongAdder sum = new LongAdder();
+
+		public Histogram(long... bounds) {
+			for (int i = 1; i < bounds.length; i++) {
+				if (bounds[i] <= bounds[i - 1]) {
+					throw new IllegalArgumentException("Bucket bounds must increase");
+				}
+			}
+			this.bounds = bounds.clone();
+			this.buckets = new AtomicLongArray(bounds.length + 1);
+		}
+
+		public void record(long value) {
+			int bucket = 0;
+			while (bucket < bounds.length && value > bounds[bucket]) {
+				bucket++;
+			}
+			buckets.incrementAndGet(bucket);
+			sum.add(value);
+		}
+
+		public long getCount() {
+			long count = 0;
+			for (int i = 0; i < buckets.length(); i++) {
+				count += buckets.get(i);
+			}
+			return count;
+		}
+
+		public long getSum() {
+			return sum.sum();
+		}
+
+		// Upper bound of the bucket holding the given quantile, Long.MAX_VALUE if it is past the last bound
+		public long percentile(double quantile) {
+			long count = getCount();
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(quantile * count);
+			long seen = 0;
+			for (int i = 0; i < bounds.length; i++) {
+				seen += buckets.get(i);
+				if (seen >= Math.max(rank, 1)) {
+					return bounds[i];
+				}
+			}
+			return Long.MAX_VALUE;
+		}
+
+		void snapshot(String name, Map<String, Long> into) {
+			into.put(name + ".count", getCount());
+			into.put(name + ".sum", getSum());
+			into.put(name + ".p50", percentile(0.5));
+			into.put(name + ".p99", percentile(0.99));
+			for (int i = 0; i < bounds.length; i++) {
+				into.put(name + ".le_" + bounds[i], buckets.get(i));
+			}
+			into.put(name + ".le_inf", buckets.get(bounds.length));
+		}
+	}
+
+	private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+	private final Map<String, CounterFamily> families = new ConcurrentHashMap<>();
+	private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+	private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+	public Counter counter(String name) {
+		return counters.computeIfAbsent(name, k -> new Counter());
+	}
+
+	public CounterFamily family(String name) {
+		return families.computeIfAbsent(name, k -> new CounterFamily());
+	}
+
+	// Replaces any gauge already registered under the name
+	public void gauge(String name, LongSupplier value) {
+		gauges.put(name, value);
+	}
+
+	// The bounds only apply the first time a name is seen
+	public Histogram histogram(String name, long... bounds) {
+		return histograms.computeIfAbsent(name, k -> new Histogram(bounds));
+	}
+
+	// Expose a histogram that lives elsewhere, e.g. with the API client's per-endpoint metrics
+	public void register(String name, Histogram histogram) {
+		histograms.put(name, histogram);
+	}
+
+	// Every value by name, histograms spread over count/sum/percentiles/buckets
+	public SortedMap<String, Long> snapshot() {
+		SortedMap<String, Long> values = new TreeMap<>();
+		counters.forEach((name, counter) -> values.put(name, counter.get()));
+		families.forEach((name, family) ->
+			family.counters.forEach((key, counter) -> values.put(name + "." + key, counter.get())));
+		gauges.forEach((name, gauge) -> {
+			try {
+				values.put(name, gauge.getAsLong());
+			} catch (RuntimeException e) {
+				log.debug("Gauge {} failed", name, e);
+			}
+		});
+		histograms.forEach((name, histogram) -> histogram.snapshot(name, values));
+		return values;
+	}
+
+	// One row per metric: epoch millis, name, value. Appends, a header is written for a new file.
+	public void appendCsv(File file) throws IOException {
+		SortedMap<String, Long> values = snapshot();
+		long now = System.currentTimeMillis();
+		File dir = file.getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Could not create " + dir);
+		}
+		boolean header = !file.isFile() || file.length() == 0;
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+			StringBuilder csv = new StringBuilder();
+			if (header) {
+				csv.append("timestamp,metric,value\n");
+			}
+			for (Map.Entry<String, Long> value : values.entrySet()) {
+				csv.append(now).append(',').append(value.getKey()).append(',').append(value.getValue()).append('\n');
+			}
+			out.write(csv.toString());
+		}
+	}
+
+	// Every metric shows up as a read-only long attribute, e.g. in JConsole or VisualVM
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			try {
+				server.registerMBean(new MetricsMBean(), new ObjectName(OBJECT_NAME));
+			} catch (InstanceAlreadyExistsException e) {
+				// Left behind by an earlier start of the plugin
+				server.unregisterMBean(new ObjectName(OBJECT_NAME));
+				server.registerMBean(new MetricsMBean(), new ObjectName(OBJECT_NAME));
+			}
+		} catch (JMException | SecurityException e) {
+			log.debug("Could not register metrics MBean", e);
+		}
+	}
+
+	public void unregisterMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException | SecurityException e) {
+			log.debug("Could not unregister metrics MBean", e);
+		}
+	}
+
+	private class MetricsMBean implements DynamicMBean {
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Long value = snapshot().get(attribute);
+			if (value == null) {
+				throw new AttributeNotFoundException(attribute);
+			}
+			return value;
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			SortedMap<String, Long> values = snapshot();
+			AttributeList list = new AttributeList();
+			for (String attribute : attributes) {
+				Long value = values.get(attribute);
+				if (value != null) {
+					list.add(new Attribute(attribute, value));
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) {
+			throw new UnsupportedOperationException("Metrics are read-only");
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) {
+			throw new UnsupportedOperationException(actionName);
+		}
+
+		// Rebuilt on every call, metrics keyed by channel come and go while running
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			SortedMap<String, Long> values = snapshot();
+			MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+			int i = 0;
+			for (String name : values.keySet()) {
+				attributes[i++] = new MBeanAttributeInfo(name, "long", name, true, false, false);
+			}
+			return new MBeanInfo(ChatMetrics.class.getName(), "Global Chat metrics", attributes, null, null, null);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.globalchat;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.util.concurrent.CompletableFuture;
+
+// How AblyManager reaches the chat service: connections, channels and their messages.
+// AblyChatTransport is the real one, LoopbackChatTransport simulates the service in memory
+// so the chat pipeline can be load tested without it.
+public interface ChatTransport {
+
+	enum State {
+		CONNECTING,
+		CONNECTED,
+		DISCONNECTED,
+		SUSPENDED,
+		FAILED,
+		CLOSED
+	}
+
+	interface ConnectionListener {
+		// reason is null unless the service gave one
+		void onStateChange(Connection connection, State state, ChatTransportException reason);
+	}
+
+	interface MessageListener {
+		void onMessage(String channel, JsonElement data);
+	}
+
+	interface OccupancyListener {
+		// subscribers counts every connection subscribed to the channel, ours included
+		void onOccupancy(String channel, int subscribers);
+	}
+
+	// Called whenever the transport needs a token, may block. Returns the token endpoint's answer as is.
+	interface TokenSource {
+		String requestToken(String clientId) throws ChatTransportException;
+	}
+
+	// Starts connecting as clientId, state changes are reported to listener until the connection is closed
+	Connection open(String clientId, TokenSource tokens, ConnectionListener listener) throws ChatTransportException;
+
+	interface Connection {
+		State getState();
+
+		// Subscribes listener to the channel and attaches it, completes once attached.
+		// cipherKey is the raw key the channel is encrypted with, e.g. "pub" or a world number.
+		CompletableFuture<Void> attach(String channel, String cipherKey, MessageListener listener);
+
+		// Like attach, and reports the channel's occupancy whenever it changes until detached.
+		// Transports that can't tell never call occupancyListener.
+		default CompletableFuture<Void> attach(String channel, String cipherKey, MessageListener listener,
+			OccupancyListener occupancyListener) {
+			return attach(channel, cipherKey, listener);
+		}
+
+		CompletableFuture<Void> detach(String channel);
+
+		// Completes once the service has acknowledged the message
+		CompletableFuture<Void> publish(String channel, String cipherKey, JsonObject message);
+
+		// May block until the service confirms
+		void close();
+	}
+}
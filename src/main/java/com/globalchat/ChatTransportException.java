@@ -0,0 +1,25 @@
+package com.globalchat;
+
+import lombok.Getter;
+
+// A failure reported by a ChatTransport, with the service's own error code when it gave one
+@Getter
+public class ChatTransportException extends Exception {
+
+	// Service error code, e.g. 40005 when the connection limit is reached. 0 if unknown.
+	private final int code;
+	// HTTP-style status, 0 if unknown
+	private final int statusCode;
+
+	public ChatTransportException(String message, int statusCode, int code) {
+		super(message);
+		this.statusCode = statusCode;
+		this.code = code;
+	}
+
+	public ChatTransportException(String message, Throwable cause) {
+		super(message, cause);
+		this.statusCode = 0;
+		this.code = 0;
+	}
+}
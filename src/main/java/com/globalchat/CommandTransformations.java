@@ -0,0 +1,105 @@
+package com.globalchat;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.MessageNode;
+import net.runelite.client.util.Text;
+
+// Our own "!" commands are published as whatever they turn into in the chatbox, e.g. "!kc zulrah"
+// becomes the kill count once the chat commands plugin has looked it up. That plugin rewrites the
+// node's RuneLite format message when its answer arrives, which can take a while, so each command's
+// node is checked every client tick and published on the first change, or as typed after a timeout.
+// Keyed by node identity, so the same command sent twice is tracked twice. Client thread only.
+@Slf4j
+class CommandTransformations {
+
+	interface Publisher {
+		void publish(String message, String playerName, String approach);
+	}
+
+	// Lookups answered after this are published as typed
+	static final long TIMEOUT_MILLIS = 2000;
+
+	private static final class PendingCommand {
+		final String original;
+		final String playerName;
+		final long deadline;
+
+		PendingCommand(String original, String playerName, long deadline) {
+			this.original = original;
+			this.playerName = playerName;
+			this.deadline = deadline;
+		}
+	}
+
+	private final Map<MessageNode, PendingCommand> pending = new IdentityHashMap<>();
+	private final Publisher publisher;
+
+	CommandTransformations(Publisher publisher) {
+		this.publisher = publisher;
+	}
+
+	void track(MessageNode node, String original, String playerName, long now) {
+		if (node == null) {
+			log.debug("MessageNode is null for command: '{}'", original);
+			publisher.publish(original, playerName, "MESSAGENODE_NULL");
+			return;
+		}
+		PendingCommand command = new PendingCommand(original, playerName, now + TIMEOUT_MILLIS);
+		// Already rewritten by a handler that ran before ours
+		if (!publishIfTransformed(node, command)) {
+			pending.put(node, command);
+		}
+	}
+
+	// Every client tick
+	void poll(long now) {
+		if (pending.isEmpty()) {
+			return;
+		}
+		Iterator<Map.Entry<MessageNode, PendingCommand>> entries = pending.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<MessageNode, PendingCommand> entry = entries.next();
+			PendingCommand command = entry.getValue();
+			if (publishIfTransformed(entry.getKey(), command)) {
+				entries.remove();
+			} else if (now >= command.deadline) {
+				log.debug("No transformation for command: '{}'", command.original);
+				publisher.publish(command.original, command.playerName, "COMMAND_NO_TRANSFORMATION");
+				entries.remove();
+			}
+		}
+	}
+
+	int size() {
+		return pending.size();
+	}
+
+	// Logout or world hop: the commands were meant for the world we left
+	void clear() {
+		pending.clear();
+	}
+
+	private boolean publishIfTransformed(MessageNode node, PendingCommand command) {
+		String runeLiteMessage;
+		try {
+			runeLiteMessage = node.getRuneLiteFormatMessage();
+		} catch (Exception e) {
+			log.debug("Error accessing MessageNode for '{}': ", command.original, e);
+			publisher.publish(command.original, command.playerName, "MESSAGENODE_ACCESS_ERROR");
+			return true;
+		}
+		if (runeLiteMessage == null) {
+			return false;
+		}
+		String current = Text.removeTags(runeLiteMessage);
+		if (current.equals(command.original)) {
+			return false;
+		}
+		log.debug("Command transformed: '{}' -> '{}'", command.original, current);
+		publisher.publish(current, command.playerName, "TRANSFORMATION_DETECTED");
+		return true;
+	}
+}
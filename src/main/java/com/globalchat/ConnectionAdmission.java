@@ -0,0 +1,138 @@
+package com.globalchat;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Client-side admission control for connecting to Global Chat.
+// When the service is at its connection cap the token endpoint answers with a
+// retry-after (and optionally a queue position). Every client backs off using
+// decorrelated jitter so that freed slots are not hit by all waiting clients at once.
+@Slf4j
+public class ConnectionAdmission {
+
+	static final long BASE_DELAY_MS = 5000;
+	static final long MAX_DELAY_MS = 300000; // 5 minutes
+
+	private final Random random;
+
+	private long nextAttemptAt = 0;
+	private long previousDelay = BASE_DELAY_MS;
+	private int rejections = 0;
+	// Kept apart from the capacity backoff, a network error doesn't mean we're in the queue
+	private long previousFailureDelay = BASE_DELAY_MS;
+	private int failures = 0;
+	private int queuePosition = -1;
+	private boolean waiting = false;
+
+	public ConnectionAdmission() {
+		this(null);
+	}
+
+	ConnectionAdmission(Random random) {
+		this.random = random;
+	}
+
+	// Returns true if a connection attempt may be made now. Reserves the slot so
+	// concurrent callers don't start a second attempt before this one resolves.
+	public synchronized boolean tryAcquire(long now) {
+		if (now < nextAttemptAt) {
+			return false;
+		}
+		// Hold further attempts until this one is admitted or rejected
+		nextAttemptAt = now + BASE_DELAY_MS;
+		return true;
+	}
+
+	// Called when the token endpoint (or the connection) refused us because of capacity.
+	// retryAfterMs and position are optional server hints, pass -1 when absent.
+	public synchronized long onRejected(long now, long retryAfterMs, int position) {
+		rejections++;
+		waiting = true;
+		queuePosition = position;
+
+		long delay = decorrelatedJitter(previousDelay);
+
+		// Never go earlier than the server asked, but still spread clients out past that point
+		if (retryAfterMs > 0) {
+			delay = Math.max(delay, retryAfterMs + nextLong(0, BASE_DELAY_MS));
+		}
+
+		previousDelay = delay;
+		nextAttemptAt = now + delay;
+		log.debug("Connection not admitted (rejection #{}, queue position {}), next attempt in {}ms",
+			rejections, position, delay);
+		return delay;
+	}
+
+	// Called for failures unrelated to capacity (network errors etc.) so we still back off.
+	// Leaves the waiting state and queue position alone.
+	public synchronized long onFailed(long now) {
+		failures++;
+		long delay = decorrelatedJitter(previousFailureDelay);
+		previousFailureDelay = delay;
+		nextAttemptAt = now + delay;
+		log.debug("Connection attempt failed (failure #{}), next attempt in {}ms", failures, delay);
+		return delay;
+	}
+
+	public synchronized void onAdmitted() {
+		rejections = 0;
+		failures = 0;
+		queuePosition = -1;
+		waiting = false;
+		previousDelay = BASE_DELAY_MS;
+		previousFailureDelay = BASE_DELAY_MS;
+		nextAttemptAt = 0;
+	}
+
+	// Allow an immediate attempt, e.g. after a world hop or fresh login
+	public synchronized void reset() {
+		onAdmitted();
+	}
+
+	public synchronized boolean isWaiting() {
+		return waiting;
+	}
+
+	public synchronized int getQueuePosition() {
+		return queuePosition;
+	}
+
+	public synchronized int getRejections() {
+		return rejections;
+	}
+
+	// Whether the hold from a rejection, a failure or an attempt still in flight is over
+	public synchronized boolean canAttempt(long now) {
+		return now >= nextAttemptAt;
+	}
+
+	public synchronized long getNextAttemptAt() {
+		return nextAttemptAt;
+	}
+
+	public synchronized long getEstimatedWaitMillis(long now) {
+		if (!waiting) {
+			return 0;
+		}
+		return Math.max(0, nextAttemptAt - now);
+	}
+
+	// sleep = min(cap, random_between(base, previous * 3))
+	private long decorrelatedJitter(long previous) {
+		long upper = Math.max(BASE_DELAY_MS + 1, Math.min(MAX_DELAY_MS, previous * 3));
+		return Math.min(MAX_DELAY_MS, nextLong(BASE_DELAY_MS, upper));
+	}
+
+	private long nextLong(long origin, long bound) {
+		if (bound <= origin) {
+			return origin;
+		}
+		if (random == null) {
+			return ThreadLocalRandom.current().nextLong(origin, bound);
+		}
+		return origin + (long) (random.nextDouble() * (bound - origin));
+	}
+}
@@ -0,0 +1,81 @@
+package com.globalchat;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// Immutable snapshot of the connection and per-channel subscription state.
+// AblyManager swaps in a new instance whenever Ably reports a change, so readers
+// (isConnected on the client thread, the info panel) only do a volatile read.
+public final class ConnectionHealth {
+
+	public static final ConnectionHealth DISCONNECTED = new ConnectionHealth(false, Collections.emptyMap());
+
+	private final boolean connected;
+	private final Map<String, Boolean> channels;
+	// Precomputed so the hot path never iterates the channel map
+	private final boolean healthy;
+
+	private ConnectionHealth(boolean connected, Map<String, Boolean> channels) {
+		this.connected = connected;
+		this.channels = channels;
+
+		boolean allChannelsSuccessful = !channels.isEmpty(); // No channels subscribed means not connected
+		for (Boolean status : channels.values()) {
+			if (!status) {
+				allChannelsSuccessful = false;
+				break;
+			}
+		}
+		this.healthy = connected && allChannelsSuccessful;
+	}
+
+	public boolean isConnected() {
+		return connected;
+	}
+
+	// Connected and every tracked channel subscription succeeded
+	public boolean isHealthy() {
+		return healthy;
+	}
+
+	public Map<String, Boolean> getChannels() {
+		return channels;
+	}
+
+	public Boolean getChannelStatus(String channelName) {
+		return channels.get(channelName);
+	}
+
+	public ConnectionHealth withConnected(boolean connected) {
+		if (this.connected == connected) {
+			return this;
+		}
+		return new ConnectionHealth(connected, channels);
+	}
+
+	public ConnectionHealth withChannel(String channelName, boolean subscribed) {
+		if (Boolean.valueOf(subscribed).equals(channels.get(channelName))) {
+			return this;
+		}
+		Map<String, Boolean> updated = new HashMap<>(channels);
+		updated.put(channelName, subscribed);
+		return new ConnectionHealth(connected, Collections.unmodifiableMap(updated));
+	}
+
+	public ConnectionHealth withoutChannel(String channelName) {
+		if (!channels.containsKey(channelName)) {
+			return this;
+		}
+		Map<String, Boolean> updated = new HashMap<>(channels);
+		updated.remove(channelName);
+		return new ConnectionHealth(connected, Collections.unmodifiableMap(updated));
+	}
+
+	public ConnectionHealth withoutChannels() {
+		if (channels.isEmpty()) {
+			return this;
+		}
+		return new ConnectionHealth(connected, Collections.emptyMap());
+	}
+}
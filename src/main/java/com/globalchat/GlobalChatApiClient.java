@@ -0,0 +1,353 @@
+package com.globalchat;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+// The one place the plugin talks to the Global Chat HTTP API. Every endpoint gets:
+// - a TTL cache of the last successful response
+// - single-flight: identical requests already in flight share one network call
+// - the same retry/backoff policy (network errors, 5xx, 429)
+// - request metrics
+@Slf4j
+@Singleton
+public class GlobalChatApiClient {
+
+	static final String BASE_URL = "https://global-chat-frontend.vercel.app";
+	private static final String USER_AGENT = "RuneLite-GlobalChat-Plugin";
+
+	private static final long BASE_BACKOFF_MS = 1000;
+	private static final long MAX_BACKOFF_MS = 30000;
+
+	public enum Endpoint {
+		// Frontend CDN caches these for 5 minutes, no point asking more often
+		USER_COUNTS("/api/user-counts", TimeUnit.MINUTES.toMillis(5), 3),
+		CONNECTION_STATS("/api/stats/connections", TimeUnit.MINUTES.toMillis(5), 3),
+		// SupporterManager keeps its own disk cache and revalidates with ETags
+		SUPPORTERS("/api/supporters", 0, 3),
+		// Answers a click, so a failure is shown instead of retried
+		CHECK_PLAYER_STATUS("/api/check-player-status", TimeUnit.SECONDS.toMillis(30), 1),
+		// Many names at once, PlayerStatusLookup caches the answers per name
+		CHECK_PLAYERS_STATUS("/api/check-player-status", 0, 1);
+
+		private final String path;
+		private final long ttlMillis;
+		private final int maxAttempts;
+
+		Endpoint(String path, long ttlMillis, int maxAttempts) {
+			this.path = path;
+			this.ttlMillis = ttlMillis;
+			this.maxAttempts = maxAttempts;
+		}
+	}
+
+	// Status, headers and body of a completed call. Body is read eagerly so it can be cached.
+	public static final class ApiResponse {
+		private final int code;
+		private final String body;
+		private final okhttp3.Headers headers;
+
+		ApiResponse(int code, String body, okhttp3.Headers headers) {
+			this.code = code;
+			this.body = body;
+			this.headers = headers;
+		}
+
+		public int getCode() {
+			return code;
+		}
+
+		public String getBody() {
+			return body;
+		}
+
+		public String header(String name) {
+			return headers.get(name);
+		}
+
+		public boolean isSuccessful() {
+			return code >= 200 && code < 300;
+		}
+	}
+
+	// Thrown (wrapped in a CompletionException) when a call ends without a 2xx or 304
+	public static class ApiException extends IOException {
+		private final int code;
+
+		ApiException(String message, int code) {
+			super(message);
+			this.code = code;
+		}
+
+		// HTTP status, -1 for network failures
+		public int getCode() {
+			return code;
+		}
+	}
+
+	public static final class EndpointMetrics {
+		private final AtomicLong requests = new AtomicLong();
+		private final AtomicLong cacheHits = new AtomicLong();
+		private final AtomicLong coalesced = new AtomicLong();
+		private final AtomicLong retries = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong totalLatencyMillis = new AtomicLong();
+		private final ChatMetrics.Histogram latencyMillis = new ChatMetrics.Histogram(
+			50, 100, 250, 500, 1000, 2500, 5000, 10000);
+
+		private void recordLatency(long started) {
+			long millis = (System.nanoTime() - started) / 1_000_000;
+			totalLatencyMillis.addAndGet(millis);
+			latencyMillis.record(millis);
+		}
+
+		// Calls that actually went to the network
+		public long getRequests() {
+			return requests.get();
+		}
+
+		public long getCacheHits() {
+			return cacheHits.get();
+		}
+
+		// Callers that joined a request already in flight
+		public long getCoalesced() {
+			return coalesced.get();
+		}
+
+		public long getRetries() {
+			return retries.get();
+		}
+
+		public long getFailures() {
+			return failures.get();
+		}
+
+		public long getAverageLatencyMillis() {
+			long count = requests.get();
+			return count > 0 ? totalLatencyMillis.get() / count : 0;
+		}
+	}
+
+	private static final class CachedResponse {
+		final ApiResponse response;
+		final long expiresAt;
+
+		CachedResponse(ApiResponse response, long expiresAt) {
+			this.response = response;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final OkHttpClient httpClient;
+	private final Gson gson;
+	private final String baseUrl;
+	// Only runs retry timers, the calls themselves are on OkHttp's dispatcher
+	private final ScheduledExecutorService retryScheduler;
+	private final Map<String, CachedResponse> cache = new ConcurrentHashMap<>();
+	private final Map<String, CompletableFuture<ApiResponse>> inFlight = new ConcurrentHashMap<>();
+	private final Map<Endpoint, EndpointMetrics> metrics;
+
+	@Inject
+	public GlobalChatApiClient(OkHttpClient httpClient, Gson gson) {
+		this(httpClient, gson, BASE_URL);
+	}
+
+	GlobalChatApiClient(OkHttpClient httpClient, Gson gson, String baseUrl) {
+		this.httpClient = httpClient;
+		this.gson = gson;
+		this.baseUrl = baseUrl;
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "GlobalChatApiRetry");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.setRemoveOnCancelPolicy(true);
+		this.retryScheduler = scheduler;
+
+		Map<Endpoint, EndpointMetrics> endpointMetrics = new EnumMap<>(Endpoint.class);
+		for (Endpoint endpoint : Endpoint.values()) {
+			endpointMetrics.put(endpoint, new EndpointMetrics());
+		}
+		this.metrics = Collections.unmodifiableMap(endpointMetrics);
+	}
+
+	// GET and parse the JSON body. query is appended to the path as-is, e.g. "?world=301".
+	public <T> CompletableFuture<T> get(Endpoint endpoint, String query, Class<T> type) {
+		return fetch(endpoint, query, Collections.emptyMap()).thenApply(response -> {
+			if (!response.isSuccessful()) {
+				throw new IllegalStateException(endpoint + " returned HTTP " + response.getCode());
+			}
+			return gson.fromJson(response.getBody(), type);
+		});
+	}
+
+	// Lower level GET for callers that need status and headers (e.g. conditional requests).
+	// A 304 completes normally, other non-2xx responses complete with an ApiException.
+	public CompletableFuture<ApiResponse> fetch(Endpoint endpoint, String query, Map<String, String> headers) {
+		String key = endpoint.name() + query + (headers.isEmpty() ? "" : headers.toString());
+		EndpointMetrics endpointMetrics = metrics.get(endpoint);
+
+		CachedResponse cached = cache.get(key);
+		if (cached != null) {
+			if (cached.expiresAt > System.currentTimeMillis()) {
+				endpointMetrics.cacheHits.incrementAndGet();
+				return CompletableFuture.completedFuture(cached.response);
+			}
+			cache.remove(key, cached);
+		}
+
+		CompletableFuture<ApiResponse> started = new CompletableFuture<>();
+		CompletableFuture<ApiResponse> existing = inFlight.putIfAbsent(key, started);
+		if (existing != null) {
+			endpointMetrics.coalesced.incrementAndGet();
+			return forCaller(existing);
+		}
+
+		// Cache and in-flight bookkeeping happens before callers see the result, so anyone
+		// reacting to it with another request already hits the cache
+		CompletableFuture<ApiResponse> call = new CompletableFuture<>();
+		call.whenComplete((response, error) -> {
+			inFlight.remove(key, started);
+			if (error == null && endpoint.ttlMillis > 0 && response.isSuccessful()) {
+				cache.put(key, new CachedResponse(response, System.currentTimeMillis() + endpoint.ttlMillis));
+			}
+			if (error != null) {
+				started.completeExceptionally(error);
+			} else {
+				started.complete(response);
+			}
+		});
+
+		Request.Builder request = new Request.Builder()
+			.url(baseUrl + endpoint.path + query)
+			.header("User-Agent", USER_AGENT)
+			.get();
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			request.header(header.getKey(), header.getValue());
+		}
+		execute(endpoint, request.build(), 1, call);
+		return forCaller(started);
+	}
+
+	// Every caller gets its own view of a shared request, so one of them cancelling or timing
+	// out never fails the others
+	private static CompletableFuture<ApiResponse> forCaller(CompletableFuture<ApiResponse> shared) {
+		return shared.thenApply(response -> response);
+	}
+
+	public EndpointMetrics getMetrics(Endpoint endpoint) {
+		return metrics.get(endpoint);
+	}
+
+	// Publish every endpoint's metrics as http.<endpoint>.*, covers the panel's calls as well as ours
+	public void exportMetrics(ChatMetrics registry) {
+		for (Endpoint endpoint : Endpoint.values()) {
+			EndpointMetrics endpointMetrics = metrics.get(endpoint);
+			String prefix = "http." + endpoint.name().toLowerCase(Locale.ROOT);
+			registry.gauge(prefix + ".requests", endpointMetrics::getRequests);
+			registry.gauge(prefix + ".cacheHits", endpointMetrics::getCacheHits);
+			registry.gauge(prefix + ".coalesced", endpointMetrics::getCoalesced);
+			registry.gauge(prefix + ".retries", endpointMetrics::getRetries);
+			registry.gauge(prefix + ".failures", endpointMetrics::getFailures);
+			registry.register(prefix + ".latencyMillis", endpointMetrics.latencyMillis);
+		}
+	}
+
+	// Drop cached responses, e.g. after a world hop when per-world numbers changed
+	public void invalidate(Endpoint endpoint) {
+		cache.keySet().removeIf(key -> key.startsWith(endpoint.name()));
+	}
+
+	private void execute(Endpoint endpoint, Request request, int attempt, CompletableFuture<ApiResponse> result) {
+		EndpointMetrics endpointMetrics = metrics.get(endpoint);
+		endpointMetrics.requests.incrementAndGet();
+		final long started = System.nanoTime();
+
+		httpClient.newCall(request).enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				endpointMetrics.recordLatency(started);
+				log.debug("{} request failed (attempt {}): {}", endpoint, attempt, e.getMessage());
+				retryOrFail(endpoint, request, attempt, -1, result,
+					new ApiException(endpoint + " request failed: " + e.getMessage(), -1));
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				try (Response r = response) {
+					endpointMetrics.recordLatency(started);
+					int code = r.code();
+					if (code == 304 || (code >= 200 && code < 300)) {
+						String body = r.body() != null ? r.body().string() : "";
+						result.complete(new ApiResponse(code, body, r.headers()));
+						return;
+					}
+					log.debug("{} returned HTTP {} (attempt {})", endpoint, code, attempt);
+					ApiException error = new ApiException(endpoint + " returned HTTP " + code, code);
+					// Client errors other than rate limiting won't get better by retrying
+					if (code >= 500 || code == 429) {
+						retryOrFail(endpoint, request, attempt, parseRetryAfterMillis(r.header("Retry-After")), result, error);
+					} else {
+						fail(endpoint, result, error);
+					}
+				} catch (IOException e) {
+					retryOrFail(endpoint, request, attempt, -1, result,
+						new ApiException(endpoint + " response could not be read: " + e.getMessage(), -1));
+				}
+			}
+		});
+	}
+
+	private void retryOrFail(Endpoint endpoint, Request request, int attempt, long retryAfterMillis,
+		CompletableFuture<ApiResponse> result, ApiException error) {
+		if (attempt >= endpoint.maxAttempts) {
+			fail(endpoint, result, error);
+			return;
+		}
+		metrics.get(endpoint).retries.incrementAndGet();
+		retryScheduler.schedule(() -> execute(endpoint, request, attempt + 1, result),
+			backoffMillis(attempt, retryAfterMillis), TimeUnit.MILLISECONDS);
+	}
+
+	private void fail(Endpoint endpoint, CompletableFuture<ApiResponse> result, ApiException error) {
+		metrics.get(endpoint).failures.incrementAndGet();
+		result.completeExceptionally(error);
+	}
+
+	// Exponential backoff with full jitter, never earlier than the server asked
+	static long backoffMillis(int attempt, long retryAfterMillis) {
+		long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 10));
+		long delay = ThreadLocalRandom.current().nextLong(BASE_BACKOFF_MS / 2, ceiling + 1);
+		return retryAfterMillis > 0 ? Math.min(MAX_BACKOFF_MS, Math.max(delay, retryAfterMillis)) : delay;
+	}
+
+	private static long parseRetryAfterMillis(String header) {
+		if (header == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(header.trim()) * 1000;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
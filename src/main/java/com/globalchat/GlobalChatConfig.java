@@ -51,6 +51,49 @@ public interface GlobalChatConfig extends Config {
     default boolean showPlayerLookup() {
         return true;
     }
+
+    @ConfigItem(
+            keyName = "showGlobalChatBadges",
+            name = "Show Global Chat Badges",
+            description = "Mark players around you who are connected to Global Chat when right-clicking them.",
+            position = 4
+    )
+    default boolean showGlobalChatBadges() {
+        return false;
+    }
+    @ConfigItem(
+            keyName = "chatBackend",
+            name = "Chat Backend",
+            description = "Where Global Chat connects. The self-hosted relay uses the Relay URL below. Switching reconnects.",
+            position = 5
+    )
+    default ChatBackend chatBackend() {
+        return ChatBackend.ABLY;
+    }
+
+    @ConfigItem(
+            keyName = "relayUrl",
+            name = "Relay URL",
+            description = "Address of a self-hosted Global Chat relay, e.g. wss://relay.example.com",
+            position = 6
+    )
+    default String relayUrl() {
+        return "";
+    }
+
+    @ConfigItem(
+            keyName = "monthlyMessageBudget",
+            name = "Monthly Message Budget",
+            description = "Messages sent and received per month this client aims to stay under, the service has a shared monthly limit. When on course to go over, your world chat is sent less often and then paused. Private, friends and clan chat are never limited. 0 for no limit.",
+            position = 7
+    )
+    @Range(
+            min = 0
+    )
+    default int monthlyMessageBudget() {
+        return 150000;
+    }
+
     @ConfigItem(
         keyName = "filterOutFromBelowCblvl",
         name = "Hide Msgs < CB Level",
@@ -75,4 +118,14 @@ default String updateNotificationShown() {
     return "";
 }
 
+@ConfigItem(
+    keyName = "quotaUsage",
+    name = "",
+    description = "",
+    hidden = true
+)
+default String quotaUsage() {
+    return "";
+}
+
 }
@@ -34,14 +34,12 @@ import java.awt.GridBagConstraints;
 import java.awt.Insets;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.util.List;
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
 import java.util.Map;
 import javax.swing.Box;
@@ -72,16 +70,22 @@ public class GlobalChatInfoPanel extends PluginPanel {
     private final AblyManager ablyManager;
     private final SupporterManager supporterManager;
     private final Client client;
-    private final OkHttpClient httpClient;
-    private final Gson gson;
+    private final GlobalChatApiClient apiClient;
+    private final PlayerStatusLookup playerStatusLookup;
     private JLabel totalUsersLabel;
     private JLabel currentWorldUsersLabel;
     private JLabel topWorldLabel;
     private JLabel readOnlyStatusLabel;
     private JLabel connectionStatusLabel;
     private JLabel connectionLimitsLabel;
+    private JLabel channelDebugLabel;
+    private JLabel metricsDebugLabel;
+    // Last metrics shown, for per-second rates. Swing thread only.
+    private Map<String, Long> previousMetrics;
+    private long previousMetricsAt;
     private Timer userCountUpdateTimer;
     private Timer connectionStatusTimer;
+    private Timer connectionStatsTimer;
     private ConnectionStatsResponse connectionStats = null;
     private boolean hasReceivedValidData = false;
 
@@ -92,20 +96,20 @@ public class GlobalChatInfoPanel extends PluginPanel {
         this.ablyManager = null;
         this.supporterManager = null;
         this.client = null;
-        this.httpClient = null; // Don't create fresh instance
-        this.gson = null; // Don't create fresh instance
+        this.apiClient = null; // Don't create fresh instance
+        this.playerStatusLookup = null;
         init();
     }
 
-    public GlobalChatInfoPanel(boolean developerMode, AblyManager ablyManager, SupporterManager supporterManager, Client client, OkHttpClient httpClient, Gson gson, ConfigManager configManager) {
+    public GlobalChatInfoPanel(boolean developerMode, AblyManager ablyManager, SupporterManager supporterManager, Client client, GlobalChatApiClient apiClient, PlayerStatusLookup playerStatusLookup, ConfigManager configManager) {
         super(true); // Use built-in RuneLite scrolling
         this.configManager = configManager;
         this.developerMode = developerMode;
         this.ablyManager = ablyManager;
         this.supporterManager = supporterManager;
         this.client = client;
-        this.httpClient = httpClient;
-        this.gson = gson;
+        this.apiClient = apiClient;
+        this.playerStatusLookup = playerStatusLookup;
         init();
     }
 
@@ -442,6 +446,22 @@ public class GlobalChatInfoPanel extends PluginPanel {
         panel.add(debugInfo, gbc);
         gbc.gridy++;
 
+        // Channel attach timings, refreshed with the connection status
+        channelDebugLabel = new JLabel("<html>Channels: none</html>");
+        channelDebugLabel.setFont(FontManager.getRunescapeFont().deriveFont(10f));
+        channelDebugLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+        gbc.insets = new Insets(0, 0, 12, 0);
+        panel.add(channelDebugLabel, gbc);
+        gbc.gridy++;
+
+        // Live metrics, also exported through JMX as com.globalchat:type=ChatMetrics
+        metricsDebugLabel = new JLabel("<html>Metrics: none yet</html>");
+        metricsDebugLabel.setFont(FontManager.getRunescapeFont().deriveFont(10f));
+        metricsDebugLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+        gbc.insets = new Insets(0, 0, 12, 0);
+        panel.add(metricsDebugLabel, gbc);
+        gbc.gridy++;
+
         // Test capacity button
         JButton testCapacityBtn = createStyledButton("Test Capacity Error", ColorScheme.MEDIUM_GRAY_COLOR);
         testCapacityBtn.addActionListener(e -> ablyManager.testCapacityError());
@@ -459,12 +479,37 @@ public class GlobalChatInfoPanel extends PluginPanel {
         // Test update button
         JButton testUpdateBtn = createStyledButton("Test Update Notification", ColorScheme.MEDIUM_GRAY_COLOR);
         testUpdateBtn.addActionListener(e -> ablyManager.testUpdateNotification());
-        gbc.insets = new Insets(0, 0, 0, 0);
+        gbc.insets = new Insets(0, 0, 8, 0);
         panel.add(testUpdateBtn, gbc);
+        gbc.gridy++;
+
+        // Record inbound messages for replaying later, see MessageLog
+        JButton recordBtn = createStyledButton("Start Recording", ColorScheme.MEDIUM_GRAY_COLOR);
+        recordBtn.addActionListener(e -> toggleRecording(recordBtn));
+        gbc.insets = new Insets(0, 0, 0, 0);
+        panel.add(recordBtn, gbc);
 
         return panel;
     }
 
+    private void toggleRecording(JButton recordBtn) {
+        if (ablyManager.getMessageRecorder().isRecording()) {
+            long recorded = ablyManager.getMessageRecorder().getRecorded();
+            File file = ablyManager.stopRecording();
+            log.info("Recorded {} inbound messages to {}", recorded, file);
+            recordBtn.setText("Start Recording");
+            return;
+        }
+        try {
+            File file = ablyManager.startRecording();
+            if (file != null) {
+                recordBtn.setText("Stop Recording");
+            }
+        } catch (IOException ex) {
+            log.warn("Could not start recording", ex);
+        }
+    }
+
 
     private JButton createStyledButton(String text, Color backgroundColor) {
         JButton button = new JButton(text);
@@ -535,7 +580,7 @@ public class GlobalChatInfoPanel extends PluginPanel {
         gbc.gridy++;
 
         // Fetch connection stats immediately - let failure states handle retries
-        if (httpClient != null && gson != null) {
+        if (apiClient != null) {
             fetchConnectionStats();
         }
 
@@ -555,13 +600,13 @@ public class GlobalChatInfoPanel extends PluginPanel {
         // panel.add(totalUsersLabel, gbc);
         // gbc.gridy++;
 
-        // Current world users
-        // currentWorldUsersLabel = new JLabel("Current World: Loading...");
-        // currentWorldUsersLabel.setFont(FontManager.getRunescapeFont().deriveFont(Font.BOLD, 12f));
-        // currentWorldUsersLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
-        // gbc.insets = new Insets(0, 0, 3, 0);
-        // panel.add(currentWorldUsersLabel, gbc);
-        // gbc.gridy++;
+        // Current world users - from the world channel's occupancy, so it costs no API requests
+        currentWorldUsersLabel = new JLabel("Current World: Not connected");
+        currentWorldUsersLabel.setFont(FontManager.getRunescapeFont().deriveFont(Font.BOLD, 12f));
+        currentWorldUsersLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+        gbc.insets = new Insets(0, 0, 3, 0);
+        panel.add(currentWorldUsersLabel, gbc);
+        gbc.gridy++;
 
         // Top world
         // topWorldLabel = new JLabel("Top World: Loading...");
@@ -591,169 +636,78 @@ public class GlobalChatInfoPanel extends PluginPanel {
 
     private void updateUserCounts() {
         // Skip if we don't have the required dependencies (test constructor)
-        if (httpClient == null || gson == null) {
+        if (apiClient == null) {
             return;
         }
         
-        Request request = new Request.Builder()
-            .url("https://global-chat-frontend.vercel.app/api/user-counts")
-            .build();
-        
-        httpClient.newCall(request).enqueue(new okhttp3.Callback() {
-            @Override
-            public void onFailure(okhttp3.Call call, java.io.IOException e) {
-                log.debug("Failed to fetch user counts: {}", e.getMessage());
-            }
-
-            @Override
-            public void onResponse(okhttp3.Call call, Response response) throws java.io.IOException {
-                try {
-                    if (response.isSuccessful() && response.body() != null) {
-                        String responseBody = response.body().string();
-                        UserCountResponse userCountResponse = gson.fromJson(responseBody, UserCountResponse.class);
-                        
-                        if (userCountResponse != null) {
-                            // Get current world count if available
-                            String currentWorldId = getCurrentWorldId();
-                            int currentWorldCount = 0;
-                            if (currentWorldId != null && userCountResponse.worldCounts != null) {
-                                Integer worldCount = userCountResponse.worldCounts.get(currentWorldId);
-                                if (worldCount != null) {
-                                    currentWorldCount = worldCount;
-                                }
-                            }
-                            
-                            // Find top world
-                            String topWorldId = null;
-                            int topWorldCount = 0;
-                            if (userCountResponse.worldCounts != null) {
-                                for (Map.Entry<String, Integer> entry : userCountResponse.worldCounts.entrySet()) {
-                                    if (entry.getValue() > topWorldCount) {
-                                        topWorldCount = entry.getValue();
-                                        topWorldId = entry.getKey();
-                                    }
-                                }
+        apiClient.get(GlobalChatApiClient.Endpoint.USER_COUNTS, "", UserCountResponse.class)
+            .whenComplete((userCountResponse, error) -> {
+                if (error != null) {
+                    log.debug("Failed to fetch user counts: {}", error.getMessage());
+                    return;
+                }
+                if (userCountResponse != null) {
+                    // Find top world
+                    String topWorldId = null;
+                    int topWorldCount = 0;
+                    if (userCountResponse.worldCounts != null) {
+                        for (Map.Entry<String, Integer> entry : userCountResponse.worldCounts.entrySet()) {
+                            if (entry.getValue() > topWorldCount) {
+                                topWorldCount = entry.getValue();
+                                topWorldId = entry.getKey();
                             }
-                            
-                            UserCountData data = new UserCountData(userCountResponse.totalOnline, currentWorldCount, currentWorldId, topWorldId, topWorldCount);
-                            
-                            // Update UI on EDT
-                            javax.swing.SwingUtilities.invokeLater(() -> {
-                                // Only update if the labels exist (not commented out)
-                                if (totalUsersLabel != null) {
-                                    if (data.totalOnline > 0) {
-                                        totalUsersLabel.setText("Total Online: " + data.totalOnline + " players");
-                                        totalUsersLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
-                                    } else {
-                                        totalUsersLabel.setText("Total Online: Unavailable");
-                                        totalUsersLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
-                                    }
-                                }
-                                
-                                if (data.currentWorldId != null && currentWorldUsersLabel != null) {
-                                    if (data.currentWorldCount > 0) {
-                                        currentWorldUsersLabel.setText("World " + data.currentWorldId + ": " + data.currentWorldCount + " players");
-                                        currentWorldUsersLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
-                                    } else {
-                                        currentWorldUsersLabel.setText("World " + data.currentWorldId + ": 0 players");
-                                        currentWorldUsersLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
-                                    }
-                                } else if (currentWorldUsersLabel != null) {
-                                    currentWorldUsersLabel.setText("Current World: Not connected");
-                                    currentWorldUsersLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
-                                }
-                                
-                                // Update top world
-                                if (topWorldLabel != null) {
-                                    if (data.topWorldId != null && data.topWorldCount > 0) {
-                                        topWorldLabel.setText("Top World " + data.topWorldId + ": " + data.topWorldCount + " players");
-                                        topWorldLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
-                                    } else {
-                                        topWorldLabel.setText("Top World: No data");
-                                        topWorldLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
-                                    }
-                                }
-                            });
                         }
                     }
-                } finally {
-                    response.close();
+                    
+                    UserCountData data = new UserCountData(userCountResponse.totalOnline, topWorldId, topWorldCount);
+                    
+                    // Update UI on EDT
+                    javax.swing.SwingUtilities.invokeLater(() -> {
+                        // Only update if the labels exist (not commented out)
+                        if (totalUsersLabel != null) {
+                            if (data.totalOnline > 0) {
+                                totalUsersLabel.setText("Total Online: " + data.totalOnline + " players");
+                                totalUsersLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+                            } else {
+                                totalUsersLabel.setText("Total Online: Unavailable");
+                                totalUsersLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+                            }
+                        }
+                        
+                        // Update top world
+                        if (topWorldLabel != null) {
+                            if (data.topWorldId != null && data.topWorldCount > 0) {
+                                topWorldLabel.setText("Top World " + data.topWorldId + ": " + data.topWorldCount + " players");
+                                topWorldLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+                            } else {
+                                topWorldLabel.setText("Top World: No data");
+                                topWorldLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+                            }
+                        }
+                    });
                 }
-            }
-        });
+            });
     }
 
+    // Retries, backoff and de-duplication of the two 5 minute timers live in the API client
     private void fetchConnectionStats() {
-        fetchConnectionStatsWithRetry(0);
-    }
-
-    private void fetchConnectionStatsWithRetry(int attemptCount) {
         // Skip if we don't have the required dependencies
-        if (httpClient == null || gson == null) {
+        if (apiClient == null) {
             return;
         }
-        
-        // Don't retry indefinitely
-        if (attemptCount >= 3) {
-            log.debug("Max retry attempts reached for connection stats, giving up");
-            return;
-        }
-        
-        Request request = new Request.Builder()
-                .url("https://global-chat-frontend.vercel.app/api/stats/connections")
-                .build();
-
-        httpClient.newCall(request).enqueue(new okhttp3.Callback() {
-            @Override
-            public void onFailure(okhttp3.Call call, java.io.IOException e) {
-                log.debug("Error fetching connection stats (attempt {}): {}", attemptCount + 1, e.getMessage());
-                
-                // Retry on network failures with exponential backoff
-                if (attemptCount < 2) {
-                    int delayMs = 1000 * (int) Math.pow(2, attemptCount); // 1s, 2s, 4s
-                    SwingUtilities.invokeLater(() -> {
-                        Timer retryTimer = new Timer(delayMs, retryEvent -> {
-                            fetchConnectionStatsWithRetry(attemptCount + 1);
-                        });
-                        retryTimer.setRepeats(false);
-                        retryTimer.start();
-                    });
-                }
-            }
 
-            @Override
-            public void onResponse(okhttp3.Call call, Response response) throws java.io.IOException {
-                try {
-                    if (response.isSuccessful() && response.body() != null) {
-                        String responseBody = response.body().string();
-                        parseConnectionStatsResponse(responseBody);
-                        log.debug("Successfully fetched connection stats on attempt {}", attemptCount + 1);
-                    } else {
-                        log.debug("Failed to fetch connection stats: HTTP {} (attempt {})", response.code(), attemptCount + 1);
-                        
-                        // Retry on HTTP errors (5xx server errors, but not 4xx client errors)
-                        if (response.code() >= 500 && attemptCount < 2) {
-                            int delayMs = 2000 * (attemptCount + 1); // 2s, 4s
-                            SwingUtilities.invokeLater(() -> {
-                                Timer retryTimer = new Timer(delayMs, retryEvent -> {
-                                    fetchConnectionStatsWithRetry(attemptCount + 1);
-                                });
-                                retryTimer.setRepeats(false);
-                                retryTimer.start();
-                            });
-                        }
-                    }
-                } finally {
-                    response.close();
+        apiClient.get(GlobalChatApiClient.Endpoint.CONNECTION_STATS, "", ConnectionStatsResponse.class)
+            .whenComplete((response, error) -> {
+                if (error != null) {
+                    log.debug("Error fetching connection stats: {}", error.getMessage());
+                    return;
                 }
-            }
-        });
+                applyConnectionStats(response);
+            });
     }
     
-    private void parseConnectionStatsResponse(String json) {
+    private void applyConnectionStats(ConnectionStatsResponse response) {
         try {
-            ConnectionStatsResponse response = gson.fromJson(json, ConnectionStatsResponse.class);
-            
             if (response != null && response.maxConnections > 0) {
                 // Don't update to 0 if we already have valid non-zero data
                 if (this.connectionStats != null && 
@@ -873,15 +827,11 @@ public class GlobalChatInfoPanel extends PluginPanel {
     
     private static class UserCountData {
         final int totalOnline;
-        final int currentWorldCount;
-        final String currentWorldId;
         final String topWorldId;
         final int topWorldCount;
         
-        UserCountData(int totalOnline, int currentWorldCount, String currentWorldId, String topWorldId, int topWorldCount) {
+        UserCountData(int totalOnline, String topWorldId, int topWorldCount) {
             this.totalOnline = totalOnline;
-            this.currentWorldCount = currentWorldCount;
-            this.currentWorldId = currentWorldId;
             this.topWorldId = topWorldId;
             this.topWorldCount = topWorldCount;
         }
@@ -1014,6 +964,9 @@ public class GlobalChatInfoPanel extends PluginPanel {
         if (connectionStatusTimer != null) {
             connectionStatusTimer.stop();
         }
+        if (connectionStatsTimer != null) {
+            connectionStatsTimer.stop();
+        }
     }
     
     private void updateConnectionStatus() {
@@ -1026,14 +979,110 @@ public class GlobalChatInfoPanel extends PluginPanel {
             } else if (ablyManager.isConnected()) {
                 connectionStatusLabel.setText("\u25cf Connected to Global Chat");
                 connectionStatusLabel.setForeground(new Color(0, 200, 0)); // Green
+            } else if (ablyManager.getConnectionAdmission().isWaiting()) {
+                // Service is at capacity, show our place in line instead of spamming the chatbox
+                ConnectionAdmission admission = ablyManager.getConnectionAdmission();
+                long waitSeconds = (admission.getEstimatedWaitMillis(System.currentTimeMillis()) + 999) / 1000;
+                int queuePosition = admission.getQueuePosition();
+                String queueText = queuePosition >= 0 ? "Queue position " + queuePosition + ", " : "";
+                connectionStatusLabel.setText("<html>\u25cf Global Chat is full<br>" + queueText
+                        + "retrying in ~" + waitSeconds + "s</html>");
+                connectionStatusLabel.setForeground(Color.ORANGE);
             } else {
                 connectionStatusLabel.setText("\u25cf Disconnected");
                 connectionStatusLabel.setForeground(new Color(200, 0, 0)); // Red
             }
-            
+
+            if (currentWorldUsersLabel != null) {
+                currentWorldUsersLabel.setText(buildCurrentWorldText());
+            }
+            if (channelDebugLabel != null && ablyManager != null) {
+                channelDebugLabel.setText(buildChannelDebugText());
+            }
+            if (metricsDebugLabel != null && ablyManager != null) {
+                metricsDebugLabel.setText(buildMetricsDebugText());
+            }
         });
     }
+
+    private String buildCurrentWorldText() {
+        String worldId = getCurrentWorldId();
+        if (ablyManager == null || worldId == null || !ablyManager.isConnected()) {
+            return "Current World: Not connected";
+        }
+        int users = ablyManager.getChannelOccupancy().getSubscribers("w:" + worldId);
+        if (users == ChannelOccupancy.UNKNOWN) {
+            return "World " + worldId + ": Unknown";
+        }
+        return "World " + worldId + ": " + users + (users == 1 ? " player" : " players");
+    }
+
+    private String buildChannelDebugText() {
+        StringBuilder text = new StringBuilder("<html>");
+        long loginToReady = ablyManager.getLastLoginToReadyMillis();
+        text.append("Login to ready: ").append(loginToReady >= 0 ? loginToReady + " ms" : "n/a");
+        for (ChannelRegistry.ChannelEntry entry : ablyManager.getChannelRegistry().snapshot().values()) {
+            text.append("<br>").append(entry.getName()).append(": ").append(entry.getState());
+            if (entry.getAttachMillis() >= 0) {
+                text.append(" (").append(entry.getAttachMillis()).append(" ms)");
+            }
+        }
+        if (apiClient != null) {
+            for (GlobalChatApiClient.Endpoint endpoint : GlobalChatApiClient.Endpoint.values()) {
+                GlobalChatApiClient.EndpointMetrics metrics = apiClient.getMetrics(endpoint);
+                text.append("<br>API ").append(endpoint).append(": ").append(metrics.getRequests()).append(" req, ")
+                        .append(metrics.getCacheHits()).append(" cached, ").append(metrics.getCoalesced()).append(" joined, ")
+                        .append(metrics.getFailures()).append(" failed, ").append(metrics.getAverageLatencyMillis()).append(" ms avg");
+            }
+        }
+        if (playerStatusLookup != null && playerStatusLookup.getLookups() > 0) {
+            text.append("<br>GC Status lookups: ").append(playerStatusLookup.getLookups())
+                    .append(", ").append(Math.round(playerStatusLookup.getHitRate() * 100)).append("% answered locally (")
+                    .append(playerStatusLookup.getSeenHits()).append(" seen, ").append(playerStatusLookup.getCacheHits())
+                    .append(" cached), ").append(playerStatusLookup.getAverageLatencyMillis()).append(" ms avg, ")
+                    .append(playerStatusLookup.getSceneLookups()).append(" for scene badges");
+        }
+        return text.append("</html>").toString();
+    }
     
+    private String buildMetricsDebugText() {
+        Map<String, Long> metrics = ablyManager.getMetrics().snapshot();
+        long now = System.currentTimeMillis();
+        StringBuilder text = new StringBuilder("<html>");
+        text.append("Publishes: ").append(metrics.get("publish.attempts")).append(" sent, ")
+                .append(metrics.get("publish.acks")).append(" acked, ").append(metrics.get("publish.failures"))
+                .append(" failed, ").append(metrics.get("publish.rejected")).append(" dropped, ")
+                .append(metrics.get("publish.suppressedEmpty")).append(" skipped (empty world), ")
+                .append(metrics.get("publish.queueDepth")).append(" queued");
+        text.append("<br>Ack: p50 ").append(metrics.get("publish.ackMillis.p50")).append(" ms, p99 ")
+                .append(metrics.get("publish.ackMillis.p99")).append(" ms");
+        for (Map.Entry<String, Long> metric : metrics.entrySet()) {
+            if (!metric.getKey().startsWith("inbound.")) {
+                continue;
+            }
+            text.append("<br>In ").append(metric.getKey().substring("inbound.".length())).append(": ")
+                    .append(metric.getValue());
+            Long previous = previousMetrics != null ? previousMetrics.get(metric.getKey()) : null;
+            if (previous != null && now > previousMetricsAt) {
+                double perSecond = (metric.getValue() - previous) * 1000.0 / (now - previousMetricsAt);
+                text.append(String.format(" (%.1f/s)", perSecond));
+            }
+        }
+        text.append("<br>Filtered: ").append(metrics.get("filtered.repeat")).append(" repeat, ")
+                .append(metrics.get("filtered.invalidName")).append(" invalid name, ")
+                .append(metrics.get("filtered.combatLevel")).append(" combat level, ")
+                .append(metrics.get("filtered.nameTooLong")).append(" long name, ")
+                .append(metrics.get("filtered.loggedOut")).append(" logged out");
+        Long supporterAge = metrics.get("supporters.cacheAgeMillis");
+        if (supporterAge != null) {
+            text.append("<br>Supporters: ").append(metrics.get("supporters.fetches")).append(" fetches, ")
+                    .append(supporterAge >= 0 ? supporterAge / 60000 + " min old" : "none yet");
+        }
+        previousMetrics = metrics;
+        previousMetricsAt = now;
+        return text.append("</html>").toString();
+    }
+
     private void startConnectionStatusUpdates() {
         // Update immediately
         updateConnectionStatus();
@@ -1044,7 +1093,7 @@ public class GlobalChatInfoPanel extends PluginPanel {
         connectionStatusTimer.start();
         
         // Update connection stats every 5 minutes (matches frontend CDN cache window)
-        Timer connectionStatsTimer = new Timer(300000, e -> fetchConnectionStats());
+        connectionStatsTimer = new Timer(300000, e -> fetchConnectionStats());
         connectionStatsTimer.start();
     }
 }
\ No newline at end of file
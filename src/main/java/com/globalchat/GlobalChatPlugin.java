@@ -27,15 +27,15 @@ package com.globalchat;
 import net.runelite.client.callback.ClientThread;
 
 import com.google.inject.Provides;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Executors;
@@ -51,7 +51,12 @@ import net.runelite.api.events.ChatMessage;
 import net.runelite.api.events.ClanChannelChanged;
 import net.runelite.api.events.FriendsChatChanged;
 import net.runelite.api.events.FriendsChatMemberJoined;
+import net.runelite.api.events.ClientTick;
+import net.runelite.api.events.PlayerSpawned;
+import net.runelite.api.events.GameTick;
+import net.runelite.client.RuneLite;
 import net.runelite.client.config.ConfigManager;
+import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.menus.MenuManager;
 import net.runelite.client.ui.ClientToolbar;
 import net.runelite.client.ui.NavigationButton;
@@ -111,11 +116,15 @@ public class GlobalChatPlugin extends Plugin {
 	@Setter
 	private String theGuesttheClanName;
 
+	// Sanitized name of the logged in player, cleared on logout. Client thread only.
+	private String localPlayerName;
+
 	private final Map<Integer, Long> lastFailedSendMessageTimePerWorld = new ConcurrentHashMap<>();
 	private static final long FAILED_SEND_MESSAGE_COOLDOWN = 1800000; // 30 minutes
 
-	private long lastReconnectAttempt = 0;
 	private int reconnectAttempts = 0;
+	// The auto-reconnect attempt in flight, a new one is only started once this completes
+	private volatile CompletableFuture<Void> reconnecting;
 
 	@Getter
 	private final HashMap<String, ArrayList<String>> previousMessages = new HashMap<>();
@@ -135,7 +144,23 @@ public class GlobalChatPlugin extends Plugin {
 	private SupporterManager supporterManager;
 
 	@Inject
-	private OkHttpClient okHttpClient;
+	private GlobalChatApiClient apiClient;
+
+	@Inject
+	private ChatMetrics chatMetrics;
+
+	@Inject
+	private PlayerStatusLookup playerStatusLookup;
+
+	@Inject
+	private SceneStatusTracker sceneStatusTracker;
+
+	@Inject
+	private OverheadTextScheduler overheadTextScheduler;
+
+	// Read for every menu entry / client tick, so kept here instead of going through the config proxy
+	volatile boolean showPlayerLookup;
+	private volatile boolean showGlobalChatBadges;
 
 	@Inject
 	private Gson gson;
@@ -144,10 +169,16 @@ public class GlobalChatPlugin extends Plugin {
 	private MenuManager menuManager;
 
 	private ScheduledExecutorService scheduler;
+	// As last read from or written to the config, every write is a settings save and sync
+	private volatile String savedQuotaUsage;
+
+	private static final File METRICS_DIR = new File(RuneLite.RUNELITE_DIR, "globalchat-metrics");
+	private static final long METRICS_DUMP_INTERVAL_SECONDS = 60;
+	private static final long BUDGET_CHECK_INTERVAL_SECONDS = 60;
 
-	// Tracking for chat command transformations - using ConcurrentHashMap for thread safety
-	private final Map<String, Long> pendingCommands = new ConcurrentHashMap<>();
-	private final Map<String, String> commandTransformations = new ConcurrentHashMap<>();
+	// Our "!" commands waiting for the chat commands plugin to fill them in
+	private final CommandTransformations commandTransformations = new CommandTransformations(
+			(message, playerName, approach) -> publishMessageToGlobalChat("w", message, playerName, approach));
 
 	@Override
 	protected void startUp() throws Exception {
@@ -157,10 +188,6 @@ public class GlobalChatPlugin extends Plugin {
 		// Clear old pending commands and previous messages periodically
 		scheduler.scheduleAtFixedRate(() -> {
 			try {
-				long now = System.currentTimeMillis();
-				// Clean up pending commands (5 seconds)
-				pendingCommands.entrySet().removeIf(entry -> now - entry.getValue() > 5000);
-				
 				// Clean up previous messages to prevent memory leak (keep last 1000 per player, max 1 hour old)
 				previousMessages.entrySet().removeIf(entry -> {
 					ArrayList<String> messages = entry.getValue();
@@ -175,7 +202,8 @@ public class GlobalChatPlugin extends Plugin {
 			}
 		}, 10, 10, TimeUnit.SECONDS);
 
-		// Auto-reconnect mechanism - try to reconnect every 10 seconds if disconnected
+		// Auto-reconnect mechanism - poll every second, the admission queue in AblyManager
+		// decides when an attempt is actually allowed (jittered backoff / server retry-after)
 		scheduler.scheduleAtFixedRate(() -> {
 			try {
 				// Only run reconnection logic if we need to (not connected and logged in)
@@ -186,74 +214,44 @@ public class GlobalChatPlugin extends Plugin {
 								client.getLocalPlayer() != null &&
 								!ablyManager.isConnected()) {
 
-						long now = System.currentTimeMillis();
-
-						// Implement exponential backoff to prevent spam
-						long backoffTime = Math.min(60000,
-								10000 * (long) Math.pow(2, Math.min(reconnectAttempts / 3, 4)));
-						if (now - lastReconnectAttempt < backoffTime) {
-							return true; // Skip this attempt due to backoff
-						}
-
 						String playerNameRaw = client.getLocalPlayer().getName();
 						String world = String.valueOf(client.getWorld());
 						if (playerNameRaw != null && !playerNameRaw.isEmpty()) {
 							// Use sanitized name for consistency
 							String playerName = Text.sanitize(playerNameRaw);
-							
-							lastReconnectAttempt = now;
-							reconnectAttempts++;
-
-							// Only log every 3rd attempt to reduce spam
-							if (reconnectAttempts % 3 == 1) {
-								log.debug("Auto-reconnect attempt #{} for player: {} (raw: {})", 
-									reconnectAttempts, playerName, playerNameRaw);
-							}
+							Map<String, String> channels = getLoginChannels(playerName, world);
 
 							// Execute reconnection off client thread
 							scheduler.execute(() -> {
-								try {
-									ablyManager.startConnection(playerName);
-
-									// Re-subscribe to channels using captured world info
-									ablyManager.subscribeToCorrectChannel("p:" + playerName, world);
-									ablyManager.subscribeToCorrectChannel("w:" + world, "pub");
-
-									// Re-subscribe to friends chat if available
-									clientThread.invokeLater(() -> {
-										FriendsChatManager friendsChatManager = client.getFriendsChatManager();
-										if (friendsChatManager != null && friendsChatManager.getOwner() != null) {
-											String friendsChat = friendsChatManager.getOwner();
-											ablyManager.subscribeToCorrectChannel("f:" + friendsChat, "pub");
+								// The previous attempt is still running, or it is backing off after a
+								// rejection or failure
+								if ((reconnecting != null && !reconnecting.isDone()) ||
+										!ablyManager.canAttemptConnection()) {
+									return;
+								}
+
+								reconnectAttempts++;
+								final int attempt = reconnectAttempts;
+								final long started = System.nanoTime();
+								// Only log every 3rd attempt to reduce spam
+								if (reconnectAttempts % 3 == 1) {
+									log.debug("Auto-reconnect attempt #{} for player: {} (raw: {})", 
+										reconnectAttempts, playerName, playerNameRaw);
+								}
+
+								// Connect (or join the connection in progress), then re-subscribe to
+								// all channels in parallel using captured client info
+								reconnecting = ablyManager.connect(playerName)
+									.thenCompose(ignored -> ablyManager.attachOnLogin(channels))
+									.whenComplete((ignored, error) -> {
+										ChatEvents.reconnectAttempt(attempt, started, error);
+										if (error == null) {
+											reconnectAttempts = 0;
+										} else {
+											// AblyManager.connect already backed off if it was a real attempt
+											log.debug("Reconnection failed: {}", error.getMessage());
 										}
-										return true;
 									});
-									
-									// Check connection after a delay and notify user if failed
-									scheduler.schedule(() -> {
-										if (!ablyManager.isConnected()) {
-											// Only show message every 5 attempts to reduce spam
-											if (reconnectAttempts % 5 == 1) {
-												clientThread.invokeLater(() -> {
-													client.addChatMessage(ChatMessageType.GAMEMESSAGE, "",
-														"<col=ff9040>Global Chat at connection limit (200 players max) - retrying... Support on Patreon to increase limits!</col>", null);
-													return true;
-												});
-											}
-										}
-									}, 2000, TimeUnit.MILLISECONDS);
-									
-								} catch (Exception e) {
-									log.debug("Error during reconnection", e);
-									// Only show error message every 5 attempts to reduce spam
-									if (reconnectAttempts % 5 == 1) {
-										clientThread.invokeLater(() -> {
-											client.addChatMessage(ChatMessageType.GAMEMESSAGE, "",
-												"<col=ff0000>Global Chat full - 200 player limit reached! Support on Patreon to increase connection limits!</col>", null);
-											return true;
-										});
-									}
-								}
 							});
 						}
 						} else if (ablyManager.isConnected()) {
@@ -266,24 +264,51 @@ public class GlobalChatPlugin extends Plugin {
 			} catch (Exception e) {
 				log.debug("Error during auto-reconnect attempt", e);
 			}
-		}, 10, 10, TimeUnit.SECONDS);
+		}, 1, 1, TimeUnit.SECONDS);
+
+		// This month's message counts from earlier sessions, then the budget is re-checked (and the counts
+		// saved) every minute. Checked once now so the login channels already respect it.
+		restoreQuotaUsage();
+		checkMessageBudget();
+		scheduler.scheduleAtFixedRate(this::checkMessageBudget,
+				BUDGET_CHECK_INTERVAL_SECONDS, BUDGET_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+		apiClient.exportMetrics(chatMetrics);
+		chatMetrics.registerMBean();
+		if (developerMode) {
+			// One file per session, a snapshot of every metric each interval
+			File metricsFile = new File(METRICS_DIR, "metrics-" + System.currentTimeMillis() + ".csv");
+			scheduler.scheduleAtFixedRate(() -> {
+				try {
+					chatMetrics.appendCsv(metricsFile);
+				} catch (Exception e) {
+					log.debug("Could not write metrics to {}", metricsFile, e);
+				}
+			}, METRICS_DUMP_INTERVAL_SECONDS, METRICS_DUMP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+		}
 
 		// ablyManager.startConnection();
 		onLoggedInGameState(); // Call this to handle turning plugin on when already logged in, should do
 								// nothing on initial call
 
 		// Setup info panel
-		infoPanel = new GlobalChatInfoPanel(developerMode, ablyManager, supporterManager, client, okHttpClient, gson,
-				configManager);
+		infoPanel = new GlobalChatInfoPanel(developerMode, ablyManager, supporterManager, client, apiClient,
+				playerStatusLookup, configManager);
 		log.debug("Created GlobalChatInfoPanel");
 
 		log.debug("Global Chat plugin started successfully");
 
 		// Add player menu item for GC Status if lookup is enabled
-		if (config.showPlayerLookup()) {
+		showPlayerLookup = config.showPlayerLookup();
+		if (showPlayerLookup) {
 			menuManager.addPlayerMenuItem("GC Status");
 		}
 
+		showGlobalChatBadges = config.showGlobalChatBadges();
+		if (showGlobalChatBadges) {
+			clientThread.invokeLater(this::trackScenePlayers);
+		}
+
 		// Create navigation button with simple icon
 		navButton = NavigationButton.builder()
 				.tooltip("Global Chat Info")
@@ -300,6 +325,7 @@ public class GlobalChatPlugin extends Plugin {
 	protected void shutDown() throws Exception {
 		// Shutdown AblyManager properly
 		ablyManager.shutdown();
+		saveQuotaUsage();
 		shouldConnect = true;
 
 		// Clean up scheduler - just shutdown without blocking
@@ -307,6 +333,8 @@ public class GlobalChatPlugin extends Plugin {
 			scheduler.shutdown();
 		}
 
+		chatMetrics.unregisterMBean();
+
 		// Clean up supporter manager
 		if (supporterManager != null) {
 			supporterManager.shutdown();
@@ -318,7 +346,7 @@ public class GlobalChatPlugin extends Plugin {
 		}
 
 		// Clean up menu manager
-		if (config.showPlayerLookup()) {
+		if (showPlayerLookup) {
 			menuManager.removePlayerMenuItem("GC Status");
 		}
 
@@ -333,20 +361,28 @@ public class GlobalChatPlugin extends Plugin {
 		shouldConnect = true;
 
 		// Force cleanup before reconnecting
-		ablyManager.closeConnection();
+		CompletableFuture<Void> closed = ablyManager.closeConnection();
+		sceneStatusTracker.clear();
+		clientThread.invokeLater(() -> {
+			commandTransformations.clear();
+			overheadTextScheduler.clear();
+		});
 
 		// Do all client data validation on client thread, then start connection
 		clientThread.invokeLater(() -> {
 			if (client.getLocalPlayer() != null && client.getLocalPlayer().getName() != null) {
 				String playerName = client.getLocalPlayer().getName();
-				// All conditions satisfied, start connection after brief delay for cleanup
-				scheduler.schedule(() -> {
-					ablyManager.startConnection(playerName);
-					// Refresh user counts after world change
-					if (infoPanel != null) {
-						infoPanel.refreshUserCounts();
-					}
-				}, 100, TimeUnit.MILLISECONDS);
+				// Reconnect as soon as the old connection has been closed
+				closed.thenCompose(ignored -> ablyManager.connect(playerName))
+					.whenComplete((ignored, error) -> {
+						if (error != null) {
+							log.debug("Connection after world change failed: {}", error.getMessage());
+						}
+						// Refresh user counts after world change
+						if (infoPanel != null) {
+							infoPanel.refreshUserCounts();
+						}
+					});
 			}
 			return true;
 		});
@@ -358,6 +394,7 @@ public class GlobalChatPlugin extends Plugin {
 			onLoggedInGameState();
 		}
 		if (event.getGameState() == GameState.LOGIN_SCREEN) {
+			localPlayerName = null;
 			onLoggedOut();
 		}
 	}
@@ -381,7 +418,7 @@ public class GlobalChatPlugin extends Plugin {
 			FriendsChatManager friendsChatManager = client.getFriendsChatManager();
 			if (friendsChatManager != null) {
 				friendsChat = friendsChatManager.getOwner();
-				ablyManager.subscribeToCorrectChannel("f:" + friendsChat, "pub");
+				ablyManager.attach("f:" + friendsChat, "pub");
 			}
 		}
 	}
@@ -407,16 +444,21 @@ public class GlobalChatPlugin extends Plugin {
 
 			// Get all needed client data
 			String world = String.valueOf(client.getWorld());
+			// Use sanitized name for consistency with lookups
+			String sanitizedName = Text.sanitize(name);
+			Map<String, String> loginChannels = getLoginChannels(sanitizedName, world);
 
 			// All conditions satisfied, execute connection logic off client thread
 			scheduler.execute(() -> {
-				// Use sanitized name for consistency with lookups
-				String sanitizedName = Text.sanitize(name);
 				log.debug("Connecting with player name - Raw: '{}', Sanitized: '{}'", name, sanitizedName);
 				
-				ablyManager.startConnection(sanitizedName);
-				ablyManager.subscribeToCorrectChannel("p:" + sanitizedName, world);
-				ablyManager.subscribeToCorrectChannel("w:" + world, "pub");
+				ablyManager.connect(sanitizedName)
+					.thenCompose(ignored -> ablyManager.attachOnLogin(loginChannels))
+					.whenComplete((ignored, error) -> {
+						if (error != null) {
+							log.debug("Login connection not ready, auto-reconnect will retry: {}", error.getMessage());
+						}
+					});
 				shouldConnect = false;
 
 				// Show update notification if needed
@@ -427,6 +469,29 @@ public class GlobalChatPlugin extends Plugin {
 		});
 	}
 
+	// Every channel we should be on right now. Must be called on the client thread.
+	private Map<String, String> getLoginChannels(String playerName, String world) {
+		Map<String, String> channels = new LinkedHashMap<>();
+		channels.put("p:" + playerName, world);
+		if (ablyManager.getQuotaTracker().getLevel() != QuotaTracker.Level.WORLD_PAUSED) {
+			channels.put("w:" + world, "pub");
+		}
+
+		FriendsChatManager friendsChatManager = client.getFriendsChatManager();
+		if (friendsChatManager != null && friendsChatManager.getOwner() != null) {
+			channels.put("f:" + friendsChatManager.getOwner(), "pub");
+		}
+		ClanChannel clanChannel = client.getClanChannel();
+		if (clanChannel != null) {
+			channels.put("c:" + clanChannel.getName(), "pub");
+		}
+		ClanChannel guestClanChannel = client.getGuestClanChannel();
+		if (guestClanChannel != null) {
+			channels.put("c:" + guestClanChannel.getName(), "pub");
+		}
+		return channels;
+	}
+
 	private void onLoggedOut() {
 		clientThread.invokeLater(() -> {
 			// we return true in this case as something went wrong and somehow the state
@@ -437,6 +502,9 @@ public class GlobalChatPlugin extends Plugin {
 			}
 			shouldConnect = true;
 			ablyManager.closeConnection();
+			sceneStatusTracker.clear();
+			commandTransformations.clear();
+			overheadTextScheduler.clear();
 			// ablyManager.startConnection();
 
 			return true;
@@ -455,7 +523,7 @@ public class GlobalChatPlugin extends Plugin {
 					: "c:" +
 							theClanName;
 			if (ablyManager != null) {
-				ablyManager.closeSpecificChannel(channelPrefix);
+				ablyManager.detach(channelPrefix);
 			}
 
 			if (isGuest) {
@@ -465,7 +533,7 @@ public class GlobalChatPlugin extends Plugin {
 			}
 		} else {
 			String targetChannelName = "c:" + channelName;
-			ablyManager.subscribeToCorrectChannel(targetChannelName, "pub");
+			ablyManager.attach(targetChannelName, "pub");
 
 			if (isGuest) {
 				theGuesttheClanName = channelName;
@@ -479,162 +547,61 @@ public class GlobalChatPlugin extends Plugin {
 	public void onFriendsChatChanged(FriendsChatChanged event) {
 		if (!event.isJoined()) {
 			if (friendsChat != null) {
-				ablyManager.closeSpecificChannel("f:" + friendsChat);
+				ablyManager.detach("f:" + friendsChat);
 				friendsChat = null;
 			}
 		}
 	}
 
-	// Single method approach using scheduler to handle transformation detection
 	@Subscribe
 	public void onChatMessage(ChatMessage event) {
-		// Skip messages we re-injected ourselves to add icons. Without this,
-		// the re-injection below loops back into this handler and stack-overflows
-		// on Leagues/QSR/Ironman where account icons get prepended.
+		// Skip lines that already carry our icon, e.g. received global messages added by AblyManager
 		if (event.getName() != null && event.getName().contains("<img=19>")) {
 			return;
 		}
-		String cleanedMessage = Text.removeTags(event.getMessage());
-		String cleanedName = Text.sanitize(event.getName());
-		boolean isPublic = event.getType().equals(ChatMessageType.PUBLICCHAT);
-
-		String localPlayerName = client.getLocalPlayer() != null ? client.getLocalPlayer().getName() : null;
-		boolean isLocalPlayerSendingMessage = localPlayerName != null && cleanedName.equals(Text.sanitize(localPlayerName));
-
-		log.debug("Chat event - Type: {}, IsLocal: {}", event.getType(), isLocalPlayerSendingMessage);
-
-		if (isPublic && isLocalPlayerSendingMessage) {
-			log.debug("Processing local public message from: '{}'", cleanedName);
-
-			// Check if this is a command
-			if (cleanedMessage.matches("^![a-zA-Z]+.*")) {
-				log.debug("Chat command detected: '{}'", cleanedMessage);
+		ChatEvent chat = ChatEvent.classify(event, getLocalPlayerName());
 
-				// Store original message and schedule transformation check
-				String originalMessage = cleanedMessage;
-				pendingCommands.put(originalMessage, System.currentTimeMillis());
+		log.debug("Chat event - Type: {}, IsLocal: {}", chat.getType(), chat.isLocal());
 
-				// Capture MessageNode reference on client thread (safe)
-				final MessageNode messageNode = event.getMessageNode();
+		if (chat.getChannel() == ChatEvent.Channel.PUBLIC && chat.isLocal()) {
+			log.debug("Processing local public message from: '{}'", chat.getSender());
 
-				// Check for transformation immediately and retry on failure
-				checkForTransformationWithRetry(originalMessage, cleanedName, messageNode, 1);
+			if (chat.isCommand()) {
+				log.debug("Chat command detected: '{}'", chat.getText());
 
-			} else {
-				publishMessageToGlobalChat("w", cleanedMessage, cleanedName, "REGULAR_MESSAGE");
+				// Published once the chat commands plugin has filled it in, see onClientTick
+				commandTransformations.track(chat.getMessageNode(), chat.getText(), chat.getSender(),
+						System.currentTimeMillis());
+			} else if (publishMessageToGlobalChat("w", chat.getText(), chat.getSender(), "REGULAR_MESSAGE")) {
+				// Icons only on lines that actually went out
+				decorateOwnPublicMessage(chat);
 			}
 		}
 
-		handleAllGlobalMessages(event, cleanedMessage, cleanedName, isLocalPlayerSendingMessage);
+		handleAllGlobalMessages(chat);
 	}
 
-	private void checkForTransformationWithRetry(String originalMessage, String playerName, MessageNode messageNode,
-			int attempt) {
-		// Immediately check for transformation on client thread
-		checkForTransformation(originalMessage, playerName, messageNode, attempt, (success) -> {
-			if (!success && attempt < 2) {
-				// Retry once after 150ms delay if first attempt failed
-				scheduler.schedule(() -> {
-					try {
-						if (pendingCommands.containsKey(originalMessage)) {
-							// Ensure retry also happens on client thread
-							clientThread.invokeLater(() -> {
-								checkForTransformationWithRetry(originalMessage, playerName, messageNode, attempt + 1);
-								return true;
-							});
-						}
-					} catch (Exception e) {
-						log.debug("Error during transformation retry for: {}", originalMessage, e);
-						// Clean up on error
-						pendingCommands.remove(originalMessage);
-					}
-				}, 150, TimeUnit.MILLISECONDS);
-			}
-		});
-	}
-
-	private void checkForTransformation(String originalMessage, String playerName, MessageNode messageNode,
-			int attempt) {
-		checkForTransformation(originalMessage, playerName, messageNode, attempt, null);
-	}
-
-	private void checkForTransformation(String originalMessage, String playerName, MessageNode messageNode,
-			int attempt, java.util.function.Consumer<Boolean> callback) {
-		try {
-			log.debug("Checking transformation attempt #{} for command: '{}'", attempt, originalMessage);
-
-			// Add null check for MessageNode
-			if (messageNode != null) {
-				try {
-					// Access MessageNode safely - we're already on client thread from event handler
-					String runeLiteMessage = messageNode.getRuneLiteFormatMessage();
-					String currentMessage = runeLiteMessage != null ? Text.removeTags(runeLiteMessage)
-							: originalMessage; // Fallback to original if no RuneLite message
-
-					boolean transformationFound = !originalMessage.equals(currentMessage);
-					if (transformationFound) {
-						log.debug("Command transformed: '{}' -> '{}'", originalMessage, currentMessage);
-						commandTransformations.put(originalMessage, currentMessage);
-						// Send the transformed message (without color formatting)
-						publishMessageToGlobalChat("w", currentMessage, playerName, "TRANSFORMATION_DETECTED");
-						pendingCommands.remove(originalMessage);
-						if (callback != null)
-							callback.accept(true);
-					} else if (attempt >= 2) {
-						// Final attempt - no transformation found, send original
-						publishMessageToGlobalChat("w", originalMessage, playerName, "COMMAND_NO_TRANSFORMATION");
-						pendingCommands.remove(originalMessage);
-						if (callback != null)
-							callback.accept(true);
-					} else {
-						// No transformation yet, signal failure for retry
-						if (callback != null)
-							callback.accept(false);
-					}
-				} catch (Exception e) {
-					log.debug("Error accessing MessageNode for '{}': ", originalMessage, e);
-					if (attempt >= 2) {
-						publishMessageToGlobalChat("w", originalMessage, playerName, "MESSAGENODE_ACCESS_ERROR");
-						pendingCommands.remove(originalMessage);
-						if (callback != null)
-							callback.accept(true);
-					} else {
-						if (callback != null)
-							callback.accept(false);
-					}
-				}
-			} else {
-				// Handle null MessageNode case
-				log.debug("MessageNode is null for command: '{}'", originalMessage);
-				if (attempt >= 2) {
-					publishMessageToGlobalChat("w", originalMessage, playerName, "MESSAGENODE_NULL");
-					pendingCommands.remove(originalMessage);
-					if (callback != null)
-						callback.accept(true);
-				} else {
-					if (callback != null)
-						callback.accept(false);
-				}
-			}
-
-		} catch (Exception e) {
-			log.debug("Error checking transformation for '{}': ", originalMessage, e);
-			if (attempt >= 2) {
-				publishMessageToGlobalChat("w", originalMessage, playerName, "TRANSFORMATION_CHECK_ERROR");
-				pendingCommands.remove(originalMessage);
-				if (callback != null)
-					callback.accept(true);
-			} else {
-				if (callback != null)
-					callback.accept(false);
+	// Sanitized, worked out once per login rather than for every chat message
+	private String getLocalPlayerName() {
+		if (localPlayerName == null) {
+			Player localPlayer = client.getLocalPlayer();
+			if (localPlayer != null && localPlayer.getName() != null) {
+				localPlayerName = Text.sanitize(localPlayer.getName());
 			}
 		}
+		return localPlayerName;
 	}
 
-	private void publishMessageToGlobalChat(String type, String message, String playerName, String approach) {
+	// Whether the message was handed to the transport
+	private boolean publishMessageToGlobalChat(String type, String message, String playerName, String approach) {
 		// Check for spam BEFORE publishing to save costs
 		if (!ablyManager.shouldPublishMessage(message, playerName)) {
-			return;
+			return false;
+		}
+		// Over the monthly message budget world chat is sampled, then paused, see QuotaTracker
+		if (type.equals("w") && !ablyManager.getQuotaTracker().allowWorldPublish(System.currentTimeMillis())) {
+			log.debug("Over the message budget, not sending world message");
+			return false;
 		}
 
 		// We're already on client thread from event handler - no need to invoke later
@@ -643,8 +610,13 @@ public class GlobalChatPlugin extends Plugin {
 			ablyManager.shouldShowMessge(playerName, message, true);
 
 			// Move actual publishing off client thread to background executor
-			ablyManager.publishMessageAsync(type, message, channel, "", (success) -> {
-				if (!success) {
+			CompletableFuture<Void> published = ablyManager.publish(type, message, channel, "");
+			// Read-only, not connected or not attached: refused before anything was queued
+			if (published.isCompletedExceptionally()) {
+				return false;
+			}
+			published.whenComplete((ignored, error) -> {
+				if (error != null) {
 					// Handle failure - schedule UI update since we might be on background thread
 					clientThread.invokeLater(() -> {
 						removeGlobalChatIconFromRecentMessage(message);
@@ -652,138 +624,91 @@ public class GlobalChatPlugin extends Plugin {
 					});
 				}
 			});
+			return true;
 		} catch (Exception e) {
 			log.debug("Error preparing message for publish: '{}'", message, e);
-			// Remove global chat icon from the message since it failed to publish
-			removeGlobalChatIconFromRecentMessage(message);
+			return false;
 		}
 	}
 
-	private void handleAllGlobalMessages(ChatMessage event, String cleanedMessage, String cleanedName,
-			boolean isLocalPlayerSendingMessage) {
-		if (event.getType().equals(ChatMessageType.PUBLICCHAT) && isLocalPlayerSendingMessage) {
-			// Handle icons for regular messages (non-commands) only
-			if (!cleanedMessage.matches("^![a-zA-Z]+.*")) {
-				// Modify message to include icons if not in read-only mode and connected
-				if (!config.readOnlyMode() && ablyManager.isConnected()) {
-					try {
-						// Validate connection state and message node before manipulation
-						if (event.getMessageNode() == null) {
-							log.debug("MessageNode is null, skipping chat manipulation");
-							return;
-						}
-						
-						// Double-check connection state atomically
-						if (!ablyManager.isConnected()) {
-							log.debug("Connection lost during chat manipulation, skipping");
-							return;
-						}
-						
-						// Remove the original message
-						final ChatLineBuffer lineBuffer = client.getChatLineMap().get(ChatMessageType.PUBLICCHAT.getType());
-						if (lineBuffer == null) {
-							log.debug("ChatLineBuffer is null, skipping chat manipulation");
-							return;
-						}
-						
-						lineBuffer.removeMessageNode(event.getMessageNode());
-
-						// Get icons (match the format used for received messages)
-						String accountIcon = getAccountIcon();
-						String supporterIcon = supporterManager.getSupporterIcon(cleanedName);
-						String symbol = accountIcon; // Start with account icon
-
-						// Add supporter icon if user is a supporter
-						if (!supporterIcon.isEmpty()) {
-							if (symbol.isEmpty()) {
-								symbol = supporterIcon;
-							} else {
-								symbol = supporterIcon + " " + symbol;
-							}
-						}
-
-						// Add global chat icon
-						symbol = "<img=19> " + symbol;
+	// The node's name already carries the game's own icons (ironman, leagues, ...), ours go in front.
+	// Setting it in place avoids removing and re-adding the line, which cost a second ChatMessage
+	// event and an extra chatbox rebuild per message.
+	static void decorateLocalMessage(MessageNode messageNode, String supporterIcon) {
+		String name = messageNode.getName();
+		if (name == null || name.contains("<img=19>")) {
+			return;
+		}
+		messageNode.setName("<img=19> " + supporterIcon + name);
+	}
 
-						// Re-add the message with icons
-						client.addChatMessage(ChatMessageType.PUBLICCHAT, symbol + cleanedName, cleanedMessage, null);
-					} catch (Exception e) {
-						log.debug("Failed to add global chat icon to message: {}", e.getMessage());
-						// Message will display normally without icon, preventing game freeze
+	private void handleAllGlobalMessages(ChatEvent chat) {
+		String cleanedMessage = chat.getText();
+		String cleanedName = chat.getSender();
+		switch (chat.getChannel()) {
+			case PUBLIC:
+				if (!chat.isLocal()) {
+					ablyManager.shouldShowMessge(cleanedName, cleanedMessage, true);
+				}
+				break;
+			case PRIVATE:
+				hideIfRepeated(chat);
+				break;
+			case FRIENDS:
+				if (!chat.isLocal()) {
+					hideIfRepeated(chat);
+				} else if (ablyManager.shouldPublishMessage(cleanedMessage, cleanedName)) {
+					ablyManager.shouldShowMessge(cleanedName, cleanedMessage, true);
+					FriendsChatManager friendsChatManager = client.getFriendsChatManager();
+					if (friendsChatManager != null) {
+						ablyManager.publish("f", cleanedMessage, "f:" + friendsChat,
+								friendsChatManager.getName());
 					}
 				}
-			}
-		} else if (event.getType().equals(ChatMessageType.PRIVATECHAT)
-				&& !ablyManager.shouldShowMessge(cleanedName, cleanedMessage, true)) {
-			final ChatLineBuffer lineBuffer = client.getChatLineMap()
-					.get(ChatMessageType.PRIVATECHAT.getType());
-			if (lineBuffer != null && event.getMessageNode() != null) {
-				lineBuffer.removeMessageNode(event.getMessageNode());
-			}
-			// } else if (event.getType().equals(ChatMessageType.PRIVATECHATOUT)) {
-			// if (cleanedName != null && !cleanedName.isEmpty()) {
-			// if (!ablyManager.shouldPublishMessage(cleanedMessage,
-			// client.getLocalPlayer().getName())) {
-			// return;
-			// }
-			// ablyManager.shouldShowMessge(client.getLocalPlayer().getName(),
-			// cleanedMessage, true);
-			// ablyManager.publishMessage("p", cleanedMessage, "p:" + cleanedName,
-			// cleanedName);
-			// }
-		} else if (event.getType().equals(ChatMessageType.FRIENDSCHAT) && !isLocalPlayerSendingMessage
-				&& !ablyManager.shouldShowMessge(cleanedName, cleanedMessage, true)) {
-			final ChatLineBuffer lineBuffer = client.getChatLineMap()
-					.get(ChatMessageType.FRIENDSCHAT.getType());
-			if (lineBuffer != null && event.getMessageNode() != null) {
-				lineBuffer.removeMessageNode(event.getMessageNode());
-			}
-		} else if (event.getType().equals(ChatMessageType.CLAN_CHAT) && !isLocalPlayerSendingMessage
-				&& !ablyManager.shouldShowMessge(cleanedName, cleanedMessage, true)) {
-			final ChatLineBuffer lineBuffer = client.getChatLineMap()
-					.get(ChatMessageType.CLAN_CHAT.getType());
-			if (lineBuffer != null && event.getMessageNode() != null) {
-				lineBuffer.removeMessageNode(event.getMessageNode());
-			}
-		} else if (event.getType().equals(ChatMessageType.CLAN_GUEST_CHAT) && !isLocalPlayerSendingMessage
-				&& !ablyManager.shouldShowMessge(cleanedName, cleanedMessage, true)) {
-			final ChatLineBuffer lineBuffer = client.getChatLineMap()
-					.get(ChatMessageType.CLAN_GUEST_CHAT.getType());
-			if (lineBuffer != null && event.getMessageNode() != null) {
-				lineBuffer.removeMessageNode(event.getMessageNode());
-			}
-		} else if (event.getType().equals(ChatMessageType.FRIENDSCHAT) && isLocalPlayerSendingMessage) {
-			if (!ablyManager.shouldPublishMessage(cleanedMessage, cleanedName)) {
-				return;
-			}
-			ablyManager.shouldShowMessge(cleanedName, cleanedMessage, true);
-			FriendsChatManager friendsChatManager = client.getFriendsChatManager();
-			if (friendsChatManager != null) {
-				ablyManager.publishMessage("f", cleanedMessage, "f:" + friendsChat,
-						friendsChatManager.getName());
-			}
-		} else if (event.getType().equals(ChatMessageType.CLAN_CHAT) && isLocalPlayerSendingMessage) {
-			if (!ablyManager.shouldPublishMessage(cleanedMessage, cleanedName)) {
-				return;
-			}
-			ablyManager.shouldShowMessge(client.getLocalPlayer().getName(), cleanedMessage, true);
-			ClanChannel clanChannel = client.getClanChannel();
-			if (clanChannel != null) {
-				ablyManager.publishMessage("c", cleanedMessage, "c:" + clanChannel.getName(),
-						clanChannel.getName());
-			}
-		} else if (event.getType().equals(ChatMessageType.CLAN_GUEST_CHAT) && isLocalPlayerSendingMessage) {
-			if (!ablyManager.shouldPublishMessage(cleanedMessage, cleanedName)) {
+				break;
+			case CLAN:
+			case CLAN_GUEST:
+				if (!chat.isLocal()) {
+					hideIfRepeated(chat);
+				} else if (ablyManager.shouldPublishMessage(cleanedMessage, cleanedName)) {
+					ablyManager.shouldShowMessge(cleanedName, cleanedMessage, true);
+					ClanChannel clanChannel = chat.getChannel() == ChatEvent.Channel.CLAN
+							? client.getClanChannel()
+							: client.getGuestClanChannel();
+					if (clanChannel != null) {
+						ablyManager.publish("c", cleanedMessage, "c:" + clanChannel.getName(),
+								clanChannel.getName());
+					}
+				}
+				break;
+			default:
+				ablyManager.shouldShowMessge(cleanedName, cleanedMessage, true);
+				break;
+		}
+	}
+
+	private void decorateOwnPublicMessage(ChatEvent chat) {
+		try {
+			if (chat.getMessageNode() == null) {
+				log.debug("MessageNode is null, skipping chat manipulation");
 				return;
 			}
-			ablyManager.shouldShowMessge(client.getLocalPlayer().getName(), cleanedMessage, true);
-			ClanChannel guestClanChannel = client.getGuestClanChannel();
-			if (guestClanChannel != null) {
-				ablyManager.publishMessage("c", cleanedMessage, "c:" + guestClanChannel.getName(),
-						guestClanChannel.getName());
-			}
-		} else {
-			ablyManager.shouldShowMessge(cleanedName, cleanedMessage, true);
+			// Decorate the line in place, it is rendered after this event
+			decorateLocalMessage(chat.getMessageNode(), supporterManager.getSupporterIcon(chat.getSender()));
+		} catch (Exception e) {
+			log.debug("Failed to add global chat icon to message: {}", e.getMessage());
+			// Message will display normally without icon, preventing game freeze
+		}
+	}
+
+	// Someone repeating their last message: drop the line from the chatbox
+	private void hideIfRepeated(ChatEvent chat) {
+		if (ablyManager.shouldShowMessge(chat.getSender(), chat.getText(), true)) {
+			return;
+		}
+		final ChatLineBuffer lineBuffer = client.getChatLineMap().get(chat.getType().getType());
+		if (lineBuffer != null && chat.getMessageNode() != null) {
+			lineBuffer.removeMessageNode(chat.getMessageNode());
 		}
 	}
 
@@ -800,27 +725,28 @@ public class GlobalChatPlugin extends Plugin {
 
 	@Subscribe
 	public void onMenuEntryAdded(MenuEntryAdded event) {
-		// Check if player lookup feature is enabled
-		if (!config.showPlayerLookup()) {
+		// Runs for every entry of every menu built, so anything that isn't ours returns
+		// before touching the target: no tag stripping, no logging, no allocation
+		if (!showPlayerLookup || !isChatNameOption(event.getOption())) {
 			return;
 		}
 
-		String rawTarget = event.getTarget();
-		String target = Text.removeTags(rawTarget);
-		log.debug("MenuEntryAdded - Option: '{}', Raw: '{}', Cleaned: '{}'", 
-			event.getOption(), rawTarget, target);
-
 		// Add option for chat messages (when right-clicking a name in any chat)
-		if (event.getOption().equals("Add friend") || event.getOption().equals("Message")) {
-			client.createMenuEntry(-2)
-					.setOption("GC Status")
-					.setTarget(event.getTarget())
-					.setType(MenuAction.RUNELITE)
-					.onClick(e -> {
-						log.debug("Menu click - passing target: '{}'", target);
-						checkPlayerGlobalChatStatus(target);
-					});
-		}
+		final String rawTarget = event.getTarget();
+		log.debug("MenuEntryAdded - Option: '{}', Raw: '{}'", event.getOption(), rawTarget);
+		client.createMenuEntry(-2)
+				.setOption("GC Status")
+				.setTarget(rawTarget)
+				.setType(MenuAction.RUNELITE)
+				.onClick(e -> {
+					log.debug("Menu click - passing target: '{}'", rawTarget);
+					// Tags are stripped there, only once the option is actually clicked
+					checkPlayerGlobalChatStatus(rawTarget);
+				});
+	}
+
+	static boolean isChatNameOption(String option) {
+		return "Add friend".equals(option) || "Message".equals(option);
 	}
 
 	private void checkPlayerGlobalChatStatus(String playerName) {
@@ -842,86 +768,47 @@ public class GlobalChatPlugin extends Plugin {
 		log.debug("GC Status check - Original: '{}', Cleaned: '{}', Final: '{}'", 
 			playerName, cleanedName, cleanName);
 
-		// Show checking message on client thread
-		clientThread.invokeLater(() -> {
-			String checkingMessage = "<col=ff9040>Checking Global Chat status for " + cleanName + "...</col>";
-			client.addChatMessage(ChatMessageType.GAMEMESSAGE, "", checkingMessage, null);
-			return true;
-		});
-
 		// Get current world for proper status checking
 		int currentWorld = client.getWorld();
-		
-		// URL encode the player name to handle spaces and special characters
-		String encodedName;
-		try {
-			encodedName = java.net.URLEncoder.encode(cleanName, "UTF-8");
-		} catch (java.io.UnsupportedEncodingException e) {
-			log.debug("Failed to encode player name: {}", cleanName);
-			encodedName = cleanName.replace(" ", "%20"); // Fallback
+
+		// Answered locally when we heard from them recently, otherwise batched with other lookups
+		CompletableFuture<Boolean> status = playerStatusLookup.lookup(cleanName, currentWorld);
+		if (!status.isDone()) {
+			// Show checking message on client thread
+			clientThread.invokeLater(() -> {
+				String checkingMessage = "<col=ff9040>Checking Global Chat status for " + cleanName + "...</col>";
+				client.addChatMessage(ChatMessageType.GAMEMESSAGE, "", checkingMessage, null);
+				return true;
+			});
 		}
-		
-		// Make async request to check status with world context
-		String apiUrl = "https://global-chat-frontend.vercel.app/api/check-player-status?playerName=" + encodedName + "&world=" + currentWorld;
-		log.debug("API request URL: {}", apiUrl);
-		log.debug("Sending to API - Clean name: '{}', Encoded: '{}'", cleanName, encodedName);
-		
-		Request request = new Request.Builder()
-				.url(apiUrl)
-				.get()
-				.header("User-Agent", "RuneLite-GlobalChat-Plugin")
-				.build();
 
-		okHttpClient.newCall(request).enqueue(new okhttp3.Callback() {
-			@Override
-			public void onFailure(okhttp3.Call call, java.io.IOException e) {
-				log.debug("Error checking player status for " + cleanName, e);
+		status.whenComplete((isConnected, error) -> {
+			if (error != null) {
+				Throwable cause = error.getCause() != null ? error.getCause() : error;
+				log.debug("Error checking player status for " + cleanName, cause);
+				String reason = "";
+				if (cause instanceof GlobalChatApiClient.ApiException) {
+					int code = ((GlobalChatApiClient.ApiException) cause).getCode();
+					reason = code > 0 ? " (HTTP " + code + ")" : " (connection error)";
+				}
+				String errorMessage = "<col=ff0000>Failed to check Global Chat status for " + cleanName
+						+ reason + "</col>";
 				clientThread.invokeLater(() -> {
-					String errorMessage = "<col=ff0000>Failed to check Global Chat status for " + cleanName + " (connection error)</col>";
 					client.addChatMessage(ChatMessageType.GAMEMESSAGE, "", errorMessage, null);
 					return true;
 				});
+				return;
 			}
 
-			@Override
-			public void onResponse(okhttp3.Call call, okhttp3.Response response) throws java.io.IOException {
-				try {
-					if (response.isSuccessful() && response.body() != null) {
-						String responseBody = response.body().string();
-						JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
-
-						boolean isConnected = jsonResponse.get("connectedToGlobalChat").getAsBoolean();
-
-						// Show result in chat with world context
-						clientThread.invokeLater(() -> {
-							String statusColor = isConnected ? "00ff00" : "ff0000";
-							String statusText = isConnected ? "CONNECTED" : "NOT CONNECTED";
-							String resultMessage = "<col=" + statusColor + ">Global Chat: " + cleanName + " is "
-									+ statusText + "</col>";
-							client.addChatMessage(ChatMessageType.GAMEMESSAGE, "", resultMessage, null);
-							return true;
-						});
-					} else {
-						// Handle error response
-						clientThread.invokeLater(() -> {
-							String errorMessage = "<col=ff0000>Failed to check Global Chat status for " + cleanName
-									+ " (HTTP " + response.code() + ")</col>";
-							client.addChatMessage(ChatMessageType.GAMEMESSAGE, "", errorMessage, null);
-							return true;
-						});
-					}
-				} catch (Exception e) {
-					log.error("Error parsing response for " + cleanName, e);
-					clientThread.invokeLater(() -> {
-						String errorMessage = "<col=ff0000>Failed to check Global Chat status for " + cleanName
-								+ "</col>";
-						client.addChatMessage(ChatMessageType.GAMEMESSAGE, "", errorMessage, null);
-						return true;
-					});
-				} finally {
-					response.close();
-				}
-			}
+			// Show result in chat with world context
+			clientThread.invokeLater(() -> {
+				String statusColor = isConnected ? "00ff00" : "ff0000";
+				String statusText = isConnected ? "CONNECTED" : "NOT CONNECTED";
+				String resultMessage = "<col=" + statusColor + ">Global Chat: " + cleanName + " is "
+						+ statusText + "</col>";
+				client.addChatMessage(ChatMessageType.GAMEMESSAGE, "", resultMessage, null);
+				return true;
+			});
 		});
 	}
 
@@ -1002,6 +889,76 @@ public class GlobalChatPlugin extends Plugin {
 		return configManager.getConfig(GlobalChatConfig.class);
 	}
 
+	@Provides
+	ChatTransport provideChatTransport(GlobalChatConfig config, AblyChatTransport ably, RelayChatTransport relay) {
+		// Picked on every connect, so switching backends only takes a reconnect
+		return (clientId, tokens, listener) -> (config.chatBackend() == ChatBackend.RELAY ? relay : ably)
+			.open(clientId, tokens, listener);
+	}
+
+	private void restoreQuotaUsage() {
+		try {
+			savedQuotaUsage = config.quotaUsage();
+			ablyManager.getQuotaTracker().restore(gson.fromJson(savedQuotaUsage, QuotaTracker.Usage.class),
+					System.currentTimeMillis());
+		} catch (Exception e) {
+			log.debug("Ignoring unreadable message counts", e);
+		}
+	}
+
+	// Once a minute and on shutdown, only written when a count changed
+	private void saveQuotaUsage() {
+		String usage = gson.toJson(ablyManager.getQuotaTracker().snapshot());
+		if (usage.equals(savedQuotaUsage)) {
+			return;
+		}
+		configManager.setConfiguration("globalchat", "quotaUsage", usage);
+		savedQuotaUsage = usage;
+	}
+
+	private void checkMessageBudget() {
+		try {
+			QuotaTracker quota = ablyManager.getQuotaTracker();
+			QuotaTracker.Level previous = quota.getLevel();
+			QuotaTracker.Level level = quota.updateLevel(System.currentTimeMillis(), config.monthlyMessageBudget());
+			saveQuotaUsage();
+			if (level != previous) {
+				clientThread.invokeLater(() -> onBudgetLevelChanged(previous, level));
+			}
+		} catch (Exception e) {
+			log.debug("Error checking the message budget", e);
+		}
+	}
+
+	// Client thread. Leaves or rejoins world chat, logging in later picks the level up by itself.
+	private void onBudgetLevelChanged(QuotaTracker.Level previous, QuotaTracker.Level level) {
+		if (client.getGameState() != GameState.LOGGED_IN) {
+			return;
+		}
+		String worldChannel = "w:" + client.getWorld();
+		if (level == QuotaTracker.Level.WORLD_PAUSED) {
+			ablyManager.detach(worldChannel);
+		} else if (previous == QuotaTracker.Level.WORLD_PAUSED && ablyManager.isConnected()) {
+			ablyManager.attach(worldChannel, "pub");
+		}
+
+		String text;
+		switch (level) {
+			case THROTTLED:
+				text = "Global Chat is over its monthly message budget, your world chat is only sent every few seconds."
+						+ " Private, friends and clan chat are unaffected.";
+				break;
+			case WORLD_PAUSED:
+				text = "Global Chat is well over its monthly message budget, world chat is paused."
+						+ " Private, friends and clan chat are unaffected.";
+				break;
+			default:
+				text = "Global Chat is back within its monthly message budget.";
+				break;
+		}
+		client.addChatMessage(ChatMessageType.GAMEMESSAGE, "", text, null);
+	}
+
 	private void removeGlobalChatIconFromRecentMessage(String message) {
 		try {
 			// Don't show error messages if read-only mode is enabled
@@ -1028,22 +985,6 @@ public class GlobalChatPlugin extends Plugin {
 		}
 	}
 
-	private String getAccountIcon() {
-		if (client.getWorldType().contains(WorldType.TOURNAMENT_WORLD)) {
-			return "<img=33>";
-		}
-		switch (client.getAccountType()) {
-			case IRONMAN:
-				return "<img=2>";
-			case HARDCORE_IRONMAN:
-				return "<img=10>";
-			case ULTIMATE_IRONMAN:
-				return "<img=3>";
-			default:
-				return "";
-		}
-	}
-
 	private BufferedImage createSimpleIcon() {
 		try {
 			// Load the icon from project root
@@ -1066,56 +1007,93 @@ public class GlobalChatPlugin extends Plugin {
 		}
 	}
 
-	// @Subscribe(priority = -2)
-	// public void onClientTick(ClientTick clientTick) {
-	// if (client.isMenuOpen()) {
-	// return;
-	// }
-
-	// MenuEntry[] menuEntries = client.getMenuEntries();
-
-	// for (MenuEntry entry : menuEntries) {
-	// MenuAction type = entry.getType();
-
-	// if (type == WALK
-	// || type == WIDGET_TARGET_ON_PLAYER
-	// || type == ITEM_USE_ON_PLAYER
-	// || type == PLAYER_FIRST_OPTION
-	// || type == PLAYER_SECOND_OPTION
-	// || type == PLAYER_THIRD_OPTION
-	// || type == PLAYER_FOURTH_OPTION
-	// || type == PLAYER_FIFTH_OPTION
-	// || type == PLAYER_SIXTH_OPTION
-	// || type == PLAYER_SEVENTH_OPTION
-	// || type == PLAYER_EIGHTH_OPTION
-	// || type == RUNELITE_PLAYER) {
-	// Player[] players = client.getCachedPlayers();
-	// Player player = null;
-
-	// int identifier = entry.getIdentifier();
-
-	// // 'Walk here' identifiers are offset by 1 because the default
-	// // identifier for this option is 0, which is also a player index.
-	// if (type == WALK) {
-	// identifier--;
-	// }
-
-	// if (identifier >= 0 && identifier < players.length) {
-	// player = players[identifier];
-
-	// }
-
-	// if (player == null) {
-	// return;
-	// }
-
-	// String oldTarget = entry.getTarget();
-	// String newTarget = decorateTarget(oldTarget, player.getName());
-
-	// entry.setTarget(newTarget);
-	// }
-
-	// }
-	// }
+	@Subscribe
+	public void onConfigChanged(ConfigChanged event) {
+		if (!"globalchat".equals(event.getGroup())) {
+			return;
+		}
+		if ("showPlayerLookup".equals(event.getKey())) {
+			boolean enabled = config.showPlayerLookup();
+			if (enabled != showPlayerLookup) {
+				showPlayerLookup = enabled;
+				if (enabled) {
+					menuManager.addPlayerMenuItem("GC Status");
+				} else {
+					menuManager.removePlayerMenuItem("GC Status");
+				}
+			}
+			return;
+		}
+		if ("monthlyMessageBudget".equals(event.getKey())) {
+			scheduler.execute(this::checkMessageBudget);
+			return;
+		}
+		if ("chatBackend".equals(event.getKey()) || "relayUrl".equals(event.getKey())) {
+			// Auto-reconnect picks the new backend up and re-attaches the channels
+			ablyManager.closeConnection();
+			return;
+		}
+		if (!"showGlobalChatBadges".equals(event.getKey())) {
+			return;
+		}
+		showGlobalChatBadges = config.showGlobalChatBadges();
+		if (showGlobalChatBadges) {
+			clientThread.invokeLater(this::trackScenePlayers);
+		} else {
+			sceneStatusTracker.clear();
+		}
+	}
+
+	@Subscribe
+	public void onGameTick(GameTick gameTick) {
+		overheadTextScheduler.onGameTick();
+	}
+
+	@Subscribe
+	public void onPlayerSpawned(PlayerSpawned event) {
+		if (!showGlobalChatBadges) {
+			return;
+		}
+		Player player = event.getPlayer();
+		if (player != null && player != client.getLocalPlayer()) {
+			sceneStatusTracker.onPlayerSpawned(player.getName(), client.getWorld());
+		}
+	}
+
+	// Players already around us when badges get turned on never fire PlayerSpawned
+	private void trackScenePlayers() {
+		if (client.getGameState() != GameState.LOGGED_IN) {
+			return;
+		}
+		Player localPlayer = client.getLocalPlayer();
+		for (Player player : client.getPlayers()) {
+			if (player != null && player != localPlayer) {
+				sceneStatusTracker.onPlayerSpawned(player.getName(), client.getWorld());
+			}
+		}
+	}
+
+	// Picks up command transformations, then badges player menu entries. Statuses are
+	// resolved in the background, this is one hash lookup per player entry.
+	@Subscribe(priority = -2)
+	public void onClientTick(ClientTick clientTick) {
+		commandTransformations.poll(System.currentTimeMillis());
+
+		if (!showGlobalChatBadges || client.isMenuOpen()) {
+			return;
+		}
+
+		for (MenuEntry entry : client.getMenuEntries()) {
+			Player player = entry.getPlayer();
+			if (player == null) {
+				continue;
+			}
+			String oldTarget = entry.getTarget();
+			String newTarget = sceneStatusTracker.decorate(oldTarget, player.getName());
+			if (newTarget != oldTarget) {
+				entry.setTarget(newTarget);
+			}
+		}
+	}
 
 }
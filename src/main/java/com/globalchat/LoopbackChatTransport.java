@@ -0,0 +1,295 @@
+package com.globalchat;
+
+import com.google.gson.JsonObject;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+// The chat service simulated in memory, for load tests on a single box. Every connection opened
+// on one instance shares its channels, so thousands of simulated clients can talk to each other.
+// - latency: every hop (connect, attach, publish ack, each delivery) takes minLatency..maxLatency
+// - loss: each delivery to a subscriber is dropped with probability lossRate
+// - capacity: connections beyond maxConnections fail like the real service's connection limit
+// Tokens are never requested. Like the plugin's Ably setup, publishers don't receive their own messages.
+// Occupancy is reported one hop after a channel's subscribers change, changes in between are coalesced.
+@Slf4j
+public class LoopbackChatTransport implements ChatTransport {
+
+	static final int CONNECTION_LIMIT_ERROR_CODE = 40005;
+
+	private final long minLatencyMillis;
+	private final long maxLatencyMillis;
+	private final double lossRate;
+	private final int maxConnections;
+	private final ScheduledThreadPoolExecutor network;
+
+	private final Set<LoopbackConnection> connections = ConcurrentHashMap.newKeySet();
+	// Channel -> attached connections
+	private final Map<String, Set<LoopbackConnection>> channels = new ConcurrentHashMap<>();
+	// Channels with an occupancy report on its way
+	private final Set<String> occupancyPending = ConcurrentHashMap.newKeySet();
+
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	// No latency, no loss, no connection limit
+	public LoopbackChatTransport() {
+		this(0, 0, 0, Integer.MAX_VALUE, 2);
+	}
+
+	public LoopbackChatTransport(long minLatencyMillis, long maxLatencyMillis, double lossRate, int maxConnections,
+		int networkThreads) {
+		this.minLatencyMillis = minLatencyMillis;
+		this.maxLatencyMillis = Math.max(minLatencyMillis, maxLatencyMillis);
+		this.lossRate = lossRate;
+		this.maxConnections = maxConnections;
+		AtomicInteger threadId = new AtomicInteger();
+		this.network = new ScheduledThreadPoolExecutor(networkThreads, r -> {
+			Thread t = new Thread(r, "LoopbackNetwork-" + threadId.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public Connection open(String clientId, TokenSource tokens, ConnectionListener listener) {
+		LoopbackConnection connection = new LoopbackConnection(clientId, listener);
+		later(() -> {
+			if (connection.state != State.CONNECTING) {
+				return; // Closed while connecting
+			}
+			synchronized (connections) {
+				if (connections.size() >= maxConnections) {
+					rejected.incrementAndGet();
+					connection.transition(State.FAILED, new ChatTransportException(
+						"Connection limit reached", 403, CONNECTION_LIMIT_ERROR_CODE));
+					return;
+				}
+				connections.add(connection);
+			}
+			connection.transition(State.CONNECTED, null);
+		});
+		return connection;
+	}
+
+	// Drop every connection as if the service went away. Connections stay disconnected,
+	// reconnecting is up to the client.
+	public void disconnectAll() {
+		ChatTransportException reason = new ChatTransportException("Simulated outage", 503, 80003);
+		for (LoopbackConnection connection : connections) {
+			connection.leave();
+			connection.transition(State.DISCONNECTED, reason);
+		}
+	}
+
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	public long getPublished() {
+		return published.get();
+	}
+
+	public long getDelivered() {
+		return delivered.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public void shutdown() {
+		network.shutdownNow();
+	}
+
+	private void later(Runnable hop) {
+		long latency = maxLatencyMillis > minLatencyMillis
+			? ThreadLocalRandom.current().nextLong(minLatencyMillis, maxLatencyMillis + 1)
+			: minLatencyMillis;
+		network.schedule(() -> {
+			try {
+				hop.run();
+			} catch (Exception e) {
+				log.debug("Loopback hop failed", e);
+			}
+		}, latency, TimeUnit.MILLISECONDS);
+	}
+
+	private void occupancyChanged(String channel) {
+		if (!occupancyPending.add(channel)) {
+			return; // The pending report will see this change too
+		}
+		later(() -> {
+			occupancyPending.remove(channel);
+			Set<LoopbackConnection> attached = channels.get(channel);
+			if (attached == null) {
+				return;
+			}
+			int subscribers = attached.size();
+			for (LoopbackConnection subscriber : attached) {
+				Subscription subscription = subscriber.subscriptions.get(channel);
+				if (subscription != null && subscription.occupancyListener != null) {
+					subscription.occupancyListener.onOccupancy(channel, subscribers);
+				}
+			}
+		});
+	}
+
+	private static <T> CompletableFuture<T> failed(String reason) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(new ChatTransportException(reason, 0, 0));
+		return future;
+	}
+
+	private static final class Subscription {
+		final String cipherKey;
+		final MessageListener listener;
+		// null unless attached with occupancy
+		final OccupancyListener occupancyListener;
+
+		Subscription(String cipherKey, MessageListener listener, OccupancyListener occupancyListener) {
+			this.cipherKey = cipherKey;
+			this.listener = listener;
+			this.occupancyListener = occupancyListener;
+		}
+	}
+
+	private final class LoopbackConnection implements Connection {
+		private final String clientId;
+		private final ConnectionListener listener;
+		private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+		private volatile State state = State.CONNECTING;
+
+		LoopbackConnection(String clientId, ConnectionListener listener) {
+			this.clientId = clientId;
+			this.listener = listener;
+		}
+
+		@Override
+		public State getState() {
+			return state;
+		}
+
+		@Override
+		public CompletableFuture<Void> attach(String channel, String cipherKey, MessageListener messageListener) {
+			return attach(channel, cipherKey, messageListener, null);
+		}
+
+		@Override
+		public CompletableFuture<Void> attach(String channel, String cipherKey, MessageListener messageListener,
+			OccupancyListener occupancyListener) {
+			if (state != State.CONNECTED) {
+				return failed("Not connected");
+			}
+			CompletableFuture<Void> attached = new CompletableFuture<>();
+			later(() -> {
+				if (state != State.CONNECTED) {
+					attached.completeExceptionally(new ChatTransportException("Connection lost", 0, 0));
+					return;
+				}
+				subscriptions.put(channel, new Subscription(cipherKey, messageListener, occupancyListener));
+				channels.computeIfAbsent(channel, c -> ConcurrentHashMap.newKeySet()).add(this);
+				attached.complete(null);
+				occupancyChanged(channel);
+			});
+			return attached;
+		}
+
+		@Override
+		public CompletableFuture<Void> detach(String channel) {
+			CompletableFuture<Void> detached = new CompletableFuture<>();
+			later(() -> {
+				subscriptions.remove(channel);
+				Set<LoopbackConnection> attached = channels.get(channel);
+				if (attached != null && attached.remove(this)) {
+					occupancyChanged(channel);
+				}
+				detached.complete(null);
+			});
+			return detached;
+		}
+
+		@Override
+		public CompletableFuture<Void> publish(String channel, String cipherKey, JsonObject message) {
+			if (state != State.CONNECTED) {
+				return failed("Not connected");
+			}
+			CompletableFuture<Void> acked = new CompletableFuture<>();
+			later(() -> {
+				published.incrementAndGet();
+				acked.complete(null);
+				Set<LoopbackConnection> attached = channels.get(channel);
+				if (attached == null) {
+					return;
+				}
+				for (LoopbackConnection subscriber : attached) {
+					if (subscriber == this) {
+						continue;
+					}
+					if (lossRate > 0 && ThreadLocalRandom.current().nextDouble() < lossRate) {
+						dropped.incrementAndGet();
+						continue;
+					}
+					later(() -> subscriber.deliver(channel, cipherKey, message));
+				}
+			});
+			return acked;
+		}
+
+		private void deliver(String channel, String cipherKey, JsonObject message) {
+			Subscription subscription = subscriptions.get(channel);
+			// Gone by now, or encrypted with a key this subscriber can't read
+			if (state != State.CONNECTED || subscription == null || !subscription.cipherKey.equals(cipherKey)) {
+				dropped.incrementAndGet();
+				return;
+			}
+			delivered.incrementAndGet();
+			subscription.listener.onMessage(channel, message);
+		}
+
+		@Override
+		public void close() {
+			leave();
+			transition(State.CLOSED, null);
+		}
+
+		private void leave() {
+			connections.remove(this);
+			for (String channel : subscriptions.keySet()) {
+				Set<LoopbackConnection> attached = channels.get(channel);
+				if (attached != null && attached.remove(this)) {
+					occupancyChanged(channel);
+				}
+			}
+			subscriptions.clear();
+		}
+
+		private void transition(State next, ChatTransportException reason) {
+			synchronized (this) {
+				if (state == next || state == State.CLOSED) {
+					return;
+				}
+				state = next;
+			}
+			listener.onStateChange(this, next, reason);
+		}
+
+		@Override
+		public String toString() {
+			return "LoopbackConnection(" + clientId + ", " + state + ")";
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package com.globalchat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Binary log of inbound messages, written by MessageRecorder and read back by the replayer.
+// Gzipped: "GCML", a version byte and the recording's start time in epoch millis, then for
+// every message: varint microseconds since the previous one, varint channel id (one past the
+// last id seen introduces a new channel, its name follows), varint length and the UTF-8 payload.
+final class MessageLog {
+
+	private static final int MAGIC = 0x47434D4C;
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private MessageLog() {
+	}
+
+	static final class Entry {
+		// Microseconds since the start of the recording
+		final long offsetMicros;
+		final String channel;
+		final String payload;
+
+		Entry(long offsetMicros, String channel, String payload) {
+			this.offsetMicros = offsetMicros;
+			this.channel = channel;
+			this.payload = payload;
+		}
+	}
+
+	static final class Writer implements Closeable {
+		private final DataOutputStream out;
+		private final Map<String, Integer> channelIds = new HashMap<>();
+		private final long startNanos;
+		private long lastMicros;
+
+		Writer(File file) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(file), BUFFER_SIZE), BUFFER_SIZE));
+			startNanos = System.nanoTime();
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(System.currentTimeMillis());
+		}
+
+		void write(long nanoTime, String channel, String payload) throws IOException {
+			// Never negative, so a clock hiccup can't produce an entry the varint can't hold
+			long micros = Math.max(lastMicros, (nanoTime - startNanos) / 1000);
+			writeVarint(micros - lastMicros);
+			lastMicros = micros;
+
+			Integer id = channelIds.get(channel);
+			if (id == null) {
+				writeVarint(channelIds.size());
+				out.writeUTF(channel);
+				channelIds.put(channel, channelIds.size());
+			} else {
+				writeVarint(id);
+			}
+
+			byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+			writeVarint(bytes.length);
+			out.write(bytes);
+		}
+
+		private void writeVarint(long value) throws IOException {
+			while ((value & ~0x7FL) != 0) {
+				out.writeByte((int) (value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.writeByte((int) value);
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	static final class Reader implements Closeable {
+		private final DataInputStream in;
+		private final List<String> channels = new ArrayList<>();
+		private final long startedAt;
+		private long micros;
+
+		Reader(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE), BUFFER_SIZE));
+			if (in.readInt() != MAGIC) {
+				in.close();
+				throw new IOException("Not a message log: " + file);
+			}
+			int version = in.readUnsignedByte();
+			if (version != VERSION) {
+				in.close();
+				throw new IOException("Unsupported message log version " + version);
+			}
+			startedAt = in.readLong();
+		}
+
+		// Epoch millis the recording started at
+		long getStartedAt() {
+			return startedAt;
+		}
+
+		// The next entry, or null at the end of the log
+		Entry next() throws IOException {
+			int first = in.read();
+			if (first < 0) {
+				return null;
+			}
+			micros += readVarint(first);
+
+			int id = (int) readVarint(in.readUnsignedByte());
+			if (id == channels.size()) {
+				channels.add(in.readUTF());
+			} else if (id > channels.size()) {
+				throw new IOException("Corrupt message log: unknown channel " + id);
+			}
+
+			int length = (int) readVarint(in.readUnsignedByte());
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return new Entry(micros, channels.get(id), new String(bytes, StandardCharsets.UTF_8));
+		}
+
+		private long readVarint(int first) throws IOException {
+			long value = first & 0x7F;
+			int shift = 7;
+			int b = first;
+			while ((b & 0x80) != 0) {
+				if (shift > 63) {
+					throw new IOException("Corrupt message log: varint too long");
+				}
+				b = in.read();
+				if (b < 0) {
+					throw new EOFException();
+				}
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			}
+			return value;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.globalchat;
+
+import com.google.gson.JsonElement;
+import java.io.File;
+import java.io.IOException;
+import lombok.extern.slf4j.Slf4j;
+
+// Developer mode tool: records every inbound message into a MessageLog, so a busy session can be
+// replayed later through the receive pipeline (MessageReplayer in the tests). Off unless started.
+@Slf4j
+public class MessageRecorder {
+
+	// Checked on every inbound message, the lock is only taken while recording
+	private volatile boolean recording;
+	private MessageLog.Writer writer;
+	private File file;
+	private long recorded;
+
+	public synchronized void start(File file) throws IOException {
+		stop();
+		File parent = file.getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Could not create " + parent);
+		}
+		writer = new MessageLog.Writer(file);
+		this.file = file;
+		recorded = 0;
+		recording = true;
+		log.debug("Recording inbound messages to {}", file);
+	}
+
+	// Returns the finished log, or null if nothing was being recorded
+	public synchronized File stop() {
+		if (writer == null) {
+			return null;
+		}
+		recording = false;
+		try {
+			writer.close();
+		} catch (IOException e) {
+			log.warn("Failed to finish message recording {}", file, e);
+		}
+		writer = null;
+		log.debug("Recorded {} messages to {}", recorded, file);
+		return file;
+	}
+
+	public boolean isRecording() {
+		return recording;
+	}
+
+	public synchronized long getRecorded() {
+		return recorded;
+	}
+
+	void record(String channel, JsonElement data) {
+		if (!recording) {
+			return;
+		}
+		long now = System.nanoTime();
+		synchronized (this) {
+			if (writer == null) {
+				return;
+			}
+			try {
+				writer.write(now, channel, data.toString());
+				recorded++;
+			} catch (IOException e) {
+				log.warn("Message recording failed, stopping", e);
+				stop();
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.globalchat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Singleton;
+import net.runelite.api.Player;
+
+// Overhead text for global messages from players around us. Instead of every message
+// overwriting the last one as it arrives, each speaker gets a short queue:
+// - a message stays up for at least MIN_DISPLAY_TICKS before the next one replaces it
+// - the same message sent again while queued is merged and shown once with a count
+// - at most MAX_QUEUED_PER_SPEAKER messages wait, the oldest are dropped
+// Queues are worked through once per game tick, with a cap on updates per tick so a
+// crowd of flooders can't turn into constant overhead churn. Client thread only.
+@Singleton
+public class OverheadTextScheduler {
+
+	private static final int OVERHEAD_TEXT_TICK_TIMEOUT = 5;
+	static final int DISPLAY_CYCLES = OVERHEAD_TEXT_TICK_TIMEOUT * AblyManager.CYCLES_PER_GAME_TICK;
+
+	static final int MIN_DISPLAY_TICKS = 2;
+	static final int MAX_QUEUED_PER_SPEAKER = 3;
+	static final int MAX_UPDATES_PER_TICK = 25;
+	static final int MAX_SPEAKERS = 500;
+
+	private static final class Queued {
+		final String text;
+		int count = 1;
+
+		Queued(String text) {
+			this.text = text;
+		}
+
+		String display() {
+			return count > 1 ? text + " (x" + count + ")" : text;
+		}
+	}
+
+	private static final class Speaker {
+		Player player;
+		final Deque<Queued> queue = new ArrayDeque<>(MAX_QUEUED_PER_SPEAKER);
+		// Earliest tick the next message may replace the current one
+		int nextTick;
+	}
+
+	// Sanitized name -> speaker, in the order they'll be served
+	private final Map<String, Speaker> speakers = new LinkedHashMap<>();
+	private int tick;
+	private int updatesThisTick;
+
+	public void enqueue(String name, Player player, String text) {
+		Speaker speaker = speakers.get(name);
+		if (speaker == null) {
+			if (speakers.size() >= MAX_SPEAKERS) {
+				return;
+			}
+			speaker = new Speaker();
+			speakers.put(name, speaker);
+		}
+		speaker.player = player;
+
+		// Nothing showing or waiting: no reason to hold it until the next tick
+		if (speaker.queue.isEmpty() && tick >= speaker.nextTick && updatesThisTick < MAX_UPDATES_PER_TICK) {
+			show(speaker, text);
+			return;
+		}
+
+		Queued last = speaker.queue.peekLast();
+		if (last != null && last.text.equals(text)) {
+			last.count++;
+			return;
+		}
+		if (speaker.queue.size() >= MAX_QUEUED_PER_SPEAKER) {
+			speaker.queue.pollFirst();
+		}
+		speaker.queue.addLast(new Queued(text));
+	}
+
+	// Every game tick
+	public void onGameTick() {
+		tick++;
+		updatesThisTick = 0;
+		if (speakers.isEmpty()) {
+			return;
+		}
+
+		// Speakers served this tick go to the back, so a capped tick doesn't always favour the same ones
+		List<Map.Entry<String, Speaker>> served = null;
+		Iterator<Map.Entry<String, Speaker>> entries = speakers.entrySet().iterator();
+		while (entries.hasNext() && updatesThisTick < MAX_UPDATES_PER_TICK) {
+			Map.Entry<String, Speaker> entry = entries.next();
+			Speaker speaker = entry.getValue();
+			if (tick < speaker.nextTick) {
+				continue;
+			}
+			Queued next = speaker.queue.pollFirst();
+			entries.remove();
+			if (next == null) {
+				// Done with its last message
+				continue;
+			}
+			show(speaker, next.display());
+			if (served == null) {
+				served = new ArrayList<>();
+			}
+			served.add(entry);
+		}
+		if (served != null) {
+			for (Map.Entry<String, Speaker> entry : served) {
+				speakers.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	// World hop or logout
+	public void clear() {
+		speakers.clear();
+	}
+
+	int getSpeakerCount() {
+		return speakers.size();
+	}
+
+	int getUpdatesThisTick() {
+		return updatesThisTick;
+	}
+
+	private void show(Speaker speaker, String text) {
+		speaker.player.setOverheadText(text);
+		speaker.player.setOverheadCycle(DISPLAY_CYCLES);
+		speaker.nextTick = tick + MIN_DISPLAY_TICKS;
+		updatesThisTick++;
+	}
+}
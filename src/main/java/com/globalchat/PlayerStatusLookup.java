@@ -0,0 +1,313 @@
+package com.globalchat;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.util.Text;
+
+// Answers "GC Status" lookups, cheapest source first:
+// 1. players we received a global message from recently are connected, no request needed
+// 2. answers from the last minute are reused
+// 3. everything else asked for within a short window goes out as one batched request
+@Slf4j
+@Singleton
+public class PlayerStatusLookup {
+
+	// A message from them this recently means they're still connected
+	static final long SEEN_RECENTLY_MILLIS = TimeUnit.MINUTES.toMillis(2);
+	static final long CACHE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	// Lookups arriving within this window share one request
+	static final long BATCH_WINDOW_MILLIS = 50;
+	private static final int MAX_BATCH_SIZE = 50;
+	// Senders remembered between prunes. A flood of new names is only pruned once a minute,
+	// past this we prune early (at most once a second), and newcomers that still don't fit
+	// aren't remembered, their lookups just go out as requests.
+	static final int MAX_SEEN = 10000;
+	private static final long EARLY_PRUNE_INTERVAL_MILLIS = 1000;
+
+	private static final class CachedStatus {
+		final boolean connected;
+		final long expiresAt;
+
+		CachedStatus(boolean connected, long expiresAt) {
+			this.connected = connected;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final GlobalChatApiClient apiClient;
+	private final ScheduledExecutorService batchScheduler;
+
+	// Standardized name -> when we last received a message from them
+	private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+	private final Map<String, CachedStatus> cache = new ConcurrentHashMap<>();
+	// World -> names waiting for the next batch. Guarded by itself.
+	private final Map<Integer, Map<String, CompletableFuture<Boolean>>> pending = new HashMap<>();
+	private volatile long lastEarlyPrune;
+	// Flipped when the server rejects batched requests, we then ask one name at a time
+	private volatile boolean batchUnsupported = false;
+
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong seenHits = new AtomicLong();
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong totalLatencyMillis = new AtomicLong();
+	// Kept apart, every scene refresh would otherwise swamp the stats for lookups players asked for
+	private final AtomicLong sceneLookups = new AtomicLong();
+
+	@Inject
+	public PlayerStatusLookup(GlobalChatApiClient apiClient) {
+		this.apiClient = apiClient;
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "GlobalChatStatusLookup");
+			t.setDaemon(true);
+			return t;
+		});
+		this.batchScheduler = scheduler;
+		batchScheduler.scheduleAtFixedRate(this::prune, 1, 1, TimeUnit.MINUTES);
+	}
+
+	// Called for every received global message
+	public void recordSeen(String name) {
+		if (name == null || name.isEmpty()) {
+			return;
+		}
+		String key = Text.standardize(name);
+		long now = System.currentTimeMillis();
+		if (lastSeen.size() >= MAX_SEEN && !lastSeen.containsKey(key)) {
+			if (now - lastEarlyPrune >= EARLY_PRUNE_INTERVAL_MILLIS) {
+				lastEarlyPrune = now;
+				prune();
+			}
+			if (lastSeen.size() >= MAX_SEEN) {
+				return;
+			}
+		}
+		lastSeen.put(key, now);
+	}
+
+	// Completes with whether the player is connected to Global Chat
+	public CompletableFuture<Boolean> lookup(String name, int world) {
+		return lookup(name, world, true);
+	}
+
+	// The same for the scene's badges, only counted in getSceneLookups
+	public CompletableFuture<Boolean> lookupForScene(String name, int world) {
+		sceneLookups.incrementAndGet();
+		return lookup(name, world, false);
+	}
+
+	private CompletableFuture<Boolean> lookup(String name, int world, boolean counted) {
+		final long started = System.nanoTime();
+		if (counted) {
+			lookups.incrementAndGet();
+		}
+		String key = Text.standardize(name);
+		long now = System.currentTimeMillis();
+
+		Long seenAt = lastSeen.get(key);
+		if (seenAt != null && now - seenAt < SEEN_RECENTLY_MILLIS) {
+			if (counted) {
+				seenHits.incrementAndGet();
+			}
+			return record(counted, started, CompletableFuture.completedFuture(true));
+		}
+		CachedStatus cached = cache.get(key);
+		if (cached != null && cached.expiresAt > now) {
+			if (counted) {
+				cacheHits.incrementAndGet();
+			}
+			return record(counted, started, CompletableFuture.completedFuture(cached.connected));
+		}
+
+		CompletableFuture<Boolean> result;
+		boolean schedule = false;
+		synchronized (pending) {
+			Map<String, CompletableFuture<Boolean>> batch = pending.get(world);
+			if (batch == null) {
+				batch = new LinkedHashMap<>();
+				pending.put(world, batch);
+				schedule = true;
+			}
+			// The same name asked for twice in one window shares the answer
+			result = batch.computeIfAbsent(key, k -> new CompletableFuture<>());
+		}
+		if (schedule) {
+			batchScheduler.schedule(() -> flush(world), BATCH_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		return record(counted, started, result);
+	}
+
+	private CompletableFuture<Boolean> record(boolean counted, long started, CompletableFuture<Boolean> future) {
+		if (!counted) {
+			return future;
+		}
+		return future.whenComplete((connected, error) -> {
+			totalLatencyMillis.addAndGet((System.nanoTime() - started) / 1_000_000);
+			completed.incrementAndGet();
+		});
+	}
+
+	private void flush(int world) {
+		Map<String, CompletableFuture<Boolean>> batch;
+		synchronized (pending) {
+			batch = pending.remove(world);
+		}
+		if (batch == null || batch.isEmpty()) {
+			return;
+		}
+
+		if (batch.size() == 1 || batchUnsupported) {
+			batch.forEach((name, future) -> fetchSingle(name, world, future));
+			return;
+		}
+
+		// Split oversized batches to keep the URL reasonable
+		Map<String, CompletableFuture<Boolean>> chunk = new LinkedHashMap<>();
+		for (Map.Entry<String, CompletableFuture<Boolean>> entry : batch.entrySet()) {
+			chunk.put(entry.getKey(), entry.getValue());
+			if (chunk.size() == MAX_BATCH_SIZE) {
+				fetchBatch(chunk, world);
+				chunk = new LinkedHashMap<>();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			fetchBatch(chunk, world);
+		}
+	}
+
+	private void fetchSingle(String name, int world, CompletableFuture<Boolean> future) {
+		apiClient.get(GlobalChatApiClient.Endpoint.CHECK_PLAYER_STATUS,
+				"?playerName=" + encode(name) + "&world=" + world, JsonObject.class)
+			.whenComplete((json, error) -> {
+				if (error != null) {
+					future.completeExceptionally(error.getCause() != null ? error.getCause() : error);
+					return;
+				}
+				boolean connected = json != null && json.has("connectedToGlobalChat")
+					&& json.get("connectedToGlobalChat").getAsBoolean();
+				complete(name, connected, future);
+			});
+	}
+
+	// Expects {"players": {"<name>": true|false, ...}}; names missing from the answer are asked singly
+	private void fetchBatch(Map<String, CompletableFuture<Boolean>> batch, int world) {
+		StringBuilder names = new StringBuilder();
+		for (String name : batch.keySet()) {
+			if (names.length() > 0) {
+				names.append(',');
+			}
+			names.append(encode(name));
+		}
+		apiClient.get(GlobalChatApiClient.Endpoint.CHECK_PLAYERS_STATUS,
+				"?playerNames=" + names + "&world=" + world, JsonObject.class)
+			.whenComplete((json, error) -> {
+				JsonObject players = json != null && json.has("players") && json.get("players").isJsonObject()
+					? json.getAsJsonObject("players") : null;
+				if (error != null || players == null) {
+					Throwable cause = error != null && error.getCause() != null ? error.getCause() : error;
+					if ((error == null && players == null) || isClientError(cause)) {
+						log.debug("Batched status lookups not supported, falling back to single lookups");
+						batchUnsupported = true;
+					}
+					batch.forEach((name, future) -> fetchSingle(name, world, future));
+					return;
+				}
+				batch.forEach((name, future) -> {
+					JsonElement status = findIgnoringCase(players, name);
+					if (status != null && status.isJsonPrimitive()) {
+						complete(name, status.getAsBoolean(), future);
+					} else {
+						fetchSingle(name, world, future);
+					}
+				});
+			});
+	}
+
+	private void complete(String name, boolean connected, CompletableFuture<Boolean> future) {
+		cache.put(name, new CachedStatus(connected, System.currentTimeMillis() + CACHE_TTL_MILLIS));
+		future.complete(connected);
+	}
+
+	private static JsonElement findIgnoringCase(JsonObject players, String name) {
+		JsonElement exact = players.get(name);
+		if (exact != null) {
+			return exact;
+		}
+		for (Map.Entry<String, JsonElement> entry : players.entrySet()) {
+			if (Text.standardize(entry.getKey()).equals(name)) {
+				return entry.getValue();
+			}
+		}
+		return null;
+	}
+
+	private static boolean isClientError(Throwable error) {
+		if (!(error instanceof GlobalChatApiClient.ApiException)) {
+			return false;
+		}
+		int code = ((GlobalChatApiClient.ApiException) error).getCode();
+		return code >= 400 && code < 500 && code != 429;
+	}
+
+	private static String encode(String name) {
+		try {
+			return URLEncoder.encode(name, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			return name.replace(" ", "%20"); // Fallback
+		}
+	}
+
+	// Forget seen players whose messages are too old to prove anything, and expired answers
+	private void prune() {
+		long cutoff = System.currentTimeMillis() - SEEN_RECENTLY_MILLIS;
+		lastSeen.values().removeIf(seenAt -> seenAt < cutoff);
+		long now = System.currentTimeMillis();
+		cache.values().removeIf(status -> status.expiresAt <= now);
+	}
+
+	int getSeenCount() {
+		return lastSeen.size();
+	}
+
+	public long getLookups() {
+		return lookups.get();
+	}
+
+	// Share of lookups answered without a request
+	public double getHitRate() {
+		long total = lookups.get();
+		return total > 0 ? (seenHits.get() + cacheHits.get()) / (double) total : 0;
+	}
+
+	public long getSeenHits() {
+		return seenHits.get();
+	}
+
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	public long getSceneLookups() {
+		return sceneLookups.get();
+	}
+
+	// Click to answer, over completed lookups
+	public long getAverageLatencyMillis() {
+		long total = completed.get();
+		return total > 0 ? totalLatencyMillis.get() / total : 0;
+	}
+}
@@ -0,0 +1,201 @@
+package com.globalchat;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.extern.slf4j.Slf4j;
+
+// Our share of the service's monthly message quota: every message we publish and every message
+// delivered to us counts against it. Counted per channel type for the current calendar month
+// (UTC, like the service's billing) and saved in the config between sessions.
+// Once the month's projected usage passes the configured budget, world chat is thinned out in
+// steps. Private, friends and clan chat are never limited.
+@Slf4j
+public class QuotaTracker {
+
+	public enum ChannelType {
+		WORLD, PRIVATE, FRIENDS, CLAN, OTHER;
+
+		static ChannelType of(String channel) {
+			switch (channel.isEmpty() ? ' ' : channel.charAt(0)) {
+				case 'w':
+					return WORLD;
+				case 'p':
+					return PRIVATE;
+				case 'f':
+					return FRIENDS;
+				case 'c':
+					return CLAN;
+				default:
+					return OTHER;
+			}
+		}
+	}
+
+	public enum Level {
+		// Within budget
+		NORMAL,
+		// Over budget: our own world chat is sampled, one message every WORLD_PUBLISH_INTERVAL_MILLIS
+		THROTTLED,
+		// Well over budget: world chat is left entirely, neither sent nor received
+		WORLD_PAUSED
+	}
+
+	// Projected usage this many times the budget pauses world chat
+	static final double PAUSE_WORLD_RATIO = 1.5;
+	static final long WORLD_PUBLISH_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+	// A few busy hours at the start of a month would project to an enormous month,
+	// so usage is never extrapolated from less than this
+	static final long MIN_PROJECTION_WINDOW_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	// What is saved in the config
+	static class Usage {
+		String month;
+		long[] published;
+		long[] delivered;
+	}
+
+	private static final int TYPES = ChannelType.values().length;
+
+	private final AtomicLongArray published = new AtomicLongArray(TYPES);
+	private final AtomicLongArray delivered = new AtomicLongArray(TYPES);
+	private volatile YearMonth month;
+	private volatile long monthStartsAt;
+	private volatile long monthEndsAt;
+	private volatile Level level = Level.NORMAL;
+	// Client thread only
+	private long lastWorldPublish;
+
+	public QuotaTracker() {
+		this(System.currentTimeMillis());
+	}
+
+	QuotaTracker(long now) {
+		startMonth(now);
+	}
+
+	// Transport threads, for every message acknowledged by the service
+	void recordPublished(String channel, long now) {
+		rollOver(now);
+		published.incrementAndGet(ChannelType.of(channel).ordinal());
+	}
+
+	// Transport threads, for every message delivered to us whether or not it is shown
+	void recordDelivered(String channel, long now) {
+		rollOver(now);
+		delivered.incrementAndGet(ChannelType.of(channel).ordinal());
+	}
+
+	public long getPublished(ChannelType type) {
+		return published.get(type.ordinal());
+	}
+
+	public long getDelivered(ChannelType type) {
+		return delivered.get(type.ordinal());
+	}
+
+	public long getUsed() {
+		long used = 0;
+		for (int i = 0; i < TYPES; i++) {
+			used += published.get(i) + delivered.get(i);
+		}
+		return used;
+	}
+
+	// This month's usage if it carries on at the rate so far
+	public long getProjectedUsage(long now) {
+		rollOver(now);
+		long length = monthEndsAt - monthStartsAt;
+		long elapsed = Math.min(Math.max(now - monthStartsAt, MIN_PROJECTION_WINDOW_MILLIS), length);
+		return (long) ((double) getUsed() * length / elapsed);
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	// Re-evaluated periodically rather than per message, a budget of 0 or less means no limit
+	public Level updateLevel(long now, int monthlyBudget) {
+		Level updated = Level.NORMAL;
+		if (monthlyBudget > 0) {
+			double ratio = (double) getProjectedUsage(now) / monthlyBudget;
+			if (ratio >= PAUSE_WORLD_RATIO) {
+				updated = Level.WORLD_PAUSED;
+			} else if (ratio > 1) {
+				updated = Level.THROTTLED;
+			}
+		}
+		if (updated != level) {
+			log.debug("Message budget level {} -> {} ({} used, {} projected, budget {})", level, updated,
+				getUsed(), getProjectedUsage(now), monthlyBudget);
+			level = updated;
+		}
+		return updated;
+	}
+
+	// Client thread, before publishing our own world chat line
+	public boolean allowWorldPublish(long now) {
+		switch (level) {
+			case NORMAL:
+				return true;
+			case THROTTLED:
+				if (now - lastWorldPublish >= WORLD_PUBLISH_INTERVAL_MILLIS) {
+					lastWorldPublish = now;
+					return true;
+				}
+				return false;
+			default:
+				return false;
+		}
+	}
+
+	synchronized Usage snapshot() {
+		Usage usage = new Usage();
+		usage.month = month.toString();
+		usage.published = new long[TYPES];
+		usage.delivered = new long[TYPES];
+		for (int i = 0; i < TYPES; i++) {
+			usage.published[i] = published.get(i);
+			usage.delivered[i] = delivered.get(i);
+		}
+		return usage;
+	}
+
+	// Saved counts from an earlier session, only kept if they are for the current month
+	synchronized void restore(Usage usage, long now) {
+		rollOver(now);
+		if (usage == null || usage.published == null || usage.delivered == null
+				|| !month.toString().equals(usage.month)) {
+			return;
+		}
+		for (int i = 0; i < TYPES && i < usage.published.length && i < usage.delivered.length; i++) {
+			published.addAndGet(i, usage.published[i]);
+			delivered.addAndGet(i, usage.delivered[i]);
+		}
+	}
+
+	private void rollOver(long now) {
+		if (now < monthEndsAt) {
+			return;
+		}
+		synchronized (this) {
+			if (now >= monthEndsAt) {
+				startMonth(now);
+			}
+		}
+	}
+
+	private synchronized void startMonth(long now) {
+		YearMonth current = YearMonth.from(Instant.ofEpochMilli(now).atZone(ZoneOffset.UTC));
+		for (int i = 0; i < TYPES; i++) {
+			published.set(i, 0);
+			delivered.set(i, 0);
+		}
+		month = current;
+		monthStartsAt = current.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+		monthEndsAt = current.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+		// The level is left for the next updateLevel, so whoever applies it sees the change
+	}
+}
@@ -0,0 +1,340 @@
+package com.globalchat;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+// ChatTransport on top of the self-hosted relay (the relay-server module), used when the
+// config's chat backend is set to the relay. Tokens come from the relay's own /token endpoint
+// rather than the TokenSource, which asks the Ably token service. Message data is AES
+// encrypted with the channel key before it leaves the client, the relay only forwards it.
+@Slf4j
+@Singleton
+public class RelayChatTransport implements ChatTransport {
+
+	static final int CONNECTION_LIMIT_ERROR_CODE = 40005;
+	private static final int TOKEN_ERROR_CODE = 40140;
+	private static final int DISCONNECTED_ERROR_CODE = 80003;
+	private static final int IV_LENGTH = 16;
+
+	private final OkHttpClient httpClient;
+	private final Gson gson;
+	private final GlobalChatConfig config;
+	private final SecureRandom random = new SecureRandom();
+
+	@Inject
+	public RelayChatTransport(OkHttpClient httpClient, Gson gson, GlobalChatConfig config) {
+		// Keepalive pings so a dead relay is noticed and the plugin reconnects
+		this.httpClient = httpClient.newBuilder().pingInterval(30, TimeUnit.SECONDS).build();
+		this.gson = gson;
+		this.config = config;
+	}
+
+	@Override
+	public Connection open(String clientId, TokenSource tokens, ConnectionListener listener) throws ChatTransportException {
+		HttpUrl relay = relayUrl();
+		RelayConnection connection = new RelayConnection(listener);
+		Request tokenRequest = new Request.Builder()
+			.url(relay.resolve("token"))
+			.header("clientId", clientId)
+			.get()
+			.build();
+		httpClient.newCall(tokenRequest).enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				connection.lost(State.DISCONNECTED, new ChatTransportException("Relay unreachable: " + e.getMessage(), e));
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) throws IOException {
+				try (ResponseBody body = response.body()) {
+					if (response.code() == 429 || response.code() == 503) {
+						connection.lost(State.FAILED, new ChatTransportException("Relay is at capacity",
+							response.code(), CONNECTION_LIMIT_ERROR_CODE));
+					} else if (!response.isSuccessful() || body == null) {
+						connection.lost(State.FAILED, new ChatTransportException("Relay token request failed: HTTP "
+							+ response.code(), response.code(), TOKEN_ERROR_CODE));
+					} else {
+						connection.connect(relay, body.string().trim());
+					}
+				}
+			}
+		});
+		return connection;
+	}
+
+	// ws(s):// is what people will paste, OkHttp wants http(s):// for both the token and the upgrade
+	private HttpUrl relayUrl() throws ChatTransportException {
+		String configured = config.relayUrl().trim();
+		if (configured.regionMatches(true, 0, "ws://", 0, 5)) {
+			configured = "http://" + configured.substring(5);
+		} else if (configured.regionMatches(true, 0, "wss://", 0, 6)) {
+			configured = "https://" + configured.substring(6);
+		}
+		HttpUrl url = HttpUrl.parse(configured);
+		if (url == null) {
+			throw new ChatTransportException("Relay URL is not set or invalid: " + config.relayUrl(), 0, 0);
+		}
+		return url;
+	}
+
+	// iv + AES/CBC(json), base64. The same key padding as the Ably channels.
+	private String encrypt(String cipherKey, String json) throws GeneralSecurityException {
+		byte[] iv = new byte[IV_LENGTH];
+		random.nextBytes(iv);
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(ChannelKeys.keyBytes(cipherKey), "AES"), new IvParameterSpec(iv));
+		byte[] encrypted = cipher.doFinal(json.getBytes(StandardCharsets.UTF_8));
+		byte[] data = Arrays.copyOf(iv, IV_LENGTH + encrypted.length);
+		System.arraycopy(encrypted, 0, data, IV_LENGTH, encrypted.length);
+		return Base64.getEncoder().encodeToString(data);
+	}
+
+	private static String decrypt(SecretKeySpec key, String data) throws GeneralSecurityException {
+		byte[] bytes = Base64.getDecoder().decode(data);
+		if (bytes.length <= IV_LENGTH) {
+			throw new GeneralSecurityException("Message too short");
+		}
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(bytes, 0, IV_LENGTH));
+		return new String(cipher.doFinal(bytes, IV_LENGTH, bytes.length - IV_LENGTH), StandardCharsets.UTF_8);
+	}
+
+	private static final class Subscription {
+		final SecretKeySpec key;
+		final MessageListener listener;
+
+		Subscription(String cipherKey, MessageListener listener) {
+			this.key = new SecretKeySpec(ChannelKeys.keyBytes(cipherKey), "AES");
+			this.listener = listener;
+		}
+	}
+
+	private final class RelayConnection extends WebSocketListener implements Connection {
+		private final ConnectionListener listener;
+		private final AtomicLong nextId = new AtomicLong();
+		// Request id -> waiting for the relay's ack
+		private final Map<Long, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+		private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+		private volatile WebSocket socket;
+		private volatile State state = State.CONNECTING;
+
+		RelayConnection(ConnectionListener listener) {
+			this.listener = listener;
+		}
+
+		synchronized void connect(HttpUrl relay, String token) {
+			if (state != State.CONNECTING) {
+				return; // Closed while the token was on its way
+			}
+			Request upgrade = new Request.Builder()
+				.url(relay.newBuilder().addQueryParameter("token", token).build())
+				.build();
+			socket = httpClient.newWebSocket(upgrade, this);
+		}
+
+		@Override
+		public State getState() {
+			return state;
+		}
+
+		@Override
+		public CompletableFuture<Void> attach(String channel, String cipherKey, MessageListener messageListener) {
+			Subscription subscription = new Subscription(cipherKey, messageListener);
+			subscriptions.put(channel, subscription);
+			CompletableFuture<Void> attached = request("attach", channel, null);
+			attached.whenComplete((ignored, error) -> {
+				if (error != null) {
+					subscriptions.remove(channel, subscription);
+				}
+			});
+			return attached;
+		}
+
+		@Override
+		public CompletableFuture<Void> detach(String channel) {
+			subscriptions.remove(channel);
+			return request("detach", channel, null);
+		}
+
+		@Override
+		public CompletableFuture<Void> publish(String channel, String cipherKey, JsonObject message) {
+			String data;
+			try {
+				data = encrypt(cipherKey, gson.toJson(message));
+			} catch (GeneralSecurityException e) {
+				CompletableFuture<Void> failed = new CompletableFuture<>();
+				failed.completeExceptionally(new ChatTransportException("Encryption failed", e));
+				return failed;
+			}
+			return request("publish", channel, data);
+		}
+
+		private CompletableFuture<Void> request(String op, String channel, String data) {
+			CompletableFuture<Void> done = new CompletableFuture<>();
+			WebSocket current = socket;
+			if (state != State.CONNECTED || current == null) {
+				done.completeExceptionally(new ChatTransportException("Not connected", 0, DISCONNECTED_ERROR_CODE));
+				return done;
+			}
+			long id = nextId.incrementAndGet();
+			JsonObject request = new JsonObject();
+			request.addProperty("op", op);
+			request.addProperty("id", id);
+			request.addProperty("channel", channel);
+			if (data != null) {
+				request.addProperty("data", data);
+			}
+			pending.put(id, done);
+			if (!current.send(gson.toJson(request))) {
+				pending.remove(id);
+				done.completeExceptionally(new ChatTransportException("Connection closing", 0, DISCONNECTED_ERROR_CODE));
+			}
+			return done;
+		}
+
+		@Override
+		public void close() {
+			// connect() checks the state under the same lock, so after this it either
+			// already stored its socket or never opens one
+			transition(State.CLOSED, null);
+			WebSocket current = socket;
+			if (current != null) {
+				current.close(1000, "Closed");
+			}
+			failPending(new ChatTransportException("Connection closed", 0, DISCONNECTED_ERROR_CODE));
+		}
+
+		@Override
+		public void onOpen(WebSocket webSocket, Response response) {
+			transition(State.CONNECTED, null);
+		}
+
+		@Override
+		public void onMessage(WebSocket webSocket, String text) {
+			JsonObject message;
+			try {
+				message = gson.fromJson(text, JsonObject.class);
+			} catch (JsonParseException e) {
+				log.debug("Ignoring malformed relay message");
+				return;
+			}
+			if (message == null || !message.has("op")) {
+				return;
+			}
+			switch (message.get("op").getAsString()) {
+				case "ack": {
+					CompletableFuture<Void> done = pending.remove(message.get("id").getAsLong());
+					if (done != null) {
+						done.complete(null);
+					}
+					break;
+				}
+				case "error": {
+					CompletableFuture<Void> done = pending.remove(message.get("id").getAsLong());
+					if (done != null) {
+						done.completeExceptionally(new ChatTransportException(message.get("message").getAsString(),
+							message.get("statusCode").getAsInt(), message.get("code").getAsInt()));
+					}
+					break;
+				}
+				case "message":
+					deliver(message.get("channel").getAsString(), message.get("data").getAsString());
+					break;
+				default:
+					break;
+			}
+		}
+
+		private void deliver(String channel, String data) {
+			Subscription subscription = subscriptions.get(channel);
+			if (subscription == null) {
+				return;
+			}
+			JsonElement decoded;
+			try {
+				decoded = gson.fromJson(decrypt(subscription.key, data), JsonElement.class);
+			} catch (GeneralSecurityException | IllegalArgumentException | JsonParseException e) {
+				// Encrypted with another key, same as Ably failing to decrypt it
+				log.debug("Could not decrypt message on {}", channel);
+				return;
+			}
+			subscription.listener.onMessage(channel, decoded);
+		}
+
+		@Override
+		public void onClosing(WebSocket webSocket, int code, String reason) {
+			webSocket.close(1000, null);
+		}
+
+		@Override
+		public void onClosed(WebSocket webSocket, int code, String reason) {
+			lost(State.DISCONNECTED, new ChatTransportException("Relay closed the connection: " + code + " " + reason,
+				0, DISCONNECTED_ERROR_CODE));
+		}
+
+		@Override
+		public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+			if (response != null && (response.code() == 429 || response.code() == 503)) {
+				lost(State.FAILED, new ChatTransportException("Relay is at capacity", response.code(),
+					CONNECTION_LIMIT_ERROR_CODE));
+			} else if (response != null && response.code() == 401) {
+				lost(State.FAILED, new ChatTransportException("Relay rejected the token", 401, TOKEN_ERROR_CODE));
+			} else {
+				lost(State.DISCONNECTED, new ChatTransportException("Relay connection lost: " + t.getMessage(), t));
+			}
+		}
+
+		// Reconnecting is left to AblyManager, which opens a new connection
+		void lost(State next, ChatTransportException reason) {
+			transition(next, reason);
+			failPending(reason);
+		}
+
+		private void failPending(ChatTransportException reason) {
+			for (Long id : pending.keySet()) {
+				CompletableFuture<Void> done = pending.remove(id);
+				if (done != null) {
+					done.completeExceptionally(reason);
+				}
+			}
+		}
+
+		private void transition(State next, ChatTransportException reason) {
+			synchronized (this) {
+				if (state == next || state == State.CLOSED) {
+					return;
+				}
+				state = next;
+			}
+			listener.onStateChange(this, next, reason);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package com.globalchat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+// Global Chat status of the players around us, for badges on menu targets.
+// Names are queued as players spawn and resolved in the background, a batch at a time and
+// rate limited, through PlayerStatusLookup (so recently seen senders cost nothing).
+// Reading a status is a single hash lookup on the exact name the game gives us, cheap
+// enough to run for every menu entry every frame.
+@Slf4j
+@Singleton
+public class SceneStatusTracker {
+
+	public static final String BADGE = "<img=19>";
+
+	static final int MAX_ENTRIES = 4096;
+	static final int BATCH_SIZE = 50;
+	// At most one batch every this often, however busy the scene
+	static final long REQUEST_INTERVAL_MILLIS = 2000;
+
+	private final PlayerStatusLookup playerStatusLookup;
+	private final ScheduledExecutorService scheduler;
+
+	// Player name as the game reports it -> connected
+	private final Map<String, Boolean> statuses = new ConcurrentHashMap<>();
+	// Insertion order of statuses, oldest evicted first once over MAX_ENTRIES
+	private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+	// Names waiting to be resolved. Guarded by itself.
+	private final Set<String> queued = new LinkedHashSet<>();
+	private volatile int world;
+
+	@Inject
+	public SceneStatusTracker(PlayerStatusLookup playerStatusLookup) {
+		this.playerStatusLookup = playerStatusLookup;
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "GlobalChatSceneStatus");
+			t.setDaemon(true);
+			return t;
+		});
+		this.scheduler = executor;
+		scheduler.scheduleWithFixedDelay(this::resolveNextBatch,
+			REQUEST_INTERVAL_MILLIS, REQUEST_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	// Client thread, for every player that spawns while badges are enabled
+	public void onPlayerSpawned(String name, int world) {
+		if (name == null || name.isEmpty()) {
+			return;
+		}
+		String key = key(name);
+		if (statuses.containsKey(key)) {
+			return;
+		}
+		this.world = world;
+		synchronized (queued) {
+			if (queued.size() < MAX_ENTRIES) {
+				queued.add(key);
+			}
+		}
+	}
+
+	// A message from them just arrived, no need to ask
+	public void markConnected(String name) {
+		if (name != null && !name.isEmpty()) {
+			put(key(name), true);
+		}
+	}
+
+	public boolean isConnected(String name) {
+		return name != null && statuses.get(key(name)) == Boolean.TRUE;
+	}
+
+	// Returns the target with the badge in front if the player is connected, otherwise the same instance
+	public String decorate(String target, String playerName) {
+		if (target == null || playerName == null || statuses.get(key(playerName)) != Boolean.TRUE
+			|| target.startsWith(BADGE)) {
+			return target;
+		}
+		return BADGE + target;
+	}
+
+	// World hop or logout: statuses are per world
+	public void clear() {
+		synchronized (queued) {
+			queued.clear();
+		}
+		statuses.clear();
+		insertionOrder.clear();
+	}
+
+	public int getTrackedCount() {
+		return statuses.size();
+	}
+
+	public int getQueuedCount() {
+		synchronized (queued) {
+			return queued.size();
+		}
+	}
+
+	// Package-private for tests, otherwise driven by the scheduler
+	void resolveNextBatch() {
+		List<String> batch = new ArrayList<>(BATCH_SIZE);
+		synchronized (queued) {
+			Iterator<String> names = queued.iterator();
+			while (names.hasNext() && batch.size() < BATCH_SIZE) {
+				batch.add(names.next());
+				names.remove();
+			}
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		final int batchWorld = world;
+		// Issued back to back so PlayerStatusLookup sends them as one request
+		for (String name : batch) {
+			playerStatusLookup.lookupForScene(name, batchWorld).whenComplete((connected, error) -> {
+				if (error != null) {
+					log.debug("Scene status lookup failed for {}: {}", name, error.getMessage());
+					return;
+				}
+				if (world == batchWorld) {
+					put(name, connected);
+				}
+			});
+		}
+	}
+
+	// The game uses non-breaking spaces in some names, chat messages don't.
+	// Returns the same instance for names without one.
+	private static String key(String name) {
+		return name.replace('\u00A0', ' ');
+	}
+
+	private void put(String name, boolean connected) {
+		if (statuses.put(name, connected) == null) {
+			insertionOrder.add(name);
+			while (statuses.size() > MAX_ENTRIES) {
+				String oldest = insertionOrder.poll();
+				if (oldest == null) {
+					break;
+				}
+				statuses.remove(oldest);
+			}
+		}
+	}
+}
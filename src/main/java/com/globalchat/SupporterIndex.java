@@ -0,0 +1,131 @@
+package com.globalchat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Immutable snapshot of the supporter list with a case-insensitive name -> icon index.
+// Built once per fetch and swapped in whole, so lookups on the chat path need no locking.
+// Lookups hash the name in place (no trim/lowercase copies), so they don't allocate.
+public final class SupporterIndex {
+
+    public static final SupporterIndex EMPTY = new SupporterIndex(Collections.emptyList(), 0, "");
+
+    private final List<Supporter> supporters;
+    private final int totalSupport;
+    private final String lastUpdated;
+
+    // Open addressing with linear probing, capacity is a power of two at most half full
+    private final String[] names;
+    private final String[] icons;
+    private final int[] hashes;
+    private final int mask;
+
+    public SupporterIndex(List<Supporter> supporters, int totalSupport, String lastUpdated) {
+        this.supporters = Collections.unmodifiableList(new ArrayList<>(supporters));
+        this.totalSupport = totalSupport;
+        this.lastUpdated = lastUpdated;
+
+        int capacity = Integer.highestOneBit(Math.max(1, supporters.size()) * 2 - 1) << 1;
+        this.names = new String[capacity];
+        this.icons = new String[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+
+        for (Supporter supporter : supporters) {
+            if (supporter == null || supporter.name == null) {
+                continue;
+            }
+            String name = supporter.name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            int hash = hash(name, 0, name.length());
+            int slot = find(name, 0, name.length(), hash);
+            if (names[slot] == null) {
+                // First entry wins, matching the old findFirst() scan
+                names[slot] = name;
+                icons[slot] = getTierIcon(supporter);
+                hashes[slot] = hash;
+            }
+        }
+    }
+
+    public List<Supporter> getSupporters() {
+        return supporters;
+    }
+
+    public int getTotalSupport() {
+        return totalSupport;
+    }
+
+    public String getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public boolean isSupporter(String username) {
+        return slotOf(username) >= 0;
+    }
+
+    // Icon prefix including trailing space, "" for non-supporters and tiers without an icon
+    public String getIcon(String username) {
+        int slot = slotOf(username);
+        return slot >= 0 ? icons[slot] : "";
+    }
+
+    private int slotOf(String username) {
+        if (username == null) {
+            return -1;
+        }
+        // Trim without copying
+        int start = 0;
+        int end = username.length();
+        while (start < end && username.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && username.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return -1;
+        }
+        int slot = find(username, start, end, hash(username, start, end));
+        return names[slot] != null ? slot : -1;
+    }
+
+    // Returns the slot holding the name, or the empty slot where it would go
+    private int find(String name, int start, int end, int hash) {
+        int length = end - start;
+        int slot = hash & mask;
+        while (names[slot] != null) {
+            if (hashes[slot] == hash && names[slot].length() == length
+                    && names[slot].regionMatches(true, 0, name, start, length)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(String name, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        // Spread the bits so names sharing a suffix don't cluster in the low slots
+        return hash ^ (hash >>> 16);
+    }
+
+    static String getTierIcon(Supporter supporter) {
+        // Use RuneScape item icons for different tiers
+        if (supporter.amount >= 50) {
+            return "<img=314> "; // Gold
+        } else if (supporter.amount >= 20) {
+            return "<img=312> "; // Silver
+        } else if (supporter.amount >= 5) {
+            return "<img=313> "; // Bronze
+        } else {
+            return ""; // No icon
+        }
+    }
+}
@@ -1,144 +1,287 @@
 package com.globalchat;
 
+import com.globalchat.GlobalChatApiClient.ApiResponse;
+import com.globalchat.GlobalChatApiClient.Endpoint;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.lang.reflect.Type;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
 @Slf4j
 @Singleton
 public class SupporterManager {
-    private static final String SUPPORTERS_URL = "https://global-chat-frontend.vercel.app/api/supporters";
     private static final long REFRESH_INTERVAL_MINUTES = 60;
+    // A cached list younger than this is used as-is at startup, no request needed
+    static final long FRESH_MILLIS = TimeUnit.MINUTES.toMillis(REFRESH_INTERVAL_MINUTES);
+    // Older than fresh but within this window it is still shown while we revalidate
+    static final long STALE_WHILE_REVALIDATE_MILLIS = TimeUnit.DAYS.toMillis(7);
+    // RFC 3229 delta encoding, servers that don't know it just send the full list
+    static final String DELTA_ENCODING = "supporters-delta";
+    private static final int HTTP_IM_USED = 226;
+    private static final String CACHE_FILE = "supporters.json";
 
     private final Gson gson;
-    private final OkHttpClient httpClient;
+    private final GlobalChatApiClient apiClient;
     private final ScheduledExecutorService scheduler;
-    private List<Supporter> supporters = new ArrayList<>();
-    private int totalSupport = 0;
-    private String lastUpdated = "";
+    private final File cacheDir;
+    // Replaced whole on every successful fetch, readers on the chat path never lock
+    private volatile SupporterIndex index = SupporterIndex.EMPTY;
+    // Validators and age of what's in the index, written on the scheduler thread
+    private volatile CachedSupporters cached;
+    private final ChatMetrics.Counter fetches;
+    private final ChatMetrics.Counter notModified;
+    private final ChatMetrics.Counter fetchFailures;
 
     @Inject
-    public SupporterManager(Gson gson, OkHttpClient httpClient) {
-        this.gson = gson;
-        this.httpClient = httpClient;
-        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+    public SupporterManager(Gson gson, GlobalChatApiClient apiClient, ChatMetrics metrics) {
+        this(gson, apiClient, metrics, new File(RuneLite.CACHE_DIR, "globalchat"));
 
-        // Initial fetch
-        fetchSupporters();
+        // Load the last good list from disk, then revalidate it if needed. Both run on the
+        // scheduler so injection never waits on disk or network.
+        scheduler.execute(() -> {
+            loadFromDisk();
+            if (!isFresh()) {
+                refresh();
+            }
+        });
 
         // Schedule periodic refresh
-        scheduler.scheduleAtFixedRate(this::fetchSupporters,
+        scheduler.scheduleAtFixedRate(this::refresh,
                 REFRESH_INTERVAL_MINUTES, REFRESH_INTERVAL_MINUTES, TimeUnit.MINUTES);
     }
 
+    SupporterManager(Gson gson, GlobalChatApiClient apiClient, ChatMetrics metrics, File cacheDir) {
+        this.gson = gson;
+        this.apiClient = apiClient;
+        this.cacheDir = cacheDir;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        fetches = metrics.counter("supporters.fetches");
+        notModified = metrics.counter("supporters.notModified");
+        fetchFailures = metrics.counter("supporters.fetchFailures");
+        metrics.gauge("supporters.count", () -> index.getSupporters().size());
+        metrics.gauge("supporters.cacheAgeMillis", this::getCacheAgeMillis);
+    }
+
+    // How old the list we're showing is, -1 before we have one
+    long getCacheAgeMillis() {
+        CachedSupporters current = cached;
+        return current != null ? System.currentTimeMillis() - current.fetchedAt : -1;
+    }
+
     public void shutdown() {
         scheduler.shutdown();
     }
 
     public List<Supporter> getSupporters() {
-        return new ArrayList<>(supporters);
+        return new ArrayList<>(index.getSupporters());
     }
 
     public int getTotalSupport() {
-        return totalSupport;
+        return index.getTotalSupport();
     }
 
     public String getLastUpdated() {
-        return lastUpdated;
+        return index.getLastUpdated();
     }
 
+    // Called for every chat line, O(1) and allocation-free
     public boolean isSupporter(String username) {
-        if (username == null)
-            return false;
-        return supporters.stream()
-                .anyMatch(supporter -> supporter.name != null &&
-                        supporter.name.equalsIgnoreCase(username.trim()));
+        return index.isSupporter(username);
     }
 
     public String getSupporterIcon(String username) {
-        if (username == null)
-            return "";
-
-        return supporters.stream()
-                .filter(supporter -> supporter.name != null &&
-                        supporter.name.equalsIgnoreCase(username.trim()))
-                .findFirst()
-                .map(this::getTierIcon)
-                .orElse("");
-    }
-
-    private String getTierIcon(Supporter supporter) {
-        // Use RuneScape item icons for different tiers
-        if (supporter.amount >= 50) {
-            return "<img=314> "; // Gold
-        } else if (supporter.amount >= 20) {
-            return "<img=312> "; // Silver
-        } else if (supporter.amount >= 5) {
-            return "<img=313> "; // Bronze
-        } else {
-            return ""; // No icon
+        return index.getIcon(username);
+    }
+
+    // Publish the cached list if it is still within the stale-while-revalidate window
+    void loadFromDisk() {
+        File file = new File(cacheDir, CACHE_FILE);
+        if (!file.isFile()) {
+            return;
+        }
+        try {
+            String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            CachedSupporters loaded = gson.fromJson(json, CachedSupporters.class);
+            if (loaded == null || loaded.data == null || loaded.data.supporters == null) {
+                return;
+            }
+            long age = System.currentTimeMillis() - loaded.fetchedAt;
+            if (age > STALE_WHILE_REVALIDATE_MILLIS) {
+                log.debug("Cached supporters are {}h old, waiting for a fresh list", TimeUnit.MILLISECONDS.toHours(age));
+                return;
+            }
+            publish(loaded);
+            log.debug("Loaded {} supporters from cache ({}s old)", loaded.data.supporters.size(),
+                    TimeUnit.MILLISECONDS.toSeconds(age));
+        } catch (Exception e) {
+            log.debug("Ignoring unreadable supporter cache", e);
         }
     }
 
-    private void fetchSupporters() {
-        Request request = new Request.Builder()
-                .url(SUPPORTERS_URL)
-                .build();
+    boolean isFresh() {
+        CachedSupporters current = cached;
+        return current != null && System.currentTimeMillis() - current.fetchedAt < FRESH_MILLIS;
+    }
 
-        httpClient.newCall(request).enqueue(new okhttp3.Callback() {
-            @Override
-            public void onFailure(okhttp3.Call call, java.io.IOException e) {
-                log.error("Error fetching supporters", e);
+    // Conditional GET, blocking on the scheduler thread. Keeps serving whatever we have if the request fails.
+    void refresh() {
+        CachedSupporters current = cached;
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (current != null) {
+            if (current.etag != null) {
+                headers.put("If-None-Match", current.etag);
+            }
+            if (current.lastModified != null) {
+                headers.put("If-Modified-Since", current.lastModified);
             }
+            headers.put("A-IM", DELTA_ENCODING);
+        }
 
-            @Override
-            public void onResponse(okhttp3.Call call, Response response) throws java.io.IOException {
-                try {
-                    if (response.isSuccessful() && response.body() != null) {
-                        String responseBody = response.body().string();
-                        parseSupportersResponse(responseBody);
-                        log.debug("Successfully fetched {} supporters", supporters.size());
-                    } else {
-                        log.debug("Failed to fetch supporters: HTTP {}", response.code());
-                    }
-                } finally {
-                    response.close();
+        try {
+            fetches.increment();
+            ApiResponse response = apiClient.fetch(Endpoint.SUPPORTERS, "", headers).join();
+            if (response.getCode() == 304) {
+                notModified.increment();
+                if (current != null) {
+                    log.debug("Supporters unchanged");
+                    storeAndPublish(new CachedSupporters(current.data, validator(response, "ETag", current.etag),
+                            validator(response, "Last-Modified", current.lastModified), System.currentTimeMillis()));
                 }
+                return;
             }
-        });
-    }
 
-    private void parseSupportersResponse(String json) {
-        try {
-            Type responseType = new TypeToken<SupportersResponse>() {
-            }.getType();
-            SupportersResponse response = gson.fromJson(json, responseType);
-
-            if (response != null && response.supporters != null) {
-                this.supporters = response.supporters;
-                this.totalSupport = response.totalSupport;
-                this.lastUpdated = response.lastUpdated;
+            String responseBody = response.getBody();
+            SupportersResponse data;
+            if (response.getCode() == HTTP_IM_USED && current != null) {
+                data = applyDelta(current.data, gson.fromJson(responseBody, SupportersDelta.class));
+            } else {
+                data = gson.fromJson(responseBody, SupportersResponse.class);
             }
+            if (data == null || data.supporters == null) {
+                log.debug("Ignoring supporters response without a supporter list");
+                return;
+            }
+            storeAndPublish(new CachedSupporters(data, response.header("ETag"), response.header("Last-Modified"),
+                    System.currentTimeMillis()));
+            log.debug("Successfully fetched {} supporters", data.supporters.size());
+        } catch (CompletionException e) {
+            fetchFailures.increment();
+            log.error("Error fetching supporters", e.getCause());
         } catch (Exception e) {
+            fetchFailures.increment();
             log.error("Error parsing supporters response", e);
         }
     }
 
+    private static String validator(ApiResponse response, String header, String previous) {
+        String value = response.header(header);
+        return value != null ? value : previous;
+    }
+
+    private static SupportersResponse applyDelta(SupportersResponse base, SupportersDelta delta) {
+        if (delta == null) {
+            return null;
+        }
+        Map<String, Supporter> merged = new LinkedHashMap<>();
+        for (Supporter supporter : base.supporters) {
+            if (supporter != null && supporter.name != null) {
+                merged.putIfAbsent(canonical(supporter.name), supporter);
+            }
+        }
+        if (delta.removed != null) {
+            for (String name : delta.removed) {
+                if (name != null) {
+                    merged.remove(canonical(name));
+                }
+            }
+        }
+        if (delta.added != null) {
+            for (Supporter supporter : delta.added) {
+                if (supporter != null && supporter.name != null) {
+                    merged.put(canonical(supporter.name), supporter);
+                }
+            }
+        }
+
+        SupportersResponse result = new SupportersResponse();
+        result.supporters = new ArrayList<>(merged.values());
+        result.totalSupport = delta.totalSupport != null ? delta.totalSupport : base.totalSupport;
+        result.lastUpdated = delta.lastUpdated != null ? delta.lastUpdated : base.lastUpdated;
+        return result;
+    }
+
+    private static String canonical(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void storeAndPublish(CachedSupporters entry) {
+        publish(entry);
+        try {
+            // Write then rename so a crash never leaves a half-written cache behind
+            Files.createDirectories(cacheDir.toPath());
+            File tmp = new File(cacheDir, CACHE_FILE + ".tmp");
+            Files.write(tmp.toPath(), gson.toJson(entry).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), new File(cacheDir, CACHE_FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.debug("Could not write supporter cache", e);
+        }
+    }
+
+    private void publish(CachedSupporters entry) {
+        CachedSupporters previous = cached;
+        cached = entry;
+        if (previous != null && previous.data == entry.data) {
+            return; // Revalidated, the index is still current
+        }
+        // Build the whole index before publishing it
+        this.index = new SupporterIndex(entry.data.supporters, entry.data.totalSupport,
+                entry.data.lastUpdated != null ? entry.data.lastUpdated : "");
+    }
+
     private static class SupportersResponse {
         public List<Supporter> supporters;
         public int totalSupport;
         public String lastUpdated;
     }
-}
\ No newline at end of file
+
+    // Body of a 226 response: changes since the version named in If-None-Match
+    private static class SupportersDelta {
+        public List<Supporter> added;
+        public List<String> removed;
+        public Integer totalSupport;
+        public String lastUpdated;
+    }
+
+    // What we persist: the last good full list plus the validators to revalidate it
+    private static class CachedSupporters {
+        public SupportersResponse data;
+        public String etag;
+        public String lastModified;
+        public long fetchedAt;
+
+        CachedSupporters(SupportersResponse data, String etag, String lastModified, long fetchedAt) {
+            this.data = data;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
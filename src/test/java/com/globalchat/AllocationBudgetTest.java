@@ -0,0 +1,152 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.gson.JsonObject;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.ChatMessageType;
+import net.runelite.api.MessageNode;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.client.callback.ClientThread;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+// Bytes allocated per chat message on the way in and on the way out. Plugin garbage turns into
+// GC pauses on the client's game loop, so a change that adds per-message allocation fails here.
+// Budgets are set with headroom over what the paths allocate today, update them deliberately.
+public class AllocationBudgetTest {
+
+	// Decode, filters, decoration and the queued chat line. About 4.4 KB when this was written.
+	private static final long RECEIVE_BUDGET_BYTES = 6144;
+	// onChatMessage on the client thread plus the publish on the data lane. About 2.4 KB.
+	private static final long PUBLISH_BUDGET_BYTES = 3584;
+
+	private com.sun.management.ThreadMXBean threads;
+	private MessageReplayer.Pipeline pipeline;
+
+	@Before
+	public void setUp() throws Exception {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		threads = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		pipeline = MessageReplayer.Pipeline.create(MessageReplayer.client("Zezima"));
+	}
+
+	@After
+	public void tearDown() {
+		if (pipeline != null) {
+			pipeline.close();
+		}
+	}
+
+	@Test
+	public void receivingAMessageStaysWithinBudget() {
+		int senders = 512;
+		JsonObject[] received = new JsonObject[senders];
+		for (int i = 0; i < senders; i++) {
+			received[i] = AblyManager.buildMessage(i % 3 == 0 ? "<img=2>" : "", "Player " + i,
+				"selling lobbies " + i + "ea", i % 8 == 0 ? "p" : "w", i % 8 == 0 ? "Zezima" : "");
+		}
+
+		// Warm up so the measured loop runs compiled code
+		for (int i = 0; i < 50_000; i++) {
+			pipeline.handleMessage("w:301", received[i % senders]);
+		}
+
+		long thread = Thread.currentThread().getId();
+		int messages = 50_000;
+		long rendered = pipeline.rendered;
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < messages; i++) {
+			pipeline.handleMessage("w:301", received[i % senders]);
+		}
+		long perMessage = (threads.getThreadAllocatedBytes(thread) - before) / messages;
+
+		assertEquals(messages, pipeline.rendered - rendered);
+		assertTrue("receiving allocates " + perMessage + " bytes per message, budget is " + RECEIVE_BUDGET_BYTES,
+			perMessage <= RECEIVE_BUDGET_BYTES);
+	}
+
+	@Test
+	public void publishingAMessageStaysWithinBudget() throws Exception {
+		pipeline.connect("Zezima").get(5, TimeUnit.SECONDS);
+		pipeline.attach("w:301", "pub").get(5, TimeUnit.SECONDS);
+
+		GlobalChatPlugin plugin = new GlobalChatPlugin();
+		inject(plugin, "ablyManager", pipeline);
+		inject(plugin, "client", MessageReplayer.client("Zezima"));
+		inject(plugin, "config", MessageReplayer.config());
+		inject(plugin, "supporterManager", pipeline.getSupporterManager());
+		inject(plugin, "clientThread", new ClientThread());
+
+		MessageNode node = MessageReplayer.proxy(MessageNode.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getName":
+					return "Zezima";
+				case "getId":
+				case "getTimestamp":
+					return 0;
+				default:
+					return null;
+			}
+		});
+
+		// The publish cooldown lets one message a player through every 100ms, so this is a slow
+		// trickle rather than a tight loop. The first few warm the path up.
+		int warmup = 5;
+		int messages = 25;
+		long thread = Thread.currentThread().getId();
+		Thread lane = null;
+		long before = 0;
+		long laneBefore = 0;
+		for (int i = 0; i < warmup + messages; i++) {
+			if (i == warmup) {
+				awaitPublished(warmup);
+				lane = findThread("AblyPublisher");
+				before = threads.getThreadAllocatedBytes(thread);
+				laneBefore = threads.getThreadAllocatedBytes(lane.getId());
+			}
+			plugin.onChatMessage(new ChatMessage(node, ChatMessageType.PUBLICCHAT, "Zezima",
+				"selling lobbies " + i + "ea", "", 0));
+			Thread.sleep(110);
+		}
+		awaitPublished(warmup + messages);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before
+			+ threads.getThreadAllocatedBytes(lane.getId()) - laneBefore;
+		long perMessage = allocated / messages;
+
+		assertTrue("publishing allocates " + perMessage + " bytes per message, budget is " + PUBLISH_BUDGET_BYTES,
+			perMessage <= PUBLISH_BUDGET_BYTES);
+	}
+
+	private void awaitPublished(long count) throws InterruptedException {
+		for (int i = 0; i < 500 && pipeline.getTransport().getPublished() < count; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue("published " + pipeline.getTransport().getPublished() + " of " + count,
+			pipeline.getTransport().getPublished() >= count);
+	}
+
+	private static Thread findThread(String name) {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals(name)) {
+				return thread;
+			}
+		}
+		throw new AssertionError("No " + name + " thread");
+	}
+
+	// The plugin's collaborators are field injected by RuneLite
+	private static void inject(Object target, String field, Object value) throws ReflectiveOperationException {
+		Field f = target.getClass().getDeclaredField(field);
+		f.setAccessible(true);
+		f.set(target, value);
+	}
+}
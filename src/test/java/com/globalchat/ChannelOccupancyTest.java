@@ -0,0 +1,56 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ChannelOccupancyTest {
+
+	private static final long EMPTY_AFTER = ChannelOccupancy.EMPTY_AFTER_MILLIS;
+
+	@Test
+	public void unknownChannelsAreNeverEmpty() {
+		ChannelOccupancy occupancy = new ChannelOccupancy();
+		assertEquals(ChannelOccupancy.UNKNOWN, occupancy.getSubscribers("w:301"));
+		assertFalse(occupancy.isEmpty("w:301", 0));
+	}
+
+	@Test
+	public void emptyOnlyOnceNobodyElseWasThereForAWhile() {
+		ChannelOccupancy occupancy = new ChannelOccupancy();
+		occupancy.update("w:301", 1, 0);
+		assertFalse(occupancy.isEmpty("w:301", EMPTY_AFTER - 1));
+		assertTrue(occupancy.isEmpty("w:301", EMPTY_AFTER));
+
+		// Someone joins: published to right away, and for a while after they leave
+		occupancy.update("w:301", 2, 2 * EMPTY_AFTER);
+		assertFalse(occupancy.isEmpty("w:301", 2 * EMPTY_AFTER));
+		occupancy.update("w:301", 1, 2 * EMPTY_AFTER + 1000);
+		assertFalse(occupancy.isEmpty("w:301", 3 * EMPTY_AFTER - 1));
+		assertTrue(occupancy.isEmpty("w:301", 3 * EMPTY_AFTER));
+	}
+
+	@Test
+	public void messagesFromOthersCountBeforeTheOccupancyCatchesUp() {
+		ChannelOccupancy occupancy = new ChannelOccupancy();
+		occupancy.update("w:301", 1, 0);
+		occupancy.messageReceived("w:301", 5 * EMPTY_AFTER);
+		assertEquals(1, occupancy.getSubscribers("w:301"));
+		assertFalse(occupancy.isEmpty("w:301", 5 * EMPTY_AFTER + 1000));
+		assertTrue(occupancy.isEmpty("w:301", 6 * EMPTY_AFTER));
+
+		// A message on a channel that isn't watched starts nothing
+		occupancy.messageReceived("p:Zezima", 0);
+		assertEquals(ChannelOccupancy.UNKNOWN, occupancy.getSubscribers("p:Zezima"));
+	}
+
+	@Test
+	public void forgottenChannelsAreUnknownAgain() {
+		ChannelOccupancy occupancy = new ChannelOccupancy();
+		occupancy.update("w:301", 1, 0);
+		occupancy.forget("w:301");
+		assertFalse(occupancy.isEmpty("w:301", EMPTY_AFTER));
+	}
+}
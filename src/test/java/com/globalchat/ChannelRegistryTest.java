@@ -0,0 +1,56 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class ChannelRegistryTest {
+
+	@Test
+	public void clearFailsWaitersAndForgetsChannels() {
+		ChannelRegistry registry = new ChannelRegistry();
+		assertTrue(registry.markPending("w:301"));
+		CompletableFuture<Void> attach = registry.getAttachFuture("w:301");
+
+		registry.clear();
+		assertTrue(attach.isCompletedExceptionally());
+		assertNull(registry.getState("w:301"));
+		assertFalse(registry.isRequested("w:301"));
+		assertTrue(registry.markPending("w:301"));
+		assertFalse(registry.getAttachFuture("w:301").isDone());
+	}
+
+	@Test
+	public void attachesDuringClearKeepTheirFuture() throws Exception {
+		ChannelRegistry registry = new ChannelRegistry();
+		for (int round = 0; round < 200; round++) {
+			CountDownLatch start = new CountDownLatch(1);
+			Thread attaching = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < 50; i++) {
+					registry.markPending("c:" + i);
+				}
+			});
+			attaching.start();
+			start.countDown();
+			registry.clear();
+			attaching.join();
+
+			// Whatever survived the clear can still be waited on
+			for (ChannelRegistry.ChannelEntry entry : registry.snapshot().values()) {
+				assertTrue(entry.getName(), registry.isRequested(entry.getName()));
+			}
+			registry.clear();
+			assertEquals(0, registry.snapshot().size());
+		}
+	}
+}
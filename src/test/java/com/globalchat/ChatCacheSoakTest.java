@@ -0,0 +1,164 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import net.runelite.api.AccountType;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.MessageNode;
+import net.runelite.api.Player;
+import net.runelite.api.WorldType;
+import org.junit.Test;
+
+// Endless new senders over hours of simulated time, through what the plugin does for every
+// public message: the seen-in-game bookkeeping, the publish checks and the receive path.
+// Every per-player structure has to stay within its bound and retained heap has to level off.
+// The regular test run does a short soak, ./gradlew soak runs it with millions of senders.
+public class ChatCacheSoakTest {
+
+	private static final int SENDERS = Integer.getInteger("soak.senders", 100_000);
+	private static final long MAX_HEAP_GROWTH_BYTES = Long.getLong("soak.maxHeapGrowthMb", 16) * 1024 * 1024;
+	// A busy world: this many public messages a second, a game tick every 600ms, a "!" command every second
+	private static final int MESSAGES_PER_SECOND = 20;
+	private static final int TICK_MILLIS = 600;
+	private static final int SAMPLES = 10;
+
+	private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+	private long retainedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	private static Object defaultFor(Class<?> type) {
+		if (type == int.class) {
+			return 0;
+		}
+		return type == boolean.class ? false : null;
+	}
+
+	@Test
+	public void cachesStayBoundedUnderEndlessNewSenders() throws IOException {
+		AtomicReference<String> speaking = new AtomicReference<>();
+		Player speaker = MessageReplayer.proxy(Player.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getName":
+					return speaking.get();
+				case "getCombatLevel":
+					return 90;
+				default:
+					return defaultFor(method.getReturnType());
+			}
+		});
+		Player local = MessageReplayer.proxy(Player.class, (proxy, method, args) ->
+			method.getName().equals("getName") ? "Zezima" : defaultFor(method.getReturnType()));
+		Client client = MessageReplayer.proxy(Client.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getGameState":
+					return GameState.LOGGED_IN;
+				case "getLocalPlayer":
+					return local;
+				// Whoever is talking is standing next to us
+				case "getPlayers":
+					return Collections.singletonList(speaker);
+				case "getWorldType":
+					return EnumSet.noneOf(WorldType.class);
+				case "getAccountType":
+					return AccountType.NORMAL;
+				case "getWorld":
+					return 301;
+				default:
+					return defaultFor(method.getReturnType());
+			}
+		});
+		// The chat commands plugin never answers, so every command waits out its timeout
+		MessageNode unanswered = MessageReplayer.proxy(MessageNode.class, (proxy, method, args) ->
+			defaultFor(method.getReturnType()));
+		CommandTransformations commands = new CommandTransformations((message, playerName, approach) -> {
+		});
+		MessageReplayer.Pipeline pipeline = MessageReplayer.Pipeline.create(client);
+
+		// Every sender speaks twice, the second time long after the caches have forgotten them
+		long messages = SENDERS * 2L;
+		long sampleEvery = Math.max(1, messages / SAMPLES);
+		long baseline = -1;
+		long nextTick = 0;
+		try {
+			for (long i = 0; i < messages; i++) {
+				long now = i * 1000 / MESSAGES_PER_SECOND;
+				String sender = "P" + Long.toString(i % SENDERS, 36);
+				String text = "message " + (i & 1023);
+				speaking.set(sender);
+
+				pipeline.handleMessage("w:301", AblyManager.buildMessage("", sender, text, "w", ""));
+				// After it was shown, so the repeat filter doesn't hide it
+				pipeline.shouldShowMessge(sender, text, true);
+				pipeline.shouldPublishMessage(text, sender);
+
+				if (i % MESSAGES_PER_SECOND == 0) {
+					commands.track(unanswered, "!kc zulrah", sender, now);
+				}
+				if (now >= nextTick) {
+					nextTick += TICK_MILLIS;
+					pipeline.overheadTextScheduler.onGameTick();
+					commands.poll(now);
+				}
+
+				if (i % sampleEvery == sampleEvery - 1) {
+					assertWithinBounds(pipeline, commands, i + 1);
+					// The first sample is taken once the caches have filled up, from there on the heap should stay put
+					long retained = retainedHeap();
+					if (baseline < 0) {
+						baseline = retained;
+					} else {
+						assertTrue("Retained heap grew " + (retained - baseline) / 1024 + " KB after " + (i + 1)
+							+ " messages", retained - baseline <= MAX_HEAP_GROWTH_BYTES);
+					}
+				}
+			}
+		} finally {
+			pipeline.close();
+		}
+		assertEquals(messages, pipeline.rendered);
+	}
+
+	private static void assertWithinBounds(MessageReplayer.Pipeline pipeline, CommandTransformations commands,
+		long messages) {
+		Map<String, int[]> sizes = new LinkedHashMap<>();
+		Map<String, Integer> cacheSizes = pipeline.getCacheSizes();
+		sizes.put("AblyManager.previousMessages",
+			new int[]{cacheSizes.get("previousMessages"), AblyManager.MAX_TRACKED_PLAYERS});
+		sizes.put("AblyManager.playerCombats",
+			new int[]{cacheSizes.get("playerCombats"), AblyManager.MAX_TRACKED_PLAYERS});
+		sizes.put("AblyManager.lastMessageTime",
+			new int[]{cacheSizes.get("lastMessageTime"), AblyManager.MAX_TRACKED_PLAYERS});
+		sizes.put("AblyManager.lastErrorMessageTimePerWorld",
+			new int[]{cacheSizes.get("lastErrorMessageTimePerWorld"), AblyManager.MAX_TRACKED_WORLDS});
+		sizes.put("PlayerStatusLookup.lastSeen",
+			new int[]{pipeline.playerStatusLookup.getSeenCount(), PlayerStatusLookup.MAX_SEEN});
+		sizes.put("SceneStatusTracker.statuses",
+			new int[]{pipeline.sceneStatusTracker.getTrackedCount(), SceneStatusTracker.MAX_ENTRIES});
+		sizes.put("OverheadTextScheduler.speakers",
+			new int[]{pipeline.overheadTextScheduler.getSpeakerCount(), OverheadTextScheduler.MAX_SPEAKERS});
+		// One command a second, each gone once its timeout passes
+		sizes.put("CommandTransformations.pending",
+			new int[]{commands.size(), (int) (CommandTransformations.TIMEOUT_MILLIS / 1000) + 2});
+
+		for (Map.Entry<String, int[]> size : sizes.entrySet()) {
+			int[] value = size.getValue();
+			assertTrue(size.getKey() + " holds " + value[0] + " entries after " + messages + " messages, bound is "
+				+ value[1], value[0] <= value[1]);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Pattern;
+import net.runelite.api.ChatMessageType;
+import net.runelite.api.events.ChatMessage;
+import org.junit.Test;
+
+public class ChatEventTest {
+
+	@Test
+	public void classifiesOnce() {
+		ChatMessage message = new ChatMessage(null, ChatMessageType.CLAN_CHAT, "<img=2>Zezima",
+			"<col=ff0000>!kc zulrah</col>", "Clan", 0);
+		ChatEvent chat = ChatEvent.classify(message, "Zezima");
+		assertEquals(ChatEvent.Channel.CLAN, chat.getChannel());
+		assertEquals("Zezima", chat.getSender());
+		assertEquals("!kc zulrah", chat.getText());
+		assertTrue(chat.isLocal());
+		assertTrue(chat.isCommand());
+
+		ChatEvent other = ChatEvent.classify(message, "Lynx Titan");
+		assertFalse(other.isLocal());
+		assertFalse(ChatEvent.classify(message, null).isLocal());
+	}
+
+	@Test
+	public void mapsChatTypesToChannels() {
+		assertEquals(ChatEvent.Channel.PUBLIC, ChatEvent.channelOf(ChatMessageType.PUBLICCHAT));
+		assertEquals(ChatEvent.Channel.PRIVATE, ChatEvent.channelOf(ChatMessageType.PRIVATECHAT));
+		assertEquals(ChatEvent.Channel.FRIENDS, ChatEvent.channelOf(ChatMessageType.FRIENDSCHAT));
+		assertEquals(ChatEvent.Channel.CLAN_GUEST, ChatEvent.channelOf(ChatMessageType.CLAN_GUEST_CHAT));
+		assertEquals(ChatEvent.Channel.OTHER, ChatEvent.channelOf(ChatMessageType.GAMEMESSAGE));
+		assertEquals(ChatEvent.Channel.OTHER, ChatEvent.channelOf(null));
+	}
+
+	@Test
+	public void commandScanMatchesTheOldRegex() {
+		Pattern command = Pattern.compile("^![a-zA-Z]+.*");
+		String[] samples = {"!kc zulrah", "!total", "!", "!!", "!1", "! kc", "hello !kc", "", "!Z", "!z9", "!{", "!@"};
+		for (String sample : samples) {
+			assertEquals(sample, command.matcher(sample).matches(), ChatEvent.isCommand(sample));
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChatEventsTest {
+
+	private static final String[] EVENTS = {"PublishQueued", "Published", "PublishAcked", "MessageReceived",
+		"MessageDecoded", "MessageFiltered", "MessageRendered", "ChannelAttach", "ChannelDetach", "ReconnectAttempt"};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void recordsThePipeline() throws Exception {
+		assertTrue(ChatEvents.AVAILABLE);
+		File file = new File(folder.getRoot(), "chat.jfr");
+		MessageReplayer.Pipeline pipeline = MessageReplayer.Pipeline.create(MessageReplayer.client("Zezima"));
+		try (Recording recording = new Recording()) {
+			for (String event : EVENTS) {
+				recording.enable("com.globalchat." + event).withoutThreshold();
+			}
+			recording.start();
+
+			pipeline.connect("Zezima").get(5, TimeUnit.SECONDS);
+			pipeline.attach("w:301", "pub").get(5, TimeUnit.SECONDS);
+			pipeline.handleMessage("w:301", AblyManager.buildMessage("", "B0aty", "hi", "w", ""));
+			pipeline.handleMessage("w:301", AblyManager.buildMessage("", "Mod Ash", "trust me", "w", ""));
+			pipeline.publish("w", "hello", "w:301", "").get(5, TimeUnit.SECONDS);
+			pipeline.detach("w:301").get(5, TimeUnit.SECONDS);
+			ChatEvents.reconnectAttempt(3, System.nanoTime(), new IllegalStateException("Not connected"));
+
+			recording.stop();
+			recording.dump(file.toPath());
+		} finally {
+			pipeline.close();
+		}
+
+		Map<String, RecordedEvent> byName = new HashMap<>();
+		List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+		for (RecordedEvent event : events) {
+			byName.put(event.getEventType().getName().substring("com.globalchat.".length()), event);
+		}
+		for (String event : EVENTS) {
+			assertTrue("No " + event + " event", byName.containsKey(event));
+		}
+
+		assertEquals("w:301", byName.get("MessageReceived").getString("channel"));
+		assertEquals("w", byName.get("MessageDecoded").getString("type"));
+		assertEquals("invalidName", byName.get("MessageFiltered").getString("reason"));
+		assertEquals("PUBLICCHAT", byName.get("MessageRendered").getString("chatType"));
+		assertTrue(byName.get("PublishAcked").getBoolean("acked"));
+		assertTrue(byName.get("ChannelAttach").getBoolean("attached"));
+		RecordedEvent reconnect = byName.get("ReconnectAttempt");
+		assertEquals(3, reconnect.getInt("attempt"));
+		assertFalse(reconnect.getBoolean("connected"));
+		assertEquals("IllegalStateException: Not connected", reconnect.getString("error"));
+	}
+
+	// Emitters run for every message, with no recording they must not even allocate the event
+	@Test
+	public void emittersAllocateNothingWithoutARecording() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		// The first call looks the event types up
+		int messages = 100_000;
+		emit(messages);
+		long thread = Thread.currentThread().getId();
+		long before = threadBean.getThreadAllocatedBytes(thread);
+		emit(messages);
+		long allocated = threadBean.getThreadAllocatedBytes(thread) - before;
+
+		// A few bytes of measurement noise, an event per call would be megabytes
+		assertEquals("bytes allocated for " + messages + " messages", 0, allocated / messages);
+	}
+
+	private static void emit(int messages) {
+		for (int i = 0; i < messages; i++) {
+			long started = System.nanoTime();
+			ChatEvents.messageReceived("w:301");
+			ChatEvents.messageDecoded("w:301", "w", started);
+			ChatEvents.messageRendered("w:301", "PUBLICCHAT", started);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChatMetricsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void histogramBucketsAndPercentiles() {
+		ChatMetrics metrics = new ChatMetrics();
+		ChatMetrics.Histogram histogram = metrics.histogram("ack", 10, 100, 1000);
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i <= 90 ? 5 : 500);
+		}
+		histogram.record(5000);
+
+		assertEquals(101, histogram.getCount());
+		assertEquals(90 * 5 + 10 * 500 + 5000, histogram.getSum());
+		assertEquals(10, histogram.percentile(0.5));
+		assertEquals(1000, histogram.percentile(0.99));
+		assertEquals(Long.MAX_VALUE, histogram.percentile(1));
+
+		Map<String, Long> snapshot = metrics.snapshot();
+		assertEquals(90, (long) snapshot.get("ack.le_10"));
+		assertEquals(0, (long) snapshot.get("ack.le_100"));
+		assertEquals(10, (long) snapshot.get("ack.le_1000"));
+		assertEquals(1, (long) snapshot.get("ack.le_inf"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void histogramBoundsMustIncrease() {
+		new ChatMetrics.Histogram(10, 10);
+	}
+
+	@Test
+	public void snapshotHasCountersFamiliesAndGauges() {
+		ChatMetrics metrics = new ChatMetrics();
+		metrics.counter("publish.acks").add(3);
+		// The same counter for the same name
+		metrics.counter("publish.acks").increment();
+		metrics.family("inbound").increment("w:301");
+		metrics.family("inbound").increment("w:301");
+		metrics.gauge("queue", () -> 7);
+		metrics.gauge("broken", () -> {
+			throw new IllegalStateException();
+		});
+
+		Map<String, Long> snapshot = metrics.snapshot();
+		assertEquals(4, (long) snapshot.get("publish.acks"));
+		assertEquals(2, (long) snapshot.get("inbound.w:301"));
+		assertEquals(7, (long) snapshot.get("queue"));
+		assertFalse(snapshot.containsKey("broken"));
+	}
+
+	@Test
+	public void familyStopsGrowingAtItsCap() {
+		ChatMetrics.CounterFamily family = new ChatMetrics.CounterFamily();
+		for (int i = 0; i < ChatMetrics.CounterFamily.MAX_KEYS + 10; i++) {
+			family.increment("p:" + i);
+		}
+		assertEquals(1, family.get("p:0"));
+		assertEquals(10, family.get(ChatMetrics.CounterFamily.OTHER));
+	}
+
+	@Test
+	public void appendsCsvRows() throws IOException {
+		ChatMetrics metrics = new ChatMetrics();
+		metrics.counter("publish.acks").increment();
+		File file = new File(folder.getRoot(), "metrics/session.csv");
+		metrics.appendCsv(file);
+		metrics.appendCsv(file);
+
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertEquals(3, lines.size());
+		assertEquals("timestamp,metric,value", lines.get(0));
+		assertTrue(lines.get(1), lines.get(1).endsWith(",publish.acks,1"));
+	}
+
+	@Test
+	public void exportsThroughJmx() throws Exception {
+		ChatMetrics metrics = new ChatMetrics();
+		metrics.counter("publish.acks").add(2);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(ChatMetrics.OBJECT_NAME);
+		metrics.registerMBean();
+		// Registering again, as a restarted plugin does, replaces the bean
+		metrics.registerMBean();
+		try {
+			assertEquals(2L, server.getAttribute(name, "publish.acks"));
+		} finally {
+			metrics.unregisterMBean();
+		}
+		assertFalse(server.isRegistered(name));
+	}
+
+	@Test
+	public void countsInboundByChannelAndFilteredByReason() throws IOException {
+		MessageReplayer.Pipeline pipeline = MessageReplayer.Pipeline.create(MessageReplayer.client("Zezima"));
+		try {
+			pipeline.handleMessage("w:301", AblyManager.buildMessage("", "B0aty", "hi", "w", ""));
+			pipeline.shouldShowMessge("B0aty", "again", true);
+			pipeline.handleMessage("w:301", AblyManager.buildMessage("", "B0aty", "again", "w", ""));
+			pipeline.handleMessage("w:301", AblyManager.buildMessage("", "Mod Ash", "trust me", "w", ""));
+			pipeline.handleMessage("w:301", AblyManager.buildMessage("", "Thirteen Char", "too long", "w", ""));
+			pipeline.handleMessage("p:Zezima", AblyManager.buildMessage("", "B0aty", "psst", "p", "Zezima"));
+
+			Map<String, Long> snapshot = pipeline.getMetrics().snapshot();
+			assertEquals(4, (long) snapshot.get("inbound.w:301"));
+			assertEquals(1, (long) snapshot.get("inbound.p:Zezima"));
+			assertEquals(1, (long) snapshot.get("filtered.repeat"));
+			assertEquals(1, (long) snapshot.get("filtered.invalidName"));
+			assertEquals(1, (long) snapshot.get("filtered.nameTooLong"));
+			assertEquals(0, (long) snapshot.get("filtered.combatLevel"));
+			assertEquals(0, (long) snapshot.get("publish.queueDepth"));
+			assertEquals(-1, (long) snapshot.get("supporters.cacheAgeMillis"));
+			assertEquals(2, pipeline.rendered);
+			// Filtered or not, every delivered message counts against the quota
+			assertEquals(4, pipeline.getQuotaTracker().getDelivered(QuotaTracker.ChannelType.WORLD));
+			assertEquals(1, pipeline.getQuotaTracker().getDelivered(QuotaTracker.ChannelType.PRIVATE));
+		} finally {
+			pipeline.close();
+		}
+	}
+}
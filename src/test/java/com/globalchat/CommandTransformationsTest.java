@@ -0,0 +1,81 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import net.runelite.api.MessageNode;
+import org.junit.Test;
+
+public class CommandTransformationsTest {
+
+	private final List<String> published = new ArrayList<>();
+	private final CommandTransformations transformations = new CommandTransformations(
+		(message, playerName, approach) -> published.add(message + " (" + approach + ")"));
+
+	// Only the RuneLite format message matters here
+	private static final class Node {
+		String runeLiteMessage;
+
+		MessageNode proxy() {
+			return (MessageNode) Proxy.newProxyInstance(MessageNode.class.getClassLoader(),
+				new Class<?>[]{MessageNode.class}, (proxy, method, args) -> {
+					if (method.getName().equals("getRuneLiteFormatMessage")) {
+						return runeLiteMessage;
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+		}
+	}
+
+	@Test
+	public void publishesOnTheFirstTickAfterTheNodeChanges() {
+		Node node = new Node();
+		transformations.track(node.proxy(), "!kc zulrah", "Zezima", 0);
+		transformations.poll(100);
+		assertEquals(0, published.size());
+
+		node.runeLiteMessage = "<col=ff0000>Zulrah kill count: 1234</col>";
+		transformations.poll(1500);
+		assertEquals("Zulrah kill count: 1234 (TRANSFORMATION_DETECTED)", published.get(0));
+		assertEquals(0, transformations.size());
+	}
+
+	@Test
+	public void alreadyTransformedNodesArePublishedImmediately() {
+		Node node = new Node();
+		node.runeLiteMessage = "Total level: 2277";
+		transformations.track(node.proxy(), "!total", "Zezima", 0);
+		assertEquals(1, published.size());
+		assertEquals(0, transformations.size());
+	}
+
+	@Test
+	public void publishesAsTypedAfterTimeout() {
+		Node node = new Node();
+		node.runeLiteMessage = "!hello";
+		transformations.track(node.proxy(), "!hello", "Zezima", 0);
+		transformations.poll(CommandTransformations.TIMEOUT_MILLIS - 1);
+		assertEquals(0, published.size());
+		transformations.poll(CommandTransformations.TIMEOUT_MILLIS);
+		assertEquals("!hello (COMMAND_NO_TRANSFORMATION)", published.get(0));
+	}
+
+	@Test
+	public void identicalCommandsAreTrackedSeparately() {
+		Node first = new Node();
+		Node second = new Node();
+		transformations.track(first.proxy(), "!kc zulrah", "Zezima", 0);
+		transformations.track(second.proxy(), "!kc zulrah", "Zezima", 10);
+		assertEquals(2, transformations.size());
+
+		first.runeLiteMessage = "Zulrah kill count: 1234";
+		second.runeLiteMessage = "Zulrah kill count: 1235";
+		transformations.poll(500);
+		assertEquals(2, published.size());
+		assertTrue(published.contains("Zulrah kill count: 1234 (TRANSFORMATION_DETECTED)"));
+		assertTrue(published.contains("Zulrah kill count: 1235 (TRANSFORMATION_DETECTED)"));
+	}
+}
@@ -0,0 +1,184 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class ConnectionAdmissionTest {
+
+	private static final int CLIENTS = 5000;
+	private static final int CAPACITY = 200;
+	private static final long STEP_MS = 250;
+	private static final long DURATION_MS = 30 * 60 * 1000;
+	// Each connected client logs off roughly once every 10 minutes and rejoins the queue
+	private static final double LEAVE_PER_STEP = STEP_MS / 600000.0;
+
+	@Test
+	public void decorrelatedJitterStaysWithinBounds() {
+		ConnectionAdmission admission = new ConnectionAdmission(new Random(1));
+		long now = 0;
+		for (int i = 0; i < 100; i++) {
+			assertTrue(admission.tryAcquire(now));
+			long delay = admission.onRejected(now, -1, -1);
+			assertTrue(delay >= ConnectionAdmission.BASE_DELAY_MS);
+			assertTrue(delay <= ConnectionAdmission.MAX_DELAY_MS);
+			assertEquals(delay, admission.getEstimatedWaitMillis(now));
+			now += delay;
+		}
+	}
+
+	@Test
+	public void honorsServerRetryAfter() {
+		ConnectionAdmission admission = new ConnectionAdmission(new Random(1));
+		assertTrue(admission.tryAcquire(0));
+		long delay = admission.onRejected(0, 120000, 17);
+		assertTrue(delay >= 120000);
+		assertEquals(17, admission.getQueuePosition());
+		assertTrue(!admission.tryAcquire(119999));
+
+		admission.onAdmitted();
+		assertTrue(!admission.isWaiting());
+		assertTrue(admission.tryAcquire(1));
+	}
+
+	@Test
+	public void plainFailuresBackOffWithoutJoiningTheQueue() {
+		ConnectionAdmission admission = new ConnectionAdmission(new Random(1));
+		assertTrue(admission.tryAcquire(0));
+		long delay = admission.onFailed(0);
+		assertTrue(delay >= ConnectionAdmission.BASE_DELAY_MS);
+		assertTrue(!admission.tryAcquire(delay - 1));
+		assertTrue(!admission.isWaiting());
+		assertEquals(-1, admission.getQueuePosition());
+		assertEquals(0, admission.getEstimatedWaitMillis(0));
+		// Not queued, but still held until the backoff is over
+		assertFalse(admission.canAttempt(delay - 1));
+		assertTrue(admission.canAttempt(delay));
+
+		// A failure while queued keeps the server's position
+		admission.onRejected(delay, -1, 17);
+		admission.onFailed(delay + 1);
+		assertTrue(admission.isWaiting());
+		assertEquals(17, admission.getQueuePosition());
+	}
+
+	@Test
+	public void reconnectRateConvergesWithoutServerHints() {
+		SimulationResult result = simulate(false);
+		assertConverged(result);
+	}
+
+	@Test
+	public void reconnectRateConvergesWithServerRetryAfter() {
+		SimulationResult result = simulate(true);
+		assertConverged(result);
+	}
+
+	private static void assertConverged(SimulationResult result) {
+		// The initial stampede is unavoidable, after that attempts must settle far below it
+		double steadyRate = result.meanAttemptsPerSecond(DURATION_MS - 300000, DURATION_MS);
+		assertTrue("steady rate " + steadyRate + " vs burst " + result.burstRate,
+			steadyRate < result.burstRate * 0.05);
+
+		// The old fixed 10s reconnect loop would have every waiting client retry every 10 seconds
+		double legacyRate = (CLIENTS - CAPACITY) / 10.0;
+		assertTrue("steady rate " + steadyRate + " vs legacy " + legacyRate, steadyRate < legacyRate / 4);
+
+		// No synchronized waves: the busiest second stays close to the mean
+		long peak = result.peakAttemptsPerSecond(DURATION_MS - 300000, DURATION_MS);
+		assertTrue("peak " + peak + " vs mean " + steadyRate, peak <= Math.max(10, steadyRate * 4));
+
+		// Freed slots still get refilled promptly
+		assertTrue("occupancy " + result.minOccupancyLate, result.minOccupancyLate >= CAPACITY * 0.9);
+	}
+
+	private static SimulationResult simulate(boolean serverHints) {
+		Random random = new Random(42);
+		List<ConnectionAdmission> clients = new ArrayList<>(CLIENTS);
+		boolean[] connected = new boolean[CLIENTS];
+		for (int i = 0; i < CLIENTS; i++) {
+			clients.add(new ConnectionAdmission(new Random(random.nextLong())));
+		}
+
+		int occupancy = 0;
+		int waitingForSlot = 0;
+		long[] attemptsPerSecond = new long[(int) (DURATION_MS / 1000) + 1];
+		int minOccupancyLate = Integer.MAX_VALUE;
+
+		for (long now = 0; now < DURATION_MS; now += STEP_MS) {
+			// Churn: some connected players leave, freeing their slot
+			for (int i = 0; i < CLIENTS; i++) {
+				if (connected[i] && random.nextDouble() < LEAVE_PER_STEP) {
+					connected[i] = false;
+					occupancy--;
+					clients.get(i).reset();
+				}
+			}
+
+			for (int i = 0; i < CLIENTS; i++) {
+				if (connected[i]) {
+					continue;
+				}
+				ConnectionAdmission admission = clients.get(i);
+				if (!admission.tryAcquire(now)) {
+					continue;
+				}
+				attemptsPerSecond[(int) (now / 1000)]++;
+				if (occupancy < CAPACITY) {
+					occupancy++;
+					connected[i] = true;
+					admission.onAdmitted();
+				} else if (serverHints) {
+					// Local stand-in for the token endpoint: position-based retry-after
+					waitingForSlot = Math.min(waitingForSlot + 1, CLIENTS);
+					long retryAfter = Math.min(ConnectionAdmission.MAX_DELAY_MS, 1000L * waitingForSlot / 20);
+					admission.onRejected(now, retryAfter, waitingForSlot);
+				} else {
+					admission.onRejected(now, -1, -1);
+				}
+			}
+			waitingForSlot = Math.max(0, waitingForSlot - 1);
+
+			if (now >= DURATION_MS - 300000) {
+				minOccupancyLate = Math.min(minOccupancyLate, occupancy);
+			}
+		}
+
+		return new SimulationResult(attemptsPerSecond, minOccupancyLate);
+	}
+
+	private static class SimulationResult {
+		final long[] attemptsPerSecond;
+		final int minOccupancyLate;
+		final double burstRate;
+
+		SimulationResult(long[] attemptsPerSecond, int minOccupancyLate) {
+			this.attemptsPerSecond = attemptsPerSecond;
+			this.minOccupancyLate = minOccupancyLate;
+			this.burstRate = attemptsPerSecond[0];
+		}
+
+		double meanAttemptsPerSecond(long fromMs, long toMs) {
+			long total = 0;
+			int from = (int) (fromMs / 1000);
+			int to = (int) (toMs / 1000);
+			for (int s = from; s < to; s++) {
+				total += attemptsPerSecond[s];
+			}
+			return total / (double) (to - from);
+		}
+
+		long peakAttemptsPerSecond(long fromMs, long toMs) {
+			long peak = 0;
+			for (int s = (int) (fromMs / 1000); s < (int) (toMs / 1000); s++) {
+				peak = Math.max(peak, attemptsPerSecond[s]);
+			}
+			return peak;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GlobalChatApiClientTest {
+
+	private HttpServer server;
+	private GlobalChatApiClient apiClient;
+	private final AtomicInteger statsCalls = new AtomicInteger();
+	private final AtomicInteger statusCalls = new AtomicInteger();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private volatile int statusCode = 200;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+		server.createContext("/api/stats/connections", exchange -> {
+			statsCalls.incrementAndGet();
+			try {
+				// Hold the response so concurrent callers overlap
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			respond(exchange, 200, "{\"currentConnections\":150,\"maxConnections\":200}");
+		});
+		server.createContext("/api/check-player-status", exchange -> {
+			statusCalls.incrementAndGet();
+			respond(exchange, statusCode, "{\"connectedToGlobalChat\":true}");
+		});
+		server.createContext("/api/user-counts", exchange -> {
+			// Fails twice, then succeeds
+			int call = statusCalls.incrementAndGet();
+			respond(exchange, call <= 2 ? 503 : 200, "{\"totalOnline\":42}");
+		});
+		server.start();
+		apiClient = new GlobalChatApiClient(new OkHttpClient(), new Gson(),
+			"http://127.0.0.1:" + server.getAddress().getPort());
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private static void respond(com.sun.net.httpserver.HttpExchange exchange, int code, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(code, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+		exchange.close();
+	}
+
+	@Test
+	public void coalescesConcurrentRequestsAndCachesResult() {
+		CompletableFuture<JsonObject> first = apiClient.get(GlobalChatApiClient.Endpoint.CONNECTION_STATS, "", JsonObject.class);
+		CompletableFuture<JsonObject> second = apiClient.get(GlobalChatApiClient.Endpoint.CONNECTION_STATS, "", JsonObject.class);
+		release.countDown();
+
+		assertEquals(150, first.join().get("currentConnections").getAsInt());
+		assertEquals(150, second.join().get("currentConnections").getAsInt());
+		// Within the TTL this is served from memory
+		assertEquals(200, apiClient.get(GlobalChatApiClient.Endpoint.CONNECTION_STATS, "", JsonObject.class)
+			.join().get("maxConnections").getAsInt());
+
+		GlobalChatApiClient.EndpointMetrics metrics = apiClient.getMetrics(GlobalChatApiClient.Endpoint.CONNECTION_STATS);
+		assertEquals(1, statsCalls.get());
+		assertEquals(1, metrics.getRequests());
+		assertEquals(1, metrics.getCoalesced());
+		assertEquals(1, metrics.getCacheHits());
+	}
+
+	@Test
+	public void oneCallerCancellingLeavesTheOthersWaiting() {
+		CompletableFuture<GlobalChatApiClient.ApiResponse> first = apiClient.fetch(
+			GlobalChatApiClient.Endpoint.CONNECTION_STATS, "", Collections.emptyMap());
+		CompletableFuture<GlobalChatApiClient.ApiResponse> second = apiClient.fetch(
+			GlobalChatApiClient.Endpoint.CONNECTION_STATS, "", Collections.emptyMap());
+		first.cancel(true);
+		release.countDown();
+
+		assertTrue(first.isCancelled());
+		assertEquals(200, second.join().getCode());
+		assertEquals(1, statsCalls.get());
+	}
+
+	@Test
+	public void cacheIsPerQuery() {
+		apiClient.get(GlobalChatApiClient.Endpoint.CHECK_PLAYER_STATUS, "?playerName=a&world=301", JsonObject.class).join();
+		apiClient.get(GlobalChatApiClient.Endpoint.CHECK_PLAYER_STATUS, "?playerName=b&world=301", JsonObject.class).join();
+		apiClient.get(GlobalChatApiClient.Endpoint.CHECK_PLAYER_STATUS, "?playerName=a&world=301", JsonObject.class).join();
+		assertEquals(2, statusCalls.get());
+	}
+
+	@Test
+	public void retriesServerErrorsWithBackoff() {
+		JsonObject counts = apiClient.get(GlobalChatApiClient.Endpoint.USER_COUNTS, "", JsonObject.class).join();
+		assertEquals(42, counts.get("totalOnline").getAsInt());
+		assertEquals(2, apiClient.getMetrics(GlobalChatApiClient.Endpoint.USER_COUNTS).getRetries());
+	}
+
+	@Test
+	public void clientErrorsFailWithoutRetryOrCaching() {
+		statusCode = 404;
+		try {
+			apiClient.get(GlobalChatApiClient.Endpoint.CHECK_PLAYER_STATUS, "?playerName=a", JsonObject.class).join();
+			fail("expected failure");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof GlobalChatApiClient.ApiException);
+			assertEquals(404, ((GlobalChatApiClient.ApiException) e.getCause()).getCode());
+		}
+		statusCode = 200;
+		apiClient.get(GlobalChatApiClient.Endpoint.CHECK_PLAYER_STATUS, "?playerName=a", JsonObject.class).join();
+		assertEquals(2, statusCalls.get());
+		assertEquals(1, apiClient.getMetrics(GlobalChatApiClient.Endpoint.CHECK_PLAYER_STATUS).getFailures());
+	}
+
+	@Test
+	public void backoffStaysWithinBounds() {
+		for (int attempt = 1; attempt < 20; attempt++) {
+			long delay = GlobalChatApiClient.backoffMillis(attempt, -1);
+			assertTrue(delay >= 500 && delay <= 30000);
+		}
+		assertEquals(30000L, GlobalChatApiClient.backoffMillis(1, 120000));
+		assertTrue(GlobalChatApiClient.backoffMillis(1, 5000) >= 5000);
+	}
+}
@@ -0,0 +1,186 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.ChatMessageType;
+import net.runelite.api.Client;
+import net.runelite.api.MenuEntry;
+import net.runelite.api.MessageNode;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.api.events.MenuEntryAdded;
+import net.runelite.client.callback.ClientThread;
+import org.junit.Test;
+
+public class GlobalChatPluginTest {
+
+	private static MenuEntry menuEntry(String option, String target) {
+		return (MenuEntry) Proxy.newProxyInstance(MenuEntry.class.getClassLoader(), new Class<?>[]{MenuEntry.class},
+			(proxy, method, args) -> {
+				switch (method.getName()) {
+					case "getOption":
+						return option;
+					case "getTarget":
+						return target;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+				}
+			});
+	}
+
+	@Test
+	public void onlyChatNameOptionsMatch() {
+		assertTrue(GlobalChatPlugin.isChatNameOption("Add friend"));
+		assertTrue(GlobalChatPlugin.isChatNameOption("Message"));
+		assertFalse(GlobalChatPlugin.isChatNameOption("Walk here"));
+		assertFalse(GlobalChatPlugin.isChatNameOption("Trade with"));
+		assertFalse(GlobalChatPlugin.isChatNameOption(null));
+	}
+
+	// The handler runs for every menu entry built, hovering alone builds menus every frame
+	@Test
+	public void nonMatchingMenuEntriesAllocateNothing() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		GlobalChatPlugin plugin = new GlobalChatPlugin();
+		plugin.showPlayerLookup = true;
+		MenuEntryAdded[] events = {
+			new MenuEntryAdded(menuEntry("Walk here", "")),
+			new MenuEntryAdded(menuEntry("Trade with", "<col=ffffff>Zezima<col=ff00>  (level-126)")),
+			new MenuEntryAdded(menuEntry("Follow", "<col=ffffff>Zezima<col=ff00>  (level-126)")),
+			new MenuEntryAdded(menuEntry("Examine", "<col=ffff>Banker")),
+		};
+
+		// Warm up so the measured loop runs compiled code
+		for (int i = 0; i < 200_000; i++) {
+			plugin.onMenuEntryAdded(events[i & 3]);
+		}
+
+		long thread = Thread.currentThread().getId();
+		int entries = 1_000_000;
+		long before = threadBean.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < entries; i++) {
+			plugin.onMenuEntryAdded(events[i & 3]);
+		}
+		long allocated = threadBean.getThreadAllocatedBytes(thread) - before;
+
+		// A few bytes of measurement noise, anything per entry would be megabytes
+		assertEquals("bytes allocated for " + entries + " entries", 0, allocated / entries);
+	}
+
+	// A local public line used to be removed and re-added with icons: one extra ChatMessage event
+	// and chatbox rebuild per line. Now only the node's name changes.
+	@Test
+	public void localMessagesAreDecoratedInPlace() throws Exception {
+		MessageReplayer.Pipeline pipeline = MessageReplayer.Pipeline.create(MessageReplayer.client("Zezima"));
+		try {
+			pipeline.connect("Zezima").get(5, TimeUnit.SECONDS);
+			pipeline.attach("w:301", "pub").get(5, TimeUnit.SECONDS);
+
+			List<String> clientCalls = new CopyOnWriteArrayList<>();
+			Client delegate = MessageReplayer.client("Zezima");
+			Client client = MessageReplayer.proxy(Client.class, (proxy, method, args) -> {
+				clientCalls.add(method.getName());
+				return method.invoke(delegate, args);
+			});
+			List<String> nodeCalls = new ArrayList<>();
+			String[] name = {"<img=2>Zezima"};
+			MessageNode node = MessageReplayer.proxy(MessageNode.class, (proxy, method, args) -> {
+				nodeCalls.add(method.getName());
+				switch (method.getName()) {
+					case "getName":
+						return name[0];
+					case "setName":
+						name[0] = (String) args[0];
+						return null;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+				}
+			});
+
+			GlobalChatPlugin plugin = plugin(pipeline, client);
+			plugin.onChatMessage(new ChatMessage(node, ChatMessageType.PUBLICCHAT, "<img=2>Zezima", "hello", "", 0));
+			assertEquals("<img=19> <img=2>Zezima", name[0]);
+			for (int i = 0; i < 500 && pipeline.getTransport().getPublished() < 1; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, pipeline.getTransport().getPublished());
+
+			// No removeMessageNode/addChatMessage/refreshChat: the node is all that's touched
+			assertEquals(1, nodeCalls.stream().filter("setName"::equals).count());
+			assertFalse(clientCalls.toString(), clientCalls.contains("addChatMessage"));
+			assertFalse(clientCalls.toString(), clientCalls.contains("refreshChat"));
+			assertFalse(clientCalls.toString(), clientCalls.contains("runScript"));
+			assertFalse(clientCalls.toString(), clientCalls.contains("getChatLineMap"));
+			assertEquals(0, pipeline.rendered);
+
+			// Decorating again changes nothing
+			GlobalChatPlugin.decorateLocalMessage(node, "<img=314> ");
+			assertEquals("<img=19> <img=2>Zezima", name[0]);
+		} finally {
+			pipeline.close();
+		}
+	}
+
+	// A line that never goes out must not look like it did
+	@Test
+	public void unsentMessagesAreNotDecorated() throws Exception {
+		MessageReplayer.Pipeline pipeline = MessageReplayer.Pipeline.create(MessageReplayer.client("Zezima"));
+		try {
+			GlobalChatPlugin plugin = plugin(pipeline, MessageReplayer.client("Zezima"));
+			String[] name = {"Zezima"};
+			MessageNode node = MessageReplayer.proxy(MessageNode.class, (proxy, method, args) -> {
+				if (method.getName().equals("setName")) {
+					name[0] = (String) args[0];
+				}
+				return method.getName().equals("getName") ? name[0] : null;
+			});
+
+			// Not connected yet, publish refuses it
+			plugin.onChatMessage(new ChatMessage(node, ChatMessageType.PUBLICCHAT, "Zezima", "hello", "", 0));
+			assertEquals("Zezima", name[0]);
+
+			pipeline.connect("Zezima").get(5, TimeUnit.SECONDS);
+			pipeline.attach("w:301", "pub").get(5, TimeUnit.SECONDS);
+			// Spam is never published
+			plugin.onChatMessage(new ChatMessage(node, ChatMessageType.PUBLICCHAT, "Zezima",
+				"Thy cause was false, thy skills did lack; See you in Lumbridge when you get back.", "", 0));
+			assertEquals("Zezima", name[0]);
+			assertEquals(0, pipeline.getTransport().getPublished());
+		} finally {
+			pipeline.close();
+		}
+	}
+
+	// AblyManager's ChatMessageManager is left out, queueing or updating a line would throw
+	private static GlobalChatPlugin plugin(MessageReplayer.Pipeline pipeline, Client client)
+		throws ReflectiveOperationException {
+		GlobalChatPlugin plugin = new GlobalChatPlugin();
+		inject(plugin, "ablyManager", pipeline);
+		inject(plugin, "client", client);
+		inject(plugin, "config", MessageReplayer.config());
+		inject(plugin, "supporterManager", pipeline.getSupporterManager());
+		inject(plugin, "clientThread", new ClientThread());
+		return plugin;
+	}
+
+	// The plugin's collaborators are field injected by RuneLite
+	private static void inject(Object target, String field, Object value) throws ReflectiveOperationException {
+		Field f = target.getClass().getDeclaredField(field);
+		f.setAccessible(true);
+		f.set(target, value);
+	}
+}
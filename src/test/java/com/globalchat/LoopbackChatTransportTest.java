@@ -0,0 +1,332 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonObject;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.runelite.api.AccountType;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.Player;
+import net.runelite.api.WorldType;
+import org.junit.After;
+import org.junit.Test;
+
+public class LoopbackChatTransportTest {
+
+	private LoopbackChatTransport transport;
+
+	@After
+	public void shutdown() {
+		transport.shutdown();
+	}
+
+	private ChatTransport.Connection connect(String clientId) throws Exception {
+		CompletableFuture<ChatTransport.State> settled = new CompletableFuture<>();
+		ChatTransport.Connection connection = transport.open(clientId, null, (source, state, reason) -> {
+			if (state != ChatTransport.State.CONNECTING) {
+				settled.complete(state);
+			}
+		});
+		settled.get(5, TimeUnit.SECONDS);
+		return connection;
+	}
+
+	private static JsonObject message(String text) {
+		JsonObject message = new JsonObject();
+		message.addProperty("message", text);
+		return message;
+	}
+
+	@Test
+	public void fansOutToThousandsOfClients() throws Exception {
+		transport = new LoopbackChatTransport(1, 5, 0, Integer.MAX_VALUE, 4);
+		int clients = 2000;
+		CountDownLatch received = new CountDownLatch(clients - 1);
+		List<ChatTransport.Connection> connections = new ArrayList<>();
+		List<CompletableFuture<Void>> attaches = new ArrayList<>();
+		for (int i = 0; i < clients; i++) {
+			ChatTransport.Connection connection = connect("Player " + i);
+			connections.add(connection);
+			attaches.add(connection.attach("w:301", "pub", (channel, data) -> received.countDown()));
+		}
+		CompletableFuture.allOf(attaches.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+		connections.get(0).publish("w:301", "pub", message("hello")).get(5, TimeUnit.SECONDS);
+		assertTrue(received.await(10, TimeUnit.SECONDS));
+		assertEquals(clients - 1, transport.getDelivered());
+	}
+
+	@Test
+	public void dropsDeliveriesAtTheConfiguredRate() throws Exception {
+		transport = new LoopbackChatTransport(0, 0, 0.5, Integer.MAX_VALUE, 2);
+		int clients = 1000;
+		List<ChatTransport.Connection> connections = new ArrayList<>();
+		for (int i = 0; i < clients; i++) {
+			ChatTransport.Connection connection = connect("Player " + i);
+			connection.attach("w:301", "pub", (channel, data) -> {
+			}).get(5, TimeUnit.SECONDS);
+			connections.add(connection);
+		}
+		connections.get(0).publish("w:301", "pub", message("hello")).get(5, TimeUnit.SECONDS);
+		for (int i = 0; i < 500 && transport.getDelivered() + transport.getDropped() < clients - 1; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(clients - 1, transport.getDelivered() + transport.getDropped());
+		assertTrue("dropped " + transport.getDropped(), transport.getDropped() > 350 && transport.getDropped() < 650);
+	}
+
+	@Test
+	public void otherKeysAndDetachedChannelsReceiveNothing() throws Exception {
+		transport = new LoopbackChatTransport();
+		AtomicInteger received = new AtomicInteger();
+		ChatTransport.Connection sender = connect("Zezima");
+		ChatTransport.Connection otherKey = connect("Lynx Titan");
+		ChatTransport.Connection detached = connect("B0aty");
+		otherKey.attach("p:Zezima", "302", (channel, data) -> received.incrementAndGet()).get();
+		detached.attach("p:Zezima", "301", (channel, data) -> received.incrementAndGet()).get();
+		detached.detach("p:Zezima").get();
+
+		sender.publish("p:Zezima", "301", message("psst")).get();
+		Thread.sleep(50);
+		assertEquals(0, received.get());
+	}
+
+	@Test
+	public void reportsOccupancyToWatchingSubscribers() throws Exception {
+		transport = new LoopbackChatTransport();
+		BlockingQueue<Integer> occupancy = new LinkedBlockingQueue<>();
+		ChatTransport.Connection watcher = connect("Zezima");
+		watcher.attach("w:301", "pub", (channel, data) -> {
+		}, (channel, subscribers) -> occupancy.add(subscribers)).get();
+		assertEquals(1, (int) occupancy.poll(5, TimeUnit.SECONDS));
+
+		ChatTransport.Connection other = connect("Lynx Titan");
+		other.attach("w:301", "pub", (channel, data) -> {
+		}).get();
+		assertEquals(2, (int) occupancy.poll(5, TimeUnit.SECONDS));
+		other.close();
+		assertEquals(1, (int) occupancy.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void rejectsConnectionsBeyondTheLimit() throws Exception {
+		transport = new LoopbackChatTransport(0, 0, 0, 2, 1);
+		connect("Zezima");
+		connect("Lynx Titan");
+		CompletableFuture<ChatTransportException> failed = new CompletableFuture<>();
+		transport.open("B0aty", null, (source, state, reason) -> {
+			if (state == ChatTransport.State.FAILED) {
+				failed.complete(reason);
+			}
+		});
+		assertEquals(LoopbackChatTransport.CONNECTION_LIMIT_ERROR_CODE, failed.get(5, TimeUnit.SECONDS).getCode());
+		assertEquals(2, transport.getConnectionCount());
+		assertEquals(1, transport.getRejected());
+	}
+
+	static AblyManager ablyManager(ChatTransport transport) {
+		Player local = (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+			(proxy, method, args) -> method.getName().equals("getName") ? "Zezima" : null);
+		Client client = (Client) Proxy.newProxyInstance(Client.class.getClassLoader(), new Class<?>[]{Client.class},
+			(proxy, method, args) -> {
+				switch (method.getName()) {
+					case "getLocalPlayer":
+						return local;
+					case "getGameState":
+						return GameState.LOGGED_IN;
+					case "getWorldType":
+						return EnumSet.noneOf(WorldType.class);
+					case "getAccountType":
+						return AccountType.NORMAL;
+					case "getWorld":
+						return 301;
+					default:
+						return null;
+				}
+			});
+		GlobalChatConfig config = (GlobalChatConfig) Proxy.newProxyInstance(GlobalChatConfig.class.getClassLoader(),
+			new Class<?>[]{GlobalChatConfig.class}, (proxy, method, args) -> false);
+		return new AblyManager(client, config, false, null, transport, new ChatMetrics());
+	}
+
+	// The plugin's connection handling end to end, without the real service
+	@Test
+	public void ablyManagerConnectsPublishesAndReconnects() throws Exception {
+		transport = new LoopbackChatTransport(1, 3, 0, Integer.MAX_VALUE, 2);
+		AblyManager ablyManager = ablyManager(transport);
+
+		try {
+			ablyManager.connect("Zezima").get(5, TimeUnit.SECONDS);
+			ablyManager.attach("w:301", "pub").get(5, TimeUnit.SECONDS);
+			assertTrue(ablyManager.isConnected());
+
+			CompletableFuture<JsonObject> heard = new CompletableFuture<>();
+			ChatTransport.Connection listener = connect("Lynx Titan");
+			listener.attach("w:301", "pub", (channel, data) -> heard.complete(data.getAsJsonObject())).get(5, TimeUnit.SECONDS);
+
+			ablyManager.publish("w", "hello", "w:301", "").get(5, TimeUnit.SECONDS);
+			assertEquals("hello", heard.get(5, TimeUnit.SECONDS).get("message").getAsString());
+
+			transport.disconnectAll();
+			assertFalse(ablyManager.isConnected());
+			// Channels are attached again after a reconnect, like the plugin does
+			ablyManager.connect("Zezima").get(5, TimeUnit.SECONDS);
+			ablyManager.attach("w:301", "pub").get(5, TimeUnit.SECONDS);
+			assertTrue(ablyManager.isConnected());
+		} finally {
+			ablyManager.shutdown();
+		}
+	}
+
+	@Test
+	public void ablyManagerPublishesWhileAnotherChannelAttaches() throws Exception {
+		transport = new LoopbackChatTransport(1, 3, 0, Integer.MAX_VALUE, 2);
+		AblyManager ablyManager = ablyManager(transport);
+
+		try {
+			ablyManager.connect("Zezima").get(5, TimeUnit.SECONDS);
+			ablyManager.attach("w:301", "pub").get(5, TimeUnit.SECONDS);
+			CompletableFuture<Void> clan = ablyManager.attach("c:Some clan", "pub");
+			assertFalse(ablyManager.isConnected());
+
+			ablyManager.publish("w", "hello", "w:301", "").get(5, TimeUnit.SECONDS);
+			// Published to the clan once it has attached
+			ablyManager.publish("c", "hi clan", "c:Some clan", "").get(5, TimeUnit.SECONDS);
+			assertTrue(clan.isDone());
+			assertEquals(2, transport.getPublished());
+
+			ablyManager.detach("c:Some clan").get(5, TimeUnit.SECONDS);
+			assertTrue(ablyManager.publish("c", "bye", "c:Some clan", "").isCompletedExceptionally());
+		} finally {
+			ablyManager.shutdown();
+		}
+	}
+
+	@Test
+	public void ablyManagerIgnoresStaleConnectionsFailing() throws Exception {
+		transport = new LoopbackChatTransport();
+		List<ChatTransport.ConnectionListener> listeners = new ArrayList<>();
+		List<ChatTransport.Connection> opened = new ArrayList<>();
+		ChatTransport recording = (clientId, tokens, listener) -> {
+			listeners.add(listener);
+			ChatTransport.Connection connection = transport.open(clientId, tokens, listener);
+			opened.add(connection);
+			return connection;
+		};
+		AblyManager ablyManager = ablyManager(recording);
+
+		try {
+			ablyManager.connect("Zezima").get(5, TimeUnit.SECONDS);
+			ablyManager.closeConnection().get(5, TimeUnit.SECONDS);
+			ablyManager.connect("Zezima").get(5, TimeUnit.SECONDS);
+			ablyManager.attach("w:301", "pub").get(5, TimeUnit.SECONDS);
+
+			// The first connection reports the connection limit long after it was replaced
+			listeners.get(0).onStateChange(opened.get(0), ChatTransport.State.FAILED,
+				new ChatTransportException("Connection limit reached", 403, LoopbackChatTransport.CONNECTION_LIMIT_ERROR_CODE));
+			assertTrue(ablyManager.isConnected());
+			assertFalse(ablyManager.getConnectionAdmission().isWaiting());
+			assertEquals(ChatTransport.State.CONNECTED, opened.get(1).getState());
+		} finally {
+			ablyManager.shutdown();
+		}
+	}
+
+	// The plugin polls connect() once a second. Calls refused while a failed attempt backs off must
+	// not push the backoff out again, or the client never reconnects.
+	@Test
+	public void ablyManagerReconnectsAfterAPlainFailure() throws Exception {
+		transport = new LoopbackChatTransport();
+		AtomicInteger opens = new AtomicInteger();
+		ChatTransport failingFirst = (clientId, tokens, listener) -> {
+			if (opens.incrementAndGet() > 1) {
+				return transport.open(clientId, tokens, listener);
+			}
+			ChatTransport.Connection failed = (ChatTransport.Connection) Proxy.newProxyInstance(
+				ChatTransport.Connection.class.getClassLoader(), new Class<?>[]{ChatTransport.Connection.class},
+				(proxy, method, args) -> method.getName().equals("getState") ? ChatTransport.State.FAILED : null);
+			listener.onStateChange(failed, ChatTransport.State.FAILED,
+				new ChatTransportException("Token request failed: timeout", 0, 0));
+			return failed;
+		};
+		AblyManager ablyManager = ablyManager(failingFirst);
+		long[] now = {1_000_000};
+		ablyManager.clock = () -> now[0];
+
+		try {
+			CompletableFuture<Void> reconnecting = ablyManager.connect("Zezima");
+			assertTrue(reconnecting.isCompletedExceptionally());
+			assertFalse(ablyManager.canAttemptConnection());
+
+			long failedAt = now[0];
+			while (opens.get() < 2 && now[0] - failedAt <= ConnectionAdmission.MAX_DELAY_MS) {
+				now[0] += 1000;
+				if (reconnecting.isDone()) {
+					reconnecting = ablyManager.connect("Zezima");
+				}
+			}
+			assertEquals(2, opens.get());
+			// The first failure backs off at most three times the base delay
+			assertTrue(now[0] - failedAt + " ms", now[0] - failedAt <= 3 * ConnectionAdmission.BASE_DELAY_MS);
+			reconnecting.get(5, TimeUnit.SECONDS);
+		} finally {
+			ablyManager.shutdown();
+		}
+	}
+
+	@Test
+	public void ablyManagerSkipsWorldChatNobodyElseIsOn() throws Exception {
+		transport = new LoopbackChatTransport(1, 3, 0, Integer.MAX_VALUE, 2);
+		AblyManager ablyManager = ablyManager(transport);
+		ChannelOccupancy occupancy = ablyManager.getChannelOccupancy();
+
+		try {
+			ablyManager.connect("Zezima").get(5, TimeUnit.SECONDS);
+			ablyManager.attach("w:301", "pub").get(5, TimeUnit.SECONDS);
+			for (int i = 0; i < 500 && occupancy.getSubscribers("w:301") == ChannelOccupancy.UNKNOWN; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, occupancy.getSubscribers("w:301"));
+
+			// Just joined, still published until the world has been empty a while
+			ablyManager.publish("w", "anyone?", "w:301", "").get(5, TimeUnit.SECONDS);
+			assertEquals(1, transport.getPublished());
+
+			// As if reported a while ago
+			occupancy.forget("w:301");
+			occupancy.update("w:301", 1, System.currentTimeMillis() - ChannelOccupancy.EMPTY_AFTER_MILLIS);
+			ablyManager.publish("w", "hello?", "w:301", "").get(5, TimeUnit.SECONDS);
+			assertEquals(1, transport.getPublished());
+			// Only world chat is skipped
+			ablyManager.publish("f", "hi fc", "f:Some fc", "").get(5, TimeUnit.SECONDS);
+			assertEquals(2, transport.getPublished());
+
+			ChatTransport.Connection other = connect("Lynx Titan");
+			other.attach("w:301", "pub", (channel, data) -> {
+			}).get(5, TimeUnit.SECONDS);
+			for (int i = 0; i < 500 && occupancy.getSubscribers("w:301") < 2; i++) {
+				Thread.sleep(10);
+			}
+			ablyManager.publish("w", "oh hi", "w:301", "").get(5, TimeUnit.SECONDS);
+			assertEquals(3, transport.getPublished());
+
+			Map<String, Long> metrics = ablyManager.getMetrics().snapshot();
+			assertEquals(1, (long) metrics.get("publish.suppressedEmpty"));
+		} finally {
+			ablyManager.shutdown();
+		}
+	}
+}
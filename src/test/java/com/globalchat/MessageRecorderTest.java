@@ -0,0 +1,100 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MessageRecorderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Gson gson = new Gson();
+
+	private void record(MessageRecorder recorder, String channel, String type, String username, String message, String to) {
+		recorder.record(channel, gson.toJsonTree(AblyManager.buildMessage("", username, message, type, to)));
+	}
+
+	@Test
+	public void readsBackWhatWasRecorded() throws IOException {
+		File file = new File(folder.getRoot(), "recordings/inbound.gcml");
+		MessageRecorder recorder = new MessageRecorder();
+		record(recorder, "w:301", "w", "Zezima", "ignored, not recording yet", "");
+		recorder.start(file);
+		record(recorder, "w:301", "w", "Zezima", "hello", "");
+		record(recorder, "p:Zezima", "p", "Lynx Titan", "psst é☺", "Zezima");
+		record(recorder, "w:301", "w", "B0aty", "hi", "");
+		assertEquals(file, recorder.stop());
+		assertFalse(recorder.isRecording());
+		assertEquals(3, recorder.getRecorded());
+
+		try (MessageLog.Reader reader = new MessageLog.Reader(file)) {
+			assertTrue(System.currentTimeMillis() - reader.getStartedAt() < TimeUnit.MINUTES.toMillis(1));
+			long previous = 0;
+			String[][] expected = {{"w:301", "hello"}, {"p:Zezima", "psst é☺"}, {"w:301", "hi"}};
+			for (String[] line : expected) {
+				MessageLog.Entry entry = reader.next();
+				assertEquals(line[0], entry.channel);
+				assertEquals(line[1], gson.fromJson(entry.payload, GlobalChatMessage.class).message);
+				assertTrue(entry.offsetMicros >= previous);
+				previous = entry.offsetMicros;
+			}
+			assertNull(reader.next());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsFilesThatAreNotLogs() throws IOException {
+		File file = folder.newFile("not-a-log.gcml");
+		Files.write(file.toPath(), new byte[]{0x1f, (byte) 0x8b, 0, 0});
+		new MessageLog.Reader(file).close();
+	}
+
+	@Test
+	public void replaysThroughTheReceivePipeline() throws IOException {
+		File file = new File(folder.getRoot(), "busy-world.gcml");
+		MessageRecorder recorder = new MessageRecorder();
+		recorder.start(file);
+		for (int i = 0; i < 500; i++) {
+			record(recorder, "w:301", "w", "Player " + i, "message " + i, "");
+		}
+		// Filtered on the way in: for someone else, a fake mod and a name too long to be real
+		record(recorder, "p:Lynx Titan", "p", "B0aty", "not for us", "Lynx Titan");
+		record(recorder, "w:301", "w", "Mod Ash", "trust me", "");
+		record(recorder, "w:301", "w", "Thirteen Char", "too long", "");
+		record(recorder, "p:Zezima", "p", "B0aty", "for us", "Zezima");
+		recorder.stop();
+
+		MessageReplayer.Report report = MessageReplayer.replay(file, 0, "Zezima");
+		assertEquals(504, report.messages);
+		assertEquals(501, report.rendered);
+		assertTrue(report.percentile(0.5) <= report.percentile(0.99));
+		assertTrue(report.percentile(0.99) <= report.percentile(1));
+	}
+
+	@Test
+	public void pacesReplayAtTheRequestedSpeed() throws IOException {
+		File file = new File(folder.getRoot(), "paced.gcml");
+		try (MessageLog.Writer writer = new MessageLog.Writer(file)) {
+			long now = System.nanoTime();
+			writer.write(now, "w:301", "{\"symbol\":\"\",\"username\":\"Zezima\",\"message\":\"a\",\"type\":\"w\",\"to\":\"\"}");
+			writer.write(now + TimeUnit.MILLISECONDS.toNanos(400), "w:301",
+				"{\"symbol\":\"\",\"username\":\"Zezima\",\"message\":\"b\",\"type\":\"w\",\"to\":\"\"}");
+		}
+
+		// 4x, so the 400ms gap takes about 100ms
+		MessageReplayer.Report paced = MessageReplayer.replay(file, MessageReplayer.parseSpeed("4x"), "Zezima");
+		assertEquals(2, paced.rendered);
+		assertTrue("took " + paced.elapsedNanos, paced.elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(95));
+	}
+}
@@ -0,0 +1,256 @@
+package com.globalchat;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import net.runelite.api.AccountType;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.Player;
+import net.runelite.api.WorldType;
+import net.runelite.client.callback.ClientThread;
+import net.runelite.client.chat.QueuedMessage;
+import okhttp3.OkHttpClient;
+
+// Replays a recorded MessageLog through the receive pipeline: decode, filters, decoration and the
+// client thread work, with the client logged in and chat lines counted instead of shown.
+//   ./gradlew replay -Plog=<file> [-Pspeed=1|10|max] [-Pplayer=<name private messages are for>]
+// Reports throughput, per-message latency percentiles and the bytes allocated along the way.
+public class MessageReplayer {
+
+	static final class Report {
+		long messages;
+		long rendered;
+		long elapsedNanos;
+		long allocatedBytes = -1;
+		long[] latencies = new long[1024];
+
+		void latency(long nanos) {
+			if (messages == latencies.length) {
+				latencies = Arrays.copyOf(latencies, latencies.length * 2);
+			}
+			latencies[(int) messages++] = nanos;
+		}
+
+		long percentile(double p) {
+			if (messages == 0) {
+				return 0;
+			}
+			return latencies[(int) Math.min(messages - 1, (long) Math.ceil(p * messages) - 1)];
+		}
+
+		@Override
+		public String toString() {
+			double seconds = elapsedNanos / 1e9;
+			return String.format("%d messages, %d shown in %.3fs (%.0f msg/s)%n"
+					+ "latency us: p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n"
+					+ "allocated: %s",
+				messages, rendered, seconds, seconds > 0 ? messages / seconds : 0,
+				percentile(0.5) / 1e3, percentile(0.9) / 1e3, percentile(0.99) / 1e3, percentile(1) / 1e3,
+				allocatedBytes < 0 ? "unavailable"
+					: allocatedBytes + " bytes (" + (messages > 0 ? allocatedBytes / messages : 0) + " per message)");
+		}
+	}
+
+	// The real AblyManager and its collaborators, with the chat box swapped for a counter
+	// and client thread work run inline
+	static final class Pipeline extends AblyManager {
+		long rendered;
+		private final SupporterManager supporterManager;
+		private final LoopbackChatTransport transport;
+
+		private Pipeline(Client client, SupporterManager supporterManager, LoopbackChatTransport transport,
+			ChatMetrics metrics) {
+			super(client, config(), false, supporterManager, transport, metrics);
+			this.supporterManager = supporterManager;
+			this.transport = transport;
+		}
+
+		static Pipeline create(Client client) throws IOException {
+			Gson gson = new Gson();
+			File cacheDir = Files.createTempDirectory("globalchat-replay").toFile();
+			cacheDir.deleteOnExit();
+			GlobalChatApiClient apiClient = new GlobalChatApiClient(new OkHttpClient(), gson, "http://127.0.0.1:1");
+			ChatMetrics metrics = new ChatMetrics();
+			Pipeline pipeline = new Pipeline(client, new SupporterManager(gson, apiClient, metrics, cacheDir),
+				new LoopbackChatTransport(), metrics);
+			pipeline.gson = gson;
+			pipeline.playerStatusLookup = new PlayerStatusLookup(apiClient);
+			pipeline.sceneStatusTracker = new SceneStatusTracker(pipeline.playerStatusLookup);
+			pipeline.overheadTextScheduler = new OverheadTextScheduler();
+			pipeline.clientThread = new InlineClientThread();
+			return pipeline;
+		}
+
+		@Override
+		void queueChatMessage(QueuedMessage message) {
+			rendered++;
+		}
+
+		SupporterManager getSupporterManager() {
+			return supporterManager;
+		}
+
+		LoopbackChatTransport getTransport() {
+			return transport;
+		}
+
+		void close() {
+			shutdown();
+			supporterManager.shutdown();
+			transport.shutdown();
+		}
+	}
+
+	// Runs client thread work straight away, so a message's latency covers all of it
+	private static final class InlineClientThread extends ClientThread {
+		@Override
+		public void invokeLater(BooleanSupplier task) {
+			task.getAsBoolean();
+		}
+
+		@Override
+		public void invokeLater(Runnable task) {
+			task.run();
+		}
+
+		@Override
+		public void invoke(BooleanSupplier task) {
+			task.getAsBoolean();
+		}
+
+		@Override
+		public void invoke(Runnable task) {
+			task.run();
+		}
+	}
+
+	static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+	}
+
+	// Logged in as playerName, nobody else in the scene
+	static Client client(String playerName) {
+		Player local = proxy(Player.class, (proxy, method, args) ->
+			method.getName().equals("getName") ? playerName : null);
+		return proxy(Client.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getGameState":
+					return GameState.LOGGED_IN;
+				case "getLocalPlayer":
+					return local;
+				case "getPlayers":
+					return Collections.emptyList();
+				case "getWorldType":
+					return EnumSet.noneOf(WorldType.class);
+				case "getAccountType":
+					return AccountType.NORMAL;
+				case "getWorld":
+					return 301;
+				default:
+					return null;
+			}
+		});
+	}
+
+	// Every setting at its default
+	static GlobalChatConfig config() {
+		return proxy(GlobalChatConfig.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "filterOutFromBelowCblvl":
+					return 4;
+				case "showPlayerLookup":
+					return true;
+				case "chatBackend":
+					return ChatBackend.ABLY;
+				case "relayUrl":
+				case "updateNotificationShown":
+					return "";
+				default:
+					return method.getReturnType() == boolean.class ? false : null;
+			}
+		});
+	}
+
+	// speed: 1 for real time, 10 for ten times faster, 0 for as fast as possible
+	static Report replay(File logFile, double speed, String playerName) throws IOException {
+		Gson gson = new Gson();
+		Pipeline pipeline = Pipeline.create(client(playerName));
+		Report report = new Report();
+		com.sun.management.ThreadMXBean threads = allocationCounter();
+		long threadId = Thread.currentThread().getId();
+		try (MessageLog.Reader reader = new MessageLog.Reader(logFile)) {
+			long allocatedBefore = threads != null ? threads.getThreadAllocatedBytes(threadId) : -1;
+			long start = System.nanoTime();
+			MessageLog.Entry entry;
+			while ((entry = reader.next()) != null) {
+				if (speed > 0) {
+					long due = start + (long) (TimeUnit.MICROSECONDS.toNanos(entry.offsetMicros) / speed);
+					for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+						LockSupport.parkNanos(wait);
+					}
+				}
+				// Parsing stands in for the transport's decode, it's part of receiving a message too
+				long received = System.nanoTime();
+				JsonElement data = gson.fromJson(entry.payload, JsonElement.class);
+				pipeline.handleMessage(entry.channel, data);
+				report.latency(System.nanoTime() - received);
+			}
+			report.elapsedNanos = System.nanoTime() - start;
+			if (threads != null) {
+				report.allocatedBytes = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+			}
+		} finally {
+			pipeline.close();
+		}
+		report.rendered = pipeline.rendered;
+		Arrays.sort(report.latencies, 0, (int) report.messages);
+		return report;
+	}
+
+	// HotSpot counts allocated bytes per thread, other VMs may not
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+			if (counter.isThreadAllocatedMemorySupported()) {
+				counter.setThreadAllocatedMemoryEnabled(true);
+				return counter;
+			}
+		}
+		return null;
+	}
+
+	static double parseSpeed(String speed) {
+		if (speed.equalsIgnoreCase("max")) {
+			return 0;
+		}
+		String factor = speed.endsWith("x") || speed.endsWith("X") ? speed.substring(0, speed.length() - 1) : speed;
+		double parsed = Double.parseDouble(factor);
+		if (parsed <= 0) {
+			throw new IllegalArgumentException("Speed must be positive or max: " + speed);
+		}
+		return parsed;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: MessageReplayer <log> [1|10x|max] [player name]");
+			System.exit(2);
+		}
+		double speed = args.length > 1 ? parseSpeed(args[1]) : 0;
+		String playerName = args.length > 2 ? args[2] : "Zezima";
+		System.out.println(replay(new File(args[0]), speed, playerName));
+	}
+}
@@ -0,0 +1,111 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.runelite.api.Player;
+import org.junit.Test;
+
+public class OverheadTextSchedulerTest {
+
+	private final OverheadTextScheduler scheduler = new OverheadTextScheduler();
+	private final AtomicInteger updates = new AtomicInteger();
+
+	// Records what was shown over its head
+	private Player player(List<String> shown) {
+		return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+			(proxy, method, args) -> {
+				switch (method.getName()) {
+					case "setOverheadText":
+						shown.add((String) args[0]);
+						updates.incrementAndGet();
+						return null;
+					case "setOverheadCycle":
+						return null;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+				}
+			});
+	}
+
+	@Test
+	public void firstMessageShowsImmediatelyAndBurstsWait() {
+		List<String> shown = new ArrayList<>();
+		Player zezima = player(shown);
+		scheduler.enqueue("Zezima", zezima, "one");
+		scheduler.enqueue("Zezima", zezima, "two");
+		scheduler.enqueue("Zezima", zezima, "three");
+		assertEquals(1, shown.size());
+
+		// "one" stays up for MIN_DISPLAY_TICKS
+		for (int tick = 1; tick < OverheadTextScheduler.MIN_DISPLAY_TICKS; tick++) {
+			scheduler.onGameTick();
+		}
+		assertEquals(1, shown.size());
+		scheduler.onGameTick();
+		assertEquals("two", shown.get(1));
+
+		for (int tick = 0; tick < OverheadTextScheduler.MIN_DISPLAY_TICKS * 2; tick++) {
+			scheduler.onGameTick();
+		}
+		assertEquals("three", shown.get(2));
+		assertEquals(0, scheduler.getSpeakerCount());
+	}
+
+	@Test
+	public void repeatsAreMergedAndQueuesBounded() {
+		List<String> shown = new ArrayList<>();
+		Player zezima = player(shown);
+		scheduler.enqueue("Zezima", zezima, "buying gf");
+		for (int i = 0; i < 5; i++) {
+			scheduler.enqueue("Zezima", zezima, "spam");
+		}
+		for (int i = 0; i < 10; i++) {
+			scheduler.enqueue("Zezima", zezima, "flood " + i);
+		}
+		for (int tick = 0; tick < 20; tick++) {
+			scheduler.onGameTick();
+		}
+		// Only the newest MAX_QUEUED_PER_SPEAKER survive, the merged "spam (x5)" was pushed out
+		assertEquals(1 + OverheadTextScheduler.MAX_QUEUED_PER_SPEAKER, shown.size());
+		assertEquals("flood 9", shown.get(shown.size() - 1));
+
+		List<String> repeated = new ArrayList<>();
+		Player lynx = player(repeated);
+		scheduler.enqueue("Lynx Titan", lynx, "hi");
+		scheduler.enqueue("Lynx Titan", lynx, "hi");
+		scheduler.enqueue("Lynx Titan", lynx, "hi");
+		for (int tick = 0; tick < 5; tick++) {
+			scheduler.onGameTick();
+		}
+		assertEquals("hi (x2)", repeated.get(1));
+	}
+
+	// 2000 players around us, all flooding: overhead updates per tick and tracked speakers stay
+	// capped. The cost of the pass is measured in OverheadTextSchedulerBenchmark.
+	@Test
+	public void crowdedSceneIsCappedPerTick() {
+		int players = 2000;
+		List<String> sink = new ArrayList<>();
+		Player[] crowd = new Player[players];
+		for (int i = 0; i < players; i++) {
+			crowd[i] = player(sink);
+		}
+
+		for (int tick = 0; tick < 200; tick++) {
+			// Every player sends two messages per tick
+			for (int i = 0; i < players; i++) {
+				scheduler.enqueue("Player " + i, crowd[i], "message " + tick);
+				scheduler.enqueue("Player " + i, crowd[i], "again " + tick);
+			}
+			updates.set(0);
+			scheduler.onGameTick();
+			assertTrue(updates.get() <= OverheadTextScheduler.MAX_UPDATES_PER_TICK);
+		}
+		assertTrue(scheduler.getSpeakerCount() <= OverheadTextScheduler.MAX_SPEAKERS);
+	}
+}
@@ -0,0 +1,135 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PlayerStatusLookupTest {
+
+	private HttpServer server;
+	private PlayerStatusLookup lookup;
+	private final List<String> queries = new CopyOnWriteArrayList<>();
+	private volatile boolean batchSupported = true;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/api/check-player-status", exchange -> {
+			String query = exchange.getRequestURI().getQuery();
+			queries.add(query);
+			if (query.startsWith("playerNames=")) {
+				if (!batchSupported) {
+					respond(exchange, 400, "{\"error\":\"playerName required\"}");
+					return;
+				}
+				// Everyone except "lynx titan" is connected
+				StringBuilder players = new StringBuilder("{\"players\":{");
+				String names = query.substring("playerNames=".length(), query.indexOf("&world=")).replace('+', ' ');
+				for (String name : names.split(",")) {
+					if (players.charAt(players.length() - 1) != '{') {
+						players.append(',');
+					}
+					players.append('"').append(name).append("\":").append(!name.equals("lynx titan"));
+				}
+				respond(exchange, 200, players.append("}}").toString());
+			} else {
+				respond(exchange, 200, "{\"connectedToGlobalChat\":" + !query.contains("lynx") + "}");
+			}
+		});
+		server.start();
+		lookup = new PlayerStatusLookup(new GlobalChatApiClient(new OkHttpClient(), new Gson(),
+			"http://127.0.0.1:" + server.getAddress().getPort()));
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(code, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+		exchange.close();
+	}
+
+	@Test
+	public void recentlySeenPlayersAreAnsweredLocally() {
+		lookup.recordSeen("Zezima");
+		CompletableFuture<Boolean> status = lookup.lookup("zezima", 301);
+		assertTrue(status.isDone());
+		assertTrue(status.join());
+		assertTrue(queries.isEmpty());
+		assertEquals(1.0, lookup.getHitRate(), 0.0001);
+	}
+
+	@Test
+	public void concurrentLookupsShareOneBatchedRequest() {
+		CompletableFuture<Boolean> a = lookup.lookup("Zezima", 301);
+		CompletableFuture<Boolean> b = lookup.lookup("Lynx Titan", 301);
+		CompletableFuture<Boolean> c = lookup.lookup("B0aty", 301);
+		CompletableFuture<Boolean> again = lookup.lookup("ZEZIMA", 301);
+
+		assertTrue(a.join());
+		assertFalse(b.join());
+		assertTrue(c.join());
+		assertTrue(again.join());
+		assertEquals(1, queries.size());
+
+		// Answers are cached per name
+		assertFalse(lookup.lookup("lynx titan", 301).join());
+		assertEquals(1, queries.size());
+		assertEquals(1, lookup.getCacheHits());
+	}
+
+	@Test
+	public void fallsBackToSingleLookupsWithoutBatchSupport() {
+		batchSupported = false;
+		CompletableFuture<Boolean> a = lookup.lookup("Zezima", 301);
+		CompletableFuture<Boolean> b = lookup.lookup("Lynx Titan", 301);
+		assertTrue(a.join());
+		assertFalse(b.join());
+		// One rejected batch, then one request per name
+		assertEquals(3, queries.size());
+
+		lookup.lookup("B0aty", 302).join();
+		lookup.lookup("Woox", 302).join();
+		assertEquals(5, queries.size());
+	}
+
+	@Test
+	public void sceneLookupsStayOutOfTheStats() {
+		lookup.recordSeen("Zezima");
+		assertTrue(lookup.lookupForScene("Zezima", 301).join());
+		assertFalse(lookup.lookupForScene("Lynx Titan", 301).join());
+		assertFalse(lookup.lookupForScene("Lynx Titan", 301).join());
+
+		assertEquals(3, lookup.getSceneLookups());
+		assertEquals(0, lookup.getLookups());
+		assertEquals(0, lookup.getSeenHits());
+		assertEquals(0, lookup.getCacheHits());
+		assertEquals(0, lookup.getAverageLatencyMillis());
+
+		// The scene warmed the cache for lookups that are counted
+		assertFalse(lookup.lookup("lynx titan", 301).join());
+		assertEquals(1, lookup.getLookups());
+		assertEquals(1, lookup.getCacheHits());
+	}
+}
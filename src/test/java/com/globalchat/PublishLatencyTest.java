@@ -0,0 +1,197 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Test;
+
+// Publish p99 while channels are left and connections closed, with the control work kept off
+// the publish lane (after) and with every transport call on one shared lane like before the
+// lanes were split. Detach and close block their caller like the real service's can.
+@Slf4j
+public class PublishLatencyTest {
+
+	private static final long DETACH_BLOCKS_MILLIS = 100;
+	private static final long CLOSE_BLOCKS_MILLIS = 300;
+	private static final long PUBLISH_EVERY_MILLIS = 10;
+	private static final long RUN_MILLIS = 3000;
+
+	private LoopbackChatTransport loopback;
+
+	@After
+	public void shutdown() {
+		loopback.shutdown();
+	}
+
+	@Test
+	public void clanLeaveDoesNotDelayChat() throws Exception {
+		long shared = p99(true, this::clanLeave);
+		long split = p99(false, this::clanLeave);
+		log.info("Publish p99 during clan leaves: {} ms shared lane, {} ms split lanes", shared, split);
+		assertTrue("split " + split + " ms vs shared " + shared + " ms", split < DETACH_BLOCKS_MILLIS / 2 && split < shared);
+	}
+
+	@Test
+	public void worldHopDoesNotDelayChat() throws Exception {
+		long shared = p99(true, this::worldHop);
+		long split = p99(false, this::worldHop);
+		log.info("Publish p99 during world hops: {} ms shared lane, {} ms split lanes", shared, split);
+		assertTrue("split " + split + " ms vs shared " + shared + " ms", split < CLOSE_BLOCKS_MILLIS / 2 && split < shared);
+	}
+
+	private interface Sequence {
+		void run(AblyManager ablyManager) throws Exception;
+	}
+
+	// Leave the clan and join it again
+	private void clanLeave(AblyManager ablyManager) throws Exception {
+		ablyManager.detach("c:Some clan").get(5, TimeUnit.SECONDS);
+		ablyManager.attach("c:Some clan", "pub").get(5, TimeUnit.SECONDS);
+	}
+
+	// The plugin's hop: close, connect and attach again
+	private void worldHop(AblyManager ablyManager) throws Exception {
+		ablyManager.closeConnection();
+		ablyManager.connect("Zezima").get(5, TimeUnit.SECONDS);
+		ablyManager.attachOnLogin(loginChannels()).get(5, TimeUnit.SECONDS);
+	}
+
+	private static Map<String, String> loginChannels() {
+		Map<String, String> channels = new HashMap<>();
+		channels.put("w:301", "pub");
+		channels.put("c:Some clan", "pub");
+		return channels;
+	}
+
+	// Publishes to the friends chat channel, which is attached once and never left, while the
+	// sequence repeats. Publishes that fail because the connection is being replaced are skipped.
+	private long p99(boolean sharedLane, Sequence sequence) throws Exception {
+		loopback = new LoopbackChatTransport(1, 2, 0, Integer.MAX_VALUE, 2);
+		AblyManager ablyManager = LoopbackChatTransportTest.ablyManager(new BlockingTransport(loopback, sharedLane));
+		List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger failed = new AtomicInteger();
+		try {
+			ablyManager.connect("Zezima").get(5, TimeUnit.SECONDS);
+			ablyManager.attachOnLogin(loginChannels()).get(5, TimeUnit.SECONDS);
+			ablyManager.attach("f:Some fc", "pub").get(5, TimeUnit.SECONDS);
+
+			Thread control = new Thread(() -> {
+				long end = System.currentTimeMillis() + RUN_MILLIS;
+				try {
+					while (System.currentTimeMillis() < end) {
+						sequence.run(ablyManager);
+						if (!ablyManager.getChannelSubscriptionStatus().containsKey("f:Some fc")) {
+							ablyManager.attach("f:Some fc", "pub").get(5, TimeUnit.SECONDS);
+						}
+					}
+				} catch (Exception e) {
+					log.debug("Sequence failed", e);
+				}
+			});
+			control.start();
+			while (control.isAlive()) {
+				long started = System.nanoTime();
+				ablyManager.publish("f", "hi", "f:Some fc", "").whenComplete((ignored, error) -> {
+					if (error == null) {
+						latencies.add((System.nanoTime() - started) / 1_000_000);
+					} else {
+						failed.incrementAndGet();
+					}
+				});
+				Thread.sleep(PUBLISH_EVERY_MILLIS);
+			}
+			Thread.sleep(CLOSE_BLOCKS_MILLIS * 2);
+		} finally {
+			ablyManager.shutdown();
+		}
+		List<Long> sorted = new ArrayList<>(latencies);
+		Collections.sort(sorted);
+		assertTrue("only " + sorted.size() + " publishes acked, " + failed.get() + " failed", sorted.size() > 50);
+		return sorted.get((int) Math.ceil(sorted.size() * 0.99) - 1);
+	}
+
+	// Detach and close block their caller. With a shared lane every call waits for the one before,
+	// so a publish queues behind a slow detach or close like it did on the old single publisher thread.
+	private static final class BlockingTransport implements ChatTransport {
+		private final ChatTransport delegate;
+		private final Object lane;
+
+		BlockingTransport(ChatTransport delegate, boolean sharedLane) {
+			this.delegate = delegate;
+			this.lane = sharedLane ? new Object() : null;
+		}
+
+		@Override
+		public Connection open(String clientId, TokenSource tokens, ConnectionListener listener) throws ChatTransportException {
+			BlockingConnection connection = new BlockingConnection();
+			// AblyManager tells its connections apart by identity, so state changes name the wrapper
+			connection.delegate = delegate.open(clientId, tokens,
+				(source, state, reason) -> listener.onStateChange(connection, state, reason));
+			return connection;
+		}
+
+		private final class BlockingConnection implements Connection {
+			private volatile Connection delegate;
+
+			@Override
+			public State getState() {
+				return delegate.getState();
+			}
+
+			@Override
+			public CompletableFuture<Void> attach(String channel, String cipherKey, MessageListener listener) {
+				return onLane(() -> delegate.attach(channel, cipherKey, listener));
+			}
+
+			@Override
+			public CompletableFuture<Void> detach(String channel) {
+				return onLane(() -> {
+					block(DETACH_BLOCKS_MILLIS);
+					return delegate.detach(channel);
+				});
+			}
+
+			@Override
+			public CompletableFuture<Void> publish(String channel, String cipherKey, JsonObject message) {
+				return onLane(() -> delegate.publish(channel, cipherKey, message));
+			}
+
+			@Override
+			public void close() {
+				onLane(() -> {
+					block(CLOSE_BLOCKS_MILLIS);
+					delegate.close();
+					return null;
+				});
+			}
+		}
+
+		private <T> T onLane(Supplier<T> call) {
+			if (lane == null) {
+				return call.get();
+			}
+			synchronized (lane) {
+				return call.get();
+			}
+		}
+
+		private static void block(long millis) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class QuotaTrackerTest {
+
+	// 10 days into a 31 day month
+	private static final long OCT_11 = ZonedDateTime.of(2026, 10, 11, 0, 0, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+	private static final long NOV_1 = ZonedDateTime.of(2026, 11, 1, 0, 0, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+
+	private static QuotaTracker tracker(long now, int delivered) {
+		QuotaTracker tracker = new QuotaTracker(now);
+		for (int i = 0; i < delivered; i++) {
+			tracker.recordDelivered("w:301", now);
+		}
+		return tracker;
+	}
+
+	@Test
+	public void countsPerChannelType() {
+		QuotaTracker tracker = new QuotaTracker();
+		long now = System.currentTimeMillis();
+		tracker.recordPublished("w:301", now);
+		tracker.recordDelivered("w:301", now);
+		tracker.recordDelivered("w:301", now);
+		tracker.recordDelivered("p:Zezima", now);
+		tracker.recordDelivered("f:Some fc", now);
+		tracker.recordPublished("c:Some clan", now);
+
+		assertEquals(1, tracker.getPublished(QuotaTracker.ChannelType.WORLD));
+		assertEquals(2, tracker.getDelivered(QuotaTracker.ChannelType.WORLD));
+		assertEquals(1, tracker.getDelivered(QuotaTracker.ChannelType.PRIVATE));
+		assertEquals(1, tracker.getDelivered(QuotaTracker.ChannelType.FRIENDS));
+		assertEquals(1, tracker.getPublished(QuotaTracker.ChannelType.CLAN));
+		assertEquals(6, tracker.getUsed());
+	}
+
+	@Test
+	public void projectsTheMonthFromTheRateSoFar() {
+		QuotaTracker tracker = tracker(OCT_11, 1000);
+		assertEquals(3100, tracker.getProjectedUsage(OCT_11));
+	}
+
+	@Test
+	public void neverExtrapolatesFromLessThanADay() {
+		long firstHour = NOV_1 + TimeUnit.HOURS.toMillis(1);
+		QuotaTracker tracker = tracker(firstHour, 100);
+		// 100 in the first hour is 100 a day, not 2400
+		assertEquals(3000, tracker.getProjectedUsage(firstHour));
+	}
+
+	@Test
+	public void thinsOutWorldChatInSteps() {
+		// Projects to 3100 a month
+		QuotaTracker tracker = tracker(OCT_11, 1000);
+
+		assertEquals(QuotaTracker.Level.NORMAL, tracker.updateLevel(OCT_11, 0));
+		assertEquals(QuotaTracker.Level.NORMAL, tracker.updateLevel(OCT_11, 4000));
+		assertTrue(tracker.allowWorldPublish(OCT_11));
+		assertTrue(tracker.allowWorldPublish(OCT_11 + 1));
+
+		assertEquals(QuotaTracker.Level.THROTTLED, tracker.updateLevel(OCT_11, 3000));
+		assertTrue(tracker.allowWorldPublish(OCT_11));
+		assertFalse(tracker.allowWorldPublish(OCT_11 + 1000));
+		assertTrue(tracker.allowWorldPublish(OCT_11 + QuotaTracker.WORLD_PUBLISH_INTERVAL_MILLIS));
+
+		assertEquals(QuotaTracker.Level.WORLD_PAUSED, tracker.updateLevel(OCT_11, 2000));
+		assertFalse(tracker.allowWorldPublish(OCT_11 + TimeUnit.HOURS.toMillis(1)));
+	}
+
+	@Test
+	public void startsOverEachMonth() {
+		QuotaTracker tracker = tracker(OCT_11, 1000);
+		assertEquals(QuotaTracker.Level.WORLD_PAUSED, tracker.updateLevel(OCT_11, 1000));
+
+		tracker.recordDelivered("w:301", NOV_1);
+		assertEquals(1, tracker.getUsed());
+		assertEquals(QuotaTracker.Level.NORMAL, tracker.updateLevel(NOV_1, 1000));
+	}
+
+	@Test
+	public void restoresSavedCountsForTheSameMonthOnly() {
+		Gson gson = new Gson();
+		QuotaTracker earlier = tracker(OCT_11, 5);
+		earlier.recordPublished("p:Zezima", OCT_11);
+		String saved = gson.toJson(earlier.snapshot());
+
+		QuotaTracker sameMonth = new QuotaTracker(OCT_11);
+		sameMonth.restore(gson.fromJson(saved, QuotaTracker.Usage.class), OCT_11 + TimeUnit.DAYS.toMillis(2));
+		assertEquals(5, sameMonth.getDelivered(QuotaTracker.ChannelType.WORLD));
+		assertEquals(1, sameMonth.getPublished(QuotaTracker.ChannelType.PRIVATE));
+
+		QuotaTracker nextMonth = new QuotaTracker(OCT_11);
+		nextMonth.restore(gson.fromJson(saved, QuotaTracker.Usage.class), NOV_1);
+		assertEquals(0, nextMonth.getUsed());
+
+		QuotaTracker nothingSaved = new QuotaTracker(OCT_11);
+		nothingSaved.restore(gson.fromJson("", QuotaTracker.Usage.class), OCT_11);
+		assertEquals(0, nothingSaved.getUsed());
+	}
+}
@@ -0,0 +1,89 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.globalchat.relay.RelayServer;
+import com.globalchat.relay.RelayTokens;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RelayChatTransportTest {
+
+	private RelayServer server;
+	private RelayChatTransport transport;
+
+	@Before
+	public void start() throws Exception {
+		RelayTokens tokens = new RelayTokens("0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8), 60_000);
+		server = new RelayServer(new InetSocketAddress("127.0.0.1", 0), tokens, 2, 100, 100);
+		server.start();
+		String relayUrl = "ws://127.0.0.1:" + server.getPort();
+		GlobalChatConfig config = (GlobalChatConfig) Proxy.newProxyInstance(GlobalChatConfig.class.getClassLoader(),
+			new Class<?>[]{GlobalChatConfig.class}, (proxy, method, args) -> relayUrl);
+		transport = new RelayChatTransport(new OkHttpClient(), new Gson(), config);
+	}
+
+	@After
+	public void stop() {
+		server.close();
+	}
+
+	private CompletableFuture<ChatTransportException> open(String clientId, ChatTransport.State awaited,
+		ChatTransport.Connection[] opened) throws ChatTransportException {
+		CompletableFuture<ChatTransportException> reached = new CompletableFuture<>();
+		opened[0] = transport.open(clientId, null, (connection, state, reason) -> {
+			if (state == awaited) {
+				reached.complete(reason);
+			}
+		});
+		return reached;
+	}
+
+	private ChatTransport.Connection connect(String clientId) throws Exception {
+		ChatTransport.Connection[] opened = new ChatTransport.Connection[1];
+		open(clientId, ChatTransport.State.CONNECTED, opened).get(5, TimeUnit.SECONDS);
+		return opened[0];
+	}
+
+	@Test
+	public void deliversOnlyToSubscribersWithTheChannelKey() throws Exception {
+		ChatTransport.Connection zezima = connect("Zezima");
+		ChatTransport.Connection lynx = connect("Lynx Titan");
+		BlockingQueue<JsonElement> received = new LinkedBlockingQueue<>();
+		lynx.attach("p:Lynx Titan", "301", (channel, data) -> received.add(data)).get(5, TimeUnit.SECONDS);
+
+		JsonObject message = new JsonObject();
+		message.addProperty("message", "psst");
+		zezima.publish("p:Lynx Titan", "301", message).get(5, TimeUnit.SECONDS);
+		assertEquals("psst", received.poll(5, TimeUnit.SECONDS).getAsJsonObject().get("message").getAsString());
+
+		// Encrypted for someone on another world, unreadable here
+		zezima.publish("p:Lynx Titan", "302", message).get(5, TimeUnit.SECONDS);
+		assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+
+		zezima.close();
+		lynx.close();
+	}
+
+	@Test
+	public void failsLikeTheConnectionLimitWhenTheRelayIsFull() throws Exception {
+		connect("Zezima");
+		connect("Lynx Titan");
+		ChatTransport.Connection[] opened = new ChatTransport.Connection[1];
+		ChatTransportException reason = open("B0aty", ChatTransport.State.FAILED, opened).get(5, TimeUnit.SECONDS);
+		assertEquals(RelayChatTransport.CONNECTION_LIMIT_ERROR_CODE, reason.getCode());
+	}
+}
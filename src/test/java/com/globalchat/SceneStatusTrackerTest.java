@@ -0,0 +1,159 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SceneStatusTrackerTest {
+
+	private HttpServer server;
+	private PlayerStatusLookup lookup;
+	private SceneStatusTracker tracker;
+	private final List<String> queries = new CopyOnWriteArrayList<>();
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/api/check-player-status", exchange -> {
+			String query = exchange.getRequestURI().getQuery();
+			queries.add(query);
+			// Only names starting with "gc" are connected
+			StringBuilder players = new StringBuilder("{\"players\":{");
+			String names = query.substring("playerNames=".length(), query.indexOf("&world=")).replace('+', ' ');
+			for (String name : names.split(",")) {
+				if (players.charAt(players.length() - 1) != '{') {
+					players.append(',');
+				}
+				players.append('"').append(name).append("\":").append(name.startsWith("gc"));
+			}
+			respond(exchange, 200, players.append("}}").toString());
+		});
+		server.start();
+		lookup = new PlayerStatusLookup(new GlobalChatApiClient(new OkHttpClient(), new Gson(),
+			"http://127.0.0.1:" + server.getAddress().getPort()));
+		tracker = new SceneStatusTracker(lookup);
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(code, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+		exchange.close();
+	}
+
+	private void awaitTracked(int count) throws InterruptedException {
+		for (int i = 0; i < 200 && tracker.getTrackedCount() < count; i++) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void spawnedPlayersAreResolvedInOneBatch() throws InterruptedException {
+		tracker.onPlayerSpawned("GC Zezima", 301);
+		tracker.onPlayerSpawned("Lynx Titan", 301);
+		tracker.onPlayerSpawned("gc b0aty", 301);
+		tracker.onPlayerSpawned("GC Zezima", 301);
+		assertEquals(3, tracker.getQueuedCount());
+
+		tracker.resolveNextBatch();
+		awaitTracked(3);
+
+		assertEquals(1, queries.size());
+		assertTrue(tracker.isConnected("GC Zezima"));
+		assertTrue(tracker.isConnected("gc b0aty"));
+		assertFalse(tracker.isConnected("Lynx Titan"));
+		assertEquals(0, tracker.getQueuedCount());
+
+		// Already known, not asked again
+		tracker.onPlayerSpawned("Lynx Titan", 301);
+		assertEquals(0, tracker.getQueuedCount());
+	}
+
+	@Test
+	public void batchesAreCappedPerInterval() {
+		for (int i = 0; i < SceneStatusTracker.BATCH_SIZE + 10; i++) {
+			tracker.onPlayerSpawned("Player " + i, 301);
+		}
+		tracker.resolveNextBatch();
+		assertEquals(10, tracker.getQueuedCount());
+	}
+
+	@Test
+	public void decoratesConnectedPlayersOnce() {
+		tracker.markConnected("Zezima");
+		String target = "<col=ffffff>Zezima<col=ff00>  (level-126)";
+		String decorated = tracker.decorate(target, "Zezima");
+		assertEquals(SceneStatusTracker.BADGE + target, decorated);
+		assertSame(decorated, tracker.decorate(decorated, "Zezima"));
+
+		String other = "<col=ffffff>Lynx Titan<col=ff00>  (level-126)";
+		assertSame(other, tracker.decorate(other, "Lynx Titan"));
+
+		tracker.clear();
+		assertSame(target, tracker.decorate(target, "Zezima"));
+	}
+
+	@Test
+	public void evictsOldestBeyondCapacity() {
+		for (int i = 0; i < SceneStatusTracker.MAX_ENTRIES + 100; i++) {
+			tracker.markConnected("Player " + i);
+		}
+		assertEquals(SceneStatusTracker.MAX_ENTRIES, tracker.getTrackedCount());
+		assertFalse(tracker.isConnected("Player 0"));
+		assertTrue(tracker.isConnected("Player " + (SceneStatusTracker.MAX_ENTRIES + 99)));
+	}
+
+	// Decorating every menu entry of a 2000 player scene, as onClientTick does each frame, only
+	// reads what is already known. Frame cost is measured in SceneStatusTrackerBenchmark.
+	@Test
+	public void decoratingAFrameAsksTheServiceNothing() {
+		int players = 2000;
+		String[] names = new String[players];
+		String[] targets = new String[players];
+		for (int i = 0; i < players; i++) {
+			names[i] = "Player " + i;
+			targets[i] = "<col=ffffff>" + names[i] + "<col=ff00>  (level-" + (3 + i % 124) + ")";
+			if (i % 4 == 0) {
+				tracker.markConnected(names[i]);
+			}
+		}
+
+		assertEquals(players / 4, decorateFrame(names, targets));
+		assertEquals(players / 4, decorateFrame(names, targets));
+		assertTrue(queries.isEmpty());
+		assertEquals(0, tracker.getQueuedCount());
+		assertEquals(0, lookup.getLookups() + lookup.getSceneLookups());
+	}
+
+	private int decorateFrame(String[] names, String[] targets) {
+		int decorated = 0;
+		for (int i = 0; i < names.length; i++) {
+			if (tracker.decorate(targets[i], names[i]) != targets[i]) {
+				decorated++;
+			}
+		}
+		return decorated;
+	}
+}
@@ -0,0 +1,78 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class SupporterIndexTest {
+
+	private static final int SUPPORTERS = 10000;
+
+	@Test
+	public void looksUpIgnoringCaseAndSurroundingWhitespace() {
+		SupporterIndex index = new SupporterIndex(Arrays.asList(
+			new Supporter("Zezima", "Gold", 50, true),
+			new Supporter("Lynx Titan", "Silver", 20, true),
+			new Supporter("B0aty", "Bronze", 5, false),
+			new Supporter("Small Tip", "None", 1, true),
+			new Supporter(null, "Gold", 100, true)), 176, "today");
+
+		assertEquals("<img=314> ", index.getIcon("zezima"));
+		assertEquals("<img=312> ", index.getIcon(" LYNX TITAN "));
+		assertEquals("<img=313> ", index.getIcon("b0aty"));
+		assertEquals("", index.getIcon("Small Tip"));
+		assertTrue(index.isSupporter("small tip"));
+		assertFalse(index.isSupporter("Lynx"));
+		assertFalse(index.isSupporter(""));
+		assertFalse(index.isSupporter(null));
+		assertEquals(176, index.getTotalSupport());
+		assertEquals(5, index.getSupporters().size());
+	}
+
+	@Test
+	public void firstDuplicateWins() {
+		SupporterIndex index = new SupporterIndex(Arrays.asList(
+			new Supporter("Zezima", "Bronze", 5, true),
+			new Supporter("ZEZIMA", "Gold", 50, true)), 55, "");
+		assertEquals("<img=313> ", index.getIcon("Zezima"));
+	}
+
+	@Test
+	public void emptyIndex() {
+		assertFalse(SupporterIndex.EMPTY.isSupporter("Zezima"));
+		assertEquals("", SupporterIndex.EMPTY.getIcon("Zezima"));
+	}
+
+	// Same answers as the old linear scan with 10k supporters, mostly missing lookups as on the
+	// real chat path. Lookup cost is measured in SupporterManagerBenchmark.
+	@Test
+	public void agreesWithTheLinearScanForTenThousandSupporters() {
+		Random random = new Random(7);
+		List<Supporter> supporters = new ArrayList<>(SUPPORTERS);
+		for (int i = 0; i < SUPPORTERS; i++) {
+			supporters.add(new Supporter("Player " + i, "Gold", random.nextInt(100), true));
+		}
+		SupporterIndex index = new SupporterIndex(supporters, 0, "");
+
+		for (int i = 0; i < 1000; i++) {
+			// One in ten chatters is a supporter
+			String name = i % 10 == 0 ? "player " + random.nextInt(SUPPORTERS) : "Someone Else " + i;
+			assertEquals(linearScan(supporters, name), index.getIcon(name));
+		}
+	}
+
+	// The lookup SupporterManager used before the index
+	private static String linearScan(List<Supporter> supporters, String username) {
+		return supporters.stream()
+			.filter(supporter -> supporter.name != null && supporter.name.equalsIgnoreCase(username.trim()))
+			.findFirst()
+			.map(SupporterIndex::getTierIcon)
+			.orElse("");
+	}
+}
@@ -0,0 +1,139 @@
+package com.globalchat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SupporterManagerTest {
+
+	private static final String FULL = "{\"supporters\":[{\"name\":\"Zezima\",\"tier\":\"Gold\",\"amount\":50,\"isPublic\":true},"
+		+ "{\"name\":\"Lynx Titan\",\"tier\":\"Bronze\",\"amount\":5,\"isPublic\":true}],\"totalSupport\":55,\"lastUpdated\":\"v1\"}";
+	private static final String DELTA = "{\"added\":[{\"name\":\"B0aty\",\"tier\":\"Silver\",\"amount\":20,\"isPublic\":true}],"
+		+ "\"removed\":[\"lynx titan\"],\"totalSupport\":70,\"lastUpdated\":\"v2\"}";
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private HttpServer server;
+	private String url;
+	private final List<String> ifNoneMatch = new ArrayList<>();
+	private int status = 200;
+	private String body = FULL;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/api/supporters", exchange -> {
+			ifNoneMatch.add(exchange.getRequestHeaders().getFirst("If-None-Match"));
+			exchange.getResponseHeaders().add("ETag", "\"" + body.hashCode() + "\"");
+			if (status == 304) {
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(status, bytes.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(bytes);
+				}
+			}
+			exchange.close();
+		});
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private SupporterManager newManager(File cacheDir) {
+		return new SupporterManager(new Gson(), new GlobalChatApiClient(new OkHttpClient(), new Gson(), url),
+			new ChatMetrics(), cacheDir);
+	}
+
+	@Test
+	public void cachedListLoadsWithoutNetwork() throws IOException {
+		File cacheDir = temporaryFolder.newFolder();
+		SupporterManager first = newManager(cacheDir);
+		first.refresh();
+		assertEquals("<img=314> ", first.getSupporterIcon("zezima"));
+		first.shutdown();
+
+		server.stop(0);
+		SupporterManager second = newManager(cacheDir);
+		second.loadFromDisk();
+		assertEquals("<img=314> ", second.getSupporterIcon("zezima"));
+		assertEquals(55, second.getTotalSupport());
+		assertTrue(second.isFresh());
+		second.shutdown();
+	}
+
+	@Test
+	public void revalidatesWithEtagAndKeepsListOnNotModified() throws IOException {
+		SupporterManager manager = newManager(temporaryFolder.newFolder());
+		manager.refresh();
+		status = 304;
+		manager.refresh();
+
+		assertNull(ifNoneMatch.get(0));
+		assertEquals("\"" + FULL.hashCode() + "\"", ifNoneMatch.get(1));
+		assertEquals(2, manager.getSupporters().size());
+		assertTrue(manager.isSupporter("Lynx Titan"));
+		manager.shutdown();
+	}
+
+	@Test
+	public void appliesDeltaUpdates() throws IOException {
+		File cacheDir = temporaryFolder.newFolder();
+		SupporterManager manager = newManager(cacheDir);
+		manager.refresh();
+		status = 226;
+		body = DELTA;
+		manager.refresh();
+
+		assertFalse(manager.isSupporter("Lynx Titan"));
+		assertEquals("<img=312> ", manager.getSupporterIcon("b0aty"));
+		assertEquals("<img=314> ", manager.getSupporterIcon("Zezima"));
+		assertEquals(70, manager.getTotalSupport());
+		assertEquals("v2", manager.getLastUpdated());
+		manager.shutdown();
+
+		// The merged list is what gets persisted
+		SupporterManager reloaded = newManager(cacheDir);
+		reloaded.loadFromDisk();
+		assertEquals(2, reloaded.getSupporters().size());
+		assertTrue(reloaded.isSupporter("B0aty"));
+		reloaded.shutdown();
+	}
+
+	@Test
+	public void keepsServingCacheWhenServerFails() throws IOException {
+		SupporterManager manager = newManager(temporaryFolder.newFolder());
+		manager.refresh();
+		status = 500;
+		manager.refresh();
+		assertTrue(manager.isSupporter("Zezima"));
+
+		server.stop(0);
+		manager.refresh();
+		assertTrue(manager.isSupporter("Zezima"));
+		manager.shutdown();
+	}
+}